@@ -19,11 +19,13 @@
 package org.apache.flink.runtime.checkpoint;
 
 import org.apache.flink.runtime.state.CompositeStateHandle;
+import org.apache.flink.runtime.state.InputChannelStateHandle;
 import org.apache.flink.runtime.state.OperatorStateHandle;
 import org.apache.flink.runtime.state.KeyedStateHandle;
 import org.apache.flink.runtime.state.SharedStateRegistry;
 import org.apache.flink.runtime.state.StateObject;
 import org.apache.flink.runtime.state.StateUtil;
+import org.apache.flink.runtime.state.filesystem.SegmentFileStateHandle;
 import org.apache.flink.util.Preconditions;
 
 import org.slf4j.Logger;
@@ -80,6 +82,12 @@ public class OperatorSubtaskState implements CompositeStateHandle {
 	@Nonnull
 	private final StateObjectCollection<KeyedStateHandle> rawKeyedState;
 
+	/**
+	 * In-flight data of the input channels, persisted by an unaligned checkpoint for the head operator of a task.
+	 */
+	@Nonnull
+	private final StateObjectCollection<InputChannelStateHandle> inputChannelState;
+
 	/**
 	 * The state size. This is also part of the deserialized state handle.
 	 * We store it here in order to not deserialize the state handle when
@@ -104,15 +112,32 @@ public class OperatorSubtaskState implements CompositeStateHandle {
 		@Nonnull StateObjectCollection<KeyedStateHandle> managedKeyedState,
 		@Nonnull StateObjectCollection<KeyedStateHandle> rawKeyedState) {
 
+		this(
+			managedOperatorState,
+			rawOperatorState,
+			managedKeyedState,
+			rawKeyedState,
+			StateObjectCollection.empty());
+	}
+
+	public OperatorSubtaskState(
+		@Nonnull StateObjectCollection<OperatorStateHandle> managedOperatorState,
+		@Nonnull StateObjectCollection<OperatorStateHandle> rawOperatorState,
+		@Nonnull StateObjectCollection<KeyedStateHandle> managedKeyedState,
+		@Nonnull StateObjectCollection<KeyedStateHandle> rawKeyedState,
+		@Nonnull StateObjectCollection<InputChannelStateHandle> inputChannelState) {
+
 		this.managedOperatorState = Preconditions.checkNotNull(managedOperatorState);
 		this.rawOperatorState = Preconditions.checkNotNull(rawOperatorState);
 		this.managedKeyedState = Preconditions.checkNotNull(managedKeyedState);
 		this.rawKeyedState = Preconditions.checkNotNull(rawKeyedState);
+		this.inputChannelState = Preconditions.checkNotNull(inputChannelState);
 
 		long calculateStateSize = managedOperatorState.getStateSize();
 		calculateStateSize += rawOperatorState.getStateSize();
 		calculateStateSize += managedKeyedState.getStateSize();
 		calculateStateSize += rawKeyedState.getStateSize();
+		calculateStateSize += inputChannelState.getStateSize();
 		stateSize = calculateStateSize;
 	}
 
@@ -171,6 +196,30 @@ public class OperatorSubtaskState implements CompositeStateHandle {
 		return rawKeyedState;
 	}
 
+	/**
+	 * Returns a handle to the in-flight data of the input channels.
+	 */
+	@Nonnull
+	public StateObjectCollection<InputChannelStateHandle> getInputChannelState() {
+		return inputChannelState;
+	}
+
+	/**
+	 * Returns a copy of this state that additionally contains the given in-flight data of the input channels.
+	 */
+	public OperatorSubtaskState withInputChannelState(@Nonnull InputChannelStateHandle inputChannelStateHandle) {
+		List<InputChannelStateHandle> newInputChannelState = new ArrayList<>(inputChannelState.size() + 1);
+		newInputChannelState.addAll(inputChannelState);
+		newInputChannelState.add(inputChannelStateHandle);
+
+		return new OperatorSubtaskState(
+			managedOperatorState,
+			rawOperatorState,
+			managedKeyedState,
+			rawKeyedState,
+			new StateObjectCollection<>(newInputChannelState));
+	}
+
 	@Override
 	public void discardState() {
 		try {
@@ -179,11 +228,13 @@ public class OperatorSubtaskState implements CompositeStateHandle {
 						managedOperatorState.size() +
 						rawOperatorState.size() +
 						managedKeyedState.size() +
-						rawKeyedState.size());
+						rawKeyedState.size() +
+						inputChannelState.size());
 			toDispose.addAll(managedOperatorState);
 			toDispose.addAll(rawOperatorState);
 			toDispose.addAll(managedKeyedState);
 			toDispose.addAll(rawKeyedState);
+			toDispose.addAll(inputChannelState);
 			StateUtil.bestEffortDiscardAllStateObjects(toDispose);
 		} catch (Exception e) {
 			LOG.warn("Error while discarding operator states.", e);
@@ -194,6 +245,17 @@ public class OperatorSubtaskState implements CompositeStateHandle {
 	public void registerSharedStates(SharedStateRegistry sharedStateRegistry) {
 		registerSharedState(sharedStateRegistry, managedKeyedState);
 		registerSharedState(sharedStateRegistry, rawKeyedState);
+
+		// operator and channel state are only shared if they were appended to a file with the state of other tasks
+		for (OperatorStateHandle stateHandle : managedOperatorState) {
+			SegmentFileStateHandle.registerIfSegment(stateHandle.getDelegateStateHandle(), sharedStateRegistry);
+		}
+		for (OperatorStateHandle stateHandle : rawOperatorState) {
+			SegmentFileStateHandle.registerIfSegment(stateHandle.getDelegateStateHandle(), sharedStateRegistry);
+		}
+		for (InputChannelStateHandle stateHandle : inputChannelState) {
+			SegmentFileStateHandle.registerIfSegment(stateHandle.getDelegateStateHandle(), sharedStateRegistry);
+		}
 	}
 
 	private static void registerSharedState(
@@ -236,7 +298,10 @@ public class OperatorSubtaskState implements CompositeStateHandle {
 		if (!getManagedKeyedState().equals(that.getManagedKeyedState())) {
 			return false;
 		}
-		return getRawKeyedState().equals(that.getRawKeyedState());
+		if (!getRawKeyedState().equals(that.getRawKeyedState())) {
+			return false;
+		}
+		return getInputChannelState().equals(that.getInputChannelState());
 	}
 
 	@Override
@@ -245,6 +310,7 @@ public class OperatorSubtaskState implements CompositeStateHandle {
 		result = 31 * result + getRawOperatorState().hashCode();
 		result = 31 * result + getManagedKeyedState().hashCode();
 		result = 31 * result + getRawKeyedState().hashCode();
+		result = 31 * result + getInputChannelState().hashCode();
 		result = 31 * result + (int) (getStateSize() ^ (getStateSize() >>> 32));
 		return result;
 	}
@@ -256,6 +322,7 @@ public class OperatorSubtaskState implements CompositeStateHandle {
 			", operatorStateFromStream=" + rawOperatorState +
 			", keyedStateFromBackend=" + managedKeyedState +
 			", keyedStateFromStream=" + rawKeyedState +
+			", inputChannelState=" + inputChannelState +
 			", stateSize=" + stateSize +
 			'}';
 	}
@@ -264,6 +331,7 @@ public class OperatorSubtaskState implements CompositeStateHandle {
 		return managedOperatorState.hasState()
 			|| rawOperatorState.hasState()
 			|| managedKeyedState.hasState()
-			|| rawKeyedState.hasState();
+			|| rawKeyedState.hasState()
+			|| inputChannelState.hasState();
 	}
 }
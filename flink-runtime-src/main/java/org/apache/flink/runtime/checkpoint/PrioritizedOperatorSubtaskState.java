@@ -20,6 +20,7 @@ package org.apache.flink.runtime.checkpoint;
 
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.flink.annotation.Internal;
+import org.apache.flink.runtime.state.InputChannelStateHandle;
 import org.apache.flink.runtime.state.KeyedStateHandle;
 import org.apache.flink.runtime.state.OperatorStateHandle;
 import org.apache.flink.runtime.state.StateObject;
@@ -59,6 +60,9 @@ public class PrioritizedOperatorSubtaskState {
 	/** List of prioritized snapshot alternatives for raw keyed state. */
 	private final List<StateObjectCollection<KeyedStateHandle>> prioritizedRawKeyedState;
 
+	/** In-flight data of the input channels, which only exists in the job manager state. */
+	private final StateObjectCollection<InputChannelStateHandle> inputChannelState;
+
 	/** Signal flag if this represents state for a restored operator. */
 	private final boolean restored;
 
@@ -67,12 +71,14 @@ public class PrioritizedOperatorSubtaskState {
 		@Nonnull List<StateObjectCollection<KeyedStateHandle>> prioritizedRawKeyedState,
 		@Nonnull List<StateObjectCollection<OperatorStateHandle>> prioritizedManagedOperatorState,
 		@Nonnull List<StateObjectCollection<OperatorStateHandle>> prioritizedRawOperatorState,
+		@Nonnull StateObjectCollection<InputChannelStateHandle> inputChannelState,
 		boolean restored) {
 
 		this.prioritizedManagedOperatorState = prioritizedManagedOperatorState;
 		this.prioritizedRawOperatorState = prioritizedRawOperatorState;
 		this.prioritizedManagedKeyedState = prioritizedManagedKeyedState;
 		this.prioritizedRawKeyedState = prioritizedRawKeyedState;
+		this.inputChannelState = inputChannelState;
 		this.restored = restored;
 	}
 
@@ -152,6 +158,14 @@ public class PrioritizedOperatorSubtaskState {
 		return lastElement(prioritizedRawKeyedState);
 	}
 
+	/**
+	 * Returns the in-flight data of the input channels, which was persisted by an unaligned checkpoint.
+	 */
+	@Nonnull
+	public StateObjectCollection<InputChannelStateHandle> getInputChannelState() {
+		return inputChannelState;
+	}
+
 	// -----------------------------------------------------------------------------------------------------------------
 
 	/**
@@ -246,6 +260,7 @@ public class PrioritizedOperatorSubtaskState {
 					jobManagerState.getRawOperatorState(),
 					rawOperatorAlternatives,
 					operatorStateApprover),
+				jobManagerState.getInputChannelState(),
 				restored);
 		}
 
@@ -25,6 +25,7 @@ import org.apache.flink.runtime.executiongraph.ExecutionJobVertex;
 import org.apache.flink.runtime.jobgraph.JobVertexID;
 import org.apache.flink.runtime.jobgraph.OperatorID;
 import org.apache.flink.runtime.jobgraph.OperatorInstanceID;
+import org.apache.flink.runtime.state.InputChannelStateHandle;
 import org.apache.flink.runtime.state.KeyGroupRange;
 import org.apache.flink.runtime.state.KeyGroupRangeAssignment;
 import org.apache.flink.runtime.state.KeyGroupsStateHandle;
@@ -169,6 +170,15 @@ public class StateAssignmentOperation {
 			newManagedKeyedState,
 			newRawKeyedState);
 
+		Map<OperatorInstanceID, List<InputChannelStateHandle>> newInputChannelState =
+			new HashMap<>(expectedNumberOfSubTasks);
+
+		reDistributeInputChannelStates(
+			operatorStates,
+			newParallelism,
+			operatorIDs,
+			newInputChannelState);
+
 		/*
 		 *  An executionJobVertex's all state handles needed to restore are something like a matrix
 		 *
@@ -185,6 +195,7 @@ public class StateAssignmentOperation {
 			newRawOperatorStates,
 			newManagedKeyedState,
 			newRawKeyedState,
+			newInputChannelState,
 			newParallelism);
 	}
 
@@ -194,6 +205,7 @@ public class StateAssignmentOperation {
 			Map<OperatorInstanceID, List<OperatorStateHandle>> subRawOperatorState,
 			Map<OperatorInstanceID, List<KeyedStateHandle>> subManagedKeyedState,
 			Map<OperatorInstanceID, List<KeyedStateHandle>> subRawKeyedState,
+			Map<OperatorInstanceID, List<InputChannelStateHandle>> subInputChannelState,
 			int newParallelism) {
 
 		List<OperatorID> operatorIDs = executionJobVertex.getOperatorIDs();
@@ -214,7 +226,8 @@ public class StateAssignmentOperation {
 					subManagedOperatorState,
 					subRawOperatorState,
 					subManagedKeyedState,
-					subRawKeyedState);
+					subRawKeyedState,
+					subInputChannelState);
 
 				if (operatorSubtaskState.hasState()) {
 					statelessTask = false;
@@ -236,10 +249,28 @@ public class StateAssignmentOperation {
 			Map<OperatorInstanceID, List<KeyedStateHandle>> subManagedKeyedState,
 			Map<OperatorInstanceID, List<KeyedStateHandle>> subRawKeyedState) {
 
+		return operatorSubtaskStateFrom(
+			instanceID,
+			subManagedOperatorState,
+			subRawOperatorState,
+			subManagedKeyedState,
+			subRawKeyedState,
+			Collections.emptyMap());
+	}
+
+	public static OperatorSubtaskState operatorSubtaskStateFrom(
+			OperatorInstanceID instanceID,
+			Map<OperatorInstanceID, List<OperatorStateHandle>> subManagedOperatorState,
+			Map<OperatorInstanceID, List<OperatorStateHandle>> subRawOperatorState,
+			Map<OperatorInstanceID, List<KeyedStateHandle>> subManagedKeyedState,
+			Map<OperatorInstanceID, List<KeyedStateHandle>> subRawKeyedState,
+			Map<OperatorInstanceID, List<InputChannelStateHandle>> subInputChannelState) {
+
 		if (!subManagedOperatorState.containsKey(instanceID) &&
 			!subRawOperatorState.containsKey(instanceID) &&
 			!subManagedKeyedState.containsKey(instanceID) &&
-			!subRawKeyedState.containsKey(instanceID)) {
+			!subRawKeyedState.containsKey(instanceID) &&
+			!subInputChannelState.containsKey(instanceID)) {
 
 			return new OperatorSubtaskState();
 		}
@@ -250,7 +281,8 @@ public class StateAssignmentOperation {
 			new StateObjectCollection<>(subManagedOperatorState.getOrDefault(instanceID, Collections.emptyList())),
 			new StateObjectCollection<>(subRawOperatorState.getOrDefault(instanceID, Collections.emptyList())),
 			new StateObjectCollection<>(subManagedKeyedState.getOrDefault(instanceID, Collections.emptyList())),
-			new StateObjectCollection<>(subRawKeyedState.getOrDefault(instanceID, Collections.emptyList())));
+			new StateObjectCollection<>(subRawKeyedState.getOrDefault(instanceID, Collections.emptyList())),
+			new StateObjectCollection<>(subInputChannelState.getOrDefault(instanceID, Collections.emptyList())));
 	}
 
 	public void checkParallelismPreconditions(List<OperatorState> operatorStates, ExecutionJobVertex executionJobVertex) {
@@ -287,6 +319,42 @@ public class StateAssignmentOperation {
 		}
 	}
 
+	/**
+	 * Assigns the in-flight data of unaligned checkpoints to the same subtasks. The data consists of raw network
+	 * buffers of the input channels, which cannot be redistributed, so the parallelism must not change.
+	 */
+	private void reDistributeInputChannelStates(
+			List<OperatorState> oldOperatorStates,
+			int newParallelism,
+			List<OperatorID> newOperatorIDs,
+			Map<OperatorInstanceID, List<InputChannelStateHandle>> newInputChannelState) {
+
+		checkState(newOperatorIDs.size() == oldOperatorStates.size(),
+			"This method still depends on the order of the new and old operators");
+
+		for (int operatorIndex = 0; operatorIndex < newOperatorIDs.size(); operatorIndex++) {
+			OperatorState operatorState = oldOperatorStates.get(operatorIndex);
+
+			for (int oldSubTaskIndex = 0; oldSubTaskIndex < operatorState.getParallelism(); oldSubTaskIndex++) {
+				OperatorSubtaskState subtaskState = operatorState.getState(oldSubTaskIndex);
+				if (subtaskState == null || !subtaskState.getInputChannelState().hasState()) {
+					continue;
+				}
+
+				if (operatorState.getParallelism() != newParallelism) {
+					throw new IllegalStateException("The state for operator " + operatorState.getOperatorID() +
+						" contains in-flight data of an unaligned checkpoint, which cannot be restored with a " +
+						"different parallelism (old: " + operatorState.getParallelism() + ", new: " +
+						newParallelism + "). Rescaling requires a snapshot that was taken with unaligned checkpoints disabled.");
+				}
+
+				newInputChannelState.put(
+					OperatorInstanceID.of(oldSubTaskIndex, newOperatorIDs.get(operatorIndex)),
+					subtaskState.getInputChannelState().asList());
+			}
+		}
+	}
+
 	// TODO rewrite based on operator id
 	private Tuple2<List<KeyedStateHandle>, List<KeyedStateHandle>> reAssignSubKeyedStates(
 			OperatorState operatorState,
@@ -25,7 +25,10 @@ import org.apache.flink.runtime.checkpoint.MasterState;
 import org.apache.flink.runtime.checkpoint.OperatorState;
 import org.apache.flink.runtime.checkpoint.OperatorSubtaskState;
 import org.apache.flink.runtime.jobgraph.OperatorID;
+import org.apache.flink.runtime.state.CompositeKeyGroupsStateHandle;
+import org.apache.flink.runtime.state.IncrementalHeapKeyedStateHandle;
 import org.apache.flink.runtime.state.IncrementalRemoteKeyedStateHandle;
+import org.apache.flink.runtime.state.InputChannelStateHandle;
 import org.apache.flink.runtime.state.OperatorStateHandle;
 import org.apache.flink.runtime.state.KeyGroupRange;
 import org.apache.flink.runtime.state.KeyGroupRangeOffsets;
@@ -35,6 +38,7 @@ import org.apache.flink.runtime.state.OperatorStreamStateHandle;
 import org.apache.flink.runtime.state.StateHandleID;
 import org.apache.flink.runtime.state.StreamStateHandle;
 import org.apache.flink.runtime.state.filesystem.FileStateHandle;
+import org.apache.flink.runtime.state.filesystem.SegmentFileStateHandle;
 import org.apache.flink.runtime.state.memory.ByteStreamStateHandle;
 import org.apache.flink.util.Preconditions;
 
@@ -82,6 +86,15 @@ public class SavepointV2Serializer implements SavepointSerializer<SavepointV2> {
 	private static final byte KEY_GROUPS_HANDLE = 3;
 	private static final byte PARTITIONABLE_OPERATOR_STATE_HANDLE = 4;
 	private static final byte INCREMENTAL_KEY_GROUPS_HANDLE = 5;
+	private static final byte SEGMENT_FILE_STREAM_STATE_HANDLE = 6;
+	private static final byte COMPOSITE_KEY_GROUPS_HANDLE = 7;
+	private static final byte HEAP_INCREMENTAL_KEY_GROUPS_HANDLE = 8;
+
+	/**
+	 * Written in place of the (removed) duration of a subtask state if the state is followed by in-flight data of
+	 * the input channels. Subtask states without in-flight data keep the original layout.
+	 */
+	private static final long SUBTASK_STATE_WITH_INPUT_CHANNEL_STATE = -2L;
 
 	/** The singleton instance of the serializer */
 	public static final SavepointV2Serializer INSTANCE = new SavepointV2Serializer();
@@ -260,7 +273,8 @@ public class SavepointV2Serializer implements SavepointSerializer<SavepointV2> {
 
 	private static void serializeSubtaskState(OperatorSubtaskState subtaskState, DataOutputStream dos) throws IOException {
 
-		dos.writeLong(-1);
+		final boolean hasInputChannelState = subtaskState.getInputChannelState().hasState();
+		dos.writeLong(hasInputChannelState ? SUBTASK_STATE_WITH_INPUT_CHANNEL_STATE : -1);
 
 		int len = 0;
 		dos.writeInt(len);
@@ -286,10 +300,18 @@ public class SavepointV2Serializer implements SavepointSerializer<SavepointV2> {
 
 		KeyedStateHandle keyedStateStream = extractSingleton(subtaskState.getRawKeyedState());
 		serializeKeyedStateHandle(keyedStateStream, dos);
+
+		if (hasInputChannelState) {
+			dos.writeInt(subtaskState.getInputChannelState().size());
+			for (InputChannelStateHandle inputChannelStateHandle : subtaskState.getInputChannelState()) {
+				serializeStreamStateHandle(inputChannelStateHandle.getDelegateStateHandle(), dos);
+			}
+		}
 	}
 
 	private static OperatorSubtaskState deserializeSubtaskState(DataInputStream dis) throws IOException {
 		// Duration field has been removed from SubtaskState, do not remove
+		// (it now flags whether in-flight data of the input channels follows the state)
 		long ignoredDuration = dis.readLong();
 
 		// for compatibility, do not remove
@@ -317,11 +339,21 @@ public class SavepointV2Serializer implements SavepointSerializer<SavepointV2> {
 
 		KeyedStateHandle keyedStateStream = deserializeKeyedStateHandle(dis);
 
-		return new OperatorSubtaskState(
+		OperatorSubtaskState subtaskState = new OperatorSubtaskState(
 				operatorStateBackend,
 				operatorStateStream,
 				keyedStateBackend,
 				keyedStateStream);
+
+		if (ignoredDuration == SUBTASK_STATE_WITH_INPUT_CHANNEL_STATE) {
+			int numInputChannelStateHandles = dis.readInt();
+			for (int i = 0; i < numInputChannelStateHandles; i++) {
+				subtaskState = subtaskState.withInputChannelState(
+					new InputChannelStateHandle(deserializeStreamStateHandle(dis)));
+			}
+		}
+
+		return subtaskState;
 	}
 
 	@VisibleForTesting
@@ -355,6 +387,28 @@ public class SavepointV2Serializer implements SavepointSerializer<SavepointV2> {
 
 			serializeStreamStateHandleMap(incrementalKeyedStateHandle.getSharedState(), dos);
 			serializeStreamStateHandleMap(incrementalKeyedStateHandle.getPrivateState(), dos);
+		} else if (stateHandle instanceof CompositeKeyGroupsStateHandle) {
+			List<KeyGroupsStateHandle> keyGroupsStateHandles =
+				((CompositeKeyGroupsStateHandle) stateHandle).getKeyGroupsStateHandles();
+
+			dos.writeByte(COMPOSITE_KEY_GROUPS_HANDLE);
+			dos.writeInt(keyGroupsStateHandles.size());
+			for (KeyGroupsStateHandle keyGroupsStateHandle : keyGroupsStateHandles) {
+				serializeKeyedStateHandle(keyGroupsStateHandle, dos);
+			}
+		} else if (stateHandle instanceof IncrementalHeapKeyedStateHandle) {
+			IncrementalHeapKeyedStateHandle incrementalHeapKeyedStateHandle =
+				(IncrementalHeapKeyedStateHandle) stateHandle;
+
+			dos.writeByte(HEAP_INCREMENTAL_KEY_GROUPS_HANDLE);
+
+			dos.writeLong(incrementalHeapKeyedStateHandle.getCheckpointId());
+			dos.writeUTF(String.valueOf(incrementalHeapKeyedStateHandle.getBackendIdentifier()));
+			dos.writeInt(incrementalHeapKeyedStateHandle.getKeyGroupRange().getStartKeyGroup());
+			dos.writeInt(incrementalHeapKeyedStateHandle.getKeyGroupRange().getNumberOfKeyGroups());
+
+			serializeStreamStateHandle(incrementalHeapKeyedStateHandle.getMetaStateHandle(), dos);
+			serializeStreamStateHandleMap(incrementalHeapKeyedStateHandle.getSharedState(), dos);
 		} else {
 			throw new IllegalStateException("Unknown KeyedStateHandle type: " + stateHandle.getClass());
 		}
@@ -434,6 +488,37 @@ public class SavepointV2Serializer implements SavepointSerializer<SavepointV2> {
 				sharedStates,
 				privateStates,
 				metaDataStateHandle);
+		} else if (COMPOSITE_KEY_GROUPS_HANDLE == type) {
+
+			int numHandles = dis.readInt();
+			List<KeyGroupsStateHandle> keyGroupsStateHandles = new ArrayList<>(numHandles);
+			for (int i = 0; i < numHandles; ++i) {
+				KeyedStateHandle keyGroupsStateHandle = deserializeKeyedStateHandle(dis);
+				if (!(keyGroupsStateHandle instanceof KeyGroupsStateHandle)) {
+					throw new IllegalStateException("Reading invalid slice of CompositeKeyGroupsStateHandle: " +
+						keyGroupsStateHandle);
+				}
+				keyGroupsStateHandles.add((KeyGroupsStateHandle) keyGroupsStateHandle);
+			}
+			return new CompositeKeyGroupsStateHandle(keyGroupsStateHandles);
+		} else if (HEAP_INCREMENTAL_KEY_GROUPS_HANDLE == type) {
+
+			long checkpointId = dis.readLong();
+			UUID backendIdentifier = UUID.fromString(dis.readUTF());
+			int startKeyGroup = dis.readInt();
+			int numKeyGroups = dis.readInt();
+			KeyGroupRange keyGroupRange =
+				KeyGroupRange.of(startKeyGroup, startKeyGroup + numKeyGroups - 1);
+
+			StreamStateHandle metaDataStateHandle = deserializeStreamStateHandle(dis);
+			Map<StateHandleID, StreamStateHandle> sharedStates = deserializeStreamStateHandleMap(dis);
+
+			return new IncrementalHeapKeyedStateHandle(
+				backendIdentifier,
+				keyGroupRange,
+				checkpointId,
+				sharedStates,
+				metaDataStateHandle);
 		} else {
 			throw new IllegalStateException("Reading invalid KeyedStateHandle, type: " + type);
 		}
@@ -513,6 +598,13 @@ public class SavepointV2Serializer implements SavepointSerializer<SavepointV2> {
 			dos.writeLong(stateHandle.getStateSize());
 			dos.writeUTF(fileStateHandle.getFilePath().toString());
 
+		} else if (stateHandle instanceof SegmentFileStateHandle) {
+			dos.writeByte(SEGMENT_FILE_STREAM_STATE_HANDLE);
+			SegmentFileStateHandle segmentFileStateHandle = (SegmentFileStateHandle) stateHandle;
+			dos.writeLong(segmentFileStateHandle.getOffset());
+			dos.writeLong(segmentFileStateHandle.getStateSize());
+			dos.writeUTF(segmentFileStateHandle.getFilePath().toString());
+
 		} else if (stateHandle instanceof ByteStreamStateHandle) {
 			dos.writeByte(BYTE_STREAM_STATE_HANDLE);
 			ByteStreamStateHandle byteStreamStateHandle = (ByteStreamStateHandle) stateHandle;
@@ -535,6 +627,11 @@ public class SavepointV2Serializer implements SavepointSerializer<SavepointV2> {
 			long size = dis.readLong();
 			String pathString = dis.readUTF();
 			return new FileStateHandle(new Path(pathString), size);
+		} else if (SEGMENT_FILE_STREAM_STATE_HANDLE == type) {
+			long offset = dis.readLong();
+			long length = dis.readLong();
+			String pathString = dis.readUTF();
+			return new SegmentFileStateHandle(new Path(pathString), offset, length);
 		} else if (BYTE_STREAM_STATE_HANDLE == type) {
 			String handleName = dis.readUTF();
 			int numBytes = dis.readInt();
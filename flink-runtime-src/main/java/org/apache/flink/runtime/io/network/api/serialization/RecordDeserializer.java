@@ -63,4 +63,12 @@ public interface RecordDeserializer<T extends IOReadableWritable> {
 	void clear();
 
 	boolean hasUnfinishedData();
+
+	/**
+	 * Returns the bytes of a record that was only partially received, in the format in which they were received
+	 * (including the length prefix). The current buffer must have been consumed completely.
+	 *
+	 * @return the bytes of the partial record, or an empty array if there is no partial record.
+	 */
+	byte[] getUnfinishedData() throws IOException;
 }
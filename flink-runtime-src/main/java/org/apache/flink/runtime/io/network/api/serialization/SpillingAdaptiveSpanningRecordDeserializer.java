@@ -164,6 +164,14 @@ public class SpillingAdaptiveSpanningRecordDeserializer<T extends IOReadableWrit
 		return this.nonSpanningWrapper.remaining() > 0 || this.spanningWrapper.getNumGatheredBytes() > 0;
 	}
 
+	@Override
+	public byte[] getUnfinishedData() throws IOException {
+		if (this.nonSpanningWrapper.remaining() > 0) {
+			throw new IllegalStateException("The current buffer has not been consumed completely.");
+		}
+		return this.spanningWrapper.getGatheredBytes();
+	}
+
 
 	// -----------------------------------------------------------------------------------------------------------------
 
@@ -573,6 +581,37 @@ public class SpillingAdaptiveSpanningRecordDeserializer<T extends IOReadableWrit
 			return this.accumulatedRecordBytes + (this.recordLength >= 0 ? 4 : lengthBuffer.position());
 		}
 
+		/**
+		 * Returns the gathered bytes of the partial record, including the (partial) length.
+		 */
+		private byte[] getGatheredBytes() throws IOException {
+			final byte[] gathered = new byte[getNumGatheredBytes()];
+			if (this.recordLength < 0) {
+				System.arraycopy(this.lengthBuffer.array(), 0, gathered, 0, this.lengthBuffer.position());
+				return gathered;
+			}
+
+			gathered[0] = (byte) (this.recordLength >>> 24);
+			gathered[1] = (byte) (this.recordLength >>> 16);
+			gathered[2] = (byte) (this.recordLength >>> 8);
+			gathered[3] = (byte) this.recordLength;
+
+			if (this.spillingChannel != null) {
+				ByteBuffer target = ByteBuffer.wrap(gathered, 4, this.accumulatedRecordBytes);
+				long position = 0;
+				while (target.hasRemaining()) {
+					int read = this.spillingChannel.read(target, position);
+					if (read < 0) {
+						throw new IOException("Spilled partial record is incomplete.");
+					}
+					position += read;
+				}
+			} else {
+				System.arraycopy(this.buffer, 0, gathered, 4, this.accumulatedRecordBytes);
+			}
+			return gathered;
+		}
+
 		public void clear() {
 			this.buffer = initialBuffer;
 			this.serializationReadBuffer.releaseArrays();
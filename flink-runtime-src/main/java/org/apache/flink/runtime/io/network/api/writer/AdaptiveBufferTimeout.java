@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.io.network.api.writer;
+
+import static org.apache.flink.util.Preconditions.checkArgument;
+
+/**
+ * Computes the flush interval of the {@link RecordWriter}'s output flusher in the adaptive buffer timeout mode.
+ *
+ * <p>The interval starts at the latency target and is adjusted after every flush cycle, based on the state of the
+ * channels that hold unflushed data:
+ * <ul>
+ *     <li>If a channel with little buffered data has an idle receiver (no finished buffers queued), the data only
+ *     waits for the next flush. Flushing is cheap in that situation, so the interval shrinks.</li>
+ *     <li>If all channels with unflushed data have a backlog of finished buffers, the receivers are busy and an
+ *     earlier flush would not deliver the data earlier. The interval stretches up to the configured maximum.</li>
+ *     <li>If buffers on idle channels are filling up, they will soon be sent anyway. The interval stretches, but
+ *     not beyond the latency target.</li>
+ * </ul>
+ *
+ * <p>The interval never exceeds the configured maximum buffer timeout.
+ */
+// 自适应 buffer timeout：根据各个 channel 的 buffer 填充程度和下游积压情况，动态调整 OutputFlusher 的 flush 间隔
+final class AdaptiveBufferTimeout {
+
+	/** The smallest flush interval. */
+	static final long MIN_INTERVAL_MILLIS = 1L;
+
+	/** Buffers that are filled above this ratio are considered to fill up by themselves. */
+	static final double HIGH_FILL_RATIO = 0.5;
+
+	/** The configured buffer timeout, which the interval never exceeds. */
+	private final long maxIntervalMillis;
+
+	/** The targeted upper bound for the time records spend in partially filled buffers. */
+	private final long latencyTargetMillis;
+
+	/** The current flush interval. */
+	private long intervalMillis;
+
+	AdaptiveBufferTimeout(long maxIntervalMillis, long latencyTargetMillis) {
+		checkArgument(maxIntervalMillis > 0, "The maximum buffer timeout must be positive.");
+		checkArgument(latencyTargetMillis > 0, "The latency target must be positive.");
+
+		this.maxIntervalMillis = maxIntervalMillis;
+		this.latencyTargetMillis = Math.min(latencyTargetMillis, maxIntervalMillis);
+		this.intervalMillis = this.latencyTargetMillis;
+	}
+
+	long getIntervalMillis() {
+		return intervalMillis;
+	}
+
+	/**
+	 * Adjusts the interval to the observed state of the channels.
+	 *
+	 * @param numIdleChannelsWithLowFill number of channels with unflushed data, a fill ratio below
+	 *                                   {@link #HIGH_FILL_RATIO} and no finished buffers queued.
+	 * @param numIdleChannelsWithHighFill number of channels with unflushed data, a fill ratio of at least
+	 *                                    {@link #HIGH_FILL_RATIO} and no finished buffers queued.
+	 * @param numBackloggedChannels number of channels with unflushed data and finished buffers queued.
+	 * @return the new flush interval in milliseconds.
+	 */
+	long update(int numIdleChannelsWithLowFill, int numIdleChannelsWithHighFill, int numBackloggedChannels) {
+		if (numIdleChannelsWithLowFill > 0) {
+			intervalMillis = Math.max(MIN_INTERVAL_MILLIS, Math.min(latencyTargetMillis, intervalMillis / 2));
+		} else if (numIdleChannelsWithHighFill > 0) {
+			intervalMillis = Math.min(latencyTargetMillis, intervalMillis * 2);
+		} else if (numBackloggedChannels > 0) {
+			intervalMillis = Math.min(maxIntervalMillis, intervalMillis * 2);
+		}
+		// without unflushed data the interval does not matter, keep it
+
+		return intervalMillis;
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.flink.runtime.io.network.api.writer;
+
+/**
+ * A {@link ChannelSelector} that takes the backlog of the output channels into account when selecting a channel.
+ * After setting up the selector, the {@link RecordWriter} hands it a view of the number of buffers queued in each
+ * channel. With credit-based flow control, the buffers of a channel queue up when its consumer is slow or runs out of
+ * credit, so the backlog reflects the load of the consumers.
+ */
+public interface BacklogAwareChannelSelector {
+
+	/**
+	 * Sets the view of the backlog of the output channels.
+	 */
+	void setChannelBacklog(ChannelBacklog channelBacklog);
+
+	/**
+	 * A view of the backlog of the output channels.
+	 */
+	@FunctionalInterface
+	interface ChannelBacklog {
+
+		/**
+		 * Makes a best effort to get the current number of queued buffers of the given channel, including a
+		 * partially filled one. This method does not acquire locks.
+		 */
+		int getNumberOfQueuedBuffers(int channel);
+	}
+}
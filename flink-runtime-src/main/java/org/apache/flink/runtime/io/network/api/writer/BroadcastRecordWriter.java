@@ -40,8 +40,27 @@ public class BroadcastRecordWriter<T extends IOReadableWritable> extends RecordW
 		super(writer, channelSelector, timeout, taskName);
 	}
 
+	public BroadcastRecordWriter(
+			ResultPartitionWriter writer,
+			ChannelSelector<T> channelSelector,
+			long timeout,
+			long latencyTarget,
+			String taskName) {
+		super(writer, channelSelector, timeout, latencyTarget, taskName);
+	}
+
 	@Override
 	public void emit(T record) throws IOException, InterruptedException {
 		broadcastEmit(record);
 	}
+
+	/**
+	 * Copies the record to all channels, like {@link #emit(IOReadableWritable)}. The broadcast channel selector does
+	 * not select single channels.
+	 */
+	@Override
+	public boolean emitSerialized(T record, SharedRecordSerializer<T> sharedSerializer) throws IOException, InterruptedException {
+		checkErroneous();
+		return copyFromSerializerToAllChannels(sharedSerializer.serialize(record));
+	}
 }
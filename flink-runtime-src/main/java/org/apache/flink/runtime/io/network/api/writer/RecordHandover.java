@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.io.network.api.writer;
+
+import org.apache.flink.core.io.IOReadableWritable;
+import org.apache.flink.runtime.io.network.partition.ObjectHandoverQueue;
+
+import javax.annotation.Nullable;
+
+/**
+ * Lets a {@link RecordWriter} hand over records by reference to consumers in the same TaskManager, see
+ * {@link ObjectHandoverQueue}. The consumer must understand the marker record.
+ *
+ * @param <T> the type of the record that can be emitted with the record writer
+ */
+public interface RecordHandover<T extends IOReadableWritable> {
+
+	/**
+	 * Returns the object that is handed over instead of the serialized record, or null if the record must be
+	 * serialized. The producer may modify the record after it was emitted, so the returned object must not share
+	 * mutable state with it.
+	 */
+	@Nullable
+	Object toHandoverObject(T record);
+
+	/**
+	 * Returns the record that is serialized in place of a handed over record.
+	 */
+	T getMarker();
+}
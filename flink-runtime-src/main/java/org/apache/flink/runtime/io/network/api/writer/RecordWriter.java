@@ -27,12 +27,15 @@ import org.apache.flink.runtime.io.network.api.serialization.RecordSerializer;
 import org.apache.flink.runtime.io.network.api.serialization.SpanningRecordSerializer;
 import org.apache.flink.runtime.io.network.buffer.BufferBuilder;
 import org.apache.flink.runtime.io.network.buffer.BufferConsumer;
+import org.apache.flink.runtime.io.network.partition.ObjectHandoverQueue;
 import org.apache.flink.runtime.metrics.groups.TaskIOMetricGroup;
 import org.apache.flink.util.XORShiftRandom;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
 import java.io.IOException;
 import java.util.Optional;
 import java.util.Random;
@@ -84,9 +87,17 @@ public class RecordWriter<T extends IOReadableWritable> {
 	/** The thread that periodically flushes the output, to give an upper latency bound. */
 	private final Optional<OutputFlusher> outputFlusher;
 
+	/** Computes the flush interval if the adaptive buffer timeout is enabled, null otherwise. */
+	@Nullable
+	private final AdaptiveBufferTimeout adaptiveBufferTimeout;
+
 	/** To avoid synchronization overhead on the critical path, best-effort error tracking is enough here.*/
 	private Throwable flusherException;
 
+	/** Hands over records by reference to consumers in the same TaskManager, null if disabled. */
+	@Nullable
+	private RecordHandover<T> recordHandover;
+
 	public RecordWriter(ResultPartitionWriter writer) {
 		this(writer, new RoundRobinChannelSelector<T>(), -1, null);
 	}
@@ -96,10 +107,31 @@ public class RecordWriter<T extends IOReadableWritable> {
 			ChannelSelector<T> channelSelector,
 			long timeout,
 			String taskName) {
+		this(writer, channelSelector, timeout, -1, taskName);
+	}
+
+	/**
+	 * Creates a record writer.
+	 *
+	 * @param timeout the buffer timeout: 0 flushes after every record, -1 only flushes full buffers, any other value
+	 *                is the interval (or, if a latency target is given, the maximum interval) of periodic flushes.
+	 * @param latencyTarget if positive and the timeout is positive, the flush interval adapts to the load of the
+	 *                      channels, see {@link AdaptiveBufferTimeout}. -1 disables the adaptive mode.
+	 */
+	public RecordWriter(
+			ResultPartitionWriter writer,
+			ChannelSelector<T> channelSelector,
+			long timeout,
+			long latencyTarget,
+			String taskName) {
 		this.targetPartition = writer;
 		this.channelSelector = channelSelector;
 		this.numberOfChannels = writer.getNumberOfSubpartitions();
 		this.channelSelector.setup(numberOfChannels);
+		if (channelSelector instanceof BacklogAwareChannelSelector) {
+			((BacklogAwareChannelSelector) channelSelector).setChannelBacklog(
+				writer::unsynchronizedGetNumberOfQueuedBuffers);
+		}
 
 		this.serializer = new SpanningRecordSerializer<T>();
 		this.bufferBuilders = new Optional[numberOfChannels];
@@ -110,11 +142,13 @@ public class RecordWriter<T extends IOReadableWritable> {
 		}
 
 		checkArgument(timeout >= -1);
+		checkArgument(latencyTarget == -1 || latencyTarget > 0);
 		this.flushAlways = (timeout == 0);  // bufferTimeout 为 0，代表不缓存，每一条记录直接 flush
 		// 当 timeout 为 -1 的时候，按照 env 那里设置的 bufferTimeout 来
 		// 默认情况下，100 ms
 		if (timeout == -1 || timeout == 0) {
 			outputFlusher = Optional.empty();
+			adaptiveBufferTimeout = null;
 		} else {
 			// 如果设置了 bufferTimeout，将启动一个线程
 			// Thread.sleep 等待对应的时间
@@ -123,6 +157,8 @@ public class RecordWriter<T extends IOReadableWritable> {
 				DEFAULT_OUTPUT_FLUSH_THREAD_NAME :
 				DEFAULT_OUTPUT_FLUSH_THREAD_NAME + " for " + taskName;
 
+			// 设置了 latencyTarget 时，flush 间隔会在 (0, timeout] 之间自适应调整
+			adaptiveBufferTimeout = latencyTarget > 0 ? new AdaptiveBufferTimeout(timeout, latencyTarget) : null;
 			outputFlusher = Optional.of(new OutputFlusher(threadName, timeout));
 			outputFlusher.get().start();
 		}
@@ -133,7 +169,39 @@ public class RecordWriter<T extends IOReadableWritable> {
 	 */
 	public void emit(T record) throws IOException, InterruptedException {
 		checkErroneous();
-		emit(record, channelSelector.selectChannel(record));
+		int targetChannel = channelSelector.selectChannel(record);
+		// 下游 consumer 在同一个 TaskManager 中时，直接传递对象引用，只序列化一个很小的 marker
+		if (recordHandover != null && tryHandover(record, targetChannel)) {
+			return;
+		}
+		emit(record, targetChannel);
+	}
+
+	/**
+	 * Hands over the record by reference if the consumer of the channel takes records that way, and writes the
+	 * marker in place of the record.
+	 *
+	 * @return true if the record was handed over, false if it must be serialized.
+	 */
+	private boolean tryHandover(T record, int targetChannel) throws IOException, InterruptedException {
+		final ObjectHandoverQueue queue = targetPartition.getObjectHandoverQueue(targetChannel);
+		if (queue == null) {
+			return false;
+		}
+
+		final Object object = recordHandover.toHandoverObject(record);
+		if (object == null) {
+			return false;
+		}
+
+		if (!queue.tryPut(object)) {
+			// the consumer only takes objects for markers it has read, so make all markers visible before waiting
+			// 队列满了，先 flush，让 consumer 能读到已经写出的 marker，再等待队列腾出空间
+			targetPartition.flush(targetChannel);
+			queue.put(object);
+		}
+		emit(recordHandover.getMarker(), targetChannel);
+		return true;
 	}
 
 	/**
@@ -147,12 +215,7 @@ public class RecordWriter<T extends IOReadableWritable> {
 		checkErroneous();
 		serializer.serializeRecord(record);
 
-		boolean pruneAfterCopying = false;
-		for (int channel : broadcastChannels) {
-			if (copyFromSerializerToTargetChannel(channel)) {
-				pruneAfterCopying = true;
-			}
-		}
+		boolean pruneAfterCopying = copyFromSerializerToAllChannels(serializer);
 
 		// Make sure we don't hold onto the large intermediate serialization buffer for too long
 		// 确保我们不会长时间保留大型中间序列化缓冲区
@@ -177,11 +240,47 @@ public class RecordWriter<T extends IOReadableWritable> {
 	private void emit(T record, int targetChannel) throws IOException, InterruptedException {
 		serializer.serializeRecord(record);
 
-		if (copyFromSerializerToTargetChannel(targetChannel)) {
+		if (copyFromSerializerToTargetChannel(serializer, targetChannel)) {
 			serializer.prune();
 		}
 	}
 
+	/**
+	 * Emits a record through a serializer that is shared with other writers, so that a record that is emitted by
+	 * several writers with equal serializers is only serialized once. The record is only serialized by the first
+	 * writer that does not hand it over by reference. The target channel is still selected on the record itself.
+	 *
+	 * <p>The caller has to prune the shared serializer after the record was emitted by all writers, if any of them
+	 * returned <tt>true</tt>.
+	 *
+	 * @param record the record, used to select the target channel
+	 * @param sharedSerializer the serializer shared by the writers
+	 * @return <tt>true</tt> if the intermediate serialization buffer should be pruned
+	 */
+	public boolean emitSerialized(T record, SharedRecordSerializer<T> sharedSerializer) throws IOException, InterruptedException {
+		checkErroneous();
+		int targetChannel = channelSelector.selectChannel(record);
+		if (recordHandover != null && tryHandover(record, targetChannel)) {
+			return false;
+		}
+		return copyFromSerializerToTargetChannel(sharedSerializer.serialize(record), targetChannel);
+	}
+
+	/**
+	 * Copies the serialized record to all channels.
+	 *
+	 * @return <tt>true</tt> if the intermediate serialization buffer should be pruned
+	 */
+	protected boolean copyFromSerializerToAllChannels(RecordSerializer<T> recordSerializer) throws IOException, InterruptedException {
+		boolean pruneTriggered = false;
+		for (int channel : broadcastChannels) {
+			if (copyFromSerializerToTargetChannel(recordSerializer, channel)) {
+				pruneTriggered = true;
+			}
+		}
+		return pruneTriggered;
+	}
+
 	/**
 	 * @param targetChannel
 	 * @return <tt>true</tt> if the intermediate serialization buffer should be pruned
@@ -190,15 +289,17 @@ public class RecordWriter<T extends IOReadableWritable> {
 	 * 将序列化之后的 record 拷贝到目标 channel
 	 * 返回是否应该修剪中间序列化缓冲区
 	 */
-	private boolean copyFromSerializerToTargetChannel(int targetChannel) throws IOException, InterruptedException {
+	private boolean copyFromSerializerToTargetChannel(
+			RecordSerializer<T> recordSerializer,
+			int targetChannel) throws IOException, InterruptedException {
 		// We should reset the initial position of the intermediate serialization buffer before
 		// copying, so the serialization results can be copied to multiple target buffers.
 		// 我们应该在复制之前重置中间序列化缓冲区的初始位置，这样可以将序列化结果复制到多个目标缓冲区
-		serializer.reset();
+		recordSerializer.reset();
 
 		boolean pruneTriggered = false;
 		BufferBuilder bufferBuilder = getBufferBuilder(targetChannel);
-		SerializationResult result = serializer.copyToBufferBuilder(bufferBuilder);
+		SerializationResult result = recordSerializer.copyToBufferBuilder(bufferBuilder);
 		while (result.isFullBuffer()) {
 			numBytesOut.inc(bufferBuilder.finish());
 			numBuffersOut.inc();
@@ -215,9 +316,9 @@ public class RecordWriter<T extends IOReadableWritable> {
 			}
 
 			bufferBuilder = requestNewBufferBuilder(targetChannel);
-			result = serializer.copyToBufferBuilder(bufferBuilder);
+			result = recordSerializer.copyToBufferBuilder(bufferBuilder);
 		}
-		checkState(!serializer.hasSerializedData(), "All data should be written at once");
+		checkState(!recordSerializer.hasSerializedData(), "All data should be written at once");
 
 		if (flushAlways) {
 			targetPartition.flush(targetChannel);
@@ -256,6 +357,13 @@ public class RecordWriter<T extends IOReadableWritable> {
 		}
 	}
 
+	/**
+	 * Enables the handover of records by reference to consumers in the same TaskManager.
+	 */
+	public void setRecordHandover(@Nullable RecordHandover<T> recordHandover) {
+		this.recordHandover = recordHandover;
+	}
+
 	/**
 	 * Sets the metric group for this RecordWriter.
      */
@@ -352,7 +460,7 @@ public class RecordWriter<T extends IOReadableWritable> {
 	/**
 	 * 检查当前是否存在异常
 	 */
-	private void checkErroneous() throws IOException {
+	protected void checkErroneous() throws IOException {
 		if (flusherException != null) {
 			throw new IOException("An exception happened while flushing the outputs", flusherException);
 		}
@@ -367,12 +475,21 @@ public class RecordWriter<T extends IOReadableWritable> {
 			ChannelSelector channelSelector,
 			long timeout,
 			String taskName) {
+		return createRecordWriter(writer, channelSelector, timeout, -1, taskName);
+	}
+
+	public static RecordWriter createRecordWriter(
+			ResultPartitionWriter writer,
+			ChannelSelector channelSelector,
+			long timeout,
+			long latencyTarget,
+			String taskName) {
 		// channelSelector 就是设置的各种 Partitioner
 		// 如果是 BroadcastPartitioner，返回 BroadcastRecordWriter
 		if (channelSelector.isBroadcast()) {
-			return new BroadcastRecordWriter<>(writer, channelSelector, timeout, taskName);
+			return new BroadcastRecordWriter<>(writer, channelSelector, timeout, latencyTarget, taskName);
 		} else {
-			return new RecordWriter<>(writer, channelSelector, timeout, taskName);
+			return new RecordWriter<>(writer, channelSelector, timeout, latencyTarget, taskName);
 		}
 	}
 
@@ -386,9 +503,41 @@ public class RecordWriter<T extends IOReadableWritable> {
 	// ------------------------------------------------------------------------
 
 
+	/**
+	 * Adjusts the flush interval of the adaptive buffer timeout to the current state of the channels. This is called
+	 * by the output flusher thread and reads the state of the task thread without synchronization (best effort).
+	 */
+	private long updateAdaptiveBufferTimeout() {
+		int numIdleChannelsWithLowFill = 0;
+		int numIdleChannelsWithHighFill = 0;
+		int numBackloggedChannels = 0;
+
+		for (int targetChannel = 0; targetChannel < numberOfChannels; targetChannel++) {
+			final Optional<BufferBuilder> bufferBuilder = bufferBuilders[targetChannel];
+			final int unflushedBytes = bufferBuilder.isPresent() ? bufferBuilder.get().getUnfinishedCommittedBytes() : 0;
+			if (unflushedBytes == 0) {
+				continue;
+			}
+
+			// the unfinished buffer itself is always queued, everything else is backlog
+			if (targetPartition.unsynchronizedGetNumberOfQueuedBuffers(targetChannel) > 1) {
+				numBackloggedChannels++;
+			} else if (unflushedBytes < bufferBuilder.get().getMaxCapacity() * AdaptiveBufferTimeout.HIGH_FILL_RATIO) {
+				numIdleChannelsWithLowFill++;
+			} else {
+				numIdleChannelsWithHighFill++;
+			}
+		}
+
+		return adaptiveBufferTimeout.update(numIdleChannelsWithLowFill, numIdleChannelsWithHighFill, numBackloggedChannels);
+	}
+
 	/**
 	 * A dedicated thread that periodically flushes the output buffers, to set upper latency bounds.
 	 *
+	 * <p>If the adaptive buffer timeout is enabled, the interval between two flushes is recomputed before every
+	 * flush and never exceeds the configured timeout.
+	 *
 	 * <p>The thread is daemonic, because it is only a utility thread.
 	 */
 	private class OutputFlusher extends Thread {
@@ -411,9 +560,10 @@ public class RecordWriter<T extends IOReadableWritable> {
 		@Override
 		public void run() {
 			try {
+				long interval = adaptiveBufferTimeout != null ? adaptiveBufferTimeout.getIntervalMillis() : timeout;
 				while (running) {
 					try {
-						Thread.sleep(timeout);
+						Thread.sleep(interval);
 					} catch (InterruptedException e) {
 						// propagate this if we are still running, because it should not happen
 						// in that case
@@ -424,6 +574,9 @@ public class RecordWriter<T extends IOReadableWritable> {
 
 					// any errors here should let the thread come to a halt and be
 					// recognized by the writer
+					if (adaptiveBufferTimeout != null) {
+						interval = updateAdaptiveBufferTimeout();
+					}
 					flushAll();
 				}
 			} catch (Throwable t) {
@@ -20,8 +20,11 @@ package org.apache.flink.runtime.io.network.api.writer;
 
 import org.apache.flink.runtime.io.network.buffer.BufferConsumer;
 import org.apache.flink.runtime.io.network.buffer.BufferProvider;
+import org.apache.flink.runtime.io.network.partition.ObjectHandoverQueue;
 import org.apache.flink.runtime.io.network.partition.ResultPartitionID;
 
+import javax.annotation.Nullable;
+
 import java.io.IOException;
 
 /**
@@ -60,4 +63,17 @@ public interface ResultPartitionWriter {
 	 * Manually trigger consumption from enqueued {@link BufferConsumer BufferConsumers} in one specified subpartition.
 	 */
 	void flush(int subpartitionIndex);
+
+	/**
+	 * Makes a best effort to get the current number of queued buffers of one subpartition, including a partially
+	 * filled one. This method must not acquire locks or interfere with the task and network threads in any way.
+	 */
+	int unsynchronizedGetNumberOfQueuedBuffers(int subpartitionIndex);
+
+	/**
+	 * Returns the queue through which records for the subpartition can be handed over by reference to a consumer in
+	 * the same TaskManager, or null if the subpartition has no such consumer (yet).
+	 */
+	@Nullable
+	ObjectHandoverQueue getObjectHandoverQueue(int subpartitionIndex);
 }
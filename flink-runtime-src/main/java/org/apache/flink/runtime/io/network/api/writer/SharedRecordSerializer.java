@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.io.network.api.writer;
+
+import org.apache.flink.core.io.IOReadableWritable;
+import org.apache.flink.runtime.io.network.api.serialization.RecordSerializer;
+import org.apache.flink.runtime.io.network.api.serialization.SpanningRecordSerializer;
+
+import java.io.IOException;
+
+/**
+ * A record serializer that is shared by several {@link RecordWriter}s emitting the same records, see
+ * {@link RecordWriter#emitSerialized(IOReadableWritable, SharedRecordSerializer)}. A record is serialized lazily by the
+ * first writer that needs its serialized form, and then copied by all other writers. Not thread-safe.
+ *
+ * @param <T> the type of the records
+ */
+public class SharedRecordSerializer<T extends IOReadableWritable> {
+
+	private final RecordSerializer<T> serializer = new SpanningRecordSerializer<>();
+
+	/** Whether the current record was already serialized. */
+	private boolean isSerialized;
+
+	/**
+	 * Starts a new record, which is serialized once a writer needs it.
+	 */
+	public void startRecord() {
+		isSerialized = false;
+	}
+
+	/**
+	 * Clears the buffer and checks to decrease the size of intermediate data serialization buffer, see
+	 * {@link RecordSerializer#prune()}.
+	 */
+	public void prune() {
+		serializer.prune();
+	}
+
+	RecordSerializer<T> serialize(T record) throws IOException {
+		if (!isSerialized) {
+			serializer.serializeRecord(record);
+			isSerialized = true;
+		}
+		return serializer;
+	}
+}
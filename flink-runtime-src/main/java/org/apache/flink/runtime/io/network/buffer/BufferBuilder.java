@@ -122,6 +122,15 @@ public class BufferBuilder {
 		return memorySegment.size();
 	}
 
+	/**
+	 * Returns the number of committed bytes, or 0 if this builder is finished. In contrast to the other methods, this
+	 * may be called by threads other than the writer. It does not see data that is appended but not committed yet.
+	 */
+	public int getUnfinishedCommittedBytes() {
+		final int position = positionMarker.get();
+		return PositionMarker.isFinished(position) ? 0 : position;
+	}
+
 	/**
 	 * Holds a reference to the current writer position. Negative values indicate that writer ({@link BufferBuilder}
 	 * has finished. Value {@code Integer.MIN_VALUE} represents finished empty buffer.
@@ -31,11 +31,10 @@ import javax.annotation.Nullable;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import static org.apache.flink.util.Preconditions.checkArgument;
@@ -57,7 +56,7 @@ public class NetworkBufferPool implements BufferPoolFactory {
 
 	private final int memorySegmentSize;
 
-	private final ArrayBlockingQueue<MemorySegment> availableMemorySegments;
+	private final StripedMemorySegmentQueue availableMemorySegments;
 
 	private volatile boolean isDestroyed;
 
@@ -65,7 +64,8 @@ public class NetworkBufferPool implements BufferPoolFactory {
 
 	private final Object factoryLock = new Object();
 
-	private final Set<LocalBufferPool> allBufferPools = new HashSet<>();
+	/** All buffer pools with the number of buffers that was last assigned to them. */
+	private final Map<LocalBufferPool, Integer> allBufferPools = new HashMap<>();
 
 	private int numTotalRequiredBuffers;
 
@@ -79,13 +79,7 @@ public class NetworkBufferPool implements BufferPoolFactory {
 
 		final long sizeInLong = (long) segmentSize;
 
-		try {
-			this.availableMemorySegments = new ArrayBlockingQueue<>(numberOfSegmentsToAllocate);
-		}
-		catch (OutOfMemoryError err) {
-			throw new OutOfMemoryError("Could not allocate buffer queue of length "
-					+ numberOfSegmentsToAllocate + " - " + err.getMessage());
-		}
+		this.availableMemorySegments = new StripedMemorySegmentQueue();
 
 		try {
 			for (int i = 0; i < numberOfSegmentsToAllocate; i++) {
@@ -96,7 +90,9 @@ public class NetworkBufferPool implements BufferPoolFactory {
 			int allocated = availableMemorySegments.size();
 
 			// free some memory
-			availableMemorySegments.clear();
+			while (availableMemorySegments.poll() != null) {
+				// drop the references to the allocated segments
+			}
 
 			long requiredMb = (sizeInLong * numberOfSegmentsToAllocate) >> 20;
 			long allocatedMb = (sizeInLong * allocated) >> 20;
@@ -240,7 +236,7 @@ public class NetworkBufferPool implements BufferPoolFactory {
 		int buffers = 0;
 
 		synchronized (factoryLock) {
-			for (BufferPool bp : allBufferPools) {
+			for (BufferPool bp : allBufferPools.keySet()) {
 				buffers += bp.getNumBuffers();
 			}
 		}
@@ -289,7 +285,7 @@ public class NetworkBufferPool implements BufferPoolFactory {
 			LocalBufferPool localBufferPool =
 				new LocalBufferPool(this, numRequiredBuffers, maxUsedBuffers, owner);
 
-			allBufferPools.add(localBufferPool);
+			allBufferPools.put(localBufferPool, numRequiredBuffers);
 
 			try {
 				redistributeBuffers();
@@ -313,7 +309,7 @@ public class NetworkBufferPool implements BufferPoolFactory {
 		}
 
 		synchronized (factoryLock) {
-			if (allBufferPools.remove(bufferPool)) {
+			if (allBufferPools.remove(bufferPool) != null) {
 				numTotalRequiredBuffers -= bufferPool.getNumberOfRequiredMemorySegments();
 
 				redistributeBuffers();
@@ -328,7 +324,7 @@ public class NetworkBufferPool implements BufferPoolFactory {
 	public void destroyAllBufferPools() {
 		synchronized (factoryLock) {
 			// create a copy to avoid concurrent modification exceptions
-			LocalBufferPool[] poolsCopy = allBufferPools.toArray(new LocalBufferPool[allBufferPools.size()]);
+			LocalBufferPool[] poolsCopy = allBufferPools.keySet().toArray(new LocalBufferPool[allBufferPools.size()]);
 
 			for (LocalBufferPool pool : poolsCopy) {
 				pool.lazyDestroy();
@@ -350,8 +346,8 @@ public class NetworkBufferPool implements BufferPoolFactory {
 
 		if (numAvailableMemorySegment == 0) {
 			// in this case, we need to redistribute buffers so that every pool gets its minimum
-			for (LocalBufferPool bufferPool : allBufferPools) {
-				bufferPool.setNumBuffers(bufferPool.getNumberOfRequiredMemorySegments());
+			for (LocalBufferPool bufferPool : allBufferPools.keySet()) {
+				setNumBuffersIfChanged(bufferPool, bufferPool.getNumberOfRequiredMemorySegments());
 			}
 			return;
 		}
@@ -366,7 +362,7 @@ public class NetworkBufferPool implements BufferPoolFactory {
 
 		long totalCapacity = 0; // long to avoid int overflow
 
-		for (LocalBufferPool bufferPool : allBufferPools) {
+		for (LocalBufferPool bufferPool : allBufferPools.keySet()) {
 			int excessMax = bufferPool.getMaxNumberOfMemorySegments() -
 				bufferPool.getNumberOfRequiredMemorySegments();
 			totalCapacity += Math.min(numAvailableMemorySegment, excessMax);
@@ -385,7 +381,7 @@ public class NetworkBufferPool implements BufferPoolFactory {
 
 		long totalPartsUsed = 0; // of totalCapacity
 		int numDistributedMemorySegment = 0;
-		for (LocalBufferPool bufferPool : allBufferPools) {
+		for (LocalBufferPool bufferPool : allBufferPools.keySet()) {
 			int excessMax = bufferPool.getMaxNumberOfMemorySegments() -
 				bufferPool.getNumberOfRequiredMemorySegments();
 
@@ -403,10 +399,23 @@ public class NetworkBufferPool implements BufferPoolFactory {
 					memorySegmentsToDistribute * totalPartsUsed / totalCapacity - numDistributedMemorySegment);
 
 			numDistributedMemorySegment += mySize;
-			bufferPool.setNumBuffers(bufferPool.getNumberOfRequiredMemorySegments() + mySize);
+			setNumBuffersIfChanged(bufferPool, bufferPool.getNumberOfRequiredMemorySegments() + mySize);
 		}
 
 		assert (totalPartsUsed == totalCapacity);
 		assert (numDistributedMemorySegment == memorySegmentsToDistribute);
 	}
+
+	/**
+	 * Resizes the buffer pool only if its number of buffers changed since the last redistribution, so that a
+	 * redistribution only locks and shrinks the pools whose share actually changed.
+	 */
+	private void setNumBuffersIfChanged(LocalBufferPool bufferPool, int numBuffers) throws IOException {
+		assert Thread.holdsLock(factoryLock);
+
+		if (allBufferPools.get(bufferPool) != numBuffers) {
+			bufferPool.setNumBuffers(numBuffers);
+			allBufferPools.put(bufferPool, numBuffers);
+		}
+	}
 }
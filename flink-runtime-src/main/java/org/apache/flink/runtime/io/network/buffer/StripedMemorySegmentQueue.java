@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.io.network.buffer;
+
+import org.apache.flink.core.memory.MemorySegment;
+import org.apache.flink.util.MathUtils;
+
+import javax.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.apache.flink.util.Preconditions.checkArgument;
+import static org.apache.flink.util.Preconditions.checkNotNull;
+
+/**
+ * The available {@link MemorySegment}s of the {@link NetworkBufferPool}, split into lock-free stripes to reduce the
+ * contention between the threads that request and recycle segments.
+ *
+ * <p>Each thread adds segments to its home stripe, which is selected by its thread id, and polls its home stripe
+ * first. The other stripes are only polled if the home stripe is empty, so no segment is ever stranded in a stripe.
+ *
+ * <p>Only threads that wait for a segment, see {@link #poll(long, TimeUnit)}, synchronize on a lock. Adding segments
+ * only takes that lock if there are waiting threads.
+ */
+final class StripedMemorySegmentQueue {
+
+	private static final int MAX_NUMBER_OF_STRIPES = 64;
+
+	private final ConcurrentLinkedQueue<MemorySegment>[] stripes;
+
+	private final int stripeMask;
+
+	/** The number of available segments, only exact if there are no concurrent modifications. */
+	private final LongAdder numberOfSegments = new LongAdder();
+
+	/** The lock on which threads wait for segments. */
+	private final Object waitLock = new Object();
+
+	/** The number of threads waiting for segments, only modified under the {@link #waitLock}. */
+	private volatile int numberOfWaitingThreads;
+
+	StripedMemorySegmentQueue() {
+		this(Math.min(
+			MathUtils.roundUpToPowerOfTwo(Runtime.getRuntime().availableProcessors()),
+			MAX_NUMBER_OF_STRIPES));
+	}
+
+	@SuppressWarnings("unchecked")
+	StripedMemorySegmentQueue(int numberOfStripes) {
+		checkArgument(numberOfStripes > 0 && MathUtils.isPowerOf2(numberOfStripes),
+			"The number of stripes must be a power of two: %s", numberOfStripes);
+		this.stripes = new ConcurrentLinkedQueue[numberOfStripes];
+		for (int i = 0; i < numberOfStripes; i++) {
+			stripes[i] = new ConcurrentLinkedQueue<>();
+		}
+		this.stripeMask = numberOfStripes - 1;
+	}
+
+	/**
+	 * Returns an available segment, or null if there is none.
+	 */
+	@Nullable
+	MemorySegment poll() {
+		final int homeStripe = homeStripe();
+		for (int i = 0; i <= stripeMask; i++) {
+			final MemorySegment segment = stripes[(homeStripe + i) & stripeMask].poll();
+			if (segment != null) {
+				numberOfSegments.decrement();
+				return segment;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns an available segment, waiting up to the given time if there is none.
+	 *
+	 * @return The segment, or null if no segment became available in time.
+	 */
+	@Nullable
+	MemorySegment poll(long timeout, TimeUnit unit) throws InterruptedException {
+		MemorySegment segment = poll();
+		if (segment != null) {
+			return segment;
+		}
+
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (waitLock) {
+			// announce the waiting thread before polling again, so that adding threads either make their segment
+			// visible to this poll or notify this thread
+			numberOfWaitingThreads++;
+			try {
+				while ((segment = poll()) == null) {
+					final long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						return null;
+					}
+					TimeUnit.NANOSECONDS.timedWait(waitLock, remaining);
+				}
+				return segment;
+			} finally {
+				numberOfWaitingThreads--;
+			}
+		}
+	}
+
+	void add(MemorySegment segment) {
+		stripes[homeStripe()].add(checkNotNull(segment));
+		numberOfSegments.increment();
+		notifyWaitingThreads();
+	}
+
+	void addAll(Collection<MemorySegment> segments) {
+		final ConcurrentLinkedQueue<MemorySegment> stripe = stripes[homeStripe()];
+		for (MemorySegment segment : segments) {
+			stripe.add(checkNotNull(segment));
+			numberOfSegments.increment();
+		}
+		notifyWaitingThreads();
+	}
+
+	int size() {
+		return (int) Math.max(0L, numberOfSegments.sum());
+	}
+
+	private void notifyWaitingThreads() {
+		if (numberOfWaitingThreads > 0) {
+			synchronized (waitLock) {
+				waitLock.notifyAll();
+			}
+		}
+	}
+
+	private int homeStripe() {
+		return (int) Thread.currentThread().getId() & stripeMask;
+	}
+}
@@ -42,6 +42,8 @@ import org.apache.flink.shaded.netty4.io.netty.channel.ChannelInboundHandlerAdap
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.util.ArrayDeque;
@@ -81,6 +83,18 @@ class CreditBasedPartitionRequestClientHandler extends ChannelInboundHandlerAdap
 	 */
 	private volatile ChannelHandlerContext ctx;
 
+	/** Decompresses the received compressed data buffers, or <tt>null</tt> if no compressed buffers are expected. */
+	@Nullable
+	private final NettyBufferCompressor decompressor;
+
+	CreditBasedPartitionRequestClientHandler() {
+		this(null);
+	}
+
+	CreditBasedPartitionRequestClientHandler(@Nullable NettyBufferCompressor decompressor) {
+		this.decompressor = decompressor;
+	}
+
 	// ------------------------------------------------------------------------
 	// Input channel/receiver registration
 	// ------------------------------------------------------------------------
@@ -305,7 +319,11 @@ class CreditBasedPartitionRequestClientHandler extends ChannelInboundHandlerAdap
 
 				Buffer buffer = inputChannel.requestBuffer();
 				if (buffer != null) {
-					nettyBuffer.readBytes(buffer.asByteBuf(), receivedSize);
+					if (bufferOrEvent.isCompressed()) {
+						decompress(nettyBuffer, buffer);
+					} else {
+						nettyBuffer.readBytes(buffer.asByteBuf(), receivedSize);
+					}
 
 					inputChannel.onBuffer(buffer, bufferOrEvent.sequenceNumber, bufferOrEvent.backlog);
 				} else if (inputChannel.isReleased()) {
@@ -329,6 +347,18 @@ class CreditBasedPartitionRequestClientHandler extends ChannelInboundHandlerAdap
 		}
 	}
 
+	private void decompress(ByteBuf compressed, Buffer buffer) throws IOException {
+		try {
+			if (decompressor == null) {
+				throw new IllegalStateException("Received a compressed buffer without a decompressor.");
+			}
+			decompressor.decompress(compressed, buffer);
+		} catch (Throwable t) {
+			buffer.recycleBuffer();
+			throw t;
+		}
+	}
+
 	/**
 	 * Tries to write&flush unannounced credits for the next input channel in queue.
 	 *
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.flink.runtime.io.network.netty;
+
+import org.apache.flink.core.memory.MemorySegment;
+import org.apache.flink.runtime.io.network.buffer.Buffer;
+
+import org.apache.flink.shaded.netty4.io.netty.buffer.ByteBuf;
+import org.apache.flink.shaded.netty4.io.netty.buffer.ByteBufAllocator;
+
+import org.xerial.snappy.Snappy;
+
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.apache.flink.util.Preconditions.checkArgument;
+import static org.apache.flink.util.Preconditions.checkNotNull;
+
+/**
+ * Compresses data buffers with Snappy before they are sent in a {@link NettyMessage.BufferResponse}, and decompresses
+ * them into the buffers of the receiving input channels.
+ *
+ * <p>Buffers backed by off-heap memory, i.e. the buffers of the network buffer pool, are compressed directly into
+ * Netty's direct buffers. Buffers backed by heap memory, e.g. the buffers read back from spilled subpartitions, are
+ * compressed into a scratch array first, because the Netty buffer pool only hands out direct buffers.
+ *
+ * <p>An instance is used by the I/O thread of a single channel and is not thread-safe.
+ */
+class NettyBufferCompressor {
+
+	private final int minBufferSize;
+
+	private final NetworkCompressionStatistics statistics;
+
+	private byte[] heapScratch = new byte[0];
+
+	NettyBufferCompressor(int minBufferSize, NetworkCompressionStatistics statistics) {
+		checkArgument(minBufferSize >= 0, "Negative minimum buffer size");
+		this.minBufferSize = minBufferSize;
+		this.statistics = checkNotNull(statistics);
+	}
+
+	/**
+	 * Compresses the readable bytes of the given data buffer into a new Netty buffer. The given buffer is neither
+	 * modified nor recycled.
+	 *
+	 * @return the compressed bytes, or <tt>null</tt> if the buffer is an event, is too small to be compressed or
+	 * does not shrink by compression, in which case it should be sent uncompressed
+	 */
+	@Nullable
+	ByteBuf compress(Buffer buffer, ByteBufAllocator allocator) throws IOException {
+		final int size = buffer.readableBytes();
+		if (!buffer.isBuffer() || size < minBufferSize || size == 0) {
+			return null;
+		}
+
+		final ByteBuffer uncompressed = buffer.getNioBufferReadable();
+		final int maxCompressedLength = Snappy.maxCompressedLength(size);
+
+		final ByteBuf compressed;
+		final int compressedLength;
+		if (uncompressed.isDirect()) {
+			compressed = allocator.directBuffer(maxCompressedLength);
+			try {
+				compressedLength = Snappy.compress(uncompressed, compressed.nioBuffer(0, maxCompressedLength));
+			} catch (Throwable t) {
+				compressed.release();
+				throw t;
+			}
+			if (compressedLength >= size) {
+				compressed.release();
+				statistics.reportIncompressible();
+				return null;
+			}
+		} else if (uncompressed.hasArray()) {
+			if (heapScratch.length < maxCompressedLength) {
+				heapScratch = new byte[maxCompressedLength];
+			}
+			compressedLength = Snappy.rawCompress(
+				uncompressed.array(), uncompressed.arrayOffset() + uncompressed.position(), size, heapScratch, 0);
+			if (compressedLength >= size) {
+				statistics.reportIncompressible();
+				return null;
+			}
+			compressed = allocator.directBuffer(compressedLength);
+			compressed.writeBytes(heapScratch, 0, compressedLength);
+		} else {
+			return null;
+		}
+
+		compressed.writerIndex(compressedLength);
+		statistics.reportCompressed(size, compressedLength);
+		return compressed;
+	}
+
+	/**
+	 * Decompresses the readable bytes of the given Netty buffer into the given buffer, starting at its beginning, and
+	 * sets the size of the given buffer to the decompressed size.
+	 */
+	void decompress(ByteBuf compressed, Buffer target) throws IOException {
+		final int compressedLength = compressed.readableBytes();
+		final MemorySegment segment = target.getMemorySegment();
+		final int targetOffset = target.getMemorySegmentOffset();
+		final int maxLength = target.getMaxCapacity();
+
+		final int uncompressedLength;
+		if (compressed.nioBufferCount() == 1 && compressed.isDirect() && segment.isOffHeap()) {
+			final ByteBuffer source = compressed.nioBuffer(compressed.readerIndex(), compressedLength);
+			checkUncompressedLength(Snappy.uncompressedLength(source), maxLength);
+			uncompressedLength = Snappy.uncompress(source, segment.wrap(targetOffset, maxLength));
+		} else {
+			final byte[] source = new byte[compressedLength];
+			compressed.getBytes(compressed.readerIndex(), source);
+			checkUncompressedLength(Snappy.uncompressedLength(source), maxLength);
+			final byte[] uncompressed = Snappy.uncompress(source);
+			segment.put(targetOffset, uncompressed, 0, uncompressed.length);
+			uncompressedLength = uncompressed.length;
+		}
+
+		compressed.skipBytes(compressedLength);
+		target.setSize(uncompressedLength);
+		statistics.reportDecompressed(compressedLength, uncompressedLength);
+	}
+
+	private static void checkUncompressedLength(int uncompressedLength, int maxLength) throws IOException {
+		if (uncompressedLength > maxLength) {
+			throw new IOException("Decompressed buffer of " + uncompressedLength +
+				" bytes does not fit into a network buffer of " + maxLength + " bytes.");
+		}
+	}
+}
@@ -83,6 +83,19 @@ public class NettyConfig {
 			.withDeprecatedKeys("taskmanager.net.transport")
 			.withDescription("The Netty transport type, either \"nio\" or \"epoll\"");
 
+	public static final ConfigOption<Boolean> COMPRESSION_ENABLED = ConfigOptions
+			.key("taskmanager.network.netty.compression.enabled")
+			.defaultValue(false)
+			.withDescription("Whether data buffers are compressed with Snappy before they are sent to another" +
+				" TaskManager. Buffers that do not shrink by compression are sent uncompressed. Compression is only" +
+				" applied with credit-based flow control, receivers always decompress compressed buffers.");
+
+	public static final ConfigOption<Integer> COMPRESSION_MIN_BUFFER_SIZE = ConfigOptions
+			.key("taskmanager.network.netty.compression.min-buffer-size")
+			.defaultValue(1024)
+			.withDescription("The minimum number of bytes of a data buffer to be compressed. Smaller buffers," +
+				" e.g. buffers flushed early by the output flusher, are sent uncompressed.");
+
 	// ------------------------------------------------------------------------
 
 	enum TransportType {
@@ -212,6 +225,14 @@ public class NettyConfig {
 		return config.getBoolean(TaskManagerOptions.NETWORK_CREDIT_MODEL);
 	}
 
+	public boolean isCompressionEnabled() {
+		return config.getBoolean(COMPRESSION_ENABLED);
+	}
+
+	public int getCompressionMinBufferSize() {
+		return config.getInteger(COMPRESSION_MIN_BUFFER_SIZE);
+	}
+
 	public Configuration getConfig() {
 		return config;
 	}
@@ -228,7 +249,8 @@ public class NettyConfig {
 				"number of client threads: %d (%s), " +
 				"server connect backlog: %d (%s), " +
 				"client connect timeout (sec): %d, " +
-				"send/receive buffer size (bytes): %d (%s)]";
+				"send/receive buffer size (bytes): %d (%s), " +
+				"compression enabled: %s]";
 
 		String def = "use Netty's default";
 		String man = "manual";
@@ -239,6 +261,6 @@ public class NettyConfig {
 				getClientNumThreads(), getClientNumThreads() == 0 ? def : man,
 				getServerConnectBacklog(), getServerConnectBacklog() == 0 ? def : man,
 				getClientConnectTimeoutSeconds(), getSendAndReceiveBufferSize(),
-				getSendAndReceiveBufferSize() == 0 ? def : man);
+				getSendAndReceiveBufferSize() == 0 ? def : man, isCompressionEnabled());
 	}
 }
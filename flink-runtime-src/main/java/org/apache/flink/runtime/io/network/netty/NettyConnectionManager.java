@@ -35,6 +35,8 @@ public class NettyConnectionManager implements ConnectionManager {
 
 	private final PartitionRequestClientFactory partitionRequestClientFactory;
 
+	private final NetworkCompressionStatistics compressionStatistics = new NetworkCompressionStatistics();
+
 	public NettyConnectionManager(NettyConfig nettyConfig) {
 		this.server = new NettyServer(nettyConfig);
 		this.client = new NettyClient(nettyConfig);
@@ -48,7 +50,10 @@ public class NettyConnectionManager implements ConnectionManager {
 		NettyProtocol partitionRequestProtocol = new NettyProtocol(
 			partitionProvider,
 			taskEventDispatcher,
-			client.getConfig().isCreditBasedEnabled());
+			client.getConfig().isCreditBasedEnabled(),
+			client.getConfig().isCompressionEnabled(),
+			client.getConfig().getCompressionMinBufferSize(),
+			compressionStatistics);
 
 		client.init(partitionRequestProtocol, bufferPool);
 		server.init(partitionRequestProtocol, bufferPool);
@@ -85,6 +90,13 @@ public class NettyConnectionManager implements ConnectionManager {
 		server.shutdown();
 	}
 
+	/**
+	 * Returns the statistics of the compressed data buffers sent and received by this connection manager.
+	 */
+	public NetworkCompressionStatistics getCompressionStatistics() {
+		return compressionStatistics;
+	}
+
 	NettyClient getClient() {
 		return client;
 	}
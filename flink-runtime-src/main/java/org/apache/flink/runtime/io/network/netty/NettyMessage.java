@@ -311,14 +311,19 @@ public abstract class NettyMessage {
 
 		final boolean isBuffer;
 
+		/** Whether the bytes of the (data) buffer are compressed by a {@link NettyBufferCompressor}. */
+		final boolean isCompressed;
+
 		private BufferResponse(
 				ByteBuf buffer,
 				boolean isBuffer,
+				boolean isCompressed,
 				int sequenceNumber,
 				InputChannelID receiverId,
 				int backlog) {
 			this.buffer = checkNotNull(buffer);
 			this.isBuffer = isBuffer;
+			this.isCompressed = isCompressed;
 			this.sequenceNumber = sequenceNumber;
 			this.receiverId = checkNotNull(receiverId);
 			this.backlog = backlog;
@@ -331,15 +336,31 @@ public abstract class NettyMessage {
 				int backlog) {
 			this.buffer = checkNotNull(buffer).asByteBuf();
 			this.isBuffer = buffer.isBuffer();
+			this.isCompressed = false;
 			this.sequenceNumber = sequenceNumber;
 			this.receiverId = checkNotNull(receiverId);
 			this.backlog = backlog;
 		}
 
+		/**
+		 * Creates a response for a data buffer whose bytes were compressed by a {@link NettyBufferCompressor}.
+		 */
+		static BufferResponse compressed(
+				ByteBuf compressedBuffer,
+				int sequenceNumber,
+				InputChannelID receiverId,
+				int backlog) {
+			return new BufferResponse(compressedBuffer, true, true, sequenceNumber, receiverId, backlog);
+		}
+
 		boolean isBuffer() {
 			return isBuffer;
 		}
 
+		boolean isCompressed() {
+			return isCompressed;
+		}
+
 		ByteBuf getNettyBuffer() {
 			return buffer;
 		}
@@ -354,8 +375,8 @@ public abstract class NettyMessage {
 
 		@Override
 		ByteBuf write(ByteBufAllocator allocator) throws IOException {
-			// receiver ID (16), sequence number (4), backlog (4), isBuffer (1), buffer size (4)
-			final int messageHeaderLength = 16 + 4 + 4 + 1 + 4;
+			// receiver ID (16), sequence number (4), backlog (4), isBuffer (1), isCompressed (1), buffer size (4)
+			final int messageHeaderLength = 16 + 4 + 4 + 1 + 1 + 4;
 
 			ByteBuf headerBuf = null;
 			try {
@@ -371,6 +392,7 @@ public abstract class NettyMessage {
 				headerBuf.writeInt(sequenceNumber);
 				headerBuf.writeInt(backlog);
 				headerBuf.writeBoolean(isBuffer);
+				headerBuf.writeBoolean(isCompressed);
 				headerBuf.writeInt(buffer.readableBytes());
 
 				CompositeByteBuf composityBuf = allocator.compositeDirectBuffer();
@@ -396,10 +418,11 @@ public abstract class NettyMessage {
 			int sequenceNumber = buffer.readInt();
 			int backlog = buffer.readInt();
 			boolean isBuffer = buffer.readBoolean();
+			boolean isCompressed = buffer.readBoolean();
 			int size = buffer.readInt();
 
 			ByteBuf retainedSlice = buffer.readSlice(size).retain();
-			return new BufferResponse(retainedSlice, isBuffer, sequenceNumber, receiverId, backlog);
+			return new BufferResponse(retainedSlice, isBuffer, isCompressed, sequenceNumber, receiverId, backlog);
 		}
 	}
 
@@ -37,10 +37,30 @@ public class NettyProtocol {
 
 	private final boolean creditBasedEnabled;
 
+	private final boolean compressionEnabled;
+
+	private final int compressionMinBufferSize;
+
+	private final NetworkCompressionStatistics compressionStatistics;
+
 	NettyProtocol(ResultPartitionProvider partitionProvider, TaskEventDispatcher taskEventDispatcher, boolean creditBasedEnabled) {
+		this(partitionProvider, taskEventDispatcher, creditBasedEnabled, false, 0, new NetworkCompressionStatistics());
+	}
+
+	NettyProtocol(
+			ResultPartitionProvider partitionProvider,
+			TaskEventDispatcher taskEventDispatcher,
+			boolean creditBasedEnabled,
+			boolean compressionEnabled,
+			int compressionMinBufferSize,
+			NetworkCompressionStatistics compressionStatistics) {
 		this.partitionProvider = partitionProvider;
 		this.taskEventDispatcher = taskEventDispatcher;
 		this.creditBasedEnabled = creditBasedEnabled;
+		// the legacy client handler can not decompress buffers
+		this.compressionEnabled = compressionEnabled && creditBasedEnabled;
+		this.compressionMinBufferSize = compressionMinBufferSize;
+		this.compressionStatistics = compressionStatistics;
 	}
 
 	/**
@@ -77,7 +97,8 @@ public class NettyProtocol {
 	 * @return channel handlers
 	 */
 	public ChannelHandler[] getServerChannelHandlers() {
-		PartitionRequestQueue queueOfPartitionQueues = new PartitionRequestQueue();
+		PartitionRequestQueue queueOfPartitionQueues = new PartitionRequestQueue(compressionEnabled ?
+			new NettyBufferCompressor(compressionMinBufferSize, compressionStatistics) : null);
 		PartitionRequestServerHandler serverHandler = new PartitionRequestServerHandler(
 			partitionProvider, taskEventDispatcher, queueOfPartitionQueues, creditBasedEnabled);
 
@@ -123,7 +144,8 @@ public class NettyProtocol {
 	 */
 	public ChannelHandler[] getClientChannelHandlers() {
 		NetworkClientHandler networkClientHandler =
-			creditBasedEnabled ? new CreditBasedPartitionRequestClientHandler() :
+			creditBasedEnabled ? new CreditBasedPartitionRequestClientHandler(
+				new NettyBufferCompressor(compressionMinBufferSize, compressionStatistics)) :
 				new PartitionRequestClientHandler();
 		return new ChannelHandler[] {
 			messageEncoder,
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.flink.runtime.io.network.netty;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the bytes of the data buffers which are compressed before they are sent to, and decompressed after they
+ * are received from, other TaskManagers. The statistics are shared by all channels of a {@link NettyConnectionManager}.
+ */
+public class NetworkCompressionStatistics {
+
+	private final LongAdder numCompressedBuffers = new LongAdder();
+
+	private final LongAdder numIncompressibleBuffers = new LongAdder();
+
+	private final LongAdder numBytesBeforeCompression = new LongAdder();
+
+	private final LongAdder numBytesAfterCompression = new LongAdder();
+
+	private final LongAdder numDecompressedBuffers = new LongAdder();
+
+	private final LongAdder numBytesBeforeDecompression = new LongAdder();
+
+	private final LongAdder numBytesAfterDecompression = new LongAdder();
+
+	void reportCompressed(int uncompressedSize, int compressedSize) {
+		numCompressedBuffers.increment();
+		numBytesBeforeCompression.add(uncompressedSize);
+		numBytesAfterCompression.add(compressedSize);
+	}
+
+	void reportIncompressible() {
+		numIncompressibleBuffers.increment();
+	}
+
+	void reportDecompressed(int compressedSize, int uncompressedSize) {
+		numDecompressedBuffers.increment();
+		numBytesBeforeDecompression.add(compressedSize);
+		numBytesAfterDecompression.add(uncompressedSize);
+	}
+
+	/**
+	 * Returns the number of sent data buffers which were compressed.
+	 */
+	public long getNumCompressedBuffers() {
+		return numCompressedBuffers.sum();
+	}
+
+	/**
+	 * Returns the number of data buffers which were sent uncompressed, because they did not shrink by compression.
+	 */
+	public long getNumIncompressibleBuffers() {
+		return numIncompressibleBuffers.sum();
+	}
+
+	/**
+	 * Returns the ratio of the uncompressed to the compressed size of the sent compressed data buffers, or 1.0 if no
+	 * buffer was compressed yet.
+	 */
+	public double getCompressionRatio() {
+		return ratio(numBytesBeforeCompression.sum(), numBytesAfterCompression.sum());
+	}
+
+	/**
+	 * Returns the number of received data buffers which were decompressed.
+	 */
+	public long getNumDecompressedBuffers() {
+		return numDecompressedBuffers.sum();
+	}
+
+	/**
+	 * Returns the ratio of the uncompressed to the compressed size of the received compressed data buffers, or 1.0 if
+	 * no buffer was decompressed yet.
+	 */
+	public double getDecompressionRatio() {
+		return ratio(numBytesAfterDecompression.sum(), numBytesBeforeDecompression.sum());
+	}
+
+	private static double ratio(long uncompressedBytes, long compressedBytes) {
+		return compressedBytes == 0 ? 1.0 : (double) uncompressedBytes / compressedBytes;
+	}
+}
@@ -290,6 +290,9 @@ class PartitionRequestClientHandler extends ChannelInboundHandlerAdapter impleme
 		try {
 			ByteBuf nettyBuffer = bufferOrEvent.getNettyBuffer();
 			final int receivedSize = nettyBuffer.readableBytes();
+			if (bufferOrEvent.isCompressed()) {
+				throw new IllegalStateException("Compressed buffers require credit-based flow control.");
+			}
 			if (bufferOrEvent.isBuffer()) {
 				// ---- Buffer ------------------------------------------------
 
@@ -29,6 +29,7 @@ import org.apache.flink.runtime.io.network.partition.consumer.InputChannel.Buffe
 import org.apache.flink.runtime.io.network.partition.consumer.InputChannelID;
 
 import org.apache.flink.shaded.guava18.com.google.common.collect.Sets;
+import org.apache.flink.shaded.netty4.io.netty.buffer.ByteBuf;
 import org.apache.flink.shaded.netty4.io.netty.channel.Channel;
 import org.apache.flink.shaded.netty4.io.netty.channel.ChannelFuture;
 import org.apache.flink.shaded.netty4.io.netty.channel.ChannelFutureListener;
@@ -66,10 +67,22 @@ class PartitionRequestQueue extends ChannelInboundHandlerAdapter {
 
 	private final Set<InputChannelID> released = Sets.newHashSet();
 
+	/** Compresses the sent data buffers, or <tt>null</tt> if buffers are sent uncompressed. */
+	@Nullable
+	private final NettyBufferCompressor compressor;
+
 	private boolean fatalError;
 
 	private ChannelHandlerContext ctx;
 
+	PartitionRequestQueue() {
+		this(null);
+	}
+
+	PartitionRequestQueue(@Nullable NettyBufferCompressor compressor) {
+		this.compressor = compressor;
+	}
+
 	@Override
 	public void channelRegistered(final ChannelHandlerContext ctx) throws Exception {
 		if (this.ctx == null) {
@@ -209,6 +222,8 @@ class PartitionRequestQueue extends ChannelInboundHandlerAdapter {
 		// gate and the consumed views as the local input channels.
 
 		BufferAndAvailability next = null;
+		// the response owns the buffer of next once it was created, until it is handed over to netty
+		BufferResponse msg = null;
 		try {
 			while (true) {
 				NetworkSequenceViewReader reader = pollAvailableReader();
@@ -241,13 +256,17 @@ class PartitionRequestQueue extends ChannelInboundHandlerAdapter {
 						registerAvailableReader(reader);
 					}
 
-					BufferResponse msg = new BufferResponse(
+					// check the buffer before creating the response, which may recycle it
+					final boolean isEndOfPartition = isEndOfPartitionEvent(next.buffer());
+
+					msg = createBufferResponse(
 						next.buffer(),
 						reader.getSequenceNumber(),
 						reader.getReceiverId(),
 						next.buffersInBacklog());
+					next = null;
 
-					if (isEndOfPartitionEvent(next.buffer())) {
+					if (isEndOfPartition) {
 						reader.notifySubpartitionConsumed();
 						reader.releaseAllResources();
 
@@ -255,14 +274,19 @@ class PartitionRequestQueue extends ChannelInboundHandlerAdapter {
 					}
 
 					// Write and flush and wait until this is done before
-					// trying to continue with the next buffer.
-					channel.writeAndFlush(msg).addListener(writeListener);
+					// trying to continue with the next buffer. Netty releases the
+					// response from here on.
+					final BufferResponse response = msg;
+					msg = null;
+					channel.writeAndFlush(response).addListener(writeListener);
 
 					return;
 				}
 			}
 		} catch (Throwable t) {
-			if (next != null) {
+			if (msg != null) {
+				msg.releaseBuffer();
+			} else if (next != null) {
 				next.buffer().recycleBuffer();
 			}
 
@@ -284,6 +308,30 @@ class PartitionRequestQueue extends ChannelInboundHandlerAdapter {
 		return reader;
 	}
 
+	/**
+	 * Creates the response for the given buffer. If the buffer is compressed, the response holds the compressed
+	 * bytes and the buffer is recycled right away. This applies to the buffers of all kinds of subpartition views,
+	 * i.e. to pipelined as well as spilled subpartitions.
+	 *
+	 * <p>The returned response owns the buffer and releases it with {@link BufferResponse#releaseBuffer()}. If this
+	 * method throws, the buffer was not recycled.
+	 */
+	private BufferResponse createBufferResponse(
+			Buffer buffer,
+			int sequenceNumber,
+			InputChannelID receiverId,
+			int backlog) throws IOException {
+
+		if (compressor != null) {
+			ByteBuf compressed = compressor.compress(buffer, ctx.alloc());
+			if (compressed != null) {
+				buffer.recycleBuffer();
+				return BufferResponse.compressed(compressed, sequenceNumber, receiverId, backlog);
+			}
+		}
+		return new BufferResponse(buffer, sequenceNumber, receiverId, backlog);
+	}
+
 	private boolean isEndOfPartitionEvent(Buffer buffer) throws IOException {
 		return EventSerializer.isEvent(buffer, EndOfPartitionEvent.class);
 	}
@@ -0,0 +1,311 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.flink.runtime.io.network.partition;
+
+import org.apache.flink.core.memory.MemorySegment;
+import org.apache.flink.runtime.io.network.api.EndOfPartitionEvent;
+import org.apache.flink.runtime.io.network.api.serialization.EventSerializer;
+import org.apache.flink.runtime.io.network.buffer.Buffer;
+import org.apache.flink.runtime.io.network.buffer.BufferConsumer;
+import org.apache.flink.runtime.io.network.buffer.BufferRecycler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.apache.flink.util.Preconditions.checkNotNull;
+import static org.apache.flink.util.Preconditions.checkState;
+
+/**
+ * A subpartition of a {@link ResultPartitionType#BLOCKING} result that writes its buffers sequentially to a file
+ * right away and serves its consumers from memory-mapped regions of that file (see {@link MemoryMappedBuffers}).
+ *
+ * <p>In contrast to the {@link SpillableSubpartition}, this subpartition holds at most one network buffer, the one
+ * that is currently being filled by the producer. As soon as the producer adds the next buffer, the previous one is
+ * written to the file and recycled. The file is read through the page cache of the operating system, so the
+ * consumers do not need any network buffers of this subpartition either.
+ *
+ * <p>The subpartition can be consumed by multiple readers at the same time, each of them reading all buffers. The
+ * subpartition notifies its parent about its consumption once none of its readers is consuming any more. The file
+ * is unmapped and deleted when the subpartition is released, all readers are released, and all buffers handed out
+ * by the readers are recycled.
+ *
+ * <p>Note on thread safety: the producer adds the buffers from the task thread, the readers are used by the network
+ * threads or the consuming tasks. All state that is shared between them is guarded by {@link #lock}.
+ */
+final class BoundedBlockingSubpartition extends ResultSubpartition {
+
+	private static final Logger LOG = LoggerFactory.getLogger(BoundedBlockingSubpartition.class);
+
+	private final Object lock = new Object();
+
+	/** The buffers written to the file and read from the mapped regions. */
+	@GuardedBy("lock")
+	private final MemoryMappedBuffers data;
+
+	/** Recycles the buffers handed out by the readers, which are slices of the mapped regions. */
+	private final BufferRecycler mappedBufferRecycler = new MappedBufferRecycler();
+
+	/** The buffer currently filled by the producer. It is written to the file once the next buffer is added. */
+	@Nullable
+	@GuardedBy("lock")
+	private BufferConsumer currentBuffer;
+
+	/** All readers which are not released yet. */
+	@GuardedBy("lock")
+	private final Set<BoundedBlockingSubpartitionReader> readers = new HashSet<>();
+
+	/** The readers which have not consumed all buffers yet. */
+	@GuardedBy("lock")
+	private final Set<BoundedBlockingSubpartitionReader> consumingReaders = new HashSet<>();
+
+	/** The number of buffers handed out by the readers, which are not recycled yet. */
+	@GuardedBy("lock")
+	private int numberOfOutstandingBuffers;
+
+	/** The number of data buffers (i.e. non-event buffers) written to the file. */
+	@GuardedBy("lock")
+	private int numberOfDataBuffers;
+
+	@GuardedBy("lock")
+	private boolean isFinished;
+
+	@GuardedBy("lock")
+	private boolean isConsumed;
+
+	private volatile boolean isReleased;
+
+	BoundedBlockingSubpartition(int index, ResultPartition parent, File file) {
+		super(index, parent);
+
+		this.data = new MemoryMappedBuffers(checkNotNull(file));
+	}
+
+	@Override
+	public boolean add(BufferConsumer bufferConsumer) throws IOException {
+		checkNotNull(bufferConsumer);
+
+		synchronized (lock) {
+			if (isFinished || isReleased) {
+				bufferConsumer.close();
+				return false;
+			}
+
+			writeCurrentBuffer();
+			currentBuffer = bufferConsumer;
+			updateStatistics(bufferConsumer);
+			return true;
+		}
+	}
+
+	@Override
+	public void flush() {
+		// the buffers can only be consumed after the subpartition is finished, so there is nothing to flush
+	}
+
+	@Override
+	public void finish() throws IOException {
+		synchronized (lock) {
+			if (isReleased) {
+				return;
+			}
+			checkState(!isFinished, "Subpartition has already been finished.");
+
+			add(EventSerializer.toBufferConsumer(EndOfPartitionEvent.INSTANCE));
+			writeCurrentBuffer();
+			data.finishWrite();
+			isFinished = true;
+		}
+
+		LOG.debug("{}: Finished {}.", parent.getOwningTaskName(), this);
+	}
+
+	/**
+	 * Writes the current buffer to the file and recycles it. Empty data buffers are skipped.
+	 */
+	@GuardedBy("lock")
+	private void writeCurrentBuffer() throws IOException {
+		final BufferConsumer bufferConsumer = currentBuffer;
+		if (bufferConsumer == null) {
+			return;
+		}
+		currentBuffer = null;
+
+		try {
+			final Buffer buffer = bufferConsumer.build();
+			try {
+				if (buffer.readableBytes() > 0 || !buffer.isBuffer()) {
+					data.writeBuffer(buffer);
+					updateStatistics(buffer);
+					if (buffer.isBuffer()) {
+						numberOfDataBuffers++;
+					}
+				}
+			} finally {
+				buffer.recycleBuffer();
+			}
+		} finally {
+			bufferConsumer.close();
+		}
+	}
+
+	@Override
+	public void release() throws IOException {
+		final List<BoundedBlockingSubpartitionReader> readersToRelease;
+
+		synchronized (lock) {
+			if (isReleased) {
+				return;
+			}
+			isReleased = true;
+
+			if (currentBuffer != null) {
+				currentBuffer.close();
+				currentBuffer = null;
+			}
+
+			readersToRelease = new ArrayList<>(readers);
+			disposeIfUnused();
+		}
+
+		LOG.debug("{}: Released {}.", parent.getOwningTaskName(), this);
+
+		// the readers are released outside of the lock, because they call back into this subpartition
+		for (BoundedBlockingSubpartitionReader reader : readersToRelease) {
+			reader.releaseAllResources();
+		}
+	}
+
+	@Override
+	public ResultSubpartitionView createReadView(BufferAvailabilityListener availabilityListener) throws IOException {
+		synchronized (lock) {
+			checkState(!isReleased, "Subpartition has already been released.");
+			if (!isFinished) {
+				throw new IllegalStateException("Subpartition has not been finished yet, " +
+					"but blocking subpartitions can only be consumed after they have been finished.");
+			}
+
+			final BoundedBlockingSubpartitionReader reader = new BoundedBlockingSubpartitionReader(
+				this, data.createReader(), numberOfDataBuffers, availabilityListener);
+			readers.add(reader);
+			consumingReaders.add(reader);
+			return reader;
+		}
+	}
+
+	/**
+	 * Reads the next buffer for the given reader, or returns <tt>null</tt> if all buffers were read or the data is
+	 * no longer available.
+	 */
+	@Nullable
+	Buffer readNextBuffer(MemoryMappedBuffers.Reader dataReader) {
+		synchronized (lock) {
+			if (isReleased) {
+				return null;
+			}
+
+			final Buffer buffer = dataReader.nextBuffer(mappedBufferRecycler);
+			if (buffer != null) {
+				numberOfOutstandingBuffers++;
+			}
+			return buffer;
+		}
+	}
+
+	void onConsumedReader(BoundedBlockingSubpartitionReader reader) {
+		synchronized (lock) {
+			if (!consumingReaders.remove(reader) || !consumingReaders.isEmpty() || isConsumed) {
+				return;
+			}
+			isConsumed = true;
+		}
+
+		onConsumedSubpartition();
+	}
+
+	void releaseReaderReference(BoundedBlockingSubpartitionReader reader) throws IOException {
+		synchronized (lock) {
+			readers.remove(reader);
+			consumingReaders.remove(reader);
+			disposeIfUnused();
+		}
+	}
+
+	@GuardedBy("lock")
+	private void disposeIfUnused() throws IOException {
+		if (isReleased && readers.isEmpty() && numberOfOutstandingBuffers == 0) {
+			data.dispose();
+		}
+	}
+
+	@Override
+	int releaseMemory() throws IOException {
+		// the only buffer in memory is the one currently filled by the producer
+		return 0;
+	}
+
+	@Override
+	public boolean isReleased() {
+		return isReleased;
+	}
+
+	@Override
+	public int unsynchronizedGetNumberOfQueuedBuffers() {
+		return 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("BoundedBlockingSubpartition#%d [%d number of buffers (%d bytes), " +
+				"%d bytes written, finished? %s, readers: %d]",
+			index, getTotalNumberOfBuffers(), getTotalNumberOfBytes(),
+			data.getSize(), isFinished, readers.size());
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Counts the recycled buffers handed out by the readers. The buffers do not own their memory, which is a slice
+	 * of a mapped region.
+	 */
+	private final class MappedBufferRecycler implements BufferRecycler {
+
+		@Override
+		public void recycle(MemorySegment memorySegment) {
+			synchronized (lock) {
+				numberOfOutstandingBuffers--;
+				try {
+					disposeIfUnused();
+				} catch (IOException e) {
+					LOG.warn("Failed to dispose the data of {}.", BoundedBlockingSubpartition.this, e);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.flink.runtime.io.network.partition;
+
+import org.apache.flink.runtime.io.network.buffer.Buffer;
+import org.apache.flink.runtime.io.network.partition.ResultSubpartition.BufferAndBacklog;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import java.io.IOException;
+
+import static org.apache.flink.util.Preconditions.checkArgument;
+import static org.apache.flink.util.Preconditions.checkNotNull;
+
+/**
+ * Reader of a {@link BoundedBlockingSubpartition}. Each reader reads all buffers of the subpartition from the
+ * memory-mapped file, independently of the other readers, and keeps its own backlog.
+ *
+ * <p>All buffers are available when the reader is created, so the availability listener is notified only once.
+ */
+final class BoundedBlockingSubpartitionReader implements ResultSubpartitionView {
+
+	/** The subpartition this reader belongs to. */
+	private final BoundedBlockingSubpartition parent;
+
+	/** The reader of the mapped buffers. */
+	private final MemoryMappedBuffers.Reader dataReader;
+
+	/** The next buffer to hand out, read ahead to know whether it is an event. */
+	@Nullable
+	@GuardedBy("this")
+	private Buffer nextBuffer;
+
+	/** The number of data buffers which were not handed out yet. */
+	@GuardedBy("this")
+	private int dataBufferBacklog;
+
+	@GuardedBy("this")
+	private boolean isReleased;
+
+	BoundedBlockingSubpartitionReader(
+			BoundedBlockingSubpartition parent,
+			MemoryMappedBuffers.Reader dataReader,
+			int numberOfDataBuffers,
+			BufferAvailabilityListener availabilityListener) {
+
+		checkArgument(numberOfDataBuffers >= 0);
+		this.parent = checkNotNull(parent);
+		this.dataReader = checkNotNull(dataReader);
+		this.dataBufferBacklog = numberOfDataBuffers;
+
+		this.nextBuffer = parent.readNextBuffer(dataReader);
+
+		checkNotNull(availabilityListener).notifyDataAvailable();
+	}
+
+	@Nullable
+	@Override
+	public synchronized BufferAndBacklog getNextBuffer() throws IOException {
+		final Buffer current = nextBuffer;
+		if (current == null || isReleased) {
+			return null;
+		}
+
+		if (current.isBuffer()) {
+			dataBufferBacklog--;
+		}
+
+		nextBuffer = parent.readNextBuffer(dataReader);
+		return new BufferAndBacklog(
+			current,
+			nextBuffer != null,
+			dataBufferBacklog,
+			nextBuffer != null && !nextBuffer.isBuffer());
+	}
+
+	@Override
+	public void notifyDataAvailable() {
+		// all buffers are available from the start
+	}
+
+	@Override
+	public void releaseAllResources() throws IOException {
+		synchronized (this) {
+			if (isReleased) {
+				return;
+			}
+			isReleased = true;
+
+			if (nextBuffer != null) {
+				nextBuffer.recycleBuffer();
+				nextBuffer = null;
+			}
+		}
+
+		parent.releaseReaderReference(this);
+	}
+
+	@Override
+	public void notifySubpartitionConsumed() throws IOException {
+		parent.onConsumedReader(this);
+	}
+
+	@Override
+	public synchronized boolean isReleased() {
+		return isReleased || parent.isReleased();
+	}
+
+	@Override
+	public Throwable getFailureCause() {
+		return parent.getFailureCause();
+	}
+
+	@Override
+	public synchronized boolean nextBufferIsEvent() {
+		return nextBuffer != null && !nextBuffer.isBuffer();
+	}
+
+	@Override
+	public synchronized boolean isAvailable() {
+		return nextBuffer != null;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("BoundedBlockingSubpartitionReader(index: %d) of ResultPartition %s",
+			parent.index,
+			parent.parent.getPartitionId());
+	}
+}
@@ -0,0 +1,456 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.io.network.partition;
+
+import org.apache.flink.runtime.io.network.api.EndOfPartitionEvent;
+import org.apache.flink.runtime.io.network.api.serialization.EventSerializer;
+import org.apache.flink.runtime.io.network.buffer.Buffer;
+import org.apache.flink.runtime.io.network.buffer.BufferConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.flink.util.Preconditions.checkNotNull;
+import static org.apache.flink.util.Preconditions.checkState;
+
+/**
+ * A pipelined in-memory only subpartition that hands buffers from the producing task thread to the consuming
+ * thread through a single-producer/single-consumer queue, without a monitor shared by both sides.
+ *
+ * <p>The semantics are the ones of {@link PipelinedSubpartition}, which also provides the read view: buffers are
+ * available to the reader once they are finished, or after {@link #flush()}. The differences are:
+ * <ul>
+ *     <li>{@link #add(BufferConsumer)}, {@link #flush()} and {@link #finish()} (producer side) never block on
+ *     the consumer. The backlog is an atomic counter and flush requests are tracked with a sequence number that
+ *     only the producer writes.</li>
+ *     <li>Notifications are coalesced: the {@link BufferAvailabilityListener} is only notified when the
+ *     subpartition turns from "nothing available" to "data available" for the reader. The reader re-arms the
+ *     notification when a poll finds no more available data.</li>
+ * </ul>
+ *
+ * <p>Consumer side operations and {@link #release()} are still mutually exclusive through a lock that the producer
+ * only takes after it observed a concurrent release. That lock is therefore uncontended in the common case.
+ */
+class LockFreePipelinedSubpartition extends PipelinedSubpartition {
+
+	private static final Logger LOG = LoggerFactory.getLogger(LockFreePipelinedSubpartition.class);
+
+	// ------------------------------------------------------------------------
+
+	/** The queue of buffers, written by the producer and read by the consumer. */
+	private final BufferConsumerQueue queue = new BufferConsumerQueue();
+
+	/** Lock for the consumer side of the queue, taken by the producer only to clean up after a release. */
+	private final Object consumerLock = new Object();
+
+	/** The number of non-event buffers currently in this subpartition. */
+	private final AtomicInteger buffersInBacklog = new AtomicInteger();
+
+	/** Whether the reader was notified and has not yet observed that there is no more data available. */
+	private final AtomicBoolean readerNotified = new AtomicBoolean();
+
+	/** The read view to consume this subpartition. */
+	private volatile PipelinedSubpartitionView readView;
+
+	/** Incremented by the producer on every {@link #flush()}. */
+	private volatile int flushSequence;
+
+	/** The flush sequence number up to which the consumer drained all data. */
+	@GuardedBy("consumerLock")
+	private int consumedFlushSequence;
+
+	/** Flag indicating whether the subpartition has been finished. Only accessed by the producer. */
+	private boolean isFinished;
+
+	/** Flag indicating whether the subpartition has been released. */
+	private volatile boolean isReleased;
+
+	// ------------------------------------------------------------------------
+
+	LockFreePipelinedSubpartition(int index, ResultPartition parent) {
+		super(index, parent);
+	}
+
+	// ------------------------------------------------------------------------
+	//  Producer side
+	// ------------------------------------------------------------------------
+
+	@Override
+	public boolean add(BufferConsumer bufferConsumer) {
+		return add(bufferConsumer, false);
+	}
+
+	@Override
+	public void finish() throws IOException {
+		add(EventSerializer.toBufferConsumer(EndOfPartitionEvent.INSTANCE), true);
+		LOG.debug("{}: Finished {}.", parent.getOwningTaskName(), this);
+	}
+
+	private boolean add(BufferConsumer bufferConsumer, boolean finish) {
+		checkNotNull(bufferConsumer);
+
+		if (isFinished || isReleased) {
+			bufferConsumer.close();
+			return false;
+		}
+
+		updateStatistics(bufferConsumer);
+		if (bufferConsumer.isBuffer()) {
+			buffersInBacklog.incrementAndGet();
+		}
+		final int numberOfBuffers = queue.add(bufferConsumer);
+		isFinished |= finish;
+
+		if (isReleased) {
+			// a concurrent release may have missed the buffer we just added
+			synchronized (consumerLock) {
+				queue.closeAll();
+			}
+			return false;
+		}
+
+		// a second buffer implies that the first one is finished
+		if (finish || numberOfBuffers > 1 || bufferConsumer.isFinished()) {
+			notifyDataAvailable();
+		}
+
+		return true;
+	}
+
+	@Override
+	public void flush() {
+		if (queue.size() == 0) {
+			return;
+		}
+
+		flushSequence++;
+		notifyDataAvailable();
+	}
+
+	// ------------------------------------------------------------------------
+	//  Consumer side
+	// ------------------------------------------------------------------------
+
+	@Nullable
+	@Override
+	BufferAndBacklog pollBuffer() {
+		synchronized (consumerLock) {
+			if (isReleased) {
+				return null;
+			}
+
+			final int observedFlushSequence = flushSequence;
+			Buffer buffer = null;
+
+			while (true) {
+				final BufferConsumer bufferConsumer = queue.peek();
+				if (bufferConsumer == null) {
+					consumedFlushSequence = observedFlushSequence;
+					break;
+				}
+
+				// read the size before building the buffer: a buffer is only followed by another one once it is
+				// finished, so a size > 1 guarantees that the build below sees the finished buffer
+				final int numberOfBuffers = queue.size();
+				buffer = bufferConsumer.build();
+
+				checkState(bufferConsumer.isFinished() || numberOfBuffers == 1,
+					"When there are multiple buffers, an unfinished bufferConsumer can not be at the head of the buffers queue.");
+
+				if (numberOfBuffers == 1) {
+					// we drained all of the data that was flushed before we started polling
+					consumedFlushSequence = observedFlushSequence;
+				}
+
+				if (bufferConsumer.isFinished()) {
+					queue.poll().close();
+					if (bufferConsumer.isBuffer()) {
+						buffersInBacklog.decrementAndGet();
+					}
+				}
+
+				if (buffer.readableBytes() > 0) {
+					break;
+				}
+				buffer.recycleBuffer();
+				buffer = null;
+				if (!bufferConsumer.isFinished()) {
+					break;
+				}
+			}
+
+			if (buffer == null) {
+				if (rearmNotification()) {
+					// the rearm already set the flag for this notification
+					notifyReadView();
+				}
+				return null;
+			}
+
+			updateStatistics(buffer);
+
+			boolean isMoreAvailable = isAvailableUnsafe();
+			if (!isMoreAvailable) {
+				// the reader stops polling, so the producer has to notify it again. If data arrived in the
+				// meantime, we take over that notification and let the reader continue right away.
+				isMoreAvailable = rearmNotification();
+			}
+
+			return new BufferAndBacklog(
+				buffer,
+				isMoreAvailable,
+				buffersInBacklog.get(),
+				nextBufferIsEventUnsafe());
+		}
+	}
+
+	/**
+	 * Re-enables notifications after the reader found no more available data.
+	 *
+	 * @return true if data became available concurrently. The flag is then already set again, and the caller is
+	 *         responsible for consuming the data or notifying the reader, see {@link #notifyReadView()}.
+	 */
+	private boolean rearmNotification() {
+		readerNotified.set(false);
+		return isAvailableUnsafe() && readerNotified.compareAndSet(false, true);
+	}
+
+	@Override
+	boolean nextBufferIsEvent() {
+		synchronized (consumerLock) {
+			return nextBufferIsEventUnsafe();
+		}
+	}
+
+	private boolean nextBufferIsEventUnsafe() {
+		final BufferConsumer head = queue.peek();
+		return head != null && !head.isBuffer();
+	}
+
+	@Override
+	public boolean isAvailable() {
+		synchronized (consumerLock) {
+			return isAvailableUnsafe();
+		}
+	}
+
+	private boolean isAvailableUnsafe() {
+		if (flushSequence != consumedFlushSequence) {
+			return !queue.isEmpty();
+		}
+
+		// NOTE: isFinished() is not guaranteed to provide the most up-to-date state here
+		// worst-case: a single finished buffer sits around until the next flush() call
+		final int numberOfBuffers = queue.size();
+		if (numberOfBuffers == 1) {
+			final BufferConsumer head = queue.peek();
+			return head != null && head.isFinished();
+		}
+		return numberOfBuffers > 1;
+	}
+
+	@Override
+	public PipelinedSubpartitionView createReadView(BufferAvailabilityListener availabilityListener) throws IOException {
+		synchronized (consumerLock) {
+			checkState(!isReleased);
+			checkState(readView == null,
+				"Subpartition %s of is being (or already has been) consumed, " +
+					"but pipelined subpartitions can only be consumed once.", index, parent.getPartitionId());
+
+			LOG.debug("{}: Creating read view for subpartition {} of partition {}.",
+				parent.getOwningTaskName(), index, parent.getPartitionId());
+
+			readView = new PipelinedSubpartitionView(this, availabilityListener);
+		}
+
+		// the producer may have added buffers before it could see the view
+		if (queue.size() > 0) {
+			notifyDataAvailable();
+		}
+
+		return readView;
+	}
+
+	// ------------------------------------------------------------------------
+	//  Life-cycle and statistics
+	// ------------------------------------------------------------------------
+
+	@Override
+	public void release() {
+		final PipelinedSubpartitionView view;
+
+		synchronized (consumerLock) {
+			if (isReleased) {
+				return;
+			}
+
+			// Make sure that no further buffers are added to the subpartition
+			isReleased = true;
+
+			// Release all available buffers
+			queue.closeAll();
+
+			view = readView;
+			readView = null;
+		}
+
+		LOG.debug("{}: Released {}.", parent.getOwningTaskName(), this);
+
+		if (view != null) {
+			view.releaseAllResources();
+		}
+	}
+
+	@Override
+	public boolean isReleased() {
+		return isReleased;
+	}
+
+	@Override
+	public int getBuffersInBacklog() {
+		return buffersInBacklog.get();
+	}
+
+	@Override
+	public int decreaseBuffersInBacklog(Buffer buffer) {
+		return buffer != null && buffer.isBuffer() ?
+			buffersInBacklog.decrementAndGet() :
+			buffersInBacklog.get();
+	}
+
+	@Override
+	int getCurrentNumberOfBuffers() {
+		return queue.size();
+	}
+
+	@Override
+	public int unsynchronizedGetNumberOfQueuedBuffers() {
+		return queue.size();
+	}
+
+	/**
+	 * Notifies the read view, unless it was already notified and did not yet drain the available data.
+	 */
+	private void notifyDataAvailable() {
+		if (readView != null && readerNotified.compareAndSet(false, true)) {
+			notifyReadView();
+		}
+	}
+
+	/**
+	 * Notifies the read view without touching {@link #readerNotified}, the caller must have set the flag.
+	 */
+	private void notifyReadView() {
+		final PipelinedSubpartitionView view = readView;
+		if (view != null) {
+			view.notifyDataAvailable();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+			"LockFreePipelinedSubpartition#%d [number of buffers: %d (%d bytes), number of buffers in backlog: %d, finished? %s, read view? %s]",
+			index, getTotalNumberOfBuffers(), getTotalNumberOfBytes(), getBuffersInBacklog(), isFinished, readView != null);
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Unbounded single-producer/single-consumer linked queue. {@link #add(BufferConsumer)} is only called by the
+	 * producer, all other modifications only by the consumer (or under the consumer lock).
+	 */
+	private static final class BufferConsumerQueue {
+
+		/** Sentinel node, its successor is the head of the queue. Only accessed by the consumer. */
+		private Node head = new Node(null);
+
+		/** The last node of the queue. Only accessed by the producer. */
+		private Node tail = head;
+
+		private final AtomicInteger size = new AtomicInteger();
+
+		/**
+		 * Appends the buffer consumer and returns the size of the queue after the operation.
+		 */
+		int add(BufferConsumer bufferConsumer) {
+			final Node node = new Node(bufferConsumer);
+			// the volatile write publishes the node to the consumer
+			tail.next = node;
+			tail = node;
+			return size.incrementAndGet();
+		}
+
+		@Nullable
+		BufferConsumer peek() {
+			final Node next = head.next;
+			return next != null ? next.bufferConsumer : null;
+		}
+
+		@Nullable
+		BufferConsumer poll() {
+			final Node next = head.next;
+			if (next == null) {
+				return null;
+			}
+			final BufferConsumer bufferConsumer = next.bufferConsumer;
+			next.bufferConsumer = null;
+			head = next;
+			size.decrementAndGet();
+			return bufferConsumer;
+		}
+
+		void closeAll() {
+			BufferConsumer bufferConsumer;
+			while ((bufferConsumer = poll()) != null) {
+				bufferConsumer.close();
+			}
+		}
+
+		boolean isEmpty() {
+			return head.next == null;
+		}
+
+		/**
+		 * The number of queued buffers. A concurrent {@link #add(BufferConsumer)} may not be reflected yet.
+		 */
+		int size() {
+			return size.get();
+		}
+	}
+
+	private static final class Node {
+
+		@Nullable
+		private BufferConsumer bufferConsumer;
+
+		private volatile Node next;
+
+		Node(@Nullable BufferConsumer bufferConsumer) {
+			this.bufferConsumer = bufferConsumer;
+		}
+	}
+}
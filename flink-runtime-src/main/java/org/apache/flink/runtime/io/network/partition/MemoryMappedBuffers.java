@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.flink.runtime.io.network.partition;
+
+import org.apache.flink.core.memory.MemorySegment;
+import org.apache.flink.core.memory.MemorySegmentFactory;
+import org.apache.flink.runtime.io.network.buffer.Buffer;
+import org.apache.flink.runtime.io.network.buffer.BufferRecycler;
+import org.apache.flink.runtime.io.network.buffer.NetworkBuffer;
+
+import org.apache.flink.shaded.netty4.io.netty.util.internal.PlatformDependent;
+
+import javax.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+import static org.apache.flink.util.Preconditions.checkArgument;
+import static org.apache.flink.util.Preconditions.checkNotNull;
+import static org.apache.flink.util.Preconditions.checkState;
+
+/**
+ * A sequence of buffers that is written sequentially to a file and read back from memory-mapped regions of that
+ * file.
+ *
+ * <p>Each buffer is written with a header holding whether it is a data buffer or an event, and its size. The file
+ * is divided into regions of at most {@link Integer#MAX_VALUE} bytes that never split a buffer, because a single
+ * mapped region is addressed by an int. The regions are mapped when writing is finished. The buffers handed out by
+ * the {@link Reader}s are slices of the mapped regions, i.e. no data is copied to heap or direct memory.
+ *
+ * <p>This class is not thread-safe, the owning {@link BoundedBlockingSubpartition} synchronizes the access.
+ */
+final class MemoryMappedBuffers {
+
+	/** Header: whether the buffer is a data buffer (4), buffer size (4). */
+	private static final int HEADER_LENGTH = 8;
+
+	private static final int HEADER_VALUE_IS_EVENT = 0;
+
+	private static final int HEADER_VALUE_IS_BUFFER = 1;
+
+	/** The file the buffers are written to. */
+	private final File file;
+
+	/** The maximum size of a mapped region. */
+	private final long maxRegionSize;
+
+	/** The positions in the file at which the regions start. */
+	private final ArrayList<Long> regionStarts = new ArrayList<>();
+
+	private final ByteBuffer headerBuffer = ByteBuffer.allocate(HEADER_LENGTH);
+
+	/** The channel to write the file, opened with the first buffer and closed when writing is finished. */
+	@Nullable
+	private FileChannel fileChannel;
+
+	/** The number of bytes written to the file. */
+	private long size;
+
+	/** The mapped regions of the file, or <tt>null</tt> as long as writing is not finished. */
+	@Nullable
+	private ByteBuffer[] regions;
+
+	private boolean isDisposed;
+
+	MemoryMappedBuffers(File file) {
+		this(file, Integer.MAX_VALUE);
+	}
+
+	MemoryMappedBuffers(File file, long maxRegionSize) {
+		checkArgument(maxRegionSize > HEADER_LENGTH && maxRegionSize <= Integer.MAX_VALUE,
+			"Illegal maximum region size");
+		this.file = checkNotNull(file);
+		this.maxRegionSize = maxRegionSize;
+		this.regionStarts.add(0L);
+	}
+
+	/**
+	 * Appends the readable bytes of the given buffer to the file. The given buffer is not recycled.
+	 */
+	void writeBuffer(Buffer buffer) throws IOException {
+		checkState(regions == null, "Writing has already been finished.");
+		checkState(!isDisposed, "Already disposed.");
+
+		final ByteBuffer data = buffer.getNioBufferReadable();
+		final int length = HEADER_LENGTH + data.remaining();
+		checkArgument(length <= maxRegionSize, "Buffer exceeds the maximum region size");
+
+		if (fileChannel == null) {
+			fileChannel = FileChannel.open(
+				file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+
+		// start a new region if the buffer does not fit into the current one
+		if (size + length - regionStarts.get(regionStarts.size() - 1) > maxRegionSize) {
+			regionStarts.add(size);
+		}
+
+		headerBuffer.clear();
+		headerBuffer.putInt(buffer.isBuffer() ? HEADER_VALUE_IS_BUFFER : HEADER_VALUE_IS_EVENT);
+		headerBuffer.putInt(data.remaining());
+		headerBuffer.flip();
+
+		final ByteBuffer[] headerAndData = new ByteBuffer[] {headerBuffer, data};
+		while (headerBuffer.hasRemaining() || data.hasRemaining()) {
+			fileChannel.write(headerAndData);
+		}
+		size += length;
+	}
+
+	/**
+	 * Finishes writing and maps the regions of the file. Afterwards, the buffers can be read.
+	 */
+	void finishWrite() throws IOException {
+		checkState(regions == null, "Writing has already been finished.");
+		checkState(!isDisposed, "Already disposed.");
+
+		if (fileChannel == null) {
+			regions = new ByteBuffer[0];
+			return;
+		}
+
+		final int numberOfRegions = regionStarts.size();
+		final ByteBuffer[] mappedRegions = new ByteBuffer[numberOfRegions];
+		try {
+			for (int i = 0; i < numberOfRegions; i++) {
+				final long start = regionStarts.get(i);
+				final long end = i + 1 < regionStarts.size() ? regionStarts.get(i + 1) : size;
+				mappedRegions[i] = fileChannel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+			}
+		} finally {
+			// the mapped regions stay valid after the channel is closed
+			regions = mappedRegions;
+			fileChannel.close();
+			fileChannel = null;
+		}
+	}
+
+	/**
+	 * Creates a new reader over all buffers. Readers are independent of each other.
+	 */
+	Reader createReader() {
+		checkState(regions != null, "Writing has not been finished yet.");
+		checkState(!isDisposed, "Already disposed.");
+
+		final ByteBuffer[] readerRegions = new ByteBuffer[regions.length];
+		for (int i = 0; i < regions.length; i++) {
+			readerRegions[i] = regions[i].duplicate();
+		}
+		return new Reader(readerRegions);
+	}
+
+	long getSize() {
+		return size;
+	}
+
+	/**
+	 * Unmaps the regions and deletes the file. No buffer of any reader may be used afterwards.
+	 */
+	void dispose() throws IOException {
+		if (isDisposed) {
+			return;
+		}
+		isDisposed = true;
+
+		if (regions != null) {
+			for (ByteBuffer region : regions) {
+				if (region != null) {
+					PlatformDependent.freeDirectBuffer(region);
+				}
+			}
+		}
+		if (fileChannel != null) {
+			fileChannel.close();
+			fileChannel = null;
+		}
+		Files.deleteIfExists(file.toPath());
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Reads the buffers from the mapped regions, in the order in which they were written.
+	 */
+	final class Reader {
+
+		private final ByteBuffer[] regions;
+
+		private int currentRegion;
+
+		private Reader(ByteBuffer[] regions) {
+			this.regions = regions;
+		}
+
+		/**
+		 * Returns the next buffer as a slice of the mapped file, or <tt>null</tt> if all buffers were read. The
+		 * given recycler is notified when the buffer is recycled.
+		 */
+		@Nullable
+		Buffer nextBuffer(BufferRecycler recycler) {
+			checkState(!isDisposed, "Already disposed.");
+
+			while (currentRegion < regions.length) {
+				final ByteBuffer region = regions[currentRegion];
+				if (region.remaining() >= HEADER_LENGTH) {
+					final boolean isBuffer = region.getInt() == HEADER_VALUE_IS_BUFFER;
+					final int bufferSize = region.getInt();
+
+					final ByteBuffer slice = region.slice();
+					slice.limit(bufferSize);
+					region.position(region.position() + bufferSize);
+
+					final MemorySegment segment = MemorySegmentFactory.wrapPooledOffHeapMemory(slice, null);
+					return new NetworkBuffer(segment, recycler, isBuffer, bufferSize);
+				}
+				currentRegion++;
+			}
+			return null;
+		}
+	}
+}
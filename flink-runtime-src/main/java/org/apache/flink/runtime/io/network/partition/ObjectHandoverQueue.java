@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.io.network.partition;
+
+import org.apache.flink.configuration.ConfigOption;
+import org.apache.flink.configuration.ConfigOptions;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import java.util.ArrayDeque;
+
+import static org.apache.flink.util.Preconditions.checkArgument;
+import static org.apache.flink.util.Preconditions.checkNotNull;
+import static org.apache.flink.util.Preconditions.checkState;
+
+/**
+ * A bounded FIFO queue that hands objects from a producer to a consumer in the same TaskManager by reference,
+ * bypassing serialization.
+ *
+ * <p>The queue does not replace the data of a subpartition: for every object put into the queue, the producer writes
+ * a small marker record into the regular buffers of the subpartition, and the consumer takes the next object from the
+ * queue when it reads a marker. Ordering with respect to other records and events (e.g. checkpoint barriers), as well
+ * as backpressure through the network buffers, are thus unchanged. The capacity of the queue additionally bounds the
+ * number of objects in flight.
+ *
+ * <p>Queues are created by a {@link org.apache.flink.runtime.io.network.partition.consumer.LocalInputChannel} and
+ * registered with the consumed {@link ResultPartition} when the subpartition is requested.
+ */
+public final class ObjectHandoverQueue {
+
+	/** Whether co-located tasks hand over records by reference. */
+	public static final ConfigOption<Boolean> LOCAL_OBJECT_HANDOVER = ConfigOptions
+		.key("taskmanager.network.local-object-handover")
+		.defaultValue(false)
+		.withDescription("Whether tasks in the same TaskManager hand over records through pipelined local channels " +
+			"by reference instead of serializing and deserializing them. Records of mutable types are copied " +
+			"once by the producer.");
+
+	/** Maximum number of records in flight per local channel, if object handover is enabled. */
+	public static final ConfigOption<Integer> LOCAL_OBJECT_HANDOVER_CAPACITY = ConfigOptions
+		.key("taskmanager.network.local-object-handover.capacity")
+		.defaultValue(1024)
+		.withDescription("The maximum number of records that are handed over by reference but not consumed yet, " +
+			"per local channel.");
+
+	private final Object lock = new Object();
+
+	@GuardedBy("lock")
+	private final ArrayDeque<Object> queue;
+
+	private final int capacity;
+
+	@GuardedBy("lock")
+	private boolean isReleased;
+
+	public ObjectHandoverQueue(int capacity) {
+		checkArgument(capacity > 0, "The capacity must be positive.");
+		this.capacity = capacity;
+		this.queue = new ArrayDeque<>(capacity);
+	}
+
+	/**
+	 * Adds the object if the queue is not full.
+	 *
+	 * @return false if the queue is full, true otherwise (including the case of a released queue, where the object is
+	 *         dropped).
+	 */
+	public boolean tryPut(Object object) {
+		checkNotNull(object);
+		synchronized (lock) {
+			if (isReleased) {
+				return true;
+			}
+			if (queue.size() >= capacity) {
+				return false;
+			}
+			queue.add(object);
+			return true;
+		}
+	}
+
+	/**
+	 * Adds the object, waiting for space if the queue is full. Objects put into a released queue are dropped.
+	 *
+	 * <p>The producer must make the markers of all objects in the queue available to the consumer (i.e. flush the
+	 * subpartition) before calling this method, otherwise it may wait forever.
+	 */
+	public void put(Object object) throws InterruptedException {
+		checkNotNull(object);
+		synchronized (lock) {
+			while (queue.size() >= capacity && !isReleased) {
+				lock.wait();
+			}
+			if (!isReleased) {
+				queue.add(object);
+			}
+		}
+	}
+
+	/**
+	 * Takes the object for a marker that the consumer has read.
+	 */
+	public Object take() {
+		synchronized (lock) {
+			Object object = queue.poll();
+			checkState(object != null, "No object was handed over for the marker.");
+			if (queue.size() == capacity - 1) {
+				lock.notifyAll();
+			}
+			return object;
+		}
+	}
+
+	/**
+	 * Releases the queue. All objects in the queue are dropped and a waiting producer is woken up.
+	 */
+	public void release() {
+		synchronized (lock) {
+			isReleased = true;
+			queue.clear();
+			lock.notifyAll();
+		}
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public String toString() {
+		synchronized (lock) {
+			return "ObjectHandoverQueue [" + queue.size() + "/" + capacity + (isReleased ? ", released" : "") + "]";
+		}
+	}
+}
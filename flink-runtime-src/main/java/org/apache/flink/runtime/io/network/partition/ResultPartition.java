@@ -19,6 +19,8 @@
 package org.apache.flink.runtime.io.network.partition;
 
 import org.apache.flink.api.common.JobID;
+import org.apache.flink.configuration.ConfigOption;
+import org.apache.flink.configuration.ConfigOptions;
 import org.apache.flink.runtime.executiongraph.IntermediateResultPartition;
 import org.apache.flink.runtime.io.disk.iomanager.IOManager;
 import org.apache.flink.runtime.io.network.api.writer.ResultPartitionWriter;
@@ -39,6 +41,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import static org.apache.flink.util.Preconditions.checkArgument;
 import static org.apache.flink.util.Preconditions.checkElementIndex;
@@ -80,6 +83,25 @@ public class ResultPartition implements ResultPartitionWriter, BufferPoolOwner {
 
 	private static final Logger LOG = LoggerFactory.getLogger(ResultPartition.class);
 
+	/**
+	 * Whether pipelined partitions use {@link LockFreePipelinedSubpartition}s.
+	 */
+	public static final ConfigOption<Boolean> LOCK_FREE_PIPELINED_SUBPARTITIONS = ConfigOptions
+		.key("taskmanager.network.lock-free-pipelined-subpartitions")
+		.defaultValue(false)
+		.withDescription("Whether pipelined result partitions hand buffers from the producing task to the network" +
+			" stack through a lock-free single-producer/single-consumer queue instead of a synchronized queue.");
+
+	/**
+	 * Whether blocking partitions use {@link BoundedBlockingSubpartition}s.
+	 */
+	public static final ConfigOption<Boolean> MEMORY_MAPPED_BLOCKING_SUBPARTITIONS = ConfigOptions
+		.key("taskmanager.network.memory-mapped-blocking-subpartitions")
+		.defaultValue(false)
+		.withDescription("Whether blocking result partitions write their data sequentially to a file right away and" +
+			" serve their consumers from memory-mapped regions of that file, instead of keeping the data in network" +
+			" buffers until they are spilled. Such partitions can be consumed by multiple readers at the same time.");
+
 	private final String owningTaskName;
 
 	private final TaskActions taskActions;
@@ -121,6 +143,12 @@ public class ResultPartition implements ResultPartitionWriter, BufferPoolOwner {
 
 	private volatile Throwable cause;
 
+	/**
+	 * Queues of local consumers that take records by reference, per subpartition. Only used for pipelined partitions,
+	 * see {@link ObjectHandoverQueue}.
+	 */
+	private final AtomicReferenceArray<ObjectHandoverQueue> objectHandoverQueues;
+
 	public ResultPartition(
 		String owningTaskName,
 		TaskActions taskActions, // actions on the owning task
@@ -134,12 +162,44 @@ public class ResultPartition implements ResultPartitionWriter, BufferPoolOwner {
 		IOManager ioManager,
 		boolean sendScheduleOrUpdateConsumersMessage) {
 
+		this(
+			owningTaskName,
+			taskActions,
+			jobId,
+			partitionId,
+			partitionType,
+			numberOfSubpartitions,
+			numTargetKeyGroups,
+			partitionManager,
+			partitionConsumableNotifier,
+			ioManager,
+			sendScheduleOrUpdateConsumersMessage,
+			false,
+			false);
+	}
+
+	public ResultPartition(
+		String owningTaskName,
+		TaskActions taskActions, // actions on the owning task
+		JobID jobId,
+		ResultPartitionID partitionId,
+		ResultPartitionType partitionType,
+		int numberOfSubpartitions,
+		int numTargetKeyGroups,
+		ResultPartitionManager partitionManager,
+		ResultPartitionConsumableNotifier partitionConsumableNotifier,
+		IOManager ioManager,
+		boolean sendScheduleOrUpdateConsumersMessage,
+		boolean lockFreePipelinedSubpartitions,
+		boolean memoryMappedBlockingSubpartitions) {
+
 		this.owningTaskName = checkNotNull(owningTaskName);
 		this.taskActions = checkNotNull(taskActions);
 		this.jobId = checkNotNull(jobId);
 		this.partitionId = checkNotNull(partitionId);
 		this.partitionType = checkNotNull(partitionType);
 		this.subpartitions = new ResultSubpartition[numberOfSubpartitions];
+		this.objectHandoverQueues = new AtomicReferenceArray<>(numberOfSubpartitions);
 		this.numTargetKeyGroups = numTargetKeyGroups;
 		this.partitionManager = checkNotNull(partitionManager);
 		this.partitionConsumableNotifier = checkNotNull(partitionConsumableNotifier);
@@ -149,7 +209,9 @@ public class ResultPartition implements ResultPartitionWriter, BufferPoolOwner {
 		switch (partitionType) {
 			case BLOCKING:
 				for (int i = 0; i < subpartitions.length; i++) {
-					subpartitions[i] = new SpillableSubpartition(i, this, ioManager);
+					subpartitions[i] = memoryMappedBlockingSubpartitions ?
+						new BoundedBlockingSubpartition(i, this, ioManager.createChannel().getPathFile()) :
+						new SpillableSubpartition(i, this, ioManager);
 				}
 
 				break;
@@ -157,7 +219,9 @@ public class ResultPartition implements ResultPartitionWriter, BufferPoolOwner {
 			case PIPELINED:
 			case PIPELINED_BOUNDED:
 				for (int i = 0; i < subpartitions.length; i++) {
-					subpartitions[i] = new PipelinedSubpartition(i, this);
+					subpartitions[i] = lockFreePipelinedSubpartitions ?
+						new LockFreePipelinedSubpartition(i, this) :
+						new PipelinedSubpartition(i, this);
 				}
 
 				break;
@@ -267,6 +331,27 @@ public class ResultPartition implements ResultPartitionWriter, BufferPoolOwner {
 		subpartitions[subpartitionIndex].flush();
 	}
 
+	@Override
+	public int unsynchronizedGetNumberOfQueuedBuffers(int subpartitionIndex) {
+		return subpartitions[subpartitionIndex].unsynchronizedGetNumberOfQueuedBuffers();
+	}
+
+	@Override
+	public ObjectHandoverQueue getObjectHandoverQueue(int subpartitionIndex) {
+		return objectHandoverQueues.get(subpartitionIndex);
+	}
+
+	/**
+	 * Registers the queue of a local consumer of the subpartition, through which the producer may hand over records
+	 * by reference. This is ignored for blocking partitions, whose data may be consumed after the producer finished.
+	 */
+	void registerObjectHandoverQueue(int subpartitionIndex, ObjectHandoverQueue objectHandoverQueue) {
+		checkElementIndex(subpartitionIndex, subpartitions.length, "Subpartition not found.");
+		if (partitionType.isPipelined()) {
+			objectHandoverQueues.set(subpartitionIndex, checkNotNull(objectHandoverQueue));
+		}
+	}
+
 	/**
 	 * Finishes the result partition.
 	 *
@@ -311,6 +396,14 @@ public class ResultPartition implements ResultPartitionWriter, BufferPoolOwner {
 				this.cause = cause;
 			}
 
+			// Wake up producers waiting for local consumers
+			for (int i = 0; i < objectHandoverQueues.length(); i++) {
+				ObjectHandoverQueue objectHandoverQueue = objectHandoverQueues.get(i);
+				if (objectHandoverQueue != null) {
+					objectHandoverQueue.release();
+				}
+			}
+
 			// Release all subpartitions
 			for (ResultSubpartition subpartition : subpartitions) {
 				try {
@@ -28,6 +28,8 @@ import org.apache.flink.shaded.guava18.com.google.common.collect.Table;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
 import java.io.IOException;
 import java.util.Map;
 
@@ -69,6 +71,19 @@ public class ResultPartitionManager implements ResultPartitionProvider {
 			int subpartitionIndex,
 			BufferAvailabilityListener availabilityListener) throws IOException {
 
+		return createSubpartitionView(partitionId, subpartitionIndex, availabilityListener, null);
+	}
+
+	/**
+	 * Creates a view of the subpartition and, if given, registers the queue through which a local consumer takes
+	 * records by reference, see {@link ObjectHandoverQueue}.
+	 */
+	public ResultSubpartitionView createSubpartitionView(
+			ResultPartitionID partitionId,
+			int subpartitionIndex,
+			BufferAvailabilityListener availabilityListener,
+			@Nullable ObjectHandoverQueue objectHandoverQueue) throws IOException {
+
 		synchronized (registeredPartitions) {
 			final ResultPartition partition = registeredPartitions.get(partitionId.getProducerId(),
 					partitionId.getPartitionId());
@@ -79,6 +94,10 @@ public class ResultPartitionManager implements ResultPartitionProvider {
 
 			LOG.debug("Requesting subpartition {} of {}.", subpartitionIndex, partition);
 
+			if (objectHandoverQueue != null) {
+				partition.registerObjectHandoverQueue(subpartitionIndex, objectHandoverQueue);
+			}
+
 			return partition.createSubpartitionView(subpartitionIndex, availabilityListener);
 		}
 	}
@@ -19,6 +19,9 @@
 package org.apache.flink.runtime.io.network.partition.consumer;
 
 import org.apache.flink.runtime.event.TaskEvent;
+import org.apache.flink.runtime.io.network.partition.ObjectHandoverQueue;
+
+import javax.annotation.Nullable;
 
 import java.io.IOException;
 import java.util.Optional;
@@ -109,4 +112,16 @@ public interface InputGate {
 	void registerListener(InputGateListener listener);
 
 	int getPageSize();
+
+	/**
+	 * Lets the local channels of this gate take records by reference from their producers, see
+	 * {@link ObjectHandoverQueue}. This must be called before the partitions are requested.
+	 */
+	void enableObjectHandover(int capacity);
+
+	/**
+	 * Returns the queue through which the channel takes records by reference, or null if it does not.
+	 */
+	@Nullable
+	ObjectHandoverQueue getObjectHandoverQueue(int channelIndex);
 }
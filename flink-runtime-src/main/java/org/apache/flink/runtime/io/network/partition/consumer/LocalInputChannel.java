@@ -22,6 +22,7 @@ import org.apache.flink.runtime.event.TaskEvent;
 import org.apache.flink.runtime.execution.CancelTaskException;
 import org.apache.flink.runtime.io.network.TaskEventDispatcher;
 import org.apache.flink.runtime.io.network.partition.BufferAvailabilityListener;
+import org.apache.flink.runtime.io.network.partition.ObjectHandoverQueue;
 import org.apache.flink.runtime.io.network.partition.PartitionNotFoundException;
 import org.apache.flink.runtime.io.network.partition.ResultPartitionID;
 import org.apache.flink.runtime.io.network.partition.ResultPartitionManager;
@@ -32,6 +33,8 @@ import org.apache.flink.runtime.metrics.groups.TaskIOMetricGroup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
 import java.io.IOException;
 import java.util.Optional;
 import java.util.Timer;
@@ -62,6 +65,10 @@ public class LocalInputChannel extends InputChannel implements BufferAvailabilit
 
 	private volatile boolean isReleased;
 
+	/** The queue through which the producer hands over records by reference, null if disabled. */
+	@Nullable
+	private volatile ObjectHandoverQueue objectHandoverQueue;
+
 	public LocalInputChannel(
 		SingleInputGate inputGate,
 		int channelIndex,
@@ -108,8 +115,12 @@ public class LocalInputChannel extends InputChannel implements BufferAvailabilit
 					this, subpartitionIndex, partitionId);
 
 				try {
+					if (objectHandoverQueue == null) {
+						objectHandoverQueue = inputGate.createObjectHandoverQueue();
+					}
+
 					ResultSubpartitionView subpartitionView = partitionManager.createSubpartitionView(
-						partitionId, subpartitionIndex, this);
+						partitionId, subpartitionIndex, this, objectHandoverQueue);
 
 					if (subpartitionView == null) {
 						throw new IOException("Error requesting subpartition.");
@@ -257,9 +268,19 @@ public class LocalInputChannel extends InputChannel implements BufferAvailabilit
 				view.releaseAllResources();
 				subpartitionView = null;
 			}
+
+			ObjectHandoverQueue queue = objectHandoverQueue;
+			if (queue != null) {
+				queue.release();
+			}
 		}
 	}
 
+	@Nullable
+	ObjectHandoverQueue getObjectHandoverQueue() {
+		return objectHandoverQueue;
+	}
+
 	@Override
 	public String toString() {
 		return "LocalInputChannel [" + partitionId + "]";
@@ -33,6 +33,7 @@ import org.apache.flink.runtime.io.network.buffer.Buffer;
 import org.apache.flink.runtime.io.network.buffer.BufferPool;
 import org.apache.flink.runtime.io.network.buffer.BufferProvider;
 import org.apache.flink.runtime.io.network.buffer.NetworkBufferPool;
+import org.apache.flink.runtime.io.network.partition.ObjectHandoverQueue;
 import org.apache.flink.runtime.io.network.partition.ResultPartitionID;
 import org.apache.flink.runtime.io.network.partition.ResultPartitionType;
 import org.apache.flink.runtime.io.network.partition.consumer.InputChannel.BufferAndAvailability;
@@ -45,6 +46,8 @@ import org.apache.flink.runtime.taskmanager.TaskActions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
 import java.io.IOException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
@@ -183,6 +186,9 @@ public class SingleInputGate implements InputGate {
 	/** A timer to retrigger local partition requests. Only initialized if actually needed. */
 	private Timer retriggerLocalRequestTimer;
 
+	/** Capacity of the queues through which local channels take records by reference, -1 if disabled. */
+	private volatile int objectHandoverCapacity = -1;
+
 	public SingleInputGate(
 		String owningTaskName,
 		JobID jobId,
@@ -475,6 +481,42 @@ public class SingleInputGate implements InputGate {
 		return true;
 	}
 
+	@Override
+	public void enableObjectHandover(int capacity) {
+		checkArgument(capacity > 0, "The capacity must be positive.");
+		synchronized (requestLock) {
+			checkState(!requestedPartitionsFlag, "Partitions have already been requested.");
+			this.objectHandoverCapacity = capacity;
+		}
+	}
+
+	/**
+	 * Creates the queue for a local channel that requests its subpartition, or returns null if object handover is not
+	 * enabled.
+	 */
+	@Nullable
+	ObjectHandoverQueue createObjectHandoverQueue() {
+		int capacity = objectHandoverCapacity;
+		return capacity > 0 ? new ObjectHandoverQueue(capacity) : null;
+	}
+
+	@Override
+	public ObjectHandoverQueue getObjectHandoverQueue(int channelIndex) {
+		if (objectHandoverCapacity <= 0) {
+			return null;
+		}
+		synchronized (requestLock) {
+			for (InputChannel inputChannel : inputChannels.values()) {
+				if (inputChannel.getChannelIndex() == channelIndex) {
+					return inputChannel instanceof LocalInputChannel ?
+						((LocalInputChannel) inputChannel).getObjectHandoverQueue() :
+						null;
+				}
+			}
+		}
+		return null;
+	}
+
 	@Override
 	public void requestPartitions() throws IOException, InterruptedException {
 		synchronized (requestLock) {
@@ -20,6 +20,7 @@ package org.apache.flink.runtime.io.network.partition.consumer;
 
 import org.apache.flink.runtime.event.TaskEvent;
 import org.apache.flink.runtime.io.network.api.EndOfPartitionEvent;
+import org.apache.flink.runtime.io.network.partition.ObjectHandoverQueue;
 
 import org.apache.flink.shaded.guava18.com.google.common.collect.Maps;
 import org.apache.flink.shaded.guava18.com.google.common.collect.Sets;
@@ -251,6 +252,24 @@ public class UnionInputGate implements InputGate, InputGateListener {
 		}
 	}
 
+	@Override
+	public void enableObjectHandover(int capacity) {
+		for (InputGate inputGate : inputGates) {
+			inputGate.enableObjectHandover(capacity);
+		}
+	}
+
+	@Override
+	public ObjectHandoverQueue getObjectHandoverQueue(int channelIndex) {
+		for (InputGate inputGate : inputGates) {
+			int channelIndexOffset = inputGateToIndexOffsetMap.get(inputGate);
+			if (channelIndex >= channelIndexOffset && channelIndex < channelIndexOffset + inputGate.getNumberOfInputChannels()) {
+				return inputGate.getObjectHandoverQueue(channelIndex - channelIndexOffset);
+			}
+		}
+		return null;
+	}
+
 	@Override
 	public int getPageSize() {
 		int pageSize = -1;
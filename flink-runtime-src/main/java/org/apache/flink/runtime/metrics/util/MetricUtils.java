@@ -25,8 +25,11 @@ import org.apache.flink.configuration.MetricOptions;
 import org.apache.flink.metrics.Gauge;
 import org.apache.flink.metrics.MetricGroup;
 import org.apache.flink.runtime.clusterframework.BootstrapTools;
+import org.apache.flink.runtime.io.network.ConnectionManager;
 import org.apache.flink.runtime.io.network.NetworkEnvironment;
 import org.apache.flink.runtime.io.network.buffer.NetworkBufferPool;
+import org.apache.flink.runtime.io.network.netty.NettyConnectionManager;
+import org.apache.flink.runtime.io.network.netty.NetworkCompressionStatistics;
 import org.apache.flink.runtime.metrics.MetricNames;
 import org.apache.flink.runtime.metrics.MetricRegistry;
 import org.apache.flink.runtime.metrics.groups.JobManagerMetricGroup;
@@ -145,6 +148,24 @@ public class MetricUtils {
 		final NetworkBufferPool networkBufferPool = network.getNetworkBufferPool();
 		metrics.<Integer, Gauge<Integer>>gauge("TotalMemorySegments", networkBufferPool::getTotalNumberOfMemorySegments);
 		metrics.<Integer, Gauge<Integer>>gauge("AvailableMemorySegments", networkBufferPool::getNumberOfAvailableMemorySegments);
+
+		final ConnectionManager connectionManager = network.getConnectionManager();
+		if (connectionManager instanceof NettyConnectionManager) {
+			instantiateNetworkCompressionMetrics(
+				metrics.addGroup("Compression"),
+				((NettyConnectionManager) connectionManager).getCompressionStatistics());
+		}
+	}
+
+	private static void instantiateNetworkCompressionMetrics(
+		MetricGroup metrics,
+		final NetworkCompressionStatistics statistics) {
+
+		metrics.<Long, Gauge<Long>>gauge("CompressedBuffers", statistics::getNumCompressedBuffers);
+		metrics.<Long, Gauge<Long>>gauge("IncompressibleBuffers", statistics::getNumIncompressibleBuffers);
+		metrics.<Double, Gauge<Double>>gauge("CompressionRatio", statistics::getCompressionRatio);
+		metrics.<Long, Gauge<Long>>gauge("DecompressedBuffers", statistics::getNumDecompressedBuffers);
+		metrics.<Double, Gauge<Double>>gauge("DecompressionRatio", statistics::getDecompressionRatio);
 	}
 
 	private static void instantiateClassLoaderMetrics(MetricGroup metrics) {
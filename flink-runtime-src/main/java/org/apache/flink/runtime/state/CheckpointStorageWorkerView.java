@@ -68,4 +68,11 @@ public interface CheckpointStorageWorkerView {
 	 * @throws IOException Thrown, if the stream cannot be opened.
 	 */
 	CheckpointStreamFactory.CheckpointStateOutputStream createTaskOwnedStateStream() throws IOException;
+
+	/**
+	 * Releases the resources that this view holds for the task, e.g. open files. Called when the task is disposed,
+	 * after which no more checkpoint streams are created through this view.
+	 */
+	default void dispose() {
+	}
 }
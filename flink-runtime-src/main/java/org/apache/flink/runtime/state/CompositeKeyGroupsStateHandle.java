@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.state;
+
+import org.apache.flink.util.ExceptionUtils;
+import org.apache.flink.util.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A handle to the keyed state of a backend that was written to several streams in parallel. Every stream holds the
+ * key-groups of a contiguous slice of the backend's key-group range and is referenced by one
+ * {@link KeyGroupsStateHandle} with its own {@link KeyGroupRangeOffsets}. The slices are ordered by key-group and
+ * together cover the key-group range of this handle.
+ */
+public class CompositeKeyGroupsStateHandle implements KeyedStateHandle {
+
+	private static final long serialVersionUID = 1L;
+
+	/** The handles to the slices of the key-group range, ordered by key-group. */
+	private final List<KeyGroupsStateHandle> keyGroupsStateHandles;
+
+	/** The key-group range spanned by all slices. */
+	private final KeyGroupRange keyGroupRange;
+
+	public CompositeKeyGroupsStateHandle(List<KeyGroupsStateHandle> keyGroupsStateHandles) {
+		Preconditions.checkNotNull(keyGroupsStateHandles);
+		Preconditions.checkArgument(!keyGroupsStateHandles.isEmpty(), "The handle needs at least one slice.");
+
+		this.keyGroupsStateHandles = Collections.unmodifiableList(new ArrayList<>(keyGroupsStateHandles));
+		this.keyGroupRange = KeyGroupRange.of(
+			keyGroupsStateHandles.get(0).getKeyGroupRange().getStartKeyGroup(),
+			keyGroupsStateHandles.get(keyGroupsStateHandles.size() - 1).getKeyGroupRange().getEndKeyGroup());
+	}
+
+	/**
+	 * Returns the handles to the slices of the key-group range, ordered by key-group.
+	 */
+	public List<KeyGroupsStateHandle> getKeyGroupsStateHandles() {
+		return keyGroupsStateHandles;
+	}
+
+	@Override
+	public KeyGroupRange getKeyGroupRange() {
+		return keyGroupRange;
+	}
+
+	/**
+	 * Returns a handle to the slices that intersect with the given key-group range, each reduced to the intersection,
+	 * or null if no slice intersects with the range.
+	 */
+	@Override
+	public KeyedStateHandle getIntersection(KeyGroupRange keyGroupRange) {
+		List<KeyGroupsStateHandle> intersections = new ArrayList<>(keyGroupsStateHandles.size());
+		for (KeyGroupsStateHandle keyGroupsStateHandle : keyGroupsStateHandles) {
+			KeyGroupsStateHandle intersection = keyGroupsStateHandle.getIntersection(keyGroupRange);
+			if (intersection.getKeyGroupRange().getNumberOfKeyGroups() > 0) {
+				intersections.add(intersection);
+			}
+		}
+
+		if (intersections.isEmpty()) {
+			return null;
+		} else if (intersections.size() == 1) {
+			return intersections.get(0);
+		} else {
+			return new CompositeKeyGroupsStateHandle(intersections);
+		}
+	}
+
+	@Override
+	public void registerSharedStates(SharedStateRegistry stateRegistry) {
+		for (KeyGroupsStateHandle keyGroupsStateHandle : keyGroupsStateHandles) {
+			keyGroupsStateHandle.registerSharedStates(stateRegistry);
+		}
+	}
+
+	@Override
+	public void discardState() throws Exception {
+		Exception exception = null;
+		for (KeyGroupsStateHandle keyGroupsStateHandle : keyGroupsStateHandles) {
+			try {
+				keyGroupsStateHandle.discardState();
+			} catch (Exception e) {
+				exception = ExceptionUtils.firstOrSuppressed(e, exception);
+			}
+		}
+
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	@Override
+	public long getStateSize() {
+		long stateSize = 0L;
+		for (KeyGroupsStateHandle keyGroupsStateHandle : keyGroupsStateHandles) {
+			stateSize += keyGroupsStateHandle.getStateSize();
+		}
+		return stateSize;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+
+		if (!(o instanceof CompositeKeyGroupsStateHandle)) {
+			return false;
+		}
+
+		CompositeKeyGroupsStateHandle that = (CompositeKeyGroupsStateHandle) o;
+		return keyGroupsStateHandles.equals(that.keyGroupsStateHandles);
+	}
+
+	@Override
+	public int hashCode() {
+		return keyGroupsStateHandles.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return "CompositeKeyGroupsStateHandle{" +
+			"keyGroupRange=" + keyGroupRange +
+			", keyGroupsStateHandles=" + keyGroupsStateHandles +
+			'}';
+	}
+}
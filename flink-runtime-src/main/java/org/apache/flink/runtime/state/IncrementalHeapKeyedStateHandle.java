@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.state;
+
+import org.apache.flink.runtime.state.filesystem.SegmentFileStateHandle;
+import org.apache.flink.util.Preconditions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The handle to an incremental snapshot of the heap keyed state backend.
+ *
+ * <p>The snapshot consists of shared files that hold complete images of key-groups, and of a meta state that holds the
+ * meta information of the states and, for every key-group, the shared file and offset of its latest image. Shared
+ * files that were written by previous checkpoints are only placeholders until the handle is registered with a
+ * {@link SharedStateRegistry}, which replaces them with the registered originals.
+ *
+ * <p>This is deliberately not an {@link IncrementalKeyedStateHandle}: the format of the files is specific to the heap
+ * backend, and other backends must not mistake them for their own incremental snapshots.
+ */
+public class IncrementalHeapKeyedStateHandle implements KeyedStateHandle {
+
+	private static final Logger LOG = LoggerFactory.getLogger(IncrementalHeapKeyedStateHandle.class);
+
+	private static final long serialVersionUID = 1L;
+
+	/** Identifies the backend which created this state handle, used in the keys for the {@link SharedStateRegistry}. */
+	private final UUID backendIdentifier;
+
+	/** The key-group range covered by this state handle. */
+	private final KeyGroupRange keyGroupRange;
+
+	/** The checkpoint id. */
+	private final long checkpointId;
+
+	/** The shared files that hold the images of the key-groups. */
+	private final Map<StateHandleID, StreamStateHandle> sharedState;
+
+	/** The meta information of the states and the location of every key-group. */
+	private final StreamStateHandle metaStateHandle;
+
+	/** The registry that owns the shared state, null if the handle was not registered yet. */
+	private transient SharedStateRegistry sharedStateRegistry;
+
+	public IncrementalHeapKeyedStateHandle(
+		UUID backendIdentifier,
+		KeyGroupRange keyGroupRange,
+		long checkpointId,
+		Map<StateHandleID, StreamStateHandle> sharedState,
+		StreamStateHandle metaStateHandle) {
+
+		this.backendIdentifier = Preconditions.checkNotNull(backendIdentifier);
+		this.keyGroupRange = Preconditions.checkNotNull(keyGroupRange);
+		this.checkpointId = checkpointId;
+		this.sharedState = Preconditions.checkNotNull(sharedState);
+		this.metaStateHandle = Preconditions.checkNotNull(metaStateHandle);
+		this.sharedStateRegistry = null;
+	}
+
+	@Nonnull
+	public UUID getBackendIdentifier() {
+		return backendIdentifier;
+	}
+
+	@Override
+	public KeyGroupRange getKeyGroupRange() {
+		return keyGroupRange;
+	}
+
+	public long getCheckpointId() {
+		return checkpointId;
+	}
+
+	public Map<StateHandleID, StreamStateHandle> getSharedState() {
+		return sharedState;
+	}
+
+	public StreamStateHandle getMetaStateHandle() {
+		return metaStateHandle;
+	}
+
+	/**
+	 * Returns this handle if its key-group range intersects with the given range. The meta state locates every
+	 * key-group, so a restoring backend reads only the key-groups of its own range.
+	 */
+	@Override
+	public KeyedStateHandle getIntersection(KeyGroupRange keyGroupRange) {
+		return KeyGroupRange.EMPTY_KEY_GROUP_RANGE.equals(this.keyGroupRange.getIntersection(keyGroupRange)) ?
+			null : this;
+	}
+
+	@Override
+	public void discardState() throws Exception {
+		final SharedStateRegistry registry = this.sharedStateRegistry;
+
+		try {
+			metaStateHandle.discardState();
+		} catch (Exception e) {
+			LOG.warn("Could not properly discard meta data.", e);
+		}
+
+		if (registry != null) {
+			for (StateHandleID stateHandleID : sharedState.keySet()) {
+				registry.unregisterReference(createSharedStateRegistryKey(stateHandleID));
+			}
+		} else {
+			// not registered, so all files that are not placeholders were created by this handle
+			try {
+				StateUtil.bestEffortDiscardAllStateObjects(sharedState.values());
+			} catch (Exception e) {
+				LOG.warn("Could not properly discard shared key-group files.", e);
+			}
+		}
+	}
+
+	@Override
+	public long getStateSize() {
+		long size = StateUtil.getStateSize(metaStateHandle);
+		for (StreamStateHandle sharedStateHandle : sharedState.values()) {
+			size += sharedStateHandle.getStateSize();
+		}
+		return size;
+	}
+
+	@Override
+	public void registerSharedStates(SharedStateRegistry stateRegistry) {
+		Preconditions.checkState(
+			sharedStateRegistry != stateRegistry,
+			"The state handle has already registered its shared states to the given registry.");
+
+		sharedStateRegistry = Preconditions.checkNotNull(stateRegistry);
+
+		SegmentFileStateHandle.registerIfSegment(metaStateHandle, stateRegistry);
+
+		for (Map.Entry<StateHandleID, StreamStateHandle> sharedStateHandle : sharedState.entrySet()) {
+			SharedStateRegistry.Result result = stateRegistry.registerReference(
+				createSharedStateRegistryKey(sharedStateHandle.getKey()),
+				sharedStateHandle.getValue());
+
+			// replaces placeholders and re-uploads with the registered handles
+			sharedStateHandle.setValue(result.getReference());
+		}
+	}
+
+	private SharedStateRegistryKey createSharedStateRegistryKey(StateHandleID stateHandleID) {
+		return new SharedStateRegistryKey(String.valueOf(backendIdentifier) + '-' + keyGroupRange, stateHandleID);
+	}
+
+	@Override
+	public String toString() {
+		return "IncrementalHeapKeyedStateHandle{" +
+			"backendIdentifier=" + backendIdentifier +
+			", keyGroupRange=" + keyGroupRange +
+			", checkpointId=" + checkpointId +
+			", sharedState=" + sharedState +
+			", metaStateHandle=" + metaStateHandle +
+			", registered=" + (sharedStateRegistry != null) +
+			'}';
+	}
+}
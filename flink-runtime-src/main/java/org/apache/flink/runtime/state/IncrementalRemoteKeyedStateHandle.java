@@ -19,6 +19,7 @@
 package org.apache.flink.runtime.state;
 
 import org.apache.flink.annotation.VisibleForTesting;
+import org.apache.flink.runtime.state.filesystem.SegmentFileStateHandle;
 import org.apache.flink.util.Preconditions;
 
 import org.slf4j.Logger;
@@ -234,6 +235,12 @@ public class IncrementalRemoteKeyedStateHandle implements IncrementalKeyedStateH
 
 		sharedStateRegistry = Preconditions.checkNotNull(stateRegistry);
 
+		// the exclusive files of the backend may be segments of files that are shared with other tasks
+		SegmentFileStateHandle.registerIfSegment(metaStateHandle, stateRegistry);
+		for (StreamStateHandle privateStateHandle : privateState.values()) {
+			SegmentFileStateHandle.registerIfSegment(privateStateHandle, stateRegistry);
+		}
+
 		LOG.trace("Registering IncrementalRemoteKeyedStateHandle for checkpoint {} from backend with id {}.",
 			checkpointId,
 			backendIdentifier);
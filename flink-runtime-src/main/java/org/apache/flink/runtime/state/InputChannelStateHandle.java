@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.state;
+
+import org.apache.flink.util.Preconditions;
+
+/**
+ * A handle to the in-flight data of the input channels of a task, persisted by an unaligned checkpoint.
+ *
+ * <p>The in-flight data is the data that a task received on an input channel after it took its snapshot, but before
+ * the checkpoint barrier of that channel arrived. The referenced stream holds a sequence of entries, each consisting of
+ * the index of the input channel (int), the number of bytes (int) and the bytes of a network buffer, in the order in
+ * which the task received them. The bytes of a channel are a contiguous part of the serialized records of the channel.
+ *
+ * <p>The channel indexes refer to the (union) input gate of the task, so the data can only be restored to a task with
+ * the same inputs and the same parallelism.
+ */
+public class InputChannelStateHandle implements StateObject {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Inner stream handle to the in-flight data. */
+	private final StreamStateHandle delegateStateHandle;
+
+	public InputChannelStateHandle(StreamStateHandle delegateStateHandle) {
+		this.delegateStateHandle = Preconditions.checkNotNull(delegateStateHandle);
+	}
+
+	/**
+	 * @return The handle to the in-flight data.
+	 */
+	public StreamStateHandle getDelegateStateHandle() {
+		return delegateStateHandle;
+	}
+
+	@Override
+	public void discardState() throws Exception {
+		delegateStateHandle.discardState();
+	}
+
+	@Override
+	public long getStateSize() {
+		return delegateStateHandle.getStateSize();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+
+		InputChannelStateHandle that = (InputChannelStateHandle) o;
+		return delegateStateHandle.equals(that.delegateStateHandle);
+	}
+
+	@Override
+	public int hashCode() {
+		return delegateStateHandle.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return "InputChannelStateHandle{" +
+			"delegateStateHandle=" + delegateStateHandle +
+			'}';
+	}
+}
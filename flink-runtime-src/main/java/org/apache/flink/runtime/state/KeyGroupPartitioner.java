@@ -263,6 +263,25 @@ public class KeyGroupPartitioner<T> {
 		}
 	}
 
+	/**
+	 * Creates a writer over the partitioned elements of the given result of {@link #partitionByKeyGroup()} that writes
+	 * the elements with the given function. This allows to write different key-groups of the same partitioning
+	 * concurrently, with one (non-threadsafe) writer function per thread.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> StateSnapshot.StateKeyGroupWriter createKeyGroupWriter(
+			@Nonnull StateSnapshot.StateKeyGroupWriter partitioningResult,
+			@Nonnull ElementWriterFunction<T> elementWriterFunction) {
+		Preconditions.checkArgument(partitioningResult instanceof PartitioningResult,
+			"Not a result of key-group partitioning: " + partitioningResult);
+		PartitioningResult<T> result = (PartitioningResult<T>) partitioningResult;
+		return new PartitioningResult<>(
+			elementWriterFunction,
+			result.firstKeyGroup,
+			result.keyGroupOffsets,
+			result.partitionedElements);
+	}
+
 	public static <T> StateSnapshotKeyGroupReader createKeyGroupPartitionReader(
 			@Nonnull ElementReaderFunction<T> readerFunction,
 			@Nonnull KeyGroupElementsConsumer<T> elementConsumer) {
@@ -20,6 +20,7 @@ package org.apache.flink.runtime.state;
 
 
 import org.apache.flink.core.fs.FSDataInputStream;
+import org.apache.flink.runtime.state.filesystem.SegmentFileStateHandle;
 import org.apache.flink.util.Preconditions;
 
 import java.io.IOException;
@@ -94,7 +95,8 @@ public class KeyGroupsStateHandle implements StreamStateHandle, KeyedStateHandle
 
 	@Override
 	public void registerSharedStates(SharedStateRegistry stateRegistry) {
-		// No shared states
+		// the key-groups are only shared if they were appended to a file with the state of other tasks
+		SegmentFileStateHandle.registerIfSegment(stateHandle, stateRegistry);
 	}
 
 	@Override
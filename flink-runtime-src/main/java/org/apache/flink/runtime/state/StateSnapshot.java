@@ -24,6 +24,7 @@ import org.apache.flink.runtime.state.metainfo.StateMetaInfoSnapshot;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import java.io.IOException;
 
@@ -46,6 +47,17 @@ public interface StateSnapshot {
 	@Nonnull
 	StateKeyGroupWriter getKeyGroupWriter();
 
+	/**
+	 * Returns an additional {@link StateKeyGroupWriter} that can write key-groups concurrently to the writer from
+	 * {@link #getKeyGroupWriter()} and to other writers from this method, or null if the snapshot does not support
+	 * concurrent writers. This method must be called in the asynchronous part of the snapshot, after
+	 * {@link #getKeyGroupWriter()}.
+	 */
+	@Nullable
+	default StateKeyGroupWriter getConcurrentKeyGroupWriter() {
+		return null;
+	}
+
 	/**
 	 * Returns a snapshot of the state's meta data.
 	 */
@@ -30,6 +30,7 @@ import org.apache.flink.runtime.state.filesystem.FsCheckpointStreamFactory.FsChe
 import javax.annotation.Nullable;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.apache.flink.util.Preconditions.checkArgument;
 import static org.apache.flink.util.Preconditions.checkNotNull;
@@ -49,6 +50,12 @@ public class FsCheckpointStorage extends AbstractFsCheckpointStorage {
 
 	private final int fileSizeThreshold;
 
+	/** The size up to which exclusive state is appended to shared segment files, -1 to write a file per stream. */
+	private final long segmentFileMaxSize;
+
+	/** Whether this storage holds a reference to the segment files of the job, see {@link #dispose()}. */
+	private final AtomicBoolean retainsSegmentFiles = new AtomicBoolean();
+
 	public FsCheckpointStorage(
 			Path checkpointBaseDirectory,
 			@Nullable Path defaultSavepointDirectory,
@@ -59,7 +66,23 @@ public class FsCheckpointStorage extends AbstractFsCheckpointStorage {
 				checkpointBaseDirectory,
 				defaultSavepointDirectory,
 				jobId,
-				fileSizeThreshold);
+				fileSizeThreshold,
+				-1L);
+	}
+
+	public FsCheckpointStorage(
+			Path checkpointBaseDirectory,
+			@Nullable Path defaultSavepointDirectory,
+			JobID jobId,
+			int fileSizeThreshold,
+			long segmentFileMaxSize) throws IOException {
+
+		this(checkpointBaseDirectory.getFileSystem(),
+				checkpointBaseDirectory,
+				defaultSavepointDirectory,
+				jobId,
+				fileSizeThreshold,
+				segmentFileMaxSize);
 	}
 
 	public FsCheckpointStorage(
@@ -69,6 +92,17 @@ public class FsCheckpointStorage extends AbstractFsCheckpointStorage {
 			JobID jobId,
 			int fileSizeThreshold) throws IOException {
 
+		this(fs, checkpointBaseDirectory, defaultSavepointDirectory, jobId, fileSizeThreshold, -1L);
+	}
+
+	public FsCheckpointStorage(
+			FileSystem fs,
+			Path checkpointBaseDirectory,
+			@Nullable Path defaultSavepointDirectory,
+			JobID jobId,
+			int fileSizeThreshold,
+			long segmentFileMaxSize) throws IOException {
+
 		super(jobId, defaultSavepointDirectory);
 
 		checkArgument(fileSizeThreshold >= 0);
@@ -78,6 +112,7 @@ public class FsCheckpointStorage extends AbstractFsCheckpointStorage {
 		this.sharedStateDirectory = new Path(checkpointsDirectory, CHECKPOINT_SHARED_STATE_DIR);
 		this.taskOwnedStateDirectory = new Path(checkpointsDirectory, CHECKPOINT_TASK_OWNED_STATE_DIR);
 		this.fileSizeThreshold = fileSizeThreshold;
+		this.segmentFileMaxSize = segmentFileMaxSize;
 
 		// initialize the dedicated directories
 		fileSystem.mkdirs(checkpointsDirectory);
@@ -116,7 +151,8 @@ public class FsCheckpointStorage extends AbstractFsCheckpointStorage {
 				sharedStateDirectory,
 				taskOwnedStateDirectory,
 				CheckpointStorageLocationReference.getDefault(),
-				fileSizeThreshold);
+				fileSizeThreshold,
+				segmentFileMaxSize);
 	}
 
 	@Override
@@ -128,13 +164,19 @@ public class FsCheckpointStorage extends AbstractFsCheckpointStorage {
 			// default reference, construct the default location for that particular checkpoint
 			final Path checkpointDir = createCheckpointDirectory(checkpointsDirectory, checkpointId);
 
+			// keep the segment files of the job open until the task disposes this storage
+			if (segmentFileMaxSize > 0 && retainsSegmentFiles.compareAndSet(false, true)) {
+				SegmentFilePool.getInstance().retainJob(checkpointsDirectory);
+			}
+
 			return new FsCheckpointStorageLocation(
 					fileSystem,
 					checkpointDir,
 					sharedStateDirectory,
 					taskOwnedStateDirectory,
 					reference,
-					fileSizeThreshold);
+					fileSizeThreshold,
+					segmentFileMaxSize);
 		}
 		else {
 			// location encoded in the reference
@@ -159,6 +201,17 @@ public class FsCheckpointStorage extends AbstractFsCheckpointStorage {
 				fileSizeThreshold);
 	}
 
+	/**
+	 * Releases the reference of this storage to the segment files of the job, so that the files are closed once no
+	 * task of the job in this process writes checkpoints anymore.
+	 */
+	@Override
+	public void dispose() {
+		if (retainsSegmentFiles.compareAndSet(true, false)) {
+			SegmentFilePool.getInstance().releaseJob(checkpointsDirectory);
+		}
+	}
+
 	@Override
 	protected CheckpointStorageLocation createSavepointLocation(FileSystem fs, Path location) {
 		final CheckpointStorageLocationReference reference = encodePathAsReference(location);
@@ -58,7 +58,19 @@ public class FsCheckpointStorageLocation extends FsCheckpointStreamFactory imple
 			CheckpointStorageLocationReference reference,
 			int fileStateSizeThreshold) {
 
-		super(fileSystem, checkpointDir, sharedStateDir, fileStateSizeThreshold);
+		this(fileSystem, checkpointDir, sharedStateDir, taskOwnedStateDir, reference, fileStateSizeThreshold, -1L);
+	}
+
+	public FsCheckpointStorageLocation(
+			FileSystem fileSystem,
+			Path checkpointDir,
+			Path sharedStateDir,
+			Path taskOwnedStateDir,
+			CheckpointStorageLocationReference reference,
+			int fileStateSizeThreshold,
+			long segmentFileMaxSize) {
+
+		super(fileSystem, checkpointDir, sharedStateDir, fileStateSizeThreshold, segmentFileMaxSize);
 
 		checkArgument(fileStateSizeThreshold >= 0);
 
@@ -49,6 +49,11 @@ import static org.apache.flink.util.Preconditions.checkNotNull;
  * files are written, but the state is returned inline in the state handle instead. This reduces
  * the problem of many small files that have only few bytes.
  *
+ * <p>If a maximum segment file size is configured, the streams for checkpoint exclusive state
+ * do not create a file each, but append their data as segments to files of the
+ * {@link SegmentFilePool} that are shared by all streams of the TaskManager that write to the
+ * same checkpoint directory, see {@link FsSegmentCheckpointStateOutputStream}.
+ *
  * <h2>Note on directory creation</h2>
  *
  * <p>The given target directory must already exist, this factory does not ensure that the
@@ -84,6 +89,9 @@ public class FsCheckpointStreamFactory implements CheckpointStreamFactory {
 	/** Cached handle to the file system for file operations. */
 	private final FileSystem filesystem;
 
+	/** The size up to which the streams for exclusive state append to a shared file, -1 to write a file per stream. */
+	private final long segmentFileMaxSize;
+
 	/**
 	 * Creates a new stream factory that stores its checkpoint data in the file system and location
 	 * defined by the given Path.
@@ -103,6 +111,32 @@ public class FsCheckpointStreamFactory implements CheckpointStreamFactory {
 			Path sharedStateDirectory,
 			int fileStateSizeThreshold) {
 
+		this(fileSystem, checkpointDirectory, sharedStateDirectory, fileStateSizeThreshold, -1L);
+	}
+
+	/**
+	 * Creates a new stream factory that stores its checkpoint data in the file system and location
+	 * defined by the given Path, and optionally coalesces the checkpoint exclusive state into shared
+	 * segment files.
+	 *
+	 * <p><b>Important:</b> The given checkpoint directory must already exist. Refer to the class-level
+	 * JavaDocs for an explanation why this factory must not try and create the checkpoints.
+	 *
+	 * @param fileSystem The filesystem to write to.
+	 * @param checkpointDirectory The directory for checkpoint exclusive state data.
+	 * @param sharedStateDirectory The directory for shared checkpoint data.
+	 * @param fileStateSizeThreshold State up to this size will be stored as part of the metadata,
+	 *                             rather than in files
+	 * @param segmentFileMaxSize The size up to which exclusive state is appended to shared segment
+	 *                           files, or -1 to write a file per stream.
+	 */
+	public FsCheckpointStreamFactory(
+			FileSystem fileSystem,
+			Path checkpointDirectory,
+			Path sharedStateDirectory,
+			int fileStateSizeThreshold,
+			long segmentFileMaxSize) {
+
 		if (fileStateSizeThreshold < 0) {
 			throw new IllegalArgumentException("The threshold for file state size must be zero or larger.");
 		}
@@ -115,15 +149,24 @@ public class FsCheckpointStreamFactory implements CheckpointStreamFactory {
 		this.checkpointDirectory = checkNotNull(checkpointDirectory);
 		this.sharedStateDirectory = checkNotNull(sharedStateDirectory);
 		this.fileStateThreshold = fileStateSizeThreshold;
+		this.segmentFileMaxSize = segmentFileMaxSize;
 	}
 
 	// ------------------------------------------------------------------------
 
 	@Override
-	public FsCheckpointStateOutputStream createCheckpointStateOutputStream(CheckpointedStateScope scope) throws IOException {
+	public CheckpointStreamFactory.CheckpointStateOutputStream createCheckpointStateOutputStream(
+			CheckpointedStateScope scope) throws IOException {
+
 		Path target = scope == CheckpointedStateScope.EXCLUSIVE ? checkpointDirectory : sharedStateDirectory;
 		int bufferSize = Math.max(DEFAULT_WRITE_BUFFER_SIZE, fileStateThreshold);
 
+		// shared state is referenced by later checkpoints file by file, so only exclusive state is coalesced
+		if (scope == CheckpointedStateScope.EXCLUSIVE && segmentFileMaxSize > 0) {
+			return new FsSegmentCheckpointStateOutputStream(
+				target, filesystem, bufferSize, fileStateThreshold, segmentFileMaxSize);
+		}
+
 		return new FsCheckpointStateOutputStream(target, filesystem, bufferSize, fileStateThreshold);
 	}
 
@@ -359,4 +402,220 @@ public class FsCheckpointStreamFactory implements CheckpointStreamFactory {
 			throw new IOException("Could not open output stream for state backend", latestException);
 		}
 	}
+
+	/**
+	 * A {@link CheckpointStreamFactory.CheckpointStateOutputStream} that appends its data as a segment
+	 * to a file leased from the {@link SegmentFilePool} and returns a {@link SegmentFileStateHandle}
+	 * upon closing. Like the {@link FsCheckpointStateOutputStream}, it returns small state inline and
+	 * only leases a file once the data exceeds the write buffer.
+	 *
+	 * <p>The file is returned to the pool when the handle was obtained, so that the next stream
+	 * continues after the segment. If the stream is discarded or fails, the file is closed instead,
+	 * because a concurrent close must not hand out the file while the writing thread still appends
+	 * to it. The bytes of a discarded segment remain in the file until the file is deleted.
+	 */
+	public static final class FsSegmentCheckpointStateOutputStream
+			extends CheckpointStreamFactory.CheckpointStateOutputStream {
+
+		private final byte[] writeBuffer;
+
+		private int pos;
+
+		private final int localStateThreshold;
+
+		private final Path basePath;
+
+		private final FileSystem fs;
+
+		private final long segmentFileMaxSize;
+
+		/** The leased file, null before the first flush and after the file was released. */
+		private SegmentFilePool.SegmentFile segmentFile;
+
+		private FSDataOutputStream outStream;
+
+		/** The position in the file at which the segment of this stream starts. */
+		private long segmentOffset;
+
+		private volatile boolean closed;
+
+		public FsSegmentCheckpointStateOutputStream(
+				Path basePath, FileSystem fs,
+				int bufferSize, int localStateThreshold,
+				long segmentFileMaxSize) {
+
+			if (bufferSize < localStateThreshold) {
+				throw new IllegalArgumentException();
+			}
+
+			this.basePath = basePath;
+			this.fs = fs;
+			this.writeBuffer = new byte[bufferSize];
+			this.localStateThreshold = localStateThreshold;
+			this.segmentFileMaxSize = segmentFileMaxSize;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (pos >= writeBuffer.length) {
+				flush();
+			}
+			writeBuffer[pos++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len < writeBuffer.length) {
+				// copy it into our write buffer first
+				final int remaining = writeBuffer.length - pos;
+				if (len > remaining) {
+					// copy as much as fits
+					System.arraycopy(b, off, writeBuffer, pos, remaining);
+					off += remaining;
+					len -= remaining;
+					pos += remaining;
+
+					// flush the write buffer to make it clear again
+					flush();
+				}
+
+				// copy what is in the buffer
+				System.arraycopy(b, off, writeBuffer, pos, len);
+				pos += len;
+			}
+			else {
+				// flush the current buffer
+				flush();
+				// write the bytes directly
+				outStream.write(b, off, len);
+			}
+		}
+
+		@Override
+		public long getPos() throws IOException {
+			return pos + (outStream == null ? 0 : outStream.getPos() - segmentOffset);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (!closed) {
+				// lease a file if this is the first flush
+				if (outStream == null) {
+					leaseFile();
+				}
+
+				// now flush
+				if (pos > 0) {
+					outStream.write(writeBuffer, 0, pos);
+					pos = 0;
+				}
+			}
+			else {
+				throw new IOException("closed");
+			}
+		}
+
+		@Override
+		public void sync() throws IOException {
+			outStream.sync();
+		}
+
+		/**
+		 * Checks whether the stream is closed.
+		 * @return True if the stream was closed, false if it is still open.
+		 */
+		public boolean isClosed() {
+			return closed;
+		}
+
+		/**
+		 * If the stream is only closed, the leased file is closed and the segment is left as garbage
+		 * in the file. This method throws no exception.
+		 */
+		@Override
+		public void close() {
+			if (!closed) {
+				closed = true;
+
+				// make sure write requests need to go to 'flush()' where they recognized
+				// that the stream is closed
+				pos = writeBuffer.length;
+
+				releaseFile(false);
+			}
+		}
+
+		@Nullable
+		@Override
+		public StreamStateHandle closeAndGetHandle() throws IOException {
+			// check if there was nothing ever written
+			if (outStream == null && pos == 0) {
+				return null;
+			}
+
+			synchronized (this) {
+				if (!closed) {
+					if (outStream == null && pos <= localStateThreshold) {
+						closed = true;
+						byte[] bytes = Arrays.copyOf(writeBuffer, pos);
+						pos = writeBuffer.length;
+						return new ByteStreamStateHandle(new Path(basePath, UUID.randomUUID().toString()).toString(), bytes);
+					}
+					else {
+						boolean reusable = false;
+						try {
+							flush();
+
+							pos = writeBuffer.length;
+
+							Path filePath = segmentFile.getPath();
+							long segmentEnd = outStream.getPos();
+
+							// the segment must be readable before the file is closed
+							outStream.sync();
+
+							reusable = segmentEnd < segmentFileMaxSize;
+							return new SegmentFileStateHandle(filePath, segmentOffset, segmentEnd - segmentOffset);
+						} catch (Exception exception) {
+							throw new IOException("Could not flush and sync the segment file of the state " +
+								"stream to " + basePath + " in order to obtain the stream state handle", exception);
+						} finally {
+							closed = true;
+							releaseFile(reusable);
+						}
+					}
+				}
+				else {
+					throw new IOException("Stream has already been closed and discarded.");
+				}
+			}
+		}
+
+		private void leaseFile() throws IOException {
+			SegmentFilePool.SegmentFile file = SegmentFilePool.getInstance().acquire(fs, basePath);
+			synchronized (this) {
+				segmentFile = file;
+				outStream = file.getOutputStream();
+				segmentOffset = outStream.getPos();
+
+				if (closed) {
+					// closed concurrently while the file was leased
+					releaseFile(false);
+					throw new IOException("closed");
+				}
+			}
+		}
+
+		private void releaseFile(boolean reusable) {
+			final SegmentFilePool.SegmentFile file;
+			synchronized (this) {
+				file = segmentFile;
+				segmentFile = null;
+			}
+
+			if (file != null) {
+				SegmentFilePool.getInstance().release(file, reusable);
+			}
+		}
+	}
 }
@@ -22,7 +22,10 @@ import org.apache.flink.annotation.PublicEvolving;
 import org.apache.flink.api.common.JobID;
 import org.apache.flink.api.common.typeutils.TypeSerializer;
 import org.apache.flink.configuration.CheckpointingOptions;
+import org.apache.flink.configuration.ConfigOption;
+import org.apache.flink.configuration.ConfigOptions;
 import org.apache.flink.configuration.Configuration;
+import org.apache.flink.configuration.MemorySize;
 import org.apache.flink.core.fs.CloseableRegistry;
 import org.apache.flink.core.fs.FileSystem;
 import org.apache.flink.core.fs.Path;
@@ -40,9 +43,11 @@ import org.apache.flink.runtime.state.KeyedStateHandle;
 import org.apache.flink.runtime.state.LocalRecoveryConfig;
 import org.apache.flink.runtime.state.OperatorStateBackend;
 import org.apache.flink.runtime.state.OperatorStateHandle;
+import org.apache.flink.runtime.state.PriorityQueueSetFactory;
 import org.apache.flink.runtime.state.TaskStateManager;
 import org.apache.flink.runtime.state.heap.HeapKeyedStateBackendBuilder;
 import org.apache.flink.runtime.state.heap.HeapPriorityQueueSetFactory;
+import org.apache.flink.runtime.state.heap.OffHeapPriorityQueueSetFactory;
 import org.apache.flink.runtime.state.ttl.TtlTimeProvider;
 import org.apache.flink.util.TernaryBoolean;
 
@@ -94,6 +99,35 @@ import static org.apache.flink.util.Preconditions.checkNotNull;
  * without a default savepoint directory, it will pick up a default savepoint directory specified in the
  * Flink configuration of the running job/cluster. That behavior is implemented via the
  * {@link #configure(Configuration, ClassLoader)} method.
+ *
+ * <h1>Timers</h1>
+ *
+ * <p>By default, timers are kept as objects on the heap like all other state. Jobs with very many timers can
+ * keep them serialized in off-heap memory pages instead, see {@link #setPriorityQueueStateType(PriorityQueueStateType)}
+ * and {@link #TIMER_SERVICE_FACTORY}. Both variants use the same snapshot format.
+ *
+ * <h1>Off-heap Keyed State</h1>
+ *
+ * <p>With {@link #KEYED_STATE_STORAGE} set to {@link KeyedStateStorageType#OFF_HEAP}, the keyed state is kept serialized
+ * in pages of the managed memory of the TaskManager instead of as objects on the heap, up to
+ * {@link #KEYED_STATE_MANAGED_MEMORY_FRACTION} of the managed memory of a slot per backend. Beyond that, cold pages are
+ * spilled to the temporary directories of the TaskManager. Like with the RocksDB state backend, every access
+ * serializes the key and every read deserializes the state, and modifications of state objects must be written back
+ * explicitly. Map state is always kept on the heap. The snapshot format is the same for both variants.
+ *
+ * <h1>Incremental Checkpoints</h1>
+ *
+ * <p>With {@link #INCREMENTAL_CHECKPOINTS}, checkpoints of the keyed state only write the key-groups that were
+ * accessed since the last completed checkpoint and reference the files of that checkpoint for all other key-groups.
+ * Every {@link #INCREMENTAL_FULL_SNAPSHOT_INTERVAL} checkpoints, all key-groups are written again, so that old files
+ * can be released. Savepoints are always full snapshots.
+ *
+ * <h1>Coalesced State Files</h1>
+ *
+ * <p>With {@link #COALESCE_STATE_FILES}, the checkpoint exclusive state that exceeds the file state threshold is not
+ * written to a file per stream, but appended to files that are shared by the streams of all tasks of a TaskManager,
+ * up to {@link #COALESCED_FILE_MAX_SIZE} per file. This requires a file system that makes synced data visible before
+ * the file is closed, like HDFS or a POSIX file system.
  */
 @PublicEvolving
 public class FsStateBackend extends AbstractFileStateBackend implements ConfigurableStateBackend {
@@ -103,6 +137,77 @@ public class FsStateBackend extends AbstractFileStateBackend implements Configur
 	/** Maximum size of state that is stored with the metadata, rather than in files (1 MiByte). */
 	private static final int MAX_FILE_STATE_THRESHOLD = 1024 * 1024;
 
+	/** Choice of the implementation for priority queue state (e.g. timers). */
+	public static final ConfigOption<String> TIMER_SERVICE_FACTORY = ConfigOptions
+		.key("state.backend.fs.timer-service.factory")
+		.defaultValue(PriorityQueueStateType.HEAP.name())
+		.withDescription(String.format("This determines where the heap-based backends keep the priority queue " +
+			"state (e.g. timers). Options are either %s (objects on the JVM heap) or %s (serialized entries in " +
+			"off-heap memory pages).", PriorityQueueStateType.HEAP.name(), PriorityQueueStateType.OFF_HEAP.name()));
+
+	/** Choice of where the keyed state is kept. */
+	public static final ConfigOption<String> KEYED_STATE_STORAGE = ConfigOptions
+		.key("state.backend.fs.keyed-state.storage")
+		.defaultValue(KeyedStateStorageType.HEAP.name())
+		.withDescription(String.format("This determines where the file system state backend keeps the keyed state. " +
+			"Options are either %s (objects on the JVM heap) or %s (serialized entries in pages of the managed " +
+			"memory, spilled to local disk when the memory is exhausted). Map state is always kept on the heap.",
+			KeyedStateStorageType.HEAP.name(), KeyedStateStorageType.OFF_HEAP.name()));
+
+	/** The fraction of the managed memory of a slot that the off-heap keyed state of a backend keeps resident. */
+	public static final ConfigOption<Double> KEYED_STATE_MANAGED_MEMORY_FRACTION = ConfigOptions
+		.key("state.backend.fs.keyed-state.managed-memory-fraction")
+		.defaultValue(0.5)
+		.withDescription("The fraction of the managed memory of a slot that the keyed state of each operator keeps " +
+			"in memory, if '" + KEYED_STATE_STORAGE.key() + "' is " + KeyedStateStorageType.OFF_HEAP.name() + ". " +
+			"Cold pages beyond this fraction are spilled to local disk.");
+
+	/** Whether the heap-based keyed state is checkpointed incrementally. */
+	public static final ConfigOption<Boolean> INCREMENTAL_CHECKPOINTS = ConfigOptions
+		.key("state.backend.fs.incremental")
+		.defaultValue(false)
+		.withDescription("Option whether the file system state backend should create incremental checkpoints of " +
+			"the keyed state. Incremental checkpoints only write the key-groups that changed since the last " +
+			"completed checkpoint. The granularity of changes is determined by the maximum parallelism of the job.");
+
+	/** Number of incremental checkpoints after which all key-groups are written again. */
+	public static final ConfigOption<Integer> INCREMENTAL_FULL_SNAPSHOT_INTERVAL = ConfigOptions
+		.key("state.backend.fs.incremental.full-snapshot-interval")
+		.defaultValue(10)
+		.withDescription("The number of incremental checkpoints after which the file system state backend writes " +
+			"all key-groups again. This bounds the number of files that a checkpoint references.");
+
+	/** The number of threads that read the keyed state on restore. */
+	public static final ConfigOption<Integer> RESTORE_THREAD_NUM = ConfigOptions
+		.key("state.backend.fs.restore.thread.num")
+		.defaultValue(1)
+		.withDescription("The number of threads that read, decompress and de-serialize the key-groups of the heap " +
+			"keyed state concurrently on restore. With the default of 1, the key-groups are read by the task thread.");
+
+	/** The number of streams that a full checkpoint of the keyed state is written to in parallel. */
+	public static final ConfigOption<Integer> SNAPSHOT_THREAD_NUM = ConfigOptions
+		.key("state.backend.fs.snapshot.thread.num")
+		.defaultValue(1)
+		.withDescription("The number of threads that write a full checkpoint of the heap keyed state. The key-groups " +
+			"are divided into contiguous ranges that are written to separate files in parallel. Savepoints and " +
+			"incremental checkpoints are always written by a single thread.");
+
+	/** Whether the checkpoint exclusive state streams of a TaskManager share their files. */
+	public static final ConfigOption<Boolean> COALESCE_STATE_FILES = ConfigOptions
+		.key("state.backend.fs.coalesce-files")
+		.defaultValue(false)
+		.withDescription("Option whether the checkpoint streams of all tasks of a TaskManager append the exclusive " +
+			"state of a checkpoint to shared files, rather than creating a file per stream. This reduces the number " +
+			"of files per checkpoint, but requires a file system that makes synced data visible to readers before " +
+			"the file is closed, like HDFS or a POSIX file system, and is not suitable for object stores.");
+
+	/** The size after which a shared state file is not appended to anymore. */
+	public static final ConfigOption<String> COALESCED_FILE_MAX_SIZE = ConfigOptions
+		.key("state.backend.fs.coalesce-files.max-file-size")
+		.defaultValue("64mb")
+		.withDescription("The size after which a shared state file is closed and further state is appended to a " +
+			"new file, if '" + COALESCE_STATE_FILES.key() + "' is enabled.");
+
 	// ------------------------------------------------------------------------
 
 	/** State below this size will be stored as part of the metadata, rather than in files.
@@ -113,6 +218,44 @@ public class FsStateBackend extends AbstractFileStateBackend implements Configur
 	 * A value of 'undefined' means not yet configured, in which case the default will be used. */
 	private final TernaryBoolean asynchronousSnapshots;
 
+	/** This determines the type of priority queue state.
+	 * A value of 'null' means not yet configured, in which case the default will be used. */
+	@Nullable
+	private PriorityQueueStateType priorityQueueStateType;
+
+	/** This determines where the keyed state is kept.
+	 * A value of 'null' means not yet configured, in which case the default will be used. */
+	@Nullable
+	private KeyedStateStorageType keyedStateStorageType;
+
+	/** The fraction of the managed memory that the off-heap keyed state keeps resident.
+	 * A value of '-1' means not yet configured, in which case the default will be used. */
+	private double keyedStateManagedMemoryFraction = -1.0;
+
+	/** This determines if incremental checkpointing is enabled.
+	 * A value of 'undefined' means not yet configured, in which case the default will be used. */
+	private TernaryBoolean incrementalCheckpoints = TernaryBoolean.UNDEFINED;
+
+	/** Number of incremental checkpoints between two full ones.
+	 * A value of '-1' means not yet configured, in which case the default will be used. */
+	private int incrementalFullSnapshotInterval = -1;
+
+	/** The number of threads that read the keyed state on restore.
+	 * A value of '-1' means not yet configured, in which case the default will be used. */
+	private int numberOfRestoringThreads = -1;
+
+	/** The number of threads that write a full checkpoint of the keyed state.
+	 * A value of '-1' means not yet configured, in which case the default will be used. */
+	private int numberOfSnapshottingThreads = -1;
+
+	/** This determines if the exclusive state streams share their files.
+	 * A value of 'undefined' means not yet configured, in which case the default will be used. */
+	private TernaryBoolean coalesceStateFiles = TernaryBoolean.UNDEFINED;
+
+	/** The size after which a shared state file is not appended to anymore.
+	 * A value of '-1' means not yet configured, in which case the default will be used. */
+	private long coalescedFileMaxSize = -1L;
+
 	// -----------------------------------------------------------------------
 
 	/**
@@ -348,6 +491,40 @@ public class FsStateBackend extends AbstractFileStateBackend implements Configur
 		this.asynchronousSnapshots = original.asynchronousSnapshots.resolveUndefined(
 				configuration.getBoolean(CheckpointingOptions.ASYNC_SNAPSHOTS));
 
+		this.priorityQueueStateType = original.priorityQueueStateType != null ?
+				original.priorityQueueStateType :
+				PriorityQueueStateType.valueOf(configuration.getString(TIMER_SERVICE_FACTORY).toUpperCase());
+
+		this.keyedStateStorageType = original.keyedStateStorageType != null ?
+				original.keyedStateStorageType :
+				KeyedStateStorageType.valueOf(configuration.getString(KEYED_STATE_STORAGE).toUpperCase());
+
+		this.keyedStateManagedMemoryFraction = original.keyedStateManagedMemoryFraction > 0.0 ?
+				original.keyedStateManagedMemoryFraction :
+				configuration.getDouble(KEYED_STATE_MANAGED_MEMORY_FRACTION);
+
+		this.incrementalCheckpoints = original.incrementalCheckpoints.resolveUndefined(
+				configuration.getBoolean(INCREMENTAL_CHECKPOINTS));
+
+		this.incrementalFullSnapshotInterval = original.incrementalFullSnapshotInterval > 0 ?
+				original.incrementalFullSnapshotInterval :
+				configuration.getInteger(INCREMENTAL_FULL_SNAPSHOT_INTERVAL);
+
+		this.numberOfRestoringThreads = original.numberOfRestoringThreads > 0 ?
+				original.numberOfRestoringThreads :
+				configuration.getInteger(RESTORE_THREAD_NUM);
+
+		this.numberOfSnapshottingThreads = original.numberOfSnapshottingThreads > 0 ?
+				original.numberOfSnapshottingThreads :
+				configuration.getInteger(SNAPSHOT_THREAD_NUM);
+
+		this.coalesceStateFiles = original.coalesceStateFiles.resolveUndefined(
+				configuration.getBoolean(COALESCE_STATE_FILES));
+
+		this.coalescedFileMaxSize = original.coalescedFileMaxSize > 0 ?
+				original.coalescedFileMaxSize :
+				MemorySize.parse(configuration.getString(COALESCED_FILE_MAX_SIZE)).getBytes();
+
 		final int sizeThreshold = original.fileStateThreshold >= 0 ?
 				original.fileStateThreshold :
 				configuration.getInteger(CheckpointingOptions.FS_SMALL_FILE_THRESHOLD);
@@ -424,6 +601,170 @@ public class FsStateBackend extends AbstractFileStateBackend implements Configur
 		return asynchronousSnapshots.getOrDefault(CheckpointingOptions.ASYNC_SNAPSHOTS.defaultValue());
 	}
 
+	/**
+	 * Gets the type of the priority queue state. It will fallback to the default value, if it is not explicitly set.
+	 *
+	 * @return The type of the priority queue state.
+	 */
+	public PriorityQueueStateType getPriorityQueueStateType() {
+		return priorityQueueStateType != null ?
+				priorityQueueStateType :
+				PriorityQueueStateType.valueOf(TIMER_SERVICE_FACTORY.defaultValue());
+	}
+
+	/**
+	 * Sets the type of the priority queue state. It will fallback to the default value, if it is not explicitly set.
+	 */
+	public void setPriorityQueueStateType(PriorityQueueStateType priorityQueueStateType) {
+		this.priorityQueueStateType = checkNotNull(priorityQueueStateType);
+	}
+
+	/**
+	 * Gets where the keyed state is kept. It will fallback to the default value, if it is not explicitly set.
+	 *
+	 * @return The storage type of the keyed state.
+	 */
+	public KeyedStateStorageType getKeyedStateStorageType() {
+		return keyedStateStorageType != null ?
+				keyedStateStorageType :
+				KeyedStateStorageType.valueOf(KEYED_STATE_STORAGE.defaultValue());
+	}
+
+	/**
+	 * Sets where the keyed state is kept.
+	 */
+	public void setKeyedStateStorageType(KeyedStateStorageType keyedStateStorageType) {
+		this.keyedStateStorageType = checkNotNull(keyedStateStorageType);
+	}
+
+	/**
+	 * Gets the fraction of the managed memory of a slot that the off-heap keyed state of a backend keeps resident.
+	 *
+	 * <p>If not explicitly configured, this is the default value of {@link #KEYED_STATE_MANAGED_MEMORY_FRACTION}.
+	 */
+	public double getKeyedStateManagedMemoryFraction() {
+		return keyedStateManagedMemoryFraction > 0.0 ?
+				keyedStateManagedMemoryFraction :
+				KEYED_STATE_MANAGED_MEMORY_FRACTION.defaultValue();
+	}
+
+	/**
+	 * Sets the fraction of the managed memory of a slot that the off-heap keyed state of a backend keeps resident.
+	 */
+	public void setKeyedStateManagedMemoryFraction(double keyedStateManagedMemoryFraction) {
+		checkArgument(keyedStateManagedMemoryFraction > 0.0 && keyedStateManagedMemoryFraction <= 1.0,
+			"The managed memory fraction must be in (0, 1].");
+		this.keyedStateManagedMemoryFraction = keyedStateManagedMemoryFraction;
+	}
+
+	/**
+	 * Gets whether incremental checkpoints of the keyed state are enabled.
+	 *
+	 * <p>If not explicitly configured, this is the default value of {@link #INCREMENTAL_CHECKPOINTS}.
+	 */
+	public boolean isIncrementalCheckpointsEnabled() {
+		return incrementalCheckpoints.getOrDefault(INCREMENTAL_CHECKPOINTS.defaultValue());
+	}
+
+	/**
+	 * Enables or disables incremental checkpoints of the keyed state.
+	 */
+	public void setIncrementalCheckpoints(boolean incrementalCheckpoints) {
+		this.incrementalCheckpoints = TernaryBoolean.fromBoolean(incrementalCheckpoints);
+	}
+
+	/**
+	 * Gets the number of incremental checkpoints after which all key-groups are written again.
+	 *
+	 * <p>If not explicitly configured, this is the default value of {@link #INCREMENTAL_FULL_SNAPSHOT_INTERVAL}.
+	 */
+	public int getIncrementalFullSnapshotInterval() {
+		return incrementalFullSnapshotInterval > 0 ?
+				incrementalFullSnapshotInterval :
+				INCREMENTAL_FULL_SNAPSHOT_INTERVAL.defaultValue();
+	}
+
+	/**
+	 * Sets the number of incremental checkpoints after which all key-groups are written again.
+	 */
+	public void setIncrementalFullSnapshotInterval(int incrementalFullSnapshotInterval) {
+		checkArgument(incrementalFullSnapshotInterval > 0, "The full snapshot interval must be positive.");
+		this.incrementalFullSnapshotInterval = incrementalFullSnapshotInterval;
+	}
+
+	/**
+	 * Gets the number of threads that read the keyed state on restore.
+	 *
+	 * <p>If not explicitly configured, this is the default value of {@link #RESTORE_THREAD_NUM}.
+	 */
+	public int getNumberOfRestoringThreads() {
+		return numberOfRestoringThreads > 0 ?
+				numberOfRestoringThreads :
+				RESTORE_THREAD_NUM.defaultValue();
+	}
+
+	/**
+	 * Sets the number of threads that read the keyed state on restore.
+	 */
+	public void setNumberOfRestoringThreads(int numberOfRestoringThreads) {
+		checkArgument(numberOfRestoringThreads > 0, "The number of restoring threads must be positive.");
+		this.numberOfRestoringThreads = numberOfRestoringThreads;
+	}
+
+	/**
+	 * Gets the number of threads that write a full checkpoint of the keyed state.
+	 *
+	 * <p>If not explicitly configured, this is the default value of {@link #SNAPSHOT_THREAD_NUM}.
+	 */
+	public int getNumberOfSnapshottingThreads() {
+		return numberOfSnapshottingThreads > 0 ?
+				numberOfSnapshottingThreads :
+				SNAPSHOT_THREAD_NUM.defaultValue();
+	}
+
+	/**
+	 * Sets the number of threads that write a full checkpoint of the keyed state.
+	 */
+	public void setNumberOfSnapshottingThreads(int numberOfSnapshottingThreads) {
+		checkArgument(numberOfSnapshottingThreads > 0, "The number of snapshotting threads must be positive.");
+		this.numberOfSnapshottingThreads = numberOfSnapshottingThreads;
+	}
+
+	/**
+	 * Gets whether the checkpoint exclusive state streams of a TaskManager append to shared files.
+	 *
+	 * <p>If not explicitly configured, this is the default value of {@link #COALESCE_STATE_FILES}.
+	 */
+	public boolean isCoalesceStateFilesEnabled() {
+		return coalesceStateFiles.getOrDefault(COALESCE_STATE_FILES.defaultValue());
+	}
+
+	/**
+	 * Enables or disables appending the checkpoint exclusive state streams of a TaskManager to shared files.
+	 */
+	public void setCoalesceStateFiles(boolean coalesceStateFiles) {
+		this.coalesceStateFiles = TernaryBoolean.fromBoolean(coalesceStateFiles);
+	}
+
+	/**
+	 * Gets the size in bytes after which a shared state file is not appended to anymore.
+	 *
+	 * <p>If not explicitly configured, this is the default value of {@link #COALESCED_FILE_MAX_SIZE}.
+	 */
+	public long getCoalescedFileMaxSize() {
+		return coalescedFileMaxSize > 0 ?
+				coalescedFileMaxSize :
+				MemorySize.parse(COALESCED_FILE_MAX_SIZE.defaultValue()).getBytes();
+	}
+
+	/**
+	 * Sets the size in bytes after which a shared state file is not appended to anymore.
+	 */
+	public void setCoalescedFileMaxSize(long coalescedFileMaxSize) {
+		checkArgument(coalescedFileMaxSize > 0, "The maximum file size must be positive.");
+		this.coalescedFileMaxSize = coalescedFileMaxSize;
+	}
+
 	// ------------------------------------------------------------------------
 	//  Reconfiguration
 	// ------------------------------------------------------------------------
@@ -447,7 +788,12 @@ public class FsStateBackend extends AbstractFileStateBackend implements Configur
 	@Override
 	public CheckpointStorage createCheckpointStorage(JobID jobId) throws IOException {
 		checkNotNull(jobId, "jobId");
-		return new FsCheckpointStorage(getCheckpointPath(), getSavepointPath(), jobId, getMinFileSizeThreshold());
+		return new FsCheckpointStorage(
+				getCheckpointPath(),
+				getSavepointPath(),
+				jobId,
+				getMinFileSizeThreshold(),
+				isCoalesceStateFilesEnabled() ? getCoalescedFileMaxSize() : -1L);
 	}
 
 	// ------------------------------------------------------------------------
@@ -470,10 +816,12 @@ public class FsStateBackend extends AbstractFileStateBackend implements Configur
 
 		TaskStateManager taskStateManager = env.getTaskStateManager();
 		LocalRecoveryConfig localRecoveryConfig = taskStateManager.createLocalRecoveryConfig();
-		HeapPriorityQueueSetFactory priorityQueueSetFactory =
+		PriorityQueueSetFactory priorityQueueSetFactory = getPriorityQueueStateType() == PriorityQueueStateType.OFF_HEAP ?
+			new OffHeapPriorityQueueSetFactory(
+				keyGroupRange, numberOfKeyGroups, OffHeapPriorityQueueSetFactory.DEFAULT_PAGE_SIZE) :
 			new HeapPriorityQueueSetFactory(keyGroupRange, numberOfKeyGroups, 128);
 
-		return new HeapKeyedStateBackendBuilder<>(
+		HeapKeyedStateBackendBuilder<K> builder = new HeapKeyedStateBackendBuilder<>(
 			kvStateRegistry,
 			keySerializer,
 			env.getUserClassLoader(),
@@ -486,7 +834,17 @@ public class FsStateBackend extends AbstractFileStateBackend implements Configur
 			localRecoveryConfig,
 			priorityQueueSetFactory,
 			isUsingAsynchronousSnapshots(),
-			cancelStreamRegistry).build();
+			isIncrementalCheckpointsEnabled() ? getIncrementalFullSnapshotInterval() : -1,
+			cancelStreamRegistry)
+			.setNumberOfRestoringThreads(getNumberOfRestoringThreads())
+			.setNumberOfSnapshottingThreads(getNumberOfSnapshottingThreads())
+			.setMetricGroup(metricGroup);
+
+		if (getKeyedStateStorageType() == KeyedStateStorageType.OFF_HEAP) {
+			builder.setOffHeapStateTables(env.getMemoryManager(), env.getIOManager(), getKeyedStateManagedMemoryFraction());
+		}
+
+		return builder.build();
 	}
 
 	@Override
@@ -514,6 +872,36 @@ public class FsStateBackend extends AbstractFileStateBackend implements Configur
 				"checkpoints: '" + getCheckpointPath() +
 				"', savepoints: '" + getSavepointPath() +
 				"', asynchronous: " + asynchronousSnapshots +
-				", fileStateThreshold: " + fileStateThreshold + ")";
+				", fileStateThreshold: " + fileStateThreshold +
+				", priorityQueueStateType: " + getPriorityQueueStateType() +
+				", keyedStateStorageType: " + getKeyedStateStorageType() +
+				", incrementalCheckpoints: " + incrementalCheckpoints +
+				", numberOfRestoringThreads: " + getNumberOfRestoringThreads() +
+				", numberOfSnapshottingThreads: " + getNumberOfSnapshottingThreads() +
+				", coalesceStateFiles: " + coalesceStateFiles + ")";
+	}
+
+	/**
+	 * The options to chose for the type of priority queue state.
+	 */
+	public enum PriorityQueueStateType {
+
+		/** Elements are kept as objects on the JVM heap. */
+		HEAP,
+
+		/** Elements are kept serialized in off-heap memory pages. */
+		OFF_HEAP
+	}
+
+	/**
+	 * The options to chose for where the keyed state is kept.
+	 */
+	public enum KeyedStateStorageType {
+
+		/** States are kept as objects on the JVM heap. */
+		HEAP,
+
+		/** States are kept serialized in pages of the managed memory, and spilled to local disk. */
+		OFF_HEAP
 	}
 }
@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.state.filesystem;
+
+import org.apache.flink.annotation.VisibleForTesting;
+import org.apache.flink.core.fs.EntropyInjector;
+import org.apache.flink.core.fs.FSDataOutputStream;
+import org.apache.flink.core.fs.FileSystem;
+import org.apache.flink.core.fs.FileSystem.WriteMode;
+import org.apache.flink.core.fs.OutputStreamAndPath;
+import org.apache.flink.core.fs.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.apache.flink.util.Preconditions.checkNotNull;
+
+/**
+ * A pool of open files that the checkpoint streams of all tasks in this process (i.e. the TaskManager) write their
+ * state into, so that the number of files that a checkpoint creates scales with the number of TaskManagers (and the
+ * number of concurrently written streams), rather than with the number of state streams.
+ *
+ * <p>A stream leases a file of the directory that it writes to for as long as it is open and appends its data as one
+ * segment, see {@link SegmentFileStateHandle}. When the stream is closed, it syncs the file and returns it to the pool,
+ * so that the next stream of the same directory continues after the segment. Files are closed when they exceed their
+ * maximum size, when a stream fails or is discarded, when a stream of a newer checkpoint of the same job (a sibling
+ * directory) leases a file, and when the last task of the job in this process releases the job, see
+ * {@link #releaseJob(Path)}.
+ *
+ * <p>Because the segments of a file are read while the file may still be open for writing, this is only suitable for
+ * file systems that make synced data visible to readers, like HDFS or POSIX file systems, and not for object stores.
+ */
+public final class SegmentFilePool {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SegmentFilePool.class);
+
+	/** The pool of the TaskManager, shared by the checkpoint streams of all tasks. */
+	private static final SegmentFilePool INSTANCE = new SegmentFilePool();
+
+	private final Object lock = new Object();
+
+	/** The idle files per directory. A directory without entry is retired, its leased files are closed on release. */
+	@GuardedBy("lock")
+	private final Map<Path, ArrayDeque<SegmentFile>> idleFiles = new HashMap<>();
+
+	/** The number of users per checkpoints directory of a job, i.e. the parent of its checkpoint directories. */
+	@GuardedBy("lock")
+	private final Map<Path, Integer> jobReferences = new HashMap<>();
+
+	@VisibleForTesting
+	SegmentFilePool() {
+	}
+
+	public static SegmentFilePool getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Leases an idle file of the given directory, or creates a new file in the directory if there is no idle file. The
+	 * caller has exclusive access to the file until it {@link #release(SegmentFile, boolean) releases} it.
+	 */
+	SegmentFile acquire(FileSystem fileSystem, Path directory) throws IOException {
+		final List<SegmentFile> retiredFiles = new ArrayList<>();
+
+		synchronized (lock) {
+			ArrayDeque<SegmentFile> files = idleFiles.get(directory);
+			if (files == null) {
+				// a newer checkpoint of the same job retires the files of the older ones
+				Iterator<Map.Entry<Path, ArrayDeque<SegmentFile>>> iterator = idleFiles.entrySet().iterator();
+				while (iterator.hasNext()) {
+					Map.Entry<Path, ArrayDeque<SegmentFile>> entry = iterator.next();
+					if (isSibling(entry.getKey(), directory)) {
+						retiredFiles.addAll(entry.getValue());
+						iterator.remove();
+					}
+				}
+
+				idleFiles.put(directory, new ArrayDeque<>());
+			} else if (!files.isEmpty()) {
+				return files.poll();
+			}
+		}
+
+		for (SegmentFile retiredFile : retiredFiles) {
+			retiredFile.close();
+		}
+
+		return createFile(fileSystem, directory);
+	}
+
+	/**
+	 * Registers a user, e.g. a task, of the files of the job with the given checkpoints directory.
+	 */
+	void retainJob(Path checkpointsDirectory) {
+		synchronized (lock) {
+			jobReferences.merge(checkpointsDirectory, 1, Integer::sum);
+		}
+	}
+
+	/**
+	 * Unregisters a user of the files of the job with the given checkpoints directory. When the last user is gone,
+	 * the directories of the job are retired: idle files are closed right away, leased files when they are released.
+	 */
+	void releaseJob(Path checkpointsDirectory) {
+		final List<SegmentFile> retiredFiles = new ArrayList<>();
+
+		synchronized (lock) {
+			final Integer references = jobReferences.get(checkpointsDirectory);
+			if (references == null) {
+				return;
+			}
+			if (references > 1) {
+				jobReferences.put(checkpointsDirectory, references - 1);
+				return;
+			}
+			jobReferences.remove(checkpointsDirectory);
+
+			Iterator<Map.Entry<Path, ArrayDeque<SegmentFile>>> iterator = idleFiles.entrySet().iterator();
+			while (iterator.hasNext()) {
+				Map.Entry<Path, ArrayDeque<SegmentFile>> entry = iterator.next();
+				if (checkpointsDirectory.equals(entry.getKey().getParent())) {
+					retiredFiles.addAll(entry.getValue());
+					iterator.remove();
+				}
+			}
+		}
+
+		for (SegmentFile retiredFile : retiredFiles) {
+			retiredFile.close();
+		}
+	}
+
+	/**
+	 * Returns a leased file to the pool if it is reusable and its directory is not retired, otherwise closes it.
+	 */
+	void release(SegmentFile file, boolean reusable) {
+		synchronized (lock) {
+			ArrayDeque<SegmentFile> files = idleFiles.get(file.getDirectory());
+			if (reusable && files != null) {
+				files.add(file);
+				return;
+			}
+		}
+
+		file.close();
+	}
+
+	private static boolean isSibling(Path path, Path other) {
+		Path parent = path.getParent();
+		return parent != null && parent.equals(other.getParent());
+	}
+
+	private static SegmentFile createFile(FileSystem fileSystem, Path directory) throws IOException {
+		Exception latestException = null;
+		for (int attempt = 0; attempt < 10; attempt++) {
+			try {
+				OutputStreamAndPath streamAndPath = EntropyInjector.createEntropyAware(
+						fileSystem, new Path(directory, UUID.randomUUID().toString()), WriteMode.NO_OVERWRITE);
+				return new SegmentFile(directory, streamAndPath.path(), streamAndPath.stream());
+			}
+			catch (Exception e) {
+				latestException = e;
+			}
+		}
+
+		throw new IOException("Could not open output stream for state backend", latestException);
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * An open file of the pool.
+	 */
+	static final class SegmentFile {
+
+		private final Path directory;
+
+		private final Path path;
+
+		private final FSDataOutputStream outputStream;
+
+		SegmentFile(Path directory, Path path, FSDataOutputStream outputStream) {
+			this.directory = checkNotNull(directory);
+			this.path = checkNotNull(path);
+			this.outputStream = checkNotNull(outputStream);
+		}
+
+		Path getDirectory() {
+			return directory;
+		}
+
+		Path getPath() {
+			return path;
+		}
+
+		FSDataOutputStream getOutputStream() {
+			return outputStream;
+		}
+
+		/**
+		 * Closes the file. The file is not deleted, because the segments of other streams may be referenced.
+		 */
+		void close() {
+			try {
+				outputStream.close();
+			} catch (Throwable throwable) {
+				LOG.warn("Could not close the segment file {}.", path, throwable);
+			}
+		}
+	}
+}
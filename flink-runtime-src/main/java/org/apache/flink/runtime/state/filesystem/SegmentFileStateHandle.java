@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.state.filesystem;
+
+import org.apache.flink.core.fs.FSDataInputStream;
+import org.apache.flink.core.fs.FileSystem;
+import org.apache.flink.core.fs.Path;
+import org.apache.flink.runtime.state.SharedStateRegistry;
+import org.apache.flink.runtime.state.SharedStateRegistryKey;
+import org.apache.flink.runtime.state.StateHandleID;
+import org.apache.flink.runtime.state.StreamStateHandle;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+
+import static org.apache.flink.util.Preconditions.checkArgument;
+import static org.apache.flink.util.Preconditions.checkNotNull;
+
+/**
+ * {@link StreamStateHandle} for state that was written to a segment of a file that is shared with the state of other
+ * tasks of the same checkpoint, see {@link SegmentFilePool}. The state is identified by the file path, the offset of
+ * the segment in the file and the length of the segment.
+ *
+ * <p>The file can only be deleted once no checkpoint references any of its segments anymore. Therefore, every segment
+ * handle of a completed checkpoint registers a reference to the file at the {@link SharedStateRegistry}, and
+ * discarding a registered segment handle releases that reference. Discarding a segment handle that was never
+ * registered (e.g. of a failed checkpoint) does not delete anything; the files of a failed checkpoint are dropped
+ * together with the checkpoint directory.
+ *
+ * <p>The handle that releases the last reference deletes the file synchronously, rather than through the asynchronous
+ * disposal of the registry, so that the checkpoint directory that holds the file is empty when it is disposed after
+ * the state handles of the checkpoint.
+ */
+public class SegmentFileStateHandle implements StreamStateHandle {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger LOG = LoggerFactory.getLogger(SegmentFileStateHandle.class);
+
+	/** The prefix of the keys under which the segment files are registered. */
+	private static final String REGISTRY_KEY_PREFIX = "segment-file";
+
+	/** The path to the shared file in the filesystem, fully describing the file system. */
+	private final Path filePath;
+
+	/** The offset of the segment in the file. */
+	private final long offset;
+
+	/** The length of the segment. */
+	private final long length;
+
+	/** The registry that holds the reference of this handle to the file, null if not registered. */
+	private transient SharedStateRegistry sharedStateRegistry;
+
+	public SegmentFileStateHandle(Path filePath, long offset, long length) {
+		checkArgument(offset >= 0 && length >= 0);
+		this.filePath = checkNotNull(filePath);
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * Gets the path of the shared file that stores the segment.
+	 */
+	public Path getFilePath() {
+		return filePath;
+	}
+
+	/**
+	 * Gets the offset of the segment in the file.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	@Override
+	public FSDataInputStream openInputStream() throws IOException {
+		FSDataInputStream inputStream = getFileSystem().open(filePath);
+		try {
+			inputStream.seek(offset);
+		} catch (IOException e) {
+			inputStream.close();
+			throw e;
+		}
+		return new SegmentInputStream(inputStream, offset, length);
+	}
+
+	/**
+	 * Registers a reference of this segment to its file at the given registry. The file is deleted by the registry
+	 * once all registered segments of the file are discarded. Registering again with the same registry has no effect,
+	 * registering with a different registry (after a restart) transfers the reference to that registry.
+	 */
+	public void registerSharedState(SharedStateRegistry stateRegistry) {
+		checkNotNull(stateRegistry);
+		if (sharedStateRegistry == stateRegistry) {
+			return;
+		}
+
+		sharedStateRegistry = stateRegistry;
+		stateRegistry.registerReference(getRegistryKey(), new SharedFileReference(filePath));
+	}
+
+	/**
+	 * Registers the given handle at the given registry if it is a segment of a shared file, see
+	 * {@link #registerSharedState(SharedStateRegistry)}.
+	 */
+	public static void registerIfSegment(@Nullable StreamStateHandle stateHandle, SharedStateRegistry stateRegistry) {
+		if (stateHandle instanceof SegmentFileStateHandle) {
+			((SegmentFileStateHandle) stateHandle).registerSharedState(stateRegistry);
+		}
+	}
+
+	/**
+	 * Releases the reference of this segment to its file, if it was registered. The segment itself can not be deleted
+	 * from the shared file.
+	 */
+	@Override
+	public void discardState() throws Exception {
+		SharedStateRegistry registry = this.sharedStateRegistry;
+		if (registry != null) {
+			sharedStateRegistry = null;
+			SharedStateRegistry.Result result = registry.unregisterReference(getRegistryKey());
+			if (result != null && result.getReferenceCount() <= 0) {
+				getFileSystem().delete(filePath, false);
+			}
+		} else {
+			LOG.trace("Not deleting unregistered segment {} of shared file {}.", offset, filePath);
+		}
+	}
+
+	@Override
+	public long getStateSize() {
+		return length;
+	}
+
+	private SharedStateRegistryKey getRegistryKey() {
+		return new SharedStateRegistryKey(REGISTRY_KEY_PREFIX, new StateHandleID(filePath.toString()));
+	}
+
+	private FileSystem getFileSystem() throws IOException {
+		return FileSystem.get(filePath.toUri());
+	}
+
+	// ------------------------------------------------------------------------
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+
+		SegmentFileStateHandle that = (SegmentFileStateHandle) o;
+		return offset == that.offset && length == that.length && filePath.equals(that.filePath);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = filePath.hashCode();
+		result = 31 * result + (int) (offset ^ (offset >>> 32));
+		result = 31 * result + (int) (length ^ (length >>> 32));
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Segment File State: %s @ %d [%d bytes]", filePath, offset, length);
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * The handle under which the shared file is registered. The registry does not delete the file, the segment handle
+	 * that releases the last reference deletes it, see {@link #discardState()}.
+	 */
+	private static final class SharedFileReference extends FileStateHandle {
+
+		private static final long serialVersionUID = 1L;
+
+		SharedFileReference(Path filePath) {
+			super(filePath, -1L);
+		}
+
+		@Override
+		public void discardState() {
+			// deleted synchronously by the segment handle
+		}
+	}
+
+	/**
+	 * An input stream over a segment of a file. Positions are relative to the start of the segment, and the stream
+	 * ends at the end of the segment.
+	 */
+	private static final class SegmentInputStream extends FSDataInputStream {
+
+		private final FSDataInputStream delegate;
+
+		private final long offset;
+
+		private final long length;
+
+		/** The position relative to the start of the segment. */
+		private long pos;
+
+		SegmentInputStream(FSDataInputStream delegate, long offset, long length) {
+			this.delegate = delegate;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public void seek(long desired) throws IOException {
+			if (desired < 0 || desired > length) {
+				throw new IOException("Position " + desired + " is outside of the segment of length " + length);
+			}
+			delegate.seek(offset + desired);
+			pos = desired;
+		}
+
+		@Override
+		public long getPos() {
+			return pos;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (pos >= length) {
+				return -1;
+			}
+			int b = delegate.read();
+			if (b >= 0) {
+				pos++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (pos >= length) {
+				return -1;
+			}
+			int read = delegate.read(b, off, (int) Math.min(len, length - pos));
+			if (read > 0) {
+				pos += read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = delegate.skip(Math.min(Math.max(n, 0L), length - pos));
+			pos += skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(delegate.available(), length - pos);
+		}
+
+		@Override
+		public void close() throws IOException {
+			delegate.close();
+		}
+	}
+}
@@ -328,26 +328,31 @@ public class CopyOnWriteStateTable<K, N, S> extends StateTable<K, N, S> implemen
 
 	@Override
 	public void put(N namespace, S state) {
+		markCurrentKeyGroupModified();
 		put(keyContext.getCurrentKey(), namespace, state);
 	}
 
 	@Override
 	public S putAndGetOld(N namespace, S state) {
+		markCurrentKeyGroupModified();
 		return putAndGetOld(keyContext.getCurrentKey(), namespace, state);
 	}
 
 	@Override
 	public void remove(N namespace) {
+		markCurrentKeyGroupModified();
 		remove(keyContext.getCurrentKey(), namespace);
 	}
 
 	@Override
 	public S removeAndGetOld(N namespace) {
+		markCurrentKeyGroupModified();
 		return removeAndGetOld(keyContext.getCurrentKey(), namespace);
 	}
 
 	@Override
 	public <T> void transform(N namespace, T value, StateTransformationFunction<S, T> transformation) throws Exception {
+		markCurrentKeyGroupModified();
 		transform(keyContext.getCurrentKey(), namespace, value, transformation);
 	}
 
@@ -1183,11 +1188,13 @@ public class CopyOnWriteStateTable<K, N, S> extends StateTable<K, N, S> implemen
 
 		@Override
 		public void remove(StateEntry<K, N, S> stateEntry) {
+			markKeyGroupModified(stateEntry.getKey());
 			CopyOnWriteStateTable.this.remove(stateEntry.getKey(), stateEntry.getNamespace());
 		}
 
 		@Override
 		public void update(StateEntry<K, N, S> stateEntry, S newValue) {
+			markKeyGroupModified(stateEntry.getKey());
 			CopyOnWriteStateTable.this.put(stateEntry.getKey(), stateEntry.getNamespace(), newValue);
 		}
 	}
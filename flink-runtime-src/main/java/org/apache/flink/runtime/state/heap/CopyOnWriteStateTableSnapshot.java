@@ -172,6 +172,25 @@ public class CopyOnWriteStateTableSnapshot<K, N, S>
 		return partitionedStateTableSnapshot;
 	}
 
+	/**
+	 * Returns a writer over the partitioned snapshot data that uses its own duplicates of the serializers, so that
+	 * different key-groups can be written concurrently.
+	 */
+	@Nonnull
+	@Override
+	public StateKeyGroupWriter getConcurrentKeyGroupWriter() {
+		final TypeSerializer<K> keySerializer = localKeySerializer.duplicate();
+		final TypeSerializer<N> namespaceSerializer = localNamespaceSerializer.duplicate();
+		final TypeSerializer<S> stateSerializer = localStateSerializer.duplicate();
+		ElementWriterFunction<CopyOnWriteStateTable.StateTableEntry<K, N, S>> elementWriterFunction =
+			(element, dov) -> {
+				namespaceSerializer.serialize(element.namespace, dov);
+				keySerializer.serialize(element.key, dov);
+				stateSerializer.serialize(element.state, dov);
+			};
+		return KeyGroupPartitioner.createKeyGroupWriter(getKeyGroupWriter(), elementWriterFunction);
+	}
+
 	@Nonnull
 	@Override
 	public StateMetaInfoSnapshot getMetaInfoSnapshot() {
@@ -44,6 +44,7 @@ import org.apache.flink.runtime.state.KeyedStateFunction;
 import org.apache.flink.runtime.state.KeyedStateHandle;
 import org.apache.flink.runtime.state.LocalRecoveryConfig;
 import org.apache.flink.runtime.state.PriorityComparable;
+import org.apache.flink.runtime.state.PriorityQueueSetFactory;
 import org.apache.flink.runtime.state.RegisteredKeyValueStateBackendMetaInfo;
 import org.apache.flink.runtime.state.RegisteredPriorityQueueStateBackendMetaInfo;
 import org.apache.flink.runtime.state.SnapshotResult;
@@ -111,7 +112,7 @@ public class HeapKeyedStateBackend<K> extends AbstractKeyedStateBackend<K> {
 	/**
 	 * Factory for state that is organized as priority queue.
 	 */
-	private final HeapPriorityQueueSetFactory priorityQueueSetFactory;
+	private final PriorityQueueSetFactory priorityQueueSetFactory;
 
 	public HeapKeyedStateBackend(
 		TaskKvStateRegistry kvStateRegistry,
@@ -126,7 +127,7 @@ public class HeapKeyedStateBackend<K> extends AbstractKeyedStateBackend<K> {
 		Map<String, StateTable<K, ?, ?>> registeredKVStates,
 		Map<String, HeapPriorityQueueSnapshotRestoreWrapper> registeredPQStates,
 		LocalRecoveryConfig localRecoveryConfig,
-		HeapPriorityQueueSetFactory priorityQueueSetFactory,
+		PriorityQueueSetFactory priorityQueueSetFactory,
 		HeapSnapshotStrategy<K> snapshotStrategy
 	) {
 		super(kvStateRegistry, keySerializerProvider, userCodeClassLoader, numberOfKeyGroups,
@@ -168,7 +169,17 @@ public class HeapKeyedStateBackend<K> extends AbstractKeyedStateBackend<K> {
 					existingState.forUpdatedSerializer(byteOrderedElementSerializer));
 			}
 
-			return existingState.getPriorityQueue();
+			// off-heap queues hold serialized elements, which must follow the format of the new serializer
+			if (existingState.getPriorityQueue() instanceof OffHeapPriorityQueueSet) {
+				((OffHeapPriorityQueueSet<T>) existingState.getPriorityQueue()).updateElementSerializer(
+					byteOrderedElementSerializer,
+					compatibilityResult.isCompatibleAfterMigration());
+			}
+
+			return snapshotStrategy.trackKeyGroupModifications(
+				existingState.getPriorityQueue(),
+				KeyExtractorFunction.forKeyedObjects(),
+				numberOfKeyGroups);
 		} else {
 			final RegisteredPriorityQueueStateBackendMetaInfo<T> metaInfo =
 				new RegisteredPriorityQueueStateBackendMetaInfo<>(stateName, byteOrderedElementSerializer);
@@ -181,7 +192,7 @@ public class HeapKeyedStateBackend<K> extends AbstractKeyedStateBackend<K> {
 		RegisteredPriorityQueueStateBackendMetaInfo<T> metaInfo) {
 
 		final String stateName = metaInfo.getName();
-		final HeapPriorityQueueSet<T> priorityQueue = priorityQueueSetFactory.create(
+		final KeyGroupedInternalPriorityQueue<T> priorityQueue = priorityQueueSetFactory.create(
 			stateName,
 			metaInfo.getElementSerializer());
 
@@ -194,7 +205,10 @@ public class HeapKeyedStateBackend<K> extends AbstractKeyedStateBackend<K> {
 				numberOfKeyGroups);
 
 		registeredPQStates.put(stateName, wrapper);
-		return priorityQueue;
+		return snapshotStrategy.trackKeyGroupModifications(
+			priorityQueue,
+			KeyExtractorFunction.forKeyedObjects(),
+			numberOfKeyGroups);
 	}
 
 	private <N, V> StateTable<K, N, V> tryRegisterStateTable(
@@ -228,6 +242,11 @@ public class HeapKeyedStateBackend<K> extends AbstractKeyedStateBackend<K> {
 			}
 
 			stateTable.setMetaInfo(restoredKvMetaInfo);
+
+			if (stateCompatibility.isCompatibleAfterMigration() && stateTable instanceof OffHeapStateTable) {
+				// serialized states must be rewritten in the new format, unlike state objects
+				((OffHeapStateTable<K, N, V>) stateTable).migrateState(restoredKvMetaInfo.getPreviousStateSerializer());
+			}
 		} else {
 			RegisteredKeyValueStateBackendMetaInfo<N, V> newMetaInfo = new RegisteredKeyValueStateBackendMetaInfo<>(
 				stateDesc.getType(),
@@ -305,7 +324,13 @@ public class HeapKeyedStateBackend<K> extends AbstractKeyedStateBackend<K> {
 
 	@Override
 	public void notifyCheckpointComplete(long checkpointId) {
-		//Nothing to do
+		snapshotStrategy.notifyCheckpointComplete(checkpointId);
+	}
+
+	@Override
+	public void dispose() {
+		super.dispose();
+		snapshotStrategy.dispose();
 	}
 
 	@Override
@@ -21,16 +21,22 @@ package org.apache.flink.runtime.state.heap;
 import org.apache.flink.api.common.ExecutionConfig;
 import org.apache.flink.api.common.typeutils.TypeSerializer;
 import org.apache.flink.core.fs.CloseableRegistry;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.runtime.io.disk.iomanager.IOManager;
+import org.apache.flink.runtime.memory.MemoryManager;
 import org.apache.flink.runtime.query.TaskKvStateRegistry;
 import org.apache.flink.runtime.state.AbstractKeyedStateBackendBuilder;
 import org.apache.flink.runtime.state.BackendBuildingException;
 import org.apache.flink.runtime.state.KeyGroupRange;
 import org.apache.flink.runtime.state.KeyedStateHandle;
 import org.apache.flink.runtime.state.LocalRecoveryConfig;
+import org.apache.flink.runtime.state.PriorityQueueSetFactory;
 import org.apache.flink.runtime.state.StreamCompressionDecorator;
 import org.apache.flink.runtime.state.ttl.TtlTimeProvider;
+import org.apache.flink.util.Preconditions;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import java.util.Collection;
 import java.util.HashMap;
@@ -49,12 +55,74 @@ public class HeapKeyedStateBackendBuilder<K> extends AbstractKeyedStateBackendBu
 	/**
 	 * Factory for state that is organized as priority queue.
 	 */
-	private final HeapPriorityQueueSetFactory priorityQueueSetFactory;
+	private final PriorityQueueSetFactory priorityQueueSetFactory;
 	/**
 	 * Whether asynchronous snapshot is enabled.
 	 */
 	private final boolean asynchronousSnapshots;
+	/**
+	 * Number of incremental snapshots between two full snapshots, or a non-positive value if incremental
+	 * snapshots are disabled.
+	 */
+	private final int incrementalFullSnapshotInterval;
+	/**
+	 * Number of threads that read the key-groups on restore.
+	 */
+	private int numberOfRestoringThreads = 1;
+	/**
+	 * Number of streams that full snapshots are written to in parallel.
+	 */
+	private int numberOfSnapshottingThreads = 1;
+	/**
+	 * The metric group to report restore metrics to, or null to not report metrics.
+	 */
+	@Nullable
+	private MetricGroup metricGroup;
+	/**
+	 * The memory manager that provides the pages of off-heap state tables, or null to keep state objects on the heap.
+	 */
+	@Nullable
+	private MemoryManager memoryManager;
+	/**
+	 * The I/O manager that cold pages of off-heap state tables are spilled with.
+	 */
+	@Nullable
+	private IOManager ioManager;
+	/**
+	 * The fraction of the managed memory of the task that off-heap state tables keep resident.
+	 */
+	private double managedMemoryFraction;
 
+	public HeapKeyedStateBackendBuilder(
+		TaskKvStateRegistry kvStateRegistry,
+		TypeSerializer<K> keySerializer,
+		ClassLoader userCodeClassLoader,
+		int numberOfKeyGroups,
+		KeyGroupRange keyGroupRange,
+		ExecutionConfig executionConfig,
+		TtlTimeProvider ttlTimeProvider,
+		@Nonnull Collection<KeyedStateHandle> stateHandles,
+		StreamCompressionDecorator keyGroupCompressionDecorator,
+		LocalRecoveryConfig localRecoveryConfig,
+		PriorityQueueSetFactory priorityQueueSetFactory,
+		boolean asynchronousSnapshots,
+		CloseableRegistry cancelStreamRegistry) {
+		this(
+			kvStateRegistry,
+			keySerializer,
+			userCodeClassLoader,
+			numberOfKeyGroups,
+			keyGroupRange,
+			executionConfig,
+			ttlTimeProvider,
+			stateHandles,
+			keyGroupCompressionDecorator,
+			localRecoveryConfig,
+			priorityQueueSetFactory,
+			asynchronousSnapshots,
+			-1,
+			cancelStreamRegistry);
+	}
 
 	public HeapKeyedStateBackendBuilder(
 		TaskKvStateRegistry kvStateRegistry,
@@ -67,8 +135,9 @@ public class HeapKeyedStateBackendBuilder<K> extends AbstractKeyedStateBackendBu
 		@Nonnull Collection<KeyedStateHandle> stateHandles,
 		StreamCompressionDecorator keyGroupCompressionDecorator,
 		LocalRecoveryConfig localRecoveryConfig,
-		HeapPriorityQueueSetFactory priorityQueueSetFactory,
+		PriorityQueueSetFactory priorityQueueSetFactory,
 		boolean asynchronousSnapshots,
+		int incrementalFullSnapshotInterval,
 		CloseableRegistry cancelStreamRegistry) {
 		super(
 			kvStateRegistry,
@@ -84,6 +153,53 @@ public class HeapKeyedStateBackendBuilder<K> extends AbstractKeyedStateBackendBu
 		this.localRecoveryConfig = localRecoveryConfig;
 		this.priorityQueueSetFactory = priorityQueueSetFactory;
 		this.asynchronousSnapshots = asynchronousSnapshots;
+		this.incrementalFullSnapshotInterval = incrementalFullSnapshotInterval;
+	}
+
+	/**
+	 * Sets the number of threads that read the key-groups on restore. With more than one thread, the key-groups are
+	 * read, decompressed and de-serialized concurrently.
+	 */
+	public HeapKeyedStateBackendBuilder<K> setNumberOfRestoringThreads(int numberOfRestoringThreads) {
+		Preconditions.checkArgument(numberOfRestoringThreads > 0, "The number of restoring threads must be positive.");
+		this.numberOfRestoringThreads = numberOfRestoringThreads;
+		return this;
+	}
+
+	/**
+	 * Sets the number of threads that write full checkpoints. With more than one thread, the key-group range is
+	 * divided into contiguous slices that are written to separate streams in parallel. Savepoints are always written
+	 * to a single stream.
+	 */
+	public HeapKeyedStateBackendBuilder<K> setNumberOfSnapshottingThreads(int numberOfSnapshottingThreads) {
+		Preconditions.checkArgument(numberOfSnapshottingThreads > 0, "The number of snapshotting threads must be positive.");
+		this.numberOfSnapshottingThreads = numberOfSnapshottingThreads;
+		return this;
+	}
+
+	/**
+	 * Sets the metric group to report the restore metrics to.
+	 */
+	public HeapKeyedStateBackendBuilder<K> setMetricGroup(@Nullable MetricGroup metricGroup) {
+		this.metricGroup = metricGroup;
+		return this;
+	}
+
+	/**
+	 * Keeps the state serialized in pages of the given memory manager instead of as objects on the heap, see
+	 * {@link OffHeapStateTable}. Once the given fraction of the managed memory is used, cold pages are spilled to
+	 * local disk with the given I/O manager. Map states are always kept on the heap.
+	 */
+	public HeapKeyedStateBackendBuilder<K> setOffHeapStateTables(
+		@Nonnull MemoryManager memoryManager,
+		@Nonnull IOManager ioManager,
+		double managedMemoryFraction) {
+		Preconditions.checkArgument(managedMemoryFraction > 0.0 && managedMemoryFraction <= 1.0,
+			"The managed memory fraction must be in (0, 1].");
+		this.memoryManager = Preconditions.checkNotNull(memoryManager);
+		this.ioManager = Preconditions.checkNotNull(ioManager);
+		this.managedMemoryFraction = managedMemoryFraction;
+		return this;
 	}
 
 	@Override
@@ -122,7 +238,9 @@ public class HeapKeyedStateBackendBuilder<K> extends AbstractKeyedStateBackendBu
 			keyGroupRange,
 			numberOfKeyGroups,
 			snapshotStrategy,
-			backend);
+			backend,
+			numberOfRestoringThreads,
+			metricGroup);
 		try {
 			restoreOperation.restore();
 		} catch (Exception e) {
@@ -140,6 +258,13 @@ public class HeapKeyedStateBackendBuilder<K> extends AbstractKeyedStateBackendBu
 		SnapshotStrategySynchronicityBehavior<K> synchronicityTrait = asynchronousSnapshots ?
 			new AsyncSnapshotStrategySynchronicityBehavior<>() :
 			new SyncSnapshotStrategySynchronicityBehavior<>();
+		if (memoryManager != null && ioManager != null) {
+			OffHeapStatePagePool pagePool = new OffHeapStatePagePool(
+				memoryManager,
+				ioManager,
+				Math.max(1, memoryManager.computeNumberOfPages(managedMemoryFraction)));
+			synchronicityTrait = new OffHeapSnapshotStrategySynchronicityBehavior<>(synchronicityTrait, pagePool);
+		}
 		return new HeapSnapshotStrategy<>(
 			synchronicityTrait,
 			registeredKVStates,
@@ -148,6 +273,10 @@ public class HeapKeyedStateBackendBuilder<K> extends AbstractKeyedStateBackendBu
 			localRecoveryConfig,
 			keyGroupRange,
 			cancelStreamRegistry,
-			keySerializerProvider);
+			keySerializerProvider,
+			incrementalFullSnapshotInterval > 0 ?
+				new IncrementalSnapshotTracker(keyGroupRange, incrementalFullSnapshotInterval) :
+				null,
+			numberOfSnapshottingThreads);
 	}
 }
@@ -86,19 +86,18 @@ class HeapListState<K, N, V>
 	}
 
 	@Override
-	public void add(V value) {
+	public void add(V value) throws Exception {
 		Preconditions.checkNotNull(value, "You cannot add null to a ListState.");
 
-		final N namespace = currentNamespace;
-
-		final StateTable<K, N, List<V>> map = stateTable;
-		List<V> list = map.get(namespace);
-
-		if (list == null) {
-			list = new ArrayList<>();
-			map.put(namespace, list);
-		}
-		list.add(value);
+		// the list is appended in a transformation, so that state tables that store serialized
+		// states write the appended list back
+		stateTable.transform(currentNamespace, value, (previousState, element) -> {
+			if (previousState == null) {
+				previousState = new ArrayList<>();
+			}
+			previousState.add(element);
+			return previousState;
+		});
 	}
 
 	@Override
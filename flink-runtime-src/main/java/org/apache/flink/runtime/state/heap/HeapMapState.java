@@ -98,6 +98,9 @@ class HeapMapState<K, N, UK, UV>
 		if (userMap == null) {
 			userMap = new HashMap<>();
 			stateTable.put(currentNamespace, userMap);
+		} else {
+			// the user map is modified in place
+			stateTable.markCurrentKeyGroupModified();
 		}
 
 		userMap.put(userKey, userValue);
@@ -111,6 +114,8 @@ class HeapMapState<K, N, UK, UV>
 		if (userMap == null) {
 			userMap = new HashMap<>();
 			stateTable.put(currentNamespace, userMap);
+		} else {
+			stateTable.markCurrentKeyGroupModified();
 		}
 
 		userMap.putAll(value);
@@ -124,6 +129,7 @@ class HeapMapState<K, N, UK, UV>
 			return;
 		}
 
+		stateTable.markCurrentKeyGroupModified();
 		userMap.remove(userKey);
 
 		if (userMap.isEmpty()) {
@@ -139,28 +145,40 @@ class HeapMapState<K, N, UK, UV>
 
 	@Override
 	public Iterable<Map.Entry<UK, UV>> entries() {
-		Map<UK, UV> userMap = stateTable.get(currentNamespace);
+		Map<UK, UV> userMap = getUserMapForView();
 		return userMap == null ? null : userMap.entrySet();
 	}
 
 	@Override
 	public Iterable<UK> keys() {
-		Map<UK, UV> userMap = stateTable.get(currentNamespace);
+		Map<UK, UV> userMap = getUserMapForView();
 		return userMap == null ? null : userMap.keySet();
 	}
 
 	@Override
 	public Iterable<UV> values() {
-		Map<UK, UV> userMap = stateTable.get(currentNamespace);
+		Map<UK, UV> userMap = getUserMapForView();
 		return userMap == null ? null : userMap.values();
 	}
 
 	@Override
 	public Iterator<Map.Entry<UK, UV>> iterator() {
-		Map<UK, UV> userMap = stateTable.get(currentNamespace);
+		Map<UK, UV> userMap = getUserMapForView();
 		return userMap == null ? null : userMap.entrySet().iterator();
 	}
 
+	/**
+	 * Returns the user map for the views of this state. The views allow to modify the user map in place, e.g. through
+	 * {@link Iterator#remove()}, so its key-group is conservatively marked as modified.
+	 */
+	private Map<UK, UV> getUserMapForView() {
+		Map<UK, UV> userMap = stateTable.get(currentNamespace);
+		if (userMap != null) {
+			stateTable.markCurrentKeyGroupModified();
+		}
+		return userMap;
+	}
+
 	@Override
 	public byte[] getSerializedValue(
 			final byte[] serializedKeyAndNamespace,
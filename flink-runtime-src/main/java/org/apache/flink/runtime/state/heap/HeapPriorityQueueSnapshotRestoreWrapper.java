@@ -22,6 +22,7 @@ import org.apache.flink.api.common.typeutils.TypeSerializer;
 import org.apache.flink.runtime.state.KeyExtractorFunction;
 import org.apache.flink.runtime.state.KeyGroupPartitioner;
 import org.apache.flink.runtime.state.KeyGroupRange;
+import org.apache.flink.runtime.state.KeyGroupedInternalPriorityQueue;
 import org.apache.flink.runtime.state.RegisteredPriorityQueueStateBackendMetaInfo;
 import org.apache.flink.runtime.state.StateSnapshot;
 import org.apache.flink.runtime.state.StateSnapshotKeyGroupReader;
@@ -31,7 +32,8 @@ import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 
 /**
- * This wrapper combines a HeapPriorityQueue with backend meta data.
+ * This wrapper combines a HeapPriorityQueue (either a {@link HeapPriorityQueueSet} or an
+ * {@link OffHeapPriorityQueueSet}) with backend meta data.
  *
  * @param <T> type of the queue elements.
  */
@@ -39,7 +41,7 @@ public class HeapPriorityQueueSnapshotRestoreWrapper<T extends HeapPriorityQueue
 	implements StateSnapshotRestore {
 
 	@Nonnull
-	private final HeapPriorityQueueSet<T> priorityQueue;
+	private final KeyGroupedInternalPriorityQueue<T> priorityQueue;
 	@Nonnull
 	private final KeyExtractorFunction<T> keyExtractorFunction;
 	@Nonnull
@@ -50,7 +52,7 @@ public class HeapPriorityQueueSnapshotRestoreWrapper<T extends HeapPriorityQueue
 	private final int totalKeyGroups;
 
 	public HeapPriorityQueueSnapshotRestoreWrapper(
-		@Nonnull HeapPriorityQueueSet<T> priorityQueue,
+		@Nonnull KeyGroupedInternalPriorityQueue<T> priorityQueue,
 		@Nonnull RegisteredPriorityQueueStateBackendMetaInfo<T> metaInfo,
 		@Nonnull KeyExtractorFunction<T> keyExtractorFunction,
 		@Nonnull KeyGroupRange localKeyGroupRange,
@@ -67,7 +69,12 @@ public class HeapPriorityQueueSnapshotRestoreWrapper<T extends HeapPriorityQueue
 	@Nonnull
 	@Override
 	public StateSnapshot stateSnapshot() {
-		final T[] queueDump = (T[]) priorityQueue.toArray(new HeapPriorityQueueElement[priorityQueue.size()]);
+		if (priorityQueue instanceof OffHeapPriorityQueueSet) {
+			return ((OffHeapPriorityQueueSet<T>) priorityQueue).stateSnapshot(metaInfo.deepCopy());
+		}
+
+		final HeapPriorityQueueSet<T> heapPriorityQueue = (HeapPriorityQueueSet<T>) priorityQueue;
+		final T[] queueDump = (T[]) heapPriorityQueue.toArray(new HeapPriorityQueueElement[heapPriorityQueue.size()]);
 		return new HeapPriorityQueueStateSnapshot<>(
 			queueDump,
 			keyExtractorFunction,
@@ -86,7 +93,7 @@ public class HeapPriorityQueueSnapshotRestoreWrapper<T extends HeapPriorityQueue
 	}
 
 	@Nonnull
-	public HeapPriorityQueueSet<T> getPriorityQueue() {
+	public KeyGroupedInternalPriorityQueue<T> getPriorityQueue() {
 		return priorityQueue;
 	}
 
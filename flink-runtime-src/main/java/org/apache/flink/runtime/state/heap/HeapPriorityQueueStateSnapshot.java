@@ -106,6 +106,17 @@ public class HeapPriorityQueueStateSnapshot<T> implements StateSnapshot {
 		return stateKeyGroupWriter;
 	}
 
+	/**
+	 * Returns a writer over the partitioned elements that uses its own duplicate of the element serializer, so that
+	 * different key-groups can be written concurrently.
+	 */
+	@Nonnull
+	@Override
+	public StateKeyGroupWriter getConcurrentKeyGroupWriter() {
+		final TypeSerializer<T> elementSerializer = metaInfo.getElementSerializer().duplicate();
+		return KeyGroupPartitioner.createKeyGroupWriter(getKeyGroupWriter(), elementSerializer::serialize);
+	}
+
 	@Nonnull
 	@Override
 	public StateMetaInfoSnapshot getMetaInfoSnapshot() {
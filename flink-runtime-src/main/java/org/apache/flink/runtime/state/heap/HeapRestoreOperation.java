@@ -19,61 +19,106 @@
 package org.apache.flink.runtime.state.heap;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
 import org.apache.flink.api.common.typeutils.TypeSerializerSchemaCompatibility;
 import org.apache.flink.api.java.tuple.Tuple2;
 import org.apache.flink.core.fs.CloseableRegistry;
 import org.apache.flink.core.fs.FSDataInputStream;
 import org.apache.flink.core.memory.DataInputViewStreamWrapper;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.runtime.state.CompositeKeyGroupsStateHandle;
+import org.apache.flink.runtime.state.IncrementalHeapKeyedStateHandle;
 import org.apache.flink.runtime.state.KeyExtractorFunction;
+import org.apache.flink.runtime.state.KeyGroupPartitioner;
 import org.apache.flink.runtime.state.KeyGroupRange;
-import org.apache.flink.runtime.state.KeyGroupRangeOffsets;
+import org.apache.flink.runtime.state.KeyGroupedInternalPriorityQueue;
 import org.apache.flink.runtime.state.KeyGroupsStateHandle;
 import org.apache.flink.runtime.state.Keyed;
 import org.apache.flink.runtime.state.KeyedBackendSerializationProxy;
 import org.apache.flink.runtime.state.KeyedStateHandle;
 import org.apache.flink.runtime.state.PriorityComparable;
+import org.apache.flink.runtime.state.PriorityQueueSetFactory;
 import org.apache.flink.runtime.state.RegisteredKeyValueStateBackendMetaInfo;
 import org.apache.flink.runtime.state.RegisteredPriorityQueueStateBackendMetaInfo;
 import org.apache.flink.runtime.state.RestoreOperation;
 import org.apache.flink.runtime.state.SnappyStreamCompressionDecorator;
 import org.apache.flink.runtime.state.StateSerializerProvider;
 import org.apache.flink.runtime.state.StateSnapshotKeyGroupReader;
+import org.apache.flink.runtime.state.StateHandleID;
 import org.apache.flink.runtime.state.StateSnapshotRestore;
 import org.apache.flink.runtime.state.StreamCompressionDecorator;
+import org.apache.flink.runtime.state.StreamStateHandle;
 import org.apache.flink.runtime.state.UncompressedStreamCompressionDecorator;
 import org.apache.flink.runtime.state.metainfo.StateMetaInfoSnapshot;
+import org.apache.flink.runtime.util.ExecutorThreadFactory;
+import org.apache.flink.util.ExceptionUtils;
 import org.apache.flink.util.Preconditions;
 import org.apache.flink.util.StateMigrationException;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 
 /**
  * Implementation of heap restore operation.
  *
+ * <p>With more than one restoring thread, the meta data of all state handles is read first, and then the key-groups
+ * are read on a bounded pool of threads. The threads open their own streams, decompress and de-serialize the
+ * key-groups with their own copies of the serializers, and buffer the mappings. The state tables and priority queues
+ * are not thread-safe, so the restoring thread inserts the buffered key-groups in the order in which they complete.
+ * The number of buffered key-groups is bounded per thread.
+ *
  * @param <K> The data type that the serializer serializes.
  */
 public class HeapRestoreOperation<K> implements RestoreOperation<Void> {
+
+	private static final Logger LOG = LoggerFactory.getLogger(HeapRestoreOperation.class);
+
+	/** The number of de-serialized key-groups per restoring thread that wait for insertion. */
+	private static final int MAX_BUFFERED_KEY_GROUPS_PER_THREAD = 4;
+
+	/** The number of parts per restoring thread into which the key-groups are split. */
+	private static final int READ_REQUESTS_PER_THREAD = 2;
+
 	private final Collection<KeyedStateHandle> restoreStateHandles;
 	private final StateSerializerProvider<K> keySerializerProvider;
 	private final ClassLoader userCodeClassLoader;
 	private final Map<String, StateTable<K, ?, ?>> registeredKVStates;
 	private final Map<String, HeapPriorityQueueSnapshotRestoreWrapper> registeredPQStates;
 	private final CloseableRegistry cancelStreamRegistry;
-	private final HeapPriorityQueueSetFactory priorityQueueSetFactory;
+	private final PriorityQueueSetFactory priorityQueueSetFactory;
 	@Nonnull
 	private final KeyGroupRange keyGroupRange;
 	@Nonnegative
 	private final int numberOfKeyGroups;
 	private final HeapSnapshotStrategy<K> snapshotStrategy;
 	private final HeapKeyedStateBackend<K> backend;
+	private final int numberOfRestoringThreads;
+	@Nullable
+	private final MetricGroup metricGroup;
+
+	/** The key-groups to read on the restoring threads, null if key-groups are read sequentially. */
+	@Nullable
+	private List<KeyGroupsReadRequest> readRequests;
+	private long numRestoredKeyGroups;
+	private long numRestoredBytes;
 
 	HeapRestoreOperation(
 		@Nonnull Collection<KeyedStateHandle> restoreStateHandles,
@@ -82,11 +127,14 @@ public class HeapRestoreOperation<K> implements RestoreOperation<Void> {
 		Map<String, StateTable<K, ?, ?>> registeredKVStates,
 		Map<String, HeapPriorityQueueSnapshotRestoreWrapper> registeredPQStates,
 		CloseableRegistry cancelStreamRegistry,
-		HeapPriorityQueueSetFactory priorityQueueSetFactory,
+		PriorityQueueSetFactory priorityQueueSetFactory,
 		@Nonnull KeyGroupRange keyGroupRange,
 		int numberOfKeyGroups,
 		HeapSnapshotStrategy<K> snapshotStrategy,
-		HeapKeyedStateBackend<K> backend) {
+		HeapKeyedStateBackend<K> backend,
+		int numberOfRestoringThreads,
+		@Nullable MetricGroup metricGroup) {
+		Preconditions.checkArgument(numberOfRestoringThreads > 0, "The number of restoring threads must be positive.");
 		this.restoreStateHandles = restoreStateHandles;
 		this.keySerializerProvider = keySerializerProvider;
 		this.userCodeClassLoader = userCodeClassLoader;
@@ -98,6 +146,8 @@ public class HeapRestoreOperation<K> implements RestoreOperation<Void> {
 		this.numberOfKeyGroups = numberOfKeyGroups;
 		this.snapshotStrategy = snapshotStrategy;
 		this.backend = backend;
+		this.numberOfRestoringThreads = numberOfRestoringThreads;
+		this.metricGroup = metricGroup;
 	}
 
 	@Override
@@ -109,12 +159,24 @@ public class HeapRestoreOperation<K> implements RestoreOperation<Void> {
 
 		boolean keySerializerRestored = false;
 
-		for (KeyedStateHandle keyedStateHandle : restoreStateHandles) {
+		final long restoreStartTime = System.currentTimeMillis();
+		readRequests = numberOfRestoringThreads > 1 ? new ArrayList<>() : null;
+
+		for (KeyedStateHandle keyedStateHandle : flattenCompositeStateHandles(restoreStateHandles)) {
 
 			if (keyedStateHandle == null) {
 				continue;
 			}
 
+			if (keyedStateHandle instanceof IncrementalHeapKeyedStateHandle) {
+				restoreIncrementalStateHandle(
+					(IncrementalHeapKeyedStateHandle) keyedStateHandle,
+					kvStatesById,
+					keySerializerRestored);
+				keySerializerRestored = true;
+				continue;
+			}
+
 			if (!(keyedStateHandle instanceof KeyGroupsStateHandle)) {
 				throw new IllegalStateException("Unexpected state handle type, " +
 					"expected: " + KeyGroupsStateHandle.class +
@@ -129,31 +191,152 @@ public class HeapRestoreOperation<K> implements RestoreOperation<Void> {
 				DataInputViewStreamWrapper inView = new DataInputViewStreamWrapper(fsDataInputStream);
 
 				KeyedBackendSerializationProxy<K> serializationProxy =
-					new KeyedBackendSerializationProxy<>(userCodeClassLoader);
+					readSerializationProxy(inView, keySerializerRestored);
+				keySerializerRestored = true;
 
-				serializationProxy.read(inView);
+				List<StateMetaInfoSnapshot> restoredMetaInfos =
+					serializationProxy.getStateMetaInfoSnapshots();
 
-				if (!keySerializerRestored) {
-					// check for key serializer compatibility; this also reconfigures the
-					// key serializer to be compatible, if it is required and is possible
-					TypeSerializerSchemaCompatibility<K> keySerializerSchemaCompat =
-						keySerializerProvider.setPreviousSerializerSnapshotForRestoredState(serializationProxy.getKeySerializerSnapshot());
-					if (keySerializerSchemaCompat.isCompatibleAfterMigration() || keySerializerSchemaCompat.isIncompatible()) {
-						throw new StateMigrationException("The new key serializer must be compatible.");
-					}
+				createOrCheckStateForMetaInfo(restoredMetaInfos, kvStatesById);
 
-					keySerializerRestored = true;
+				if (readRequests != null) {
+					readRequests.add(new KeyGroupsReadRequest(
+						keyGroupsStateHandle,
+						keyGroupsStateHandle.getGroupRangeOffsets(),
+						restoredMetaInfos.size(),
+						serializationProxy.getReadVersion(),
+						serializationProxy.isUsingKeyGroupCompression()));
+				} else {
+					readStateHandleStateData(
+						fsDataInputStream,
+						inView,
+						keyGroupsStateHandle.getGroupRangeOffsets(),
+						kvStatesById, restoredMetaInfos.size(),
+						serializationProxy.getReadVersion(),
+						serializationProxy.isUsingKeyGroupCompression());
+				}
+			} finally {
+				if (cancelStreamRegistry.unregisterCloseable(fsDataInputStream)) {
+					IOUtils.closeQuietly(fsDataInputStream);
 				}
+			}
+		}
 
-				List<StateMetaInfoSnapshot> restoredMetaInfos =
-					serializationProxy.getStateMetaInfoSnapshots();
+		if (readRequests != null && !readRequests.isEmpty()) {
+			readKeyGroupsInParallel(readRequests, kvStatesById);
+		}
+		readRequests = null;
 
-				createOrCheckStateForMetaInfo(restoredMetaInfos, kvStatesById);
+		if (numRestoredKeyGroups > 0) {
+			reportRestoreMetrics(System.currentTimeMillis() - restoreStartTime);
+		}
+		return null;
+	}
+
+	/**
+	 * Replaces every handle to a snapshot that was written to several streams by the handles to its slices. Every
+	 * slice starts with the meta information of the states, so it can be restored like a snapshot of its own.
+	 */
+	private static List<KeyedStateHandle> flattenCompositeStateHandles(Collection<KeyedStateHandle> stateHandles) {
+		List<KeyedStateHandle> flattenedStateHandles = new ArrayList<>(stateHandles.size());
+		for (KeyedStateHandle stateHandle : stateHandles) {
+			if (stateHandle instanceof CompositeKeyGroupsStateHandle) {
+				flattenedStateHandles.addAll(((CompositeKeyGroupsStateHandle) stateHandle).getKeyGroupsStateHandles());
+			} else {
+				flattenedStateHandles.add(stateHandle);
+			}
+		}
+		return flattenedStateHandles;
+	}
+
+	private KeyedBackendSerializationProxy<K> readSerializationProxy(
+		DataInputViewStreamWrapper inView,
+		boolean keySerializerRestored) throws IOException, StateMigrationException {
+
+		KeyedBackendSerializationProxy<K> serializationProxy =
+			new KeyedBackendSerializationProxy<>(userCodeClassLoader);
 
+		serializationProxy.read(inView);
+
+		if (!keySerializerRestored) {
+			// check for key serializer compatibility; this also reconfigures the
+			// key serializer to be compatible, if it is required and is possible
+			TypeSerializerSchemaCompatibility<K> keySerializerSchemaCompat =
+				keySerializerProvider.setPreviousSerializerSnapshotForRestoredState(serializationProxy.getKeySerializerSnapshot());
+			if (keySerializerSchemaCompat.isCompatibleAfterMigration() || keySerializerSchemaCompat.isIncompatible()) {
+				throw new StateMigrationException("The new key serializer must be compatible.");
+			}
+		}
+
+		return serializationProxy;
+	}
+
+	/**
+	 * Restores an incremental snapshot of the heap backend. The meta state holds the meta information of all states
+	 * and, for each key-group, the shared file and offset of its latest image. Only key-groups of this backend are read,
+	 * so that the same handle can be restored by several backends after rescaling.
+	 */
+	private void restoreIncrementalStateHandle(
+		IncrementalHeapKeyedStateHandle stateHandle,
+		Map<Integer, StateMetaInfoSnapshot> kvStatesById,
+		boolean keySerializerRestored) throws Exception {
+
+		final KeyedBackendSerializationProxy<K> serializationProxy;
+		final Map<StateHandleID, List<Tuple2<Integer, Long>>> keyGroupOffsetsByFile = new HashMap<>();
+
+		FSDataInputStream metaInputStream = stateHandle.getMetaStateHandle().openInputStream();
+		cancelStreamRegistry.registerCloseable(metaInputStream);
+
+		try {
+			DataInputViewStreamWrapper inView = new DataInputViewStreamWrapper(metaInputStream);
+
+			serializationProxy = readSerializationProxy(inView, keySerializerRestored);
+
+			int numKeyGroups = inView.readInt();
+			for (int i = 0; i < numKeyGroups; ++i) {
+				int keyGroupIndex = inView.readInt();
+				StateHandleID file = new StateHandleID(inView.readUTF());
+				long offset = inView.readLong();
+				if (keyGroupRange.contains(keyGroupIndex)) {
+					keyGroupOffsetsByFile
+						.computeIfAbsent(file, k -> new ArrayList<>())
+						.add(Tuple2.of(keyGroupIndex, offset));
+				}
+			}
+		} finally {
+			if (cancelStreamRegistry.unregisterCloseable(metaInputStream)) {
+				IOUtils.closeQuietly(metaInputStream);
+			}
+		}
+
+		List<StateMetaInfoSnapshot> restoredMetaInfos =
+			serializationProxy.getStateMetaInfoSnapshots();
+
+		createOrCheckStateForMetaInfo(restoredMetaInfos, kvStatesById);
+
+		for (Map.Entry<StateHandleID, List<Tuple2<Integer, Long>>> fileOffsets : keyGroupOffsetsByFile.entrySet()) {
+			StreamStateHandle fileHandle = stateHandle.getSharedState().get(fileOffsets.getKey());
+			Preconditions.checkState(fileHandle != null,
+				"Missing shared state " + fileOffsets.getKey() + " in incremental heap snapshot.");
+
+			if (readRequests != null) {
+				readRequests.add(new KeyGroupsReadRequest(
+					fileHandle,
+					fileOffsets.getValue(),
+					restoredMetaInfos.size(),
+					serializationProxy.getReadVersion(),
+					serializationProxy.isUsingKeyGroupCompression()));
+				continue;
+			}
+
+			FSDataInputStream fsDataInputStream = fileHandle.openInputStream();
+			cancelStreamRegistry.registerCloseable(fsDataInputStream);
+
+			try {
 				readStateHandleStateData(
 					fsDataInputStream,
-					inView,
-					keyGroupsStateHandle.getGroupRangeOffsets(),
+					new DataInputViewStreamWrapper(fsDataInputStream),
+					fileOffsets.getValue(),
 					kvStatesById, restoredMetaInfos.size(),
 					serializationProxy.getReadVersion(),
 					serializationProxy.isUsingKeyGroupCompression());
@@ -163,7 +346,6 @@ public class HeapRestoreOperation<K> implements RestoreOperation<Void> {
 				}
 			}
 		}
-		return null;
 	}
 
 	private void createOrCheckStateForMetaInfo(
@@ -205,7 +387,7 @@ public class HeapRestoreOperation<K> implements RestoreOperation<Void> {
 		RegisteredPriorityQueueStateBackendMetaInfo<T> metaInfo) {
 
 		final String stateName = metaInfo.getName();
-		final HeapPriorityQueueSet<T> priorityQueue = priorityQueueSetFactory.create(
+		final KeyGroupedInternalPriorityQueue<T> priorityQueue = priorityQueueSetFactory.create(
 			stateName,
 			metaInfo.getElementSerializer());
 
@@ -223,7 +405,7 @@ public class HeapRestoreOperation<K> implements RestoreOperation<Void> {
 	private void readStateHandleStateData(
 		FSDataInputStream fsDataInputStream,
 		DataInputViewStreamWrapper inView,
-		KeyGroupRangeOffsets keyGroupOffsets,
+		Iterable<Tuple2<Integer, Long>> keyGroupOffsets,
 		Map<Integer, StateMetaInfoSnapshot> kvStatesById,
 		int numStates,
 		int readVersion,
@@ -255,6 +437,9 @@ public class HeapRestoreOperation<K> implements RestoreOperation<Void> {
 					numStates,
 					readVersion);
 			}
+
+			numRestoredKeyGroups++;
+			numRestoredBytes += fsDataInputStream.getPos() - offset;
 		}
 	}
 
@@ -290,4 +475,296 @@ public class HeapRestoreOperation<K> implements RestoreOperation<Void> {
 			keyGroupReader.readMappingsInKeyGroup(inView, keyGroupIndex);
 		}
 	}
+
+	// ------------------------------------------------------------------------
+	//  Parallel restore
+	// ------------------------------------------------------------------------
+
+	private void readKeyGroupsInParallel(
+		List<KeyGroupsReadRequest> requests,
+		Map<Integer, StateMetaInfoSnapshot> kvStatesById) throws Exception {
+
+		final List<KeyGroupsReadRequest> splitRequests = splitReadRequests(requests);
+		int numKeyGroups = 0;
+		for (KeyGroupsReadRequest request : splitRequests) {
+			numKeyGroups += request.keyGroupOffsets.size();
+		}
+
+		// the read key-groups, or the failure of a restoring thread
+		final BlockingQueue<Object> readResults = new LinkedBlockingQueue<>();
+		final Semaphore bufferedKeyGroups = new Semaphore(numberOfRestoringThreads * MAX_BUFFERED_KEY_GROUPS_PER_THREAD);
+
+		final ExecutorService executorService = Executors.newFixedThreadPool(
+			numberOfRestoringThreads,
+			new ExecutorThreadFactory("heap-restore"));
+
+		try {
+			for (KeyGroupsReadRequest request : splitRequests) {
+				executorService.execute(() -> readKeyGroups(request, kvStatesById, bufferedKeyGroups, readResults));
+			}
+
+			for (int i = 0; i < numKeyGroups; i++) {
+				Object next = readResults.take();
+				if (next instanceof Throwable) {
+					ExceptionUtils.rethrowException((Throwable) next, "Could not restore key-group.");
+				}
+
+				ReadKeyGroup readKeyGroup = (ReadKeyGroup) next;
+				readKeyGroup.insert();
+				bufferedKeyGroups.release();
+
+				numRestoredKeyGroups++;
+				numRestoredBytes += readKeyGroup.numBytes;
+			}
+		} finally {
+			// interrupts the threads that still read after a failure; their streams are closed when they exit
+			executorService.shutdownNow();
+		}
+	}
+
+	/**
+	 * Splits the key-groups of the given requests into contiguous parts, so that all restoring threads are busy even
+	 * if there are fewer state handles than threads.
+	 */
+	private List<KeyGroupsReadRequest> splitReadRequests(List<KeyGroupsReadRequest> requests) {
+		final int numTargetRequests = numberOfRestoringThreads * READ_REQUESTS_PER_THREAD;
+		final int partsPerRequest = Math.max(1, (numTargetRequests + requests.size() - 1) / requests.size());
+
+		final List<KeyGroupsReadRequest> splitRequests = new ArrayList<>();
+		for (KeyGroupsReadRequest request : requests) {
+			final int numKeyGroups = request.keyGroupOffsets.size();
+			final int partSize = Math.max(1, (numKeyGroups + partsPerRequest - 1) / partsPerRequest);
+			for (int start = 0; start < numKeyGroups; start += partSize) {
+				splitRequests.add(request.subRequest(start, Math.min(start + partSize, numKeyGroups)));
+			}
+		}
+		return splitRequests;
+	}
+
+	/**
+	 * Reads the key-groups of the given request on a restoring thread and hands them to the restoring thread.
+	 */
+	private void readKeyGroups(
+		KeyGroupsReadRequest request,
+		Map<Integer, StateMetaInfoSnapshot> kvStatesById,
+		Semaphore bufferedKeyGroups,
+		BlockingQueue<Object> readResults) {
+
+		final Thread currentThread = Thread.currentThread();
+		final ClassLoader previousClassLoader = currentThread.getContextClassLoader();
+		currentThread.setContextClassLoader(userCodeClassLoader);
+
+		FSDataInputStream fsDataInputStream = null;
+		try {
+			fsDataInputStream = request.stateHandle.openInputStream();
+			cancelStreamRegistry.registerCloseable(fsDataInputStream);
+
+			final DataInputViewStreamWrapper inView = new DataInputViewStreamWrapper(fsDataInputStream);
+			final StreamCompressionDecorator streamCompressionDecorator = request.isCompressed ?
+				SnappyStreamCompressionDecorator.INSTANCE : UncompressedStreamCompressionDecorator.INSTANCE;
+
+			// serializers are not thread-safe, so every request reads with its own copies
+			final Map<Integer, BufferingReader> readersByStateId = new HashMap<>();
+
+			for (Tuple2<Integer, Long> groupOffset : request.keyGroupOffsets) {
+				int keyGroupIndex = groupOffset.f0;
+				long offset = groupOffset.f1;
+
+				Preconditions.checkState(keyGroupRange.contains(keyGroupIndex), "The key group must belong to the backend.");
+
+				bufferedKeyGroups.acquire();
+
+				fsDataInputStream.seek(offset);
+
+				int writtenKeyGroupIndex = inView.readInt();
+				Preconditions.checkState(writtenKeyGroupIndex == keyGroupIndex,
+					"Unexpected key-group in restore.");
+
+				ReadKeyGroup readKeyGroup = new ReadKeyGroup(keyGroupIndex, request.numStates);
+				try (InputStream kgCompressionInStream =
+						streamCompressionDecorator.decorateWithCompression(fsDataInputStream)) {
+
+					DataInputViewStreamWrapper kgInView = new DataInputViewStreamWrapper(kgCompressionInStream);
+					for (int i = 0; i < request.numStates; i++) {
+						final int kvStateId = kgInView.readShort();
+						BufferingReader reader = readersByStateId.get(kvStateId);
+						if (reader == null) {
+							reader = createBufferingReader(kvStatesById.get(kvStateId), request.readVersion);
+							readersByStateId.put(kvStateId, reader);
+						}
+
+						readKeyGroup.add(reader.target, reader.read(kgInView, keyGroupIndex));
+					}
+				}
+
+				readKeyGroup.numBytes = fsDataInputStream.getPos() - offset;
+				readResults.add(readKeyGroup);
+			}
+		} catch (Throwable t) {
+			readResults.add(t);
+		} finally {
+			if (fsDataInputStream != null && cancelStreamRegistry.unregisterCloseable(fsDataInputStream)) {
+				IOUtils.closeQuietly(fsDataInputStream);
+			}
+			currentThread.setContextClassLoader(previousClassLoader);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private BufferingReader createBufferingReader(StateMetaInfoSnapshot stateMetaInfoSnapshot, int readVersion) {
+		final BufferingReader bufferingReader;
+
+		switch (stateMetaInfoSnapshot.getBackendStateType()) {
+			case KEY_VALUE:
+				StateTable<K, Object, Object> stateTable =
+					(StateTable<K, Object, Object>) registeredKVStates.get(stateMetaInfoSnapshot.getName());
+				bufferingReader = new BufferingReader(stateTable);
+				bufferingReader.reader = StateTableByKeyGroupReaders.readerForVersion(
+					stateTable.keyContext.getKeySerializer().duplicate(),
+					stateTable.getNamespaceSerializer().duplicate(),
+					stateTable.getStateSerializer().duplicate(),
+					(key, keyGroup, namespace, state) -> {
+						bufferingReader.buffer.add(key);
+						bufferingReader.buffer.add(namespace);
+						bufferingReader.buffer.add(state);
+					},
+					readVersion);
+				break;
+			case PRIORITY_QUEUE:
+				HeapPriorityQueueSnapshotRestoreWrapper<?> wrapper =
+					registeredPQStates.get(stateMetaInfoSnapshot.getName());
+				TypeSerializer<Object> elementSerializer =
+					(TypeSerializer<Object>) wrapper.getMetaInfo().getElementSerializer().duplicate();
+				bufferingReader = new BufferingReader(wrapper);
+				bufferingReader.reader = KeyGroupPartitioner.createKeyGroupPartitionReader(
+					elementSerializer::deserialize,
+					(element, keyGroupId) -> bufferingReader.buffer.add(element));
+				break;
+			default:
+				throw new IllegalStateException("Unexpected state type: " +
+					stateMetaInfoSnapshot.getBackendStateType() + ".");
+		}
+
+		return bufferingReader;
+	}
+
+	private void reportRestoreMetrics(long restoreDurationMillis) {
+		final long restoredKeyGroups = numRestoredKeyGroups;
+		final long restoredBytes = numRestoredBytes;
+		final long restoreThroughput = restoredBytes * 1000 / Math.max(1L, restoreDurationMillis);
+
+		LOG.info("Restored {} key-groups ({} bytes) of the heap keyed state backend in {} ms with {} thread(s).",
+			restoredKeyGroups, restoredBytes, restoreDurationMillis, numberOfRestoringThreads);
+
+		if (metricGroup != null) {
+			MetricGroup restoreMetrics = metricGroup.addGroup("heapRestore");
+			restoreMetrics.gauge("duration", (Gauge<Long>) () -> restoreDurationMillis);
+			restoreMetrics.gauge("restoredKeyGroups", (Gauge<Long>) () -> restoredKeyGroups);
+			restoreMetrics.gauge("restoredBytes", (Gauge<Long>) () -> restoredBytes);
+			restoreMetrics.gauge("bytesPerSecond", (Gauge<Long>) () -> restoreThroughput);
+		}
+	}
+
+	/**
+	 * The key-groups of a stream that one restoring thread reads.
+	 */
+	private static final class KeyGroupsReadRequest {
+
+		final StreamStateHandle stateHandle;
+		final List<Tuple2<Integer, Long>> keyGroupOffsets;
+		final int numStates;
+		final int readVersion;
+		final boolean isCompressed;
+
+		KeyGroupsReadRequest(
+			StreamStateHandle stateHandle,
+			Iterable<Tuple2<Integer, Long>> keyGroupOffsets,
+			int numStates,
+			int readVersion,
+			boolean isCompressed) {
+
+			this.stateHandle = stateHandle;
+			this.keyGroupOffsets = new ArrayList<>();
+			for (Tuple2<Integer, Long> keyGroupOffset : keyGroupOffsets) {
+				this.keyGroupOffsets.add(keyGroupOffset);
+			}
+			this.numStates = numStates;
+			this.readVersion = readVersion;
+			this.isCompressed = isCompressed;
+		}
+
+		KeyGroupsReadRequest subRequest(int fromIndex, int toIndex) {
+			return new KeyGroupsReadRequest(
+				stateHandle, keyGroupOffsets.subList(fromIndex, toIndex), numStates, readVersion, isCompressed);
+		}
+	}
+
+	/**
+	 * A reader that de-serializes the mappings of a state in a key-group into a buffer, rather than into the state.
+	 */
+	private static final class BufferingReader {
+
+		/** The {@link StateTable} or {@link HeapPriorityQueueSnapshotRestoreWrapper} of the state. */
+		final StateSnapshotRestore target;
+
+		StateSnapshotKeyGroupReader reader;
+
+		ArrayList<Object> buffer;
+
+		BufferingReader(StateSnapshotRestore target) {
+			this.target = target;
+		}
+
+		ArrayList<Object> read(DataInputViewStreamWrapper inView, int keyGroupIndex) throws IOException {
+			buffer = new ArrayList<>();
+			reader.readMappingsInKeyGroup(inView, keyGroupIndex);
+			ArrayList<Object> result = buffer;
+			buffer = null;
+			return result;
+		}
+	}
+
+	/**
+	 * A de-serialized key-group that waits to be inserted into the states by the restoring thread. The mappings of a
+	 * state table are buffered as consecutive (key, namespace, state) triples.
+	 */
+	private static final class ReadKeyGroup {
+
+		final int keyGroupIndex;
+		final List<StateSnapshotRestore> targets;
+		final List<ArrayList<Object>> buffers;
+		long numBytes;
+
+		ReadKeyGroup(int keyGroupIndex, int numStates) {
+			this.keyGroupIndex = keyGroupIndex;
+			this.targets = new ArrayList<>(numStates);
+			this.buffers = new ArrayList<>(numStates);
+		}
+
+		void add(StateSnapshotRestore target, ArrayList<Object> buffer) {
+			targets.add(target);
+			buffers.add(buffer);
+		}
+
+		@SuppressWarnings("unchecked")
+		void insert() {
+			for (int i = 0; i < targets.size(); i++) {
+				final StateSnapshotRestore target = targets.get(i);
+				final ArrayList<Object> buffer = buffers.get(i);
+
+				if (target instanceof StateTable) {
+					StateTable<Object, Object, Object> stateTable = (StateTable<Object, Object, Object>) target;
+					for (int j = 0; j < buffer.size(); j += 3) {
+						stateTable.put(buffer.get(j), keyGroupIndex, buffer.get(j + 1), buffer.get(j + 2));
+					}
+				} else {
+					KeyGroupedInternalPriorityQueue<Object> priorityQueue =
+						((HeapPriorityQueueSnapshotRestoreWrapper) target).getPriorityQueue();
+					for (Object element : buffer) {
+						priorityQueue.add(element);
+					}
+				}
+			}
+		}
+	}
 }
@@ -22,19 +22,27 @@ import org.apache.flink.api.common.typeutils.TypeSerializer;
 import org.apache.flink.core.fs.CloseableRegistry;
 import org.apache.flink.core.memory.DataOutputViewStreamWrapper;
 import org.apache.flink.runtime.checkpoint.CheckpointOptions;
+import org.apache.flink.runtime.checkpoint.CheckpointType;
 import org.apache.flink.runtime.state.AbstractSnapshotStrategy;
 import org.apache.flink.runtime.state.AsyncSnapshotCallable;
 import org.apache.flink.runtime.state.CheckpointStreamFactory;
 import org.apache.flink.runtime.state.CheckpointStreamWithResultProvider;
 import org.apache.flink.runtime.state.CheckpointedStateScope;
+import org.apache.flink.runtime.state.CompositeKeyGroupsStateHandle;
 import org.apache.flink.runtime.state.DoneFuture;
+import org.apache.flink.runtime.state.IncrementalHeapKeyedStateHandle;
+import org.apache.flink.runtime.state.KeyExtractorFunction;
 import org.apache.flink.runtime.state.KeyGroupRange;
 import org.apache.flink.runtime.state.KeyGroupRangeOffsets;
+import org.apache.flink.runtime.state.KeyGroupedInternalPriorityQueue;
+import org.apache.flink.runtime.state.KeyGroupsStateHandle;
 import org.apache.flink.runtime.state.KeyedBackendSerializationProxy;
 import org.apache.flink.runtime.state.KeyedStateHandle;
 import org.apache.flink.runtime.state.LocalRecoveryConfig;
+import org.apache.flink.runtime.state.PlaceholderStreamStateHandle;
 import org.apache.flink.runtime.state.RegisteredKeyValueStateBackendMetaInfo;
 import org.apache.flink.runtime.state.SnapshotResult;
+import org.apache.flink.runtime.state.StateHandleID;
 import org.apache.flink.runtime.state.StateSerializerProvider;
 import org.apache.flink.runtime.state.StateSnapshot;
 import org.apache.flink.runtime.state.StateSnapshotRestore;
@@ -42,17 +50,28 @@ import org.apache.flink.runtime.state.StreamCompressionDecorator;
 import org.apache.flink.runtime.state.StreamStateHandle;
 import org.apache.flink.runtime.state.UncompressedStreamCompressionDecorator;
 import org.apache.flink.runtime.state.metainfo.StateMetaInfoSnapshot;
+import org.apache.flink.runtime.util.ExecutorThreadFactory;
+import org.apache.flink.util.ExceptionUtils;
+import org.apache.flink.util.IOUtils;
 import org.apache.flink.util.Preconditions;
 import org.apache.flink.util.function.SupplierWithException;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.RunnableFuture;
 
@@ -71,6 +90,9 @@ class HeapSnapshotStrategy<K>
 	private final KeyGroupRange keyGroupRange;
 	private final CloseableRegistry cancelStreamRegistry;
 	private final StateSerializerProvider<K> keySerializerProvider;
+	@Nullable
+	private final IncrementalSnapshotTracker incrementalSnapshotTracker;
+	private final int numberOfSnapshottingThreads;
 
 	HeapSnapshotStrategy(
 		SnapshotStrategySynchronicityBehavior<K> snapshotStrategySynchronicityTrait,
@@ -80,8 +102,11 @@ class HeapSnapshotStrategy<K>
 		LocalRecoveryConfig localRecoveryConfig,
 		KeyGroupRange keyGroupRange,
 		CloseableRegistry cancelStreamRegistry,
-		StateSerializerProvider<K> keySerializerProvider) {
+		StateSerializerProvider<K> keySerializerProvider,
+		@Nullable IncrementalSnapshotTracker incrementalSnapshotTracker,
+		int numberOfSnapshottingThreads) {
 		super("Heap backend snapshot");
+		Preconditions.checkArgument(numberOfSnapshottingThreads > 0, "The number of snapshotting threads must be positive.");
 		this.snapshotStrategySynchronicityTrait = snapshotStrategySynchronicityTrait;
 		this.registeredKVStates = registeredKVStates;
 		this.registeredPQStates = registeredPQStates;
@@ -90,6 +115,8 @@ class HeapSnapshotStrategy<K>
 		this.keyGroupRange = keyGroupRange;
 		this.cancelStreamRegistry = cancelStreamRegistry;
 		this.keySerializerProvider = keySerializerProvider;
+		this.incrementalSnapshotTracker = incrementalSnapshotTracker;
+		this.numberOfSnapshottingThreads = numberOfSnapshottingThreads;
 	}
 
 	@Nonnull
@@ -152,6 +179,31 @@ class HeapSnapshotStrategy<K>
 					CheckpointedStateScope.EXCLUSIVE,
 					primaryStreamFactory);
 
+		if (incrementalSnapshotTracker != null && checkpointOptions.getCheckpointType() != CheckpointType.SAVEPOINT) {
+			final IncrementalSnapshotTracker.SnapshotPlan snapshotPlan =
+				incrementalSnapshotTracker.startSnapshot(checkpointId, getStateLayout(stateNamesToId));
+
+			return incrementalSnapshot(
+				snapshotPlan,
+				primaryStreamFactory,
+				serializationProxy,
+				cowStateStableSnapshots,
+				stateNamesToId);
+		}
+
+		// savepoints are always written to a single stream, so that their format does not change
+		if (numberOfSnapshottingThreads > 1 &&
+			keyGroupRange.getNumberOfKeyGroups() > 1 &&
+			checkpointOptions.getCheckpointType() != CheckpointType.SAVEPOINT) {
+
+			return parallelSnapshot(
+				primaryStreamFactory,
+				checkpointStreamSupplier,
+				serializationProxy,
+				cowStateStableSnapshots,
+				stateNamesToId);
+		}
+
 		//--------------------------------------------------- this becomes the end of sync part
 
 		final AsyncSnapshotCallable<SnapshotResult<KeyedStateHandle>> asyncSnapshotCallable =
@@ -171,26 +223,13 @@ class HeapSnapshotStrategy<K>
 					serializationProxy.write(outView);
 
 					final long[] keyGroupRangeOffsets = new long[keyGroupRange.getNumberOfKeyGroups()];
+					final Map<StateUID, StateSnapshot.StateKeyGroupWriter> keyGroupWriters =
+						getKeyGroupWriters(cowStateStableSnapshots);
 
 					for (int keyGroupPos = 0; keyGroupPos < keyGroupRange.getNumberOfKeyGroups(); ++keyGroupPos) {
 						int keyGroupId = keyGroupRange.getKeyGroupId(keyGroupPos);
 						keyGroupRangeOffsets[keyGroupPos] = localStream.getPos();
-						outView.writeInt(keyGroupId);
-
-						for (Map.Entry<StateUID, StateSnapshot> stateSnapshot :
-							cowStateStableSnapshots.entrySet()) {
-							StateSnapshot.StateKeyGroupWriter partitionedSnapshot =
-
-								stateSnapshot.getValue().getKeyGroupWriter();
-							try (
-								OutputStream kgCompressionOut =
-									keyGroupCompressionDecorator.decorateWithCompression(localStream)) {
-								DataOutputViewStreamWrapper kgCompressionView =
-									new DataOutputViewStreamWrapper(kgCompressionOut);
-								kgCompressionView.writeShort(stateNamesToId.get(stateSnapshot.getKey()));
-								partitionedSnapshot.writeStateInKeyGroup(kgCompressionView, keyGroupId);
-							} // this will just close the outer compression stream
-						}
+						writeKeyGroup(localStream, outView, keyGroupId, keyGroupWriters, stateNamesToId);
 					}
 
 					if (snapshotCloseableRegistry.unregisterCloseable(streamWithResultProvider)) {
@@ -225,6 +264,423 @@ class HeapSnapshotStrategy<K>
 		return task;
 	}
 
+	/**
+	 * Writes an incremental snapshot. The key-groups of the plan are written to a new shared file, all other key-groups
+	 * reference the shared files of the last completed checkpoint. The meta state holds the meta information and the
+	 * location of every key-group, see {@link HeapRestoreOperation}.
+	 */
+	private RunnableFuture<SnapshotResult<KeyedStateHandle>> incrementalSnapshot(
+		IncrementalSnapshotTracker.SnapshotPlan snapshotPlan,
+		CheckpointStreamFactory primaryStreamFactory,
+		KeyedBackendSerializationProxy<K> serializationProxy,
+		Map<StateUID, StateSnapshot> cowStateStableSnapshots,
+		Map<StateUID, Integer> stateNamesToId) {
+
+		Preconditions.checkNotNull(incrementalSnapshotTracker);
+
+		//--------------------------------------------------- this becomes the end of sync part
+
+		final AsyncSnapshotCallable<SnapshotResult<KeyedStateHandle>> asyncSnapshotCallable =
+			new AsyncSnapshotCallable<SnapshotResult<KeyedStateHandle>>() {
+				@Override
+				protected SnapshotResult<KeyedStateHandle> callInternal() throws Exception {
+
+					final int numberOfKeyGroups = keyGroupRange.getNumberOfKeyGroups();
+					final StateHandleID[] files = new StateHandleID[numberOfKeyGroups];
+					final long[] offsets = new long[numberOfKeyGroups];
+					final Map<StateHandleID, StreamStateHandle> sharedState = new HashMap<>();
+					StreamStateHandle newSharedStateHandle = null;
+
+					try {
+						if (!snapshotPlan.keyGroupsToWrite.isEmpty()) {
+							final StateHandleID file = new StateHandleID(UUID.randomUUID().toString());
+							final CheckpointStreamFactory.CheckpointStateOutputStream sharedStream =
+								primaryStreamFactory.createCheckpointStateOutputStream(CheckpointedStateScope.SHARED);
+
+							snapshotCloseableRegistry.registerCloseable(sharedStream);
+
+							final DataOutputViewStreamWrapper outView = new DataOutputViewStreamWrapper(sharedStream);
+							final BitSet keyGroupsToWrite = snapshotPlan.keyGroupsToWrite;
+							final Map<StateUID, StateSnapshot.StateKeyGroupWriter> keyGroupWriters =
+								getKeyGroupWriters(cowStateStableSnapshots);
+
+							for (int keyGroupPos = keyGroupsToWrite.nextSetBit(0);
+								keyGroupPos >= 0;
+								keyGroupPos = keyGroupsToWrite.nextSetBit(keyGroupPos + 1)) {
+								files[keyGroupPos] = file;
+								offsets[keyGroupPos] = sharedStream.getPos();
+								writeKeyGroup(
+									sharedStream,
+									outView,
+									keyGroupRange.getKeyGroupId(keyGroupPos),
+									keyGroupWriters,
+									stateNamesToId);
+							}
+
+							if (snapshotCloseableRegistry.unregisterCloseable(sharedStream)) {
+								newSharedStateHandle = sharedStream.closeAndGetHandle();
+								sharedState.put(file, newSharedStateHandle);
+							} else {
+								throw new IOException("Stream already unregistered.");
+							}
+						}
+
+						// all other key-groups are unchanged since the last completed checkpoint
+						for (int keyGroupPos = 0; keyGroupPos < numberOfKeyGroups; ++keyGroupPos) {
+							if (files[keyGroupPos] == null) {
+								final IncrementalSnapshotTracker.MaterializedKeyGroups base = snapshotPlan.base;
+								Preconditions.checkState(base != null, "Missing base for incremental snapshot.");
+								files[keyGroupPos] = base.files[keyGroupPos];
+								offsets[keyGroupPos] = base.offsets[keyGroupPos];
+								sharedState.putIfAbsent(files[keyGroupPos], new PlaceholderStreamStateHandle());
+							}
+						}
+
+						final CheckpointStreamFactory.CheckpointStateOutputStream metaStream =
+							primaryStreamFactory.createCheckpointStateOutputStream(CheckpointedStateScope.EXCLUSIVE);
+
+						snapshotCloseableRegistry.registerCloseable(metaStream);
+
+						final DataOutputViewStreamWrapper metaView = new DataOutputViewStreamWrapper(metaStream);
+						serializationProxy.write(metaView);
+						metaView.writeInt(numberOfKeyGroups);
+						for (int keyGroupPos = 0; keyGroupPos < numberOfKeyGroups; ++keyGroupPos) {
+							metaView.writeInt(keyGroupRange.getKeyGroupId(keyGroupPos));
+							metaView.writeUTF(files[keyGroupPos].getKeyString());
+							metaView.writeLong(offsets[keyGroupPos]);
+						}
+
+						final StreamStateHandle metaStateHandle;
+						if (snapshotCloseableRegistry.unregisterCloseable(metaStream)) {
+							metaStateHandle = metaStream.closeAndGetHandle();
+						} else {
+							throw new IOException("Stream already unregistered.");
+						}
+
+						incrementalSnapshotTracker.snapshotWritten(
+							snapshotPlan.checkpointId,
+							new IncrementalSnapshotTracker.MaterializedKeyGroups(
+								snapshotPlan.stateLayout,
+								files,
+								offsets,
+								snapshotPlan.nextIncrementalDepth()));
+
+						return SnapshotResult.of(new IncrementalHeapKeyedStateHandle(
+							incrementalSnapshotTracker.getBackendIdentifier(),
+							keyGroupRange,
+							snapshotPlan.checkpointId,
+							sharedState,
+							metaStateHandle));
+					} catch (Exception e) {
+						if (newSharedStateHandle != null) {
+							try {
+								newSharedStateHandle.discardState();
+							} catch (Exception discardException) {
+								e.addSuppressed(discardException);
+							}
+						}
+						throw e;
+					}
+				}
+
+				@Override
+				protected void cleanupProvidedResources() {
+					for (StateSnapshot tableSnapshot : cowStateStableSnapshots.values()) {
+						tableSnapshot.release();
+					}
+				}
+
+				@Override
+				protected void logAsyncSnapshotComplete(long startTime) {
+					if (snapshotStrategySynchronicityTrait.isAsynchronous()) {
+						logAsyncCompleted(primaryStreamFactory, startTime);
+					}
+				}
+			};
+
+		final FutureTask<SnapshotResult<KeyedStateHandle>> task =
+			asyncSnapshotCallable.toAsyncSnapshotFutureTask(cancelStreamRegistry);
+		finalizeSnapshotBeforeReturnHook(task);
+
+		return task;
+	}
+
+	/**
+	 * Writes a full snapshot to several streams in parallel. The key-group range is divided into contiguous slices of
+	 * (almost) the same number of key-groups, one per stream. Every stream starts with the meta information of the
+	 * states, so that every slice can be restored like a snapshot of its own, see
+	 * {@link CompositeKeyGroupsStateHandle}. The first slice is written by the asynchronous snapshot thread.
+	 */
+	private RunnableFuture<SnapshotResult<KeyedStateHandle>> parallelSnapshot(
+		CheckpointStreamFactory primaryStreamFactory,
+		SupplierWithException<CheckpointStreamWithResultProvider, Exception> checkpointStreamSupplier,
+		KeyedBackendSerializationProxy<K> serializationProxy,
+		Map<StateUID, StateSnapshot> cowStateStableSnapshots,
+		Map<StateUID, Integer> stateNamesToId) throws IOException {
+
+		//--------------------------------------------------- this becomes the end of sync part
+
+		final AsyncSnapshotCallable<SnapshotResult<KeyedStateHandle>> asyncSnapshotCallable =
+			new AsyncSnapshotCallable<SnapshotResult<KeyedStateHandle>>() {
+				@Override
+				protected SnapshotResult<KeyedStateHandle> callInternal() throws Exception {
+
+					final List<Map<StateUID, StateSnapshot.StateKeyGroupWriter>> sliceWriters = createSliceWriters(
+						cowStateStableSnapshots,
+						Math.min(numberOfSnapshottingThreads, keyGroupRange.getNumberOfKeyGroups()));
+					final int numberOfSlices = sliceWriters.size();
+
+					final ByteArrayOutputStream metaInfoOut = new ByteArrayOutputStream();
+					serializationProxy.write(new DataOutputViewStreamWrapper(metaInfoOut));
+					final byte[] serializedMetaInfo = metaInfoOut.toByteArray();
+
+					// closing the registry of the slices aborts all slices, e.g. when one of them failed
+					final CloseableRegistry sliceCloseableRegistry = new CloseableRegistry();
+					snapshotCloseableRegistry.registerCloseable(sliceCloseableRegistry);
+
+					final List<FutureTask<SnapshotResult<KeyedStateHandle>>> sliceTasks = new ArrayList<>(numberOfSlices);
+					for (int slice = 0; slice < numberOfSlices; ++slice) {
+						final KeyGroupRange sliceRange = getSliceRange(slice, numberOfSlices);
+						final Map<StateUID, StateSnapshot.StateKeyGroupWriter> keyGroupWriters = sliceWriters.get(slice);
+						sliceTasks.add(new FutureTask<>(() -> writeSlice(
+							sliceRange,
+							serializedMetaInfo,
+							keyGroupWriters,
+							stateNamesToId,
+							checkpointStreamSupplier,
+							sliceCloseableRegistry)));
+					}
+
+					if (numberOfSlices == 1) {
+						sliceTasks.get(0).run();
+						return collectSliceResults(sliceTasks, sliceCloseableRegistry);
+					}
+
+					final ExecutorService executor = Executors.newFixedThreadPool(
+						numberOfSlices - 1, new ExecutorThreadFactory("heap-snapshot"));
+					try {
+						for (int slice = 1; slice < numberOfSlices; ++slice) {
+							executor.execute(sliceTasks.get(slice));
+						}
+						sliceTasks.get(0).run();
+						return collectSliceResults(sliceTasks, sliceCloseableRegistry);
+					} finally {
+						executor.shutdownNow();
+					}
+				}
+
+				@Override
+				protected void cleanupProvidedResources() {
+					for (StateSnapshot tableSnapshot : cowStateStableSnapshots.values()) {
+						tableSnapshot.release();
+					}
+				}
+
+				@Override
+				protected void logAsyncSnapshotComplete(long startTime) {
+					if (snapshotStrategySynchronicityTrait.isAsynchronous()) {
+						logAsyncCompleted(primaryStreamFactory, startTime);
+					}
+				}
+			};
+
+		final FutureTask<SnapshotResult<KeyedStateHandle>> task =
+			asyncSnapshotCallable.toAsyncSnapshotFutureTask(cancelStreamRegistry);
+		finalizeSnapshotBeforeReturnHook(task);
+
+		return task;
+	}
+
+	/**
+	 * Writes the meta information and the key-groups of a slice to a new stream.
+	 */
+	private SnapshotResult<KeyedStateHandle> writeSlice(
+		KeyGroupRange sliceRange,
+		byte[] serializedMetaInfo,
+		Map<StateUID, StateSnapshot.StateKeyGroupWriter> keyGroupWriters,
+		Map<StateUID, Integer> stateNamesToId,
+		SupplierWithException<CheckpointStreamWithResultProvider, Exception> checkpointStreamSupplier,
+		CloseableRegistry sliceCloseableRegistry) throws Exception {
+
+		final CheckpointStreamWithResultProvider streamWithResultProvider = checkpointStreamSupplier.get();
+
+		sliceCloseableRegistry.registerCloseable(streamWithResultProvider);
+
+		final CheckpointStreamFactory.CheckpointStateOutputStream localStream =
+			streamWithResultProvider.getCheckpointOutputStream();
+
+		final DataOutputViewStreamWrapper outView = new DataOutputViewStreamWrapper(localStream);
+		outView.write(serializedMetaInfo);
+
+		final long[] keyGroupRangeOffsets = new long[sliceRange.getNumberOfKeyGroups()];
+
+		for (int keyGroupPos = 0; keyGroupPos < sliceRange.getNumberOfKeyGroups(); ++keyGroupPos) {
+			int keyGroupId = sliceRange.getKeyGroupId(keyGroupPos);
+			keyGroupRangeOffsets[keyGroupPos] = localStream.getPos();
+			writeKeyGroup(localStream, outView, keyGroupId, keyGroupWriters, stateNamesToId);
+		}
+
+		if (sliceCloseableRegistry.unregisterCloseable(streamWithResultProvider)) {
+			KeyGroupRangeOffsets kgOffs = new KeyGroupRangeOffsets(sliceRange, keyGroupRangeOffsets);
+			SnapshotResult<StreamStateHandle> result =
+				streamWithResultProvider.closeAndFinalizeCheckpointStreamResult();
+			return CheckpointStreamWithResultProvider.toKeyedStateHandleSnapshotResult(result, kgOffs);
+		} else {
+			throw new IOException("Stream already unregistered.");
+		}
+	}
+
+	/**
+	 * Waits for all slices and combines their handles. If a slice fails, the other slices are aborted and the handles
+	 * of the completed slices are discarded. This only returns once no slice is written anymore, because the state
+	 * snapshots are released afterwards.
+	 */
+	private static SnapshotResult<KeyedStateHandle> collectSliceResults(
+		List<FutureTask<SnapshotResult<KeyedStateHandle>>> sliceTasks,
+		CloseableRegistry sliceCloseableRegistry) throws Exception {
+
+		final List<SnapshotResult<KeyedStateHandle>> sliceResults = new ArrayList<>(sliceTasks.size());
+		Exception exception = null;
+
+		for (FutureTask<SnapshotResult<KeyedStateHandle>> sliceTask : sliceTasks) {
+			try {
+				sliceResults.add(sliceTask.get());
+			} catch (Exception e) {
+				IOUtils.closeQuietly(sliceCloseableRegistry);
+				exception = ExceptionUtils.firstOrSuppressed(
+					new IOException("Could not write a slice of the heap snapshot.",
+						ExceptionUtils.stripExecutionException(e)),
+					exception);
+			}
+		}
+
+		if (exception != null) {
+			for (SnapshotResult<KeyedStateHandle> sliceResult : sliceResults) {
+				try {
+					sliceResult.discardState();
+				} catch (Exception discardException) {
+					exception.addSuppressed(discardException);
+				}
+			}
+			throw exception;
+		}
+
+		if (sliceResults.size() == 1) {
+			return sliceResults.get(0);
+		}
+
+		final List<KeyGroupsStateHandle> jobManagerOwnedHandles = new ArrayList<>(sliceResults.size());
+		List<KeyGroupsStateHandle> taskLocalHandles = new ArrayList<>(sliceResults.size());
+
+		for (SnapshotResult<KeyedStateHandle> sliceResult : sliceResults) {
+			jobManagerOwnedHandles.add((KeyGroupsStateHandle) sliceResult.getJobManagerOwnedSnapshot());
+			if (taskLocalHandles != null && sliceResult.getTaskLocalSnapshot() != null) {
+				taskLocalHandles.add((KeyGroupsStateHandle) sliceResult.getTaskLocalSnapshot());
+			} else {
+				// local recovery needs the local state of all slices
+				taskLocalHandles = null;
+			}
+		}
+
+		final KeyedStateHandle jmKeyedState = new CompositeKeyGroupsStateHandle(jobManagerOwnedHandles);
+		return taskLocalHandles != null ?
+			SnapshotResult.withLocalState(jmKeyedState, new CompositeKeyGroupsStateHandle(taskLocalHandles)) :
+			SnapshotResult.of(jmKeyedState);
+	}
+
+	/**
+	 * Returns the key-group range of a slice. The slices are contiguous and ordered by key-group.
+	 */
+	private KeyGroupRange getSliceRange(int slice, int numberOfSlices) {
+		final int numberOfKeyGroups = keyGroupRange.getNumberOfKeyGroups();
+		final int startKeyGroup = keyGroupRange.getStartKeyGroup();
+		return KeyGroupRange.of(
+			startKeyGroup + slice * numberOfKeyGroups / numberOfSlices,
+			startKeyGroup + (slice + 1) * numberOfKeyGroups / numberOfSlices - 1);
+	}
+
+	/**
+	 * Creates the writers of the states for every slice. The first slice uses the writers of the snapshots, all other
+	 * slices use concurrent writers. If a snapshot does not support concurrent writers, there is only one slice.
+	 */
+	private static List<Map<StateUID, StateSnapshot.StateKeyGroupWriter>> createSliceWriters(
+		Map<StateUID, StateSnapshot> cowStateStableSnapshots,
+		int numberOfSlices) {
+
+		final List<Map<StateUID, StateSnapshot.StateKeyGroupWriter>> sliceWriters = new ArrayList<>(numberOfSlices);
+		sliceWriters.add(getKeyGroupWriters(cowStateStableSnapshots));
+
+		for (int slice = 1; slice < numberOfSlices; ++slice) {
+			final Map<StateUID, StateSnapshot.StateKeyGroupWriter> keyGroupWriters =
+				new HashMap<>(cowStateStableSnapshots.size());
+			for (Map.Entry<StateUID, StateSnapshot> stateSnapshot : cowStateStableSnapshots.entrySet()) {
+				StateSnapshot.StateKeyGroupWriter keyGroupWriter = stateSnapshot.getValue().getConcurrentKeyGroupWriter();
+				if (keyGroupWriter == null) {
+					return Collections.singletonList(sliceWriters.get(0));
+				}
+				keyGroupWriters.put(stateSnapshot.getKey(), keyGroupWriter);
+			}
+			sliceWriters.add(keyGroupWriters);
+		}
+
+		return sliceWriters;
+	}
+
+	private static Map<StateUID, StateSnapshot.StateKeyGroupWriter> getKeyGroupWriters(
+		Map<StateUID, StateSnapshot> cowStateStableSnapshots) {
+
+		final Map<StateUID, StateSnapshot.StateKeyGroupWriter> keyGroupWriters =
+			new HashMap<>(cowStateStableSnapshots.size());
+		for (Map.Entry<StateUID, StateSnapshot> stateSnapshot : cowStateStableSnapshots.entrySet()) {
+			keyGroupWriters.put(stateSnapshot.getKey(), stateSnapshot.getValue().getKeyGroupWriter());
+		}
+		return keyGroupWriters;
+	}
+
+	/**
+	 * Writes the id of the key-group, followed by the mappings of all states in the key-group.
+	 */
+	private void writeKeyGroup(
+		CheckpointStreamFactory.CheckpointStateOutputStream stream,
+		DataOutputViewStreamWrapper outView,
+		int keyGroupId,
+		Map<StateUID, StateSnapshot.StateKeyGroupWriter> keyGroupWriters,
+		Map<StateUID, Integer> stateNamesToId) throws IOException {
+
+		outView.writeInt(keyGroupId);
+
+		for (Map.Entry<StateUID, StateSnapshot.StateKeyGroupWriter> keyGroupWriter :
+			keyGroupWriters.entrySet()) {
+			try (
+				OutputStream kgCompressionOut =
+					keyGroupCompressionDecorator.decorateWithCompression(stream)) {
+				DataOutputViewStreamWrapper kgCompressionView =
+					new DataOutputViewStreamWrapper(kgCompressionOut);
+				kgCompressionView.writeShort(stateNamesToId.get(keyGroupWriter.getKey()));
+				keyGroupWriter.getValue().writeStateInKeyGroup(kgCompressionView, keyGroupId);
+			} // this will just close the outer compression stream
+		}
+	}
+
+	/**
+	 * Returns a view of the given priority queue that marks the key-groups of modified elements for incremental
+	 * snapshots, or the priority queue itself if incremental snapshots are disabled.
+	 */
+	<T> KeyGroupedInternalPriorityQueue<T> trackKeyGroupModifications(
+		KeyGroupedInternalPriorityQueue<T> priorityQueue,
+		KeyExtractorFunction<T> keyExtractor,
+		int totalNumberOfKeyGroups) {
+		return incrementalSnapshotTracker != null ?
+			new KeyGroupTrackingPriorityQueue<>(priorityQueue, keyExtractor, incrementalSnapshotTracker, totalNumberOfKeyGroups) :
+			priorityQueue;
+	}
+
+	void notifyCheckpointComplete(long checkpointId) {
+		if (incrementalSnapshotTracker != null) {
+			incrementalSnapshotTracker.notifyCheckpointComplete(checkpointId);
+		}
+	}
+
 	@Override
 	public void finalizeSnapshotBeforeReturnHook(Runnable runnable) {
 		snapshotStrategySynchronicityTrait.finalizeSnapshotBeforeReturnHook(runnable);
@@ -239,7 +695,14 @@ class HeapSnapshotStrategy<K>
 	public <N, V> StateTable<K, N, V> newStateTable(
 		InternalKeyContext<K> keyContext,
 		RegisteredKeyValueStateBackendMetaInfo<N, V> newMetaInfo) {
-		return snapshotStrategySynchronicityTrait.newStateTable(keyContext, newMetaInfo);
+		StateTable<K, N, V> stateTable = snapshotStrategySynchronicityTrait.newStateTable(keyContext, newMetaInfo);
+		stateTable.setIncrementalSnapshotTracker(incrementalSnapshotTracker);
+		return stateTable;
+	}
+
+	@Override
+	public void dispose() {
+		snapshotStrategySynchronicityTrait.dispose();
 	}
 
 	private void processSnapshotMetaInfoForAllStates(
@@ -261,6 +724,14 @@ class HeapSnapshotStrategy<K>
 		}
 	}
 
+	private static List<StateUID> getStateLayout(Map<StateUID, Integer> stateNamesToId) {
+		final StateUID[] stateLayout = new StateUID[stateNamesToId.size()];
+		for (Map.Entry<StateUID, Integer> stateNameToId : stateNamesToId.entrySet()) {
+			stateLayout[stateNameToId.getValue()] = stateNameToId.getKey();
+		}
+		return Arrays.asList(stateLayout);
+	}
+
 	private boolean hasRegisteredState() {
 		return !(registeredKVStates.isEmpty() && registeredPQStates.isEmpty());
 	}
@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.state.heap;
+
+import org.apache.flink.runtime.state.KeyGroupRange;
+import org.apache.flink.runtime.state.StateHandleID;
+import org.apache.flink.util.Preconditions;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Bookkeeping for incremental snapshots of the heap backend.
+ *
+ * <p>Incremental snapshots work at key-group granularity: every key-group of the backend is written as a complete
+ * image into a shared file, and a checkpoint references, for each key-group, the file and offset of its latest image.
+ * Key-groups that were not modified since the last <i>completed</i> checkpoint reuse the image of that checkpoint, so
+ * the amount of written data scales with the number of modified key-groups. Because every image is complete, a restore
+ * never has to replay a chain of deltas.
+ *
+ * <p>Modifications are tracked per key-group and per interval between two snapshots. The intervals are kept until a
+ * checkpoint that covers them completes, so that failed or declined checkpoints never lose modifications.
+ *
+ * <p>The methods to mark modifications and to start snapshots must be called from the task thread; the results of
+ * snapshots can be reported from the asynchronous snapshot thread.
+ */
+final class IncrementalSnapshotTracker {
+
+	/** The key-groups of the backend. */
+	@Nonnull
+	private final KeyGroupRange keyGroupRange;
+
+	/** After this many incremental checkpoints on top of a full one, all key-groups are written again. */
+	private final int fullSnapshotInterval;
+
+	/** Identifies the backend in the keys of its shared state. */
+	@Nonnull
+	private final UUID backendIdentifier;
+
+	/** Key-groups (relative to the start of the range) that were modified since the last snapshot. */
+	@Nonnull
+	private BitSet modifiedKeyGroups;
+
+	/** Lock that guards the bookkeeping which is shared with the asynchronous snapshot threads. */
+	private final Object lock = new Object();
+
+	/** Key-groups modified in the interval that ended with the snapshot for the checkpoint id, for all checkpoints that did not complete yet. */
+	@GuardedBy("lock")
+	private final SortedMap<Long, BitSet> modifiedKeyGroupsByCheckpoint;
+
+	/** Materialized key-groups of snapshots that are written, but where the checkpoint did not complete yet. */
+	@GuardedBy("lock")
+	private final SortedMap<Long, MaterializedKeyGroups> pendingSnapshots;
+
+	/** Materialized key-groups of the last completed checkpoint, the base for incremental snapshots. */
+	@GuardedBy("lock")
+	@Nullable
+	private MaterializedKeyGroups lastCompletedSnapshot;
+
+	IncrementalSnapshotTracker(@Nonnull KeyGroupRange keyGroupRange, int fullSnapshotInterval) {
+		Preconditions.checkArgument(fullSnapshotInterval > 0, "The full snapshot interval must be positive.");
+		this.keyGroupRange = keyGroupRange;
+		this.fullSnapshotInterval = fullSnapshotInterval;
+		this.backendIdentifier = UUID.randomUUID();
+		this.modifiedKeyGroups = new BitSet(keyGroupRange.getNumberOfKeyGroups());
+		this.modifiedKeyGroupsByCheckpoint = new TreeMap<>();
+		this.pendingSnapshots = new TreeMap<>();
+		this.lastCompletedSnapshot = null;
+	}
+
+	/**
+	 * Marks the given key-group as modified. Key-groups outside the range of the backend are ignored.
+	 */
+	void markKeyGroupModified(int keyGroup) {
+		if (keyGroupRange.contains(keyGroup)) {
+			modifiedKeyGroups.set(keyGroup - keyGroupRange.getStartKeyGroup());
+		}
+	}
+
+	/**
+	 * Starts a snapshot for the given checkpoint. This must be called in the synchronous part of the snapshot, at the
+	 * same point where the state tables are snapshotted.
+	 *
+	 * @param checkpointId the id of the checkpoint.
+	 * @param stateLayout the states of the backend, ordered by the id under which they are written.
+	 * @return the plan which key-groups must be written and which can be reused.
+	 */
+	@Nonnull
+	SnapshotPlan startSnapshot(long checkpointId, @Nonnull List<StateUID> stateLayout) {
+		final BitSet intervalModifications = modifiedKeyGroups;
+		modifiedKeyGroups = new BitSet(keyGroupRange.getNumberOfKeyGroups());
+
+		synchronized (lock) {
+			modifiedKeyGroupsByCheckpoint.put(checkpointId, intervalModifications);
+
+			final MaterializedKeyGroups base = lastCompletedSnapshot;
+			if (base == null ||
+				base.incrementalDepth >= fullSnapshotInterval ||
+				!base.stateLayout.equals(stateLayout)) {
+
+				final BitSet allKeyGroups = new BitSet(keyGroupRange.getNumberOfKeyGroups());
+				allKeyGroups.set(0, keyGroupRange.getNumberOfKeyGroups());
+				return new SnapshotPlan(checkpointId, stateLayout, allKeyGroups, null);
+			}
+
+			// everything that changed after the base, including the intervals of failed or pending checkpoints
+			final BitSet toWrite = new BitSet(keyGroupRange.getNumberOfKeyGroups());
+			for (BitSet modifications : modifiedKeyGroupsByCheckpoint.values()) {
+				toWrite.or(modifications);
+			}
+			return new SnapshotPlan(checkpointId, stateLayout, toWrite, base);
+		}
+	}
+
+	/**
+	 * Reports the materialized key-groups of a written snapshot. They become the base for incremental snapshots once
+	 * the checkpoint completes.
+	 */
+	void snapshotWritten(long checkpointId, @Nonnull MaterializedKeyGroups materializedKeyGroups) {
+		synchronized (lock) {
+			pendingSnapshots.put(checkpointId, materializedKeyGroups);
+		}
+	}
+
+	/**
+	 * Promotes the snapshot of the completed checkpoint to the base of incremental snapshots. Checkpoints without a
+	 * written snapshot of this tracker (e.g. savepoints) are ignored.
+	 */
+	void notifyCheckpointComplete(long checkpointId) {
+		synchronized (lock) {
+			final MaterializedKeyGroups completed = pendingSnapshots.get(checkpointId);
+			if (completed == null) {
+				return;
+			}
+
+			lastCompletedSnapshot = completed;
+			pendingSnapshots.headMap(checkpointId + 1).clear();
+
+			// modifications up to the completed checkpoint are contained in its snapshot
+			modifiedKeyGroupsByCheckpoint.headMap(checkpointId + 1).clear();
+		}
+	}
+
+	@Nonnull
+	KeyGroupRange getKeyGroupRange() {
+		return keyGroupRange;
+	}
+
+	@Nonnull
+	UUID getBackendIdentifier() {
+		return backendIdentifier;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Describes which key-groups a snapshot writes and where the other key-groups can be found.
+	 */
+	static final class SnapshotPlan {
+
+		final long checkpointId;
+
+		@Nonnull
+		final List<StateUID> stateLayout;
+
+		/** Key-groups (relative to the start of the range) that must be written. */
+		@Nonnull
+		final BitSet keyGroupsToWrite;
+
+		/** The materialized key-groups that provide all key-groups that are not written, null for full snapshots. */
+		@Nullable
+		final MaterializedKeyGroups base;
+
+		SnapshotPlan(
+			long checkpointId,
+			@Nonnull List<StateUID> stateLayout,
+			@Nonnull BitSet keyGroupsToWrite,
+			@Nullable MaterializedKeyGroups base) {
+			this.checkpointId = checkpointId;
+			this.stateLayout = stateLayout;
+			this.keyGroupsToWrite = keyGroupsToWrite;
+			this.base = base;
+		}
+
+		int nextIncrementalDepth() {
+			return base == null ? 0 : base.incrementalDepth + 1;
+		}
+	}
+
+	/**
+	 * The location of the latest image of every key-group of the backend.
+	 */
+	static final class MaterializedKeyGroups {
+
+		@Nonnull
+		final List<StateUID> stateLayout;
+
+		/** The shared file that holds the image, per key-group relative to the start of the range. */
+		@Nonnull
+		final StateHandleID[] files;
+
+		/** The offset of the image in the file, per key-group relative to the start of the range. */
+		@Nonnull
+		final long[] offsets;
+
+		/** Number of incremental snapshots since the last full snapshot. */
+		final int incrementalDepth;
+
+		MaterializedKeyGroups(
+			@Nonnull List<StateUID> stateLayout,
+			@Nonnull StateHandleID[] files,
+			@Nonnull long[] offsets,
+			int incrementalDepth) {
+			Preconditions.checkArgument(files.length == offsets.length);
+			this.stateLayout = stateLayout;
+			this.files = files;
+			this.offsets = offsets;
+			this.incrementalDepth = incrementalDepth;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.state.heap;
+
+import org.apache.flink.runtime.state.KeyExtractorFunction;
+import org.apache.flink.runtime.state.KeyGroupRangeAssignment;
+import org.apache.flink.runtime.state.KeyGroupedInternalPriorityQueue;
+import org.apache.flink.util.CloseableIterator;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * A {@link KeyGroupedInternalPriorityQueue} that marks the key-groups of all added and removed elements as modified
+ * for incremental snapshots, and otherwise delegates to the priority queue of the backend.
+ *
+ * @param <T> type of the contained elements.
+ */
+final class KeyGroupTrackingPriorityQueue<T> implements KeyGroupedInternalPriorityQueue<T> {
+
+	@Nonnull
+	private final KeyGroupedInternalPriorityQueue<T> priorityQueue;
+
+	@Nonnull
+	private final KeyExtractorFunction<T> keyExtractor;
+
+	@Nonnull
+	private final IncrementalSnapshotTracker incrementalSnapshotTracker;
+
+	@Nonnegative
+	private final int totalNumberOfKeyGroups;
+
+	KeyGroupTrackingPriorityQueue(
+		@Nonnull KeyGroupedInternalPriorityQueue<T> priorityQueue,
+		@Nonnull KeyExtractorFunction<T> keyExtractor,
+		@Nonnull IncrementalSnapshotTracker incrementalSnapshotTracker,
+		@Nonnegative int totalNumberOfKeyGroups) {
+		this.priorityQueue = priorityQueue;
+		this.keyExtractor = keyExtractor;
+		this.incrementalSnapshotTracker = incrementalSnapshotTracker;
+		this.totalNumberOfKeyGroups = totalNumberOfKeyGroups;
+	}
+
+	@Nullable
+	@Override
+	public T poll() {
+		final T element = priorityQueue.poll();
+		if (element != null) {
+			markKeyGroupModified(element);
+		}
+		return element;
+	}
+
+	@Nullable
+	@Override
+	public T peek() {
+		return priorityQueue.peek();
+	}
+
+	@Override
+	public boolean add(@Nonnull T toAdd) {
+		markKeyGroupModified(toAdd);
+		return priorityQueue.add(toAdd);
+	}
+
+	@Override
+	public boolean remove(@Nonnull T toRemove) {
+		markKeyGroupModified(toRemove);
+		return priorityQueue.remove(toRemove);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return priorityQueue.isEmpty();
+	}
+
+	@Override
+	public int size() {
+		return priorityQueue.size();
+	}
+
+	@Override
+	public void addAll(@Nullable Collection<? extends T> toAdd) {
+		if (toAdd == null) {
+			return;
+		}
+
+		for (T element : toAdd) {
+			markKeyGroupModified(element);
+		}
+		priorityQueue.addAll(toAdd);
+	}
+
+	@Nonnull
+	@Override
+	public CloseableIterator<T> iterator() {
+		return priorityQueue.iterator();
+	}
+
+	@Nonnull
+	@Override
+	public Set<T> getSubsetForKeyGroup(int keyGroupId) {
+		return priorityQueue.getSubsetForKeyGroup(keyGroupId);
+	}
+
+	private void markKeyGroupModified(T element) {
+		incrementalSnapshotTracker.markKeyGroupModified(
+			KeyGroupRangeAssignment.assignToKeyGroup(keyExtractor.extractKeyFromElement(element), totalNumberOfKeyGroups));
+	}
+}
@@ -159,21 +159,25 @@ public class NestedMapsStateTable<K, N, S> extends StateTable<K, N, S> {
 
 	@Override
 	public void put(N namespace, S state) {
+		markCurrentKeyGroupModified();
 		put(keyContext.getCurrentKey(), keyContext.getCurrentKeyGroupIndex(), namespace, state);
 	}
 
 	@Override
 	public S putAndGetOld(N namespace, S state) {
+		markCurrentKeyGroupModified();
 		return putAndGetOld(keyContext.getCurrentKey(), keyContext.getCurrentKeyGroupIndex(), namespace, state);
 	}
 
 	@Override
 	public void remove(N namespace) {
+		markCurrentKeyGroupModified();
 		remove(keyContext.getCurrentKey(), keyContext.getCurrentKeyGroupIndex(), namespace);
 	}
 
 	@Override
 	public S removeAndGetOld(N namespace) {
+		markCurrentKeyGroupModified();
 		return removeAndGetOld(keyContext.getCurrentKey(), keyContext.getCurrentKeyGroupIndex(), namespace);
 	}
 
@@ -302,6 +306,7 @@ public class NestedMapsStateTable<K, N, S> extends StateTable<K, N, S> {
 
 	@Override
 	public <T> void transform(N namespace, T value, StateTransformationFunction<S, T> transformation) throws Exception {
+		markCurrentKeyGroupModified();
 		final K key = keyContext.getCurrentKey();
 		checkKeyNamespacePreconditions(key, namespace);
 		final int keyGroupIndex = keyContext.getCurrentKeyGroupIndex();
@@ -348,15 +353,32 @@ public class NestedMapsStateTable<K, N, S> extends StateTable<K, N, S> {
 		private final TypeSerializer<N> namespaceSerializer;
 		private final TypeSerializer<S> stateSerializer;
 		private final StateSnapshotTransformer<S> snapshotFilter;
+		private final StateSnapshotTransformFactory<S> snapshotTransformFactory;
 
 		NestedMapsStateTableSnapshot(
 			NestedMapsStateTable<K, N, S> owningTable, StateSnapshotTransformFactory<S> snapshotTransformFactory) {
 
+			this(
+				owningTable,
+				snapshotTransformFactory,
+				owningTable.keyContext.getKeySerializer(),
+				owningTable.metaInfo.getNamespaceSerializer(),
+				owningTable.metaInfo.getStateSerializer());
+		}
+
+		private NestedMapsStateTableSnapshot(
+			NestedMapsStateTable<K, N, S> owningTable,
+			StateSnapshotTransformFactory<S> snapshotTransformFactory,
+			TypeSerializer<K> keySerializer,
+			TypeSerializer<N> namespaceSerializer,
+			TypeSerializer<S> stateSerializer) {
+
 			super(owningTable);
+			this.snapshotTransformFactory = snapshotTransformFactory;
 			this.snapshotFilter = snapshotTransformFactory.createForDeserializedState().orElse(null);
-			this.keySerializer = owningStateTable.keyContext.getKeySerializer();
-			this.namespaceSerializer = owningStateTable.metaInfo.getNamespaceSerializer();
-			this.stateSerializer = owningStateTable.metaInfo.getStateSerializer();
+			this.keySerializer = keySerializer;
+			this.namespaceSerializer = namespaceSerializer;
+			this.stateSerializer = stateSerializer;
 		}
 
 		@Nonnull
@@ -365,6 +387,21 @@ public class NestedMapsStateTable<K, N, S> extends StateTable<K, N, S> {
 			return this;
 		}
 
+		/**
+		 * Returns a writer with its own duplicates of the serializers and its own snapshot filter. This table is only
+		 * snapshotted synchronously, so the maps are not modified while the key-groups are written.
+		 */
+		@Nonnull
+		@Override
+		public StateKeyGroupWriter getConcurrentKeyGroupWriter() {
+			return new NestedMapsStateTableSnapshot<>(
+				owningStateTable,
+				snapshotTransformFactory,
+				keySerializer.duplicate(),
+				namespaceSerializer.duplicate(),
+				stateSerializer.duplicate());
+		}
+
 		@Nonnull
 		@Override
 		public StateMetaInfoSnapshot getMetaInfoSnapshot() {
@@ -522,11 +559,13 @@ public class NestedMapsStateTable<K, N, S> extends StateTable<K, N, S> {
 
 		@Override
 		public void remove(StateEntry<K, N, S> stateEntry) {
+			markKeyGroupModified(stateEntry.getKey());
 			state[keyGropuIndex - 1].get(stateEntry.getNamespace()).remove(stateEntry.getKey());
 		}
 
 		@Override
 		public void update(StateEntry<K, N, S> stateEntry, S newValue) {
+			markKeyGroupModified(stateEntry.getKey());
 			state[keyGropuIndex - 1].get(stateEntry.getNamespace()).put(stateEntry.getKey(), newValue);
 		}
 	}
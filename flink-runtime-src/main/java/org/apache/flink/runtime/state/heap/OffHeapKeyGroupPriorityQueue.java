@@ -0,0 +1,811 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.state.heap;
+
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.core.memory.DataInputDeserializer;
+import org.apache.flink.core.memory.DataOutputSerializer;
+import org.apache.flink.core.memory.DataOutputView;
+import org.apache.flink.core.memory.MemorySegment;
+import org.apache.flink.core.memory.MemorySegmentFactory;
+import org.apache.flink.runtime.state.InternalPriorityQueue;
+import org.apache.flink.util.CloseableIterator;
+import org.apache.flink.util.FlinkRuntimeException;
+import org.apache.flink.util.MathUtils;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A priority queue with set semantics for the elements of a single key-group that keeps its elements in serialized
+ * form in off-heap {@link MemorySegment} pages instead of as objects on the heap. It is used as the partition queue of
+ * an {@link OffHeapPriorityQueueSet}.
+ *
+ * <p>Elements are serialized with a byte-ordered serializer, i.e. the lexicographic (unsigned) order of the serialized
+ * bytes is aligned with the priority order of the elements. The queue therefore never deserializes elements to order
+ * them. The heap is a pair of primitive arrays: the addresses of the serialized entries, and the first eight bytes of
+ * each entry as an unsigned long (for timers this is the timestamp), so that most comparisons are a single long
+ * comparison. Only when those prefixes are equal are the full entries compared in the memory pages.
+ *
+ * <p>Set semantics are implemented with an open-addressing hash index (linear probing) over the entry addresses,
+ * which replaces the per key-group {@link java.util.HashMap} of {@link HeapPriorityQueueSet}. Removed entries leave
+ * garbage in the pages, which is reclaimed by compacting the live entries into fresh pages once the garbage exceeds the
+ * live data.
+ *
+ * <p>Each entry in a page has the layout {@code [int length][int hash][int heap index][length bytes of data]}.
+ * Addresses encode the page number in the upper and the offset within the page in the lower 32 bits.
+ *
+ * <p>The unpooled off-heap segments used by this queue are released when they become unreachable, like all direct
+ * memory that is not managed by the {@link org.apache.flink.runtime.memory.MemoryManager}.
+ *
+ * <p>Snapshots are copy-on-write: the data of an entry never changes after it was appended to a page, so a
+ * {@link SerializedElementsSnapshot} only keeps the pages and the heap array of addresses. The heap array is shared
+ * with the queue until the queue modifies it, and pages are not freed while snapshots are pending.
+ *
+ * @param <T> type of the elements in the queue.
+ */
+public class OffHeapKeyGroupPriorityQueue<T> implements InternalPriorityQueue<T>, HeapPriorityQueueElement {
+
+	/** The size of the header in front of each serialized entry. */
+	private static final int ENTRY_HEADER_BYTES = 12;
+
+	private static final int HASH_OFFSET = 4;
+
+	private static final int HEAP_INDEX_OFFSET = 8;
+
+	/** The initial capacity of the heap arrays. */
+	private static final int INITIAL_HEAP_CAPACITY = 16;
+
+	/** The initial capacity of the hash index, must be a power of two. */
+	private static final int INITIAL_INDEX_CAPACITY = 32;
+
+	/** Serialization utilities that are shared by all key-group partitions of one queue set. */
+	@Nonnull
+	private final ElementSerialization<T> serialization;
+
+	/** The size of regular memory pages. Entries larger than this get a page of their own. */
+	@Nonnegative
+	private final int pageSize;
+
+	/** The memory pages that contain the serialized entries. */
+	@Nonnull
+	private final ArrayList<MemorySegment> pages;
+
+	/** The write position in the last page. */
+	private int writeOffset;
+
+	/** Addresses of the entries, organized as a binary heap. */
+	@Nonnull
+	private long[] heapAddresses;
+
+	/** Whether {@link #heapAddresses} is shared with a snapshot and must be copied before it is modified. */
+	private boolean heapAddressesShared;
+
+	/** Unsigned 8-byte prefixes of the entries, aligned with {@link #heapAddresses}. */
+	@Nonnull
+	private long[] heapPrefixes;
+
+	/** The number of elements in the queue. */
+	@Nonnegative
+	private int size;
+
+	/** Open-addressing hash index over the entry addresses. Slots contain {@code address + 1}, 0 marks a free slot. */
+	@Nullable
+	private long[] index;
+
+	/** The number of bytes occupied by live entries, including headers. */
+	private long liveBytes;
+
+	/** The number of bytes occupied by removed entries, including headers. */
+	private long garbageBytes;
+
+	/** Cached, deserialized head element. Is null if the head has not been deserialized yet. */
+	@Nullable
+	private T cachedHead;
+
+	/** The index of this queue in the heap of key-group queues of the owning {@link OffHeapPriorityQueueSet}. */
+	private int internalIndex;
+
+	/** The number of snapshots that were not released yet. Pages are not freed while there are any. */
+	@Nonnull
+	private final AtomicInteger pendingSnapshots;
+
+	OffHeapKeyGroupPriorityQueue(@Nonnull ElementSerialization<T> serialization, @Nonnegative int pageSize) {
+		this.serialization = serialization;
+		this.pageSize = pageSize;
+		this.pages = new ArrayList<>();
+		this.heapAddresses = new long[INITIAL_HEAP_CAPACITY];
+		this.heapPrefixes = new long[INITIAL_HEAP_CAPACITY];
+		this.size = 0;
+		this.internalIndex = NOT_CONTAINED;
+		this.pendingSnapshots = new AtomicInteger(0);
+	}
+
+	// ------------------------------------------------------------------------
+	//  InternalPriorityQueue
+	// ------------------------------------------------------------------------
+
+	@Nullable
+	@Override
+	public T poll() {
+		if (size == 0) {
+			return null;
+		}
+
+		final T head = peek();
+		final long address = heapAddresses[0];
+		removeIndexSlot(findIndexSlot(address));
+		removeEntry(address);
+		return head;
+	}
+
+	@Nullable
+	@Override
+	public T peek() {
+		if (size == 0) {
+			return null;
+		}
+
+		if (cachedHead == null) {
+			cachedHead = deserializeEntry(heapAddresses[0], serialization.inputView);
+		}
+		return cachedHead;
+	}
+
+	@Override
+	public boolean add(@Nonnull T toAdd) {
+		final int length = serialization.serialize(toAdd);
+		final byte[] bytes = serialization.outputView.getSharedBuffer();
+		final int hash = hashBytes(bytes, length);
+
+		if (index == null) {
+			index = new long[INITIAL_INDEX_CAPACITY];
+		}
+
+		final int slot = findIndexSlot(bytes, length, hash);
+		if (index[slot] != 0L) {
+			return false;
+		}
+
+		final long address = appendEntry(bytes, length, hash);
+		index[slot] = address + 1L;
+
+		unshareHeapAddresses();
+		ensureHeapCapacity();
+		final int position = size++;
+		heapAddresses[position] = address;
+		heapPrefixes[position] = prefixOf(bytes, length);
+		setHeapIndex(address, position);
+		final int newPosition = siftUp(position);
+
+		if ((long) size << 1 > index.length) {
+			growIndex();
+		}
+
+		if (newPosition == 0) {
+			cachedHead = null;
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean remove(@Nonnull T toRemove) {
+		if (size == 0) {
+			return false;
+		}
+
+		final int length = serialization.serialize(toRemove);
+		final byte[] bytes = serialization.outputView.getSharedBuffer();
+		final int slot = findIndexSlot(bytes, length, hashBytes(bytes, length));
+		final long indexEntry = index[slot];
+
+		if (indexEntry == 0L) {
+			return false;
+		}
+
+		final long address = indexEntry - 1L;
+		final boolean wasHead = getHeapIndex(address) == 0;
+		removeIndexSlot(slot);
+		removeEntry(address);
+		return wasHead;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void addAll(@Nullable Collection<? extends T> toAdd) {
+		if (toAdd == null) {
+			return;
+		}
+
+		for (T element : toAdd) {
+			add(element);
+		}
+	}
+
+	/**
+	 * Returns an iterator over deserialized copies of the elements. The iterator does not guarantee any order and
+	 * must not be used while the queue is modified.
+	 */
+	@Nonnull
+	@Override
+	public CloseableIterator<T> iterator() {
+		return new DeserializingIterator();
+	}
+
+	// ------------------------------------------------------------------------
+	//  HeapPriorityQueueElement
+	// ------------------------------------------------------------------------
+
+	@Override
+	public int getInternalIndex() {
+		return internalIndex;
+	}
+
+	@Override
+	public void setInternalIndex(int newIndex) {
+		this.internalIndex = newIndex;
+	}
+
+	// ------------------------------------------------------------------------
+	//  Snapshots and serializer updates
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Creates a snapshot of the serialized elements of this queue. This only takes references to the pages and to
+	 * the heap array of addresses, the elements are read when the snapshot is written. The snapshot must be
+	 * released after it was written.
+	 */
+	@Nonnull
+	SerializedElementsSnapshot snapshotSerializedElements() {
+		heapAddressesShared = true;
+		pendingSnapshots.incrementAndGet();
+		return new SerializedElementsSnapshot(
+			pages.toArray(new MemorySegment[0]),
+			heapAddresses,
+			size,
+			pendingSnapshots);
+	}
+
+	/**
+	 * Re-encodes all elements after the serializer of the owning queue set was changed into one that writes a
+	 * different format. The elements are read with the given previous serializer.
+	 */
+	void reEncode(@Nonnull TypeSerializer<T> previousSerializer) {
+		if (size == 0) {
+			return;
+		}
+
+		final DataInputDeserializer inputView = new DataInputDeserializer();
+		final ArrayList<T> elements = new ArrayList<>(size);
+		for (int i = 0; i < size; ++i) {
+			elements.add(deserializeEntry(heapAddresses[i], previousSerializer, inputView));
+		}
+
+		releaseMemory();
+		addAll(elements);
+	}
+
+	// ------------------------------------------------------------------------
+	//  Heap maintenance
+	// ------------------------------------------------------------------------
+
+	private void removeEntry(long address) {
+		unshareHeapAddresses();
+		final int position = getHeapIndex(address);
+		final int last = --size;
+
+		if (position != last) {
+			moveInHeap(last, position);
+			if (siftDown(position) == position) {
+				siftUp(position);
+			}
+		}
+
+		if (position == 0) {
+			cachedHead = null;
+		}
+
+		final int entryBytes = pageOf(address).getInt(offsetOf(address)) + ENTRY_HEADER_BYTES;
+		liveBytes -= entryBytes;
+		garbageBytes += entryBytes;
+
+		if (size == 0) {
+			releaseMemory();
+		} else if (garbageBytes > liveBytes && garbageBytes > pageSize) {
+			compact();
+		}
+	}
+
+	private int siftUp(int position) {
+		final long address = heapAddresses[position];
+		final long prefix = heapPrefixes[position];
+
+		while (position > 0) {
+			final int parent = (position - 1) >>> 1;
+			if (compareEntries(prefix, address, heapPrefixes[parent], heapAddresses[parent]) >= 0) {
+				break;
+			}
+			moveInHeap(parent, position);
+			position = parent;
+		}
+
+		heapAddresses[position] = address;
+		heapPrefixes[position] = prefix;
+		setHeapIndex(address, position);
+		return position;
+	}
+
+	private int siftDown(int position) {
+		final long address = heapAddresses[position];
+		final long prefix = heapPrefixes[position];
+		final int half = size >>> 1;
+
+		while (position < half) {
+			int child = (position << 1) + 1;
+			final int right = child + 1;
+			if (right < size &&
+				compareEntries(heapPrefixes[right], heapAddresses[right], heapPrefixes[child], heapAddresses[child]) < 0) {
+				child = right;
+			}
+			if (compareEntries(prefix, address, heapPrefixes[child], heapAddresses[child]) <= 0) {
+				break;
+			}
+			moveInHeap(child, position);
+			position = child;
+		}
+
+		heapAddresses[position] = address;
+		heapPrefixes[position] = prefix;
+		setHeapIndex(address, position);
+		return position;
+	}
+
+	private void moveInHeap(int from, int to) {
+		final long address = heapAddresses[from];
+		heapAddresses[to] = address;
+		heapPrefixes[to] = heapPrefixes[from];
+		setHeapIndex(address, to);
+	}
+
+	private int compareEntries(long prefixA, long addressA, long prefixB, long addressB) {
+		final int prefixComparison = Long.compareUnsigned(prefixA, prefixB);
+		if (prefixComparison != 0) {
+			return prefixComparison;
+		}
+
+		final MemorySegment pageA = pageOf(addressA);
+		final MemorySegment pageB = pageOf(addressB);
+		final int offsetA = offsetOf(addressA);
+		final int offsetB = offsetOf(addressB);
+		final int lengthA = pageA.getInt(offsetA);
+		final int lengthB = pageB.getInt(offsetB);
+
+		final int bytesComparison = pageA.compare(
+			pageB,
+			offsetA + ENTRY_HEADER_BYTES,
+			offsetB + ENTRY_HEADER_BYTES,
+			Math.min(lengthA, lengthB));
+
+		return bytesComparison != 0 ? bytesComparison : Integer.compare(lengthA, lengthB);
+	}
+
+	/**
+	 * Copies the heap array of addresses if it is shared with a snapshot, so that it can be modified.
+	 */
+	private void unshareHeapAddresses() {
+		if (heapAddressesShared) {
+			heapAddresses = heapAddresses.clone();
+			heapAddressesShared = false;
+		}
+	}
+
+	private void ensureHeapCapacity() {
+		if (size == heapAddresses.length) {
+			final int newCapacity = heapAddresses.length << 1;
+			heapAddresses = Arrays.copyOf(heapAddresses, newCapacity);
+			heapPrefixes = Arrays.copyOf(heapPrefixes, newCapacity);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	//  Hash index
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Returns the slot that contains the entry with the given bytes, or the free slot where it would be inserted.
+	 */
+	private int findIndexSlot(byte[] bytes, int length, int hash) {
+		final long[] index = this.index;
+		final int mask = index.length - 1;
+		final MemorySegment probe = serialization.probeSegment();
+
+		int slot = hash & mask;
+		long indexEntry;
+		while ((indexEntry = index[slot]) != 0L) {
+			final long address = indexEntry - 1L;
+			final MemorySegment page = pageOf(address);
+			final int offset = offsetOf(address);
+			if (page.getInt(offset + HASH_OFFSET) == hash &&
+				page.getInt(offset) == length &&
+				page.compare(probe, offset + ENTRY_HEADER_BYTES, 0, length) == 0) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Returns the slot that contains the given, existing address.
+	 */
+	private int findIndexSlot(long address) {
+		final long[] index = this.index;
+		final int mask = index.length - 1;
+		final long indexEntry = address + 1L;
+
+		int slot = getHash(address) & mask;
+		while (index[slot] != indexEntry) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Frees the given slot with backward-shift deletion, so that no tombstones are required.
+	 */
+	private void removeIndexSlot(int slot) {
+		final long[] index = this.index;
+		final int mask = index.length - 1;
+
+		int hole = slot;
+		int next = (hole + 1) & mask;
+		long indexEntry;
+		while ((indexEntry = index[next]) != 0L) {
+			final int home = getHash(indexEntry - 1L) & mask;
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				index[hole] = indexEntry;
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		index[hole] = 0L;
+	}
+
+	private void growIndex() {
+		rebuildIndex(index.length << 1);
+	}
+
+	private void rebuildIndex(int capacity) {
+		final long[] newIndex = new long[capacity];
+		final int mask = capacity - 1;
+		for (int i = 0; i < size; ++i) {
+			final long address = heapAddresses[i];
+			int slot = getHash(address) & mask;
+			while (newIndex[slot] != 0L) {
+				slot = (slot + 1) & mask;
+			}
+			newIndex[slot] = address + 1L;
+		}
+		index = newIndex;
+	}
+
+	// ------------------------------------------------------------------------
+	//  Memory pages
+	// ------------------------------------------------------------------------
+
+	private long appendEntry(byte[] bytes, int length, int hash) {
+		final int entryBytes = length + ENTRY_HEADER_BYTES;
+
+		MemorySegment page = pages.isEmpty() ? null : pages.get(pages.size() - 1);
+		if (page == null || writeOffset + entryBytes > page.size()) {
+			page = MemorySegmentFactory.allocateUnpooledOffHeapMemory(Math.max(pageSize, entryBytes), this);
+			pages.add(page);
+			writeOffset = 0;
+		}
+
+		final int offset = writeOffset;
+		page.putInt(offset, length);
+		page.putInt(offset + HASH_OFFSET, hash);
+		page.put(offset + ENTRY_HEADER_BYTES, bytes, 0, length);
+		writeOffset += entryBytes;
+		liveBytes += entryBytes;
+
+		return ((long) (pages.size() - 1) << 32) | offset;
+	}
+
+	/**
+	 * Copies all live entries into fresh pages and releases the old pages.
+	 */
+	private void compact() {
+		final ArrayList<MemorySegment> oldPages = new ArrayList<>(pages);
+		pages.clear();
+		writeOffset = 0;
+		liveBytes = 0L;
+		garbageBytes = 0L;
+
+		byte[] buffer = new byte[64];
+		for (int i = 0; i < size; ++i) {
+			final long oldAddress = heapAddresses[i];
+			final MemorySegment oldPage = oldPages.get((int) (oldAddress >>> 32));
+			final int oldOffset = (int) oldAddress;
+			final int length = oldPage.getInt(oldOffset);
+			if (buffer.length < length) {
+				buffer = new byte[Math.max(length, buffer.length << 1)];
+			}
+			oldPage.get(oldOffset + ENTRY_HEADER_BYTES, buffer, 0, length);
+			final long newAddress = appendEntry(buffer, length, oldPage.getInt(oldOffset + HASH_OFFSET));
+			heapAddresses[i] = newAddress;
+			setHeapIndex(newAddress, i);
+		}
+
+		freePages(oldPages);
+
+		rebuildIndex(index.length);
+	}
+
+	/**
+	 * Drops all entries and releases the pages and the index, so that empty key-groups do not hold on to memory.
+	 */
+	private void releaseMemory() {
+		freePages(pages);
+		pages.clear();
+		writeOffset = 0;
+		liveBytes = 0L;
+		garbageBytes = 0L;
+		size = 0;
+		index = null;
+		cachedHead = null;
+		if (heapAddressesShared || heapAddresses.length > INITIAL_HEAP_CAPACITY) {
+			heapAddresses = new long[INITIAL_HEAP_CAPACITY];
+			heapPrefixes = new long[INITIAL_HEAP_CAPACITY];
+			heapAddressesShared = false;
+		}
+	}
+
+	/**
+	 * Frees the given pages, unless snapshots are pending that may still read them. In that case the pages are only
+	 * dropped and released when they become unreachable.
+	 */
+	private void freePages(Collection<MemorySegment> pagesToFree) {
+		if (pendingSnapshots.get() == 0) {
+			for (MemorySegment page : pagesToFree) {
+				page.free();
+			}
+		}
+	}
+
+	private MemorySegment pageOf(long address) {
+		return pages.get((int) (address >>> 32));
+	}
+
+	private static int offsetOf(long address) {
+		return (int) address;
+	}
+
+	private int getHash(long address) {
+		return pageOf(address).getInt(offsetOf(address) + HASH_OFFSET);
+	}
+
+	private int getHeapIndex(long address) {
+		return pageOf(address).getInt(offsetOf(address) + HEAP_INDEX_OFFSET);
+	}
+
+	private void setHeapIndex(long address, int heapIndex) {
+		pageOf(address).putInt(offsetOf(address) + HEAP_INDEX_OFFSET, heapIndex);
+	}
+
+	// ------------------------------------------------------------------------
+	//  (De)serialization
+	// ------------------------------------------------------------------------
+
+	private T deserializeEntry(long address, DataInputDeserializer inputView) {
+		return deserializeEntry(address, serialization.serializer, inputView);
+	}
+
+	private T deserializeEntry(long address, TypeSerializer<T> serializer, DataInputDeserializer inputView) {
+		final MemorySegment page = pageOf(address);
+		final int offset = offsetOf(address);
+		final int length = page.getInt(offset);
+		final byte[] bytes = new byte[length];
+		page.get(offset + ENTRY_HEADER_BYTES, bytes, 0, length);
+		inputView.setBuffer(bytes, 0, length);
+		try {
+			return serializer.deserialize(inputView);
+		} catch (IOException e) {
+			throw new FlinkRuntimeException("Error while deserializing the element.", e);
+		}
+	}
+
+	/**
+	 * Returns the first (up to) eight bytes of the serialized element as a big-endian unsigned long, padded with zeros.
+	 * The unsigned order of the prefixes is consistent with the lexicographic order of the full entries.
+	 */
+	private static long prefixOf(byte[] bytes, int length) {
+		long prefix = 0L;
+		for (int i = 0; i < Long.BYTES; ++i) {
+			prefix = (prefix << 8) | (i < length ? (bytes[i] & 0xFFL) : 0L);
+		}
+		return prefix;
+	}
+
+	private static int hashBytes(byte[] bytes, int length) {
+		int hash = 1;
+		for (int i = 0; i < length; ++i) {
+			hash = 31 * hash + bytes[i];
+		}
+		return MathUtils.murmurHash(hash);
+	}
+
+	/**
+	 * Iterator that deserializes the elements in heap-array order.
+	 */
+	private final class DeserializingIterator implements CloseableIterator<T> {
+
+		private final DataInputDeserializer inputView = new DataInputDeserializer();
+
+		private int position = 0;
+
+		@Override
+		public boolean hasNext() {
+			return position < size;
+		}
+
+		@Override
+		public T next() {
+			if (position >= size) {
+				throw new NoSuchElementException("Iterator has no next element.");
+			}
+			return deserializeEntry(heapAddresses[position++], inputView);
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/**
+	 * A snapshot of the serialized elements of a queue. It holds the pages and the addresses of the elements at the
+	 * time of the snapshot, and writes the elements directly from the pages. Writing does not modify any state, so
+	 * snapshots of different key-groups can be written concurrently.
+	 */
+	static final class SerializedElementsSnapshot {
+
+		@Nonnull
+		private final MemorySegment[] pages;
+
+		/** The addresses of the elements, shared with the queue until the queue modifies them. */
+		@Nonnull
+		private final long[] addresses;
+
+		@Nonnegative
+		private final int size;
+
+		@Nonnull
+		private final AtomicInteger pendingSnapshots;
+
+		@Nonnull
+		private final AtomicBoolean released;
+
+		private SerializedElementsSnapshot(
+			@Nonnull MemorySegment[] pages,
+			@Nonnull long[] addresses,
+			@Nonnegative int size,
+			@Nonnull AtomicInteger pendingSnapshots) {
+			this.pages = pages;
+			this.addresses = addresses;
+			this.size = size;
+			this.pendingSnapshots = pendingSnapshots;
+			this.released = new AtomicBoolean(false);
+		}
+
+		@Nonnegative
+		int size() {
+			return size;
+		}
+
+		/**
+		 * Writes the serialized elements back-to-back and without entry headers. This is exactly the format in which
+		 * {@link org.apache.flink.runtime.state.KeyGroupPartitioner} writes the elements of a key-group.
+		 */
+		void writeSerializedElements(@Nonnull DataOutputView dov) throws IOException {
+			for (int i = 0; i < size; ++i) {
+				final long address = addresses[i];
+				final MemorySegment page = pages[(int) (address >>> 32)];
+				final int offset = offsetOf(address);
+				page.get(dov, offset + ENTRY_HEADER_BYTES, page.getInt(offset));
+			}
+		}
+
+		void release() {
+			if (released.compareAndSet(false, true)) {
+				pendingSnapshots.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Serializer and (de)serialization buffers that are shared between all key-group partitions of one
+	 * {@link OffHeapPriorityQueueSet}. Not thread-safe, like the queues that use it.
+	 *
+	 * @param <T> type of the serialized elements.
+	 */
+	static final class ElementSerialization<T> {
+
+		@Nonnull
+		TypeSerializer<T> serializer;
+
+		@Nonnull
+		final DataOutputSerializer outputView;
+
+		@Nonnull
+		final DataInputDeserializer inputView;
+
+		/** Segment that wraps the shared buffer of {@link #outputView} for comparisons against stored entries. */
+		@Nullable
+		private MemorySegment probeSegment;
+
+		/** The buffer that is currently wrapped by {@link #probeSegment}. */
+		@Nullable
+		private byte[] probeBuffer;
+
+		ElementSerialization(@Nonnull TypeSerializer<T> serializer) {
+			this.serializer = serializer;
+			this.outputView = new DataOutputSerializer(128);
+			this.inputView = new DataInputDeserializer();
+		}
+
+		int serialize(T element) {
+			outputView.clear();
+			try {
+				serializer.serialize(element, outputView);
+			} catch (IOException e) {
+				throw new FlinkRuntimeException("Error while serializing the element.", e);
+			}
+			return outputView.length();
+		}
+
+		MemorySegment probeSegment() {
+			final byte[] buffer = outputView.getSharedBuffer();
+			if (probeBuffer != buffer) {
+				probeSegment = MemorySegmentFactory.wrap(buffer);
+				probeBuffer = buffer;
+			}
+			return probeSegment;
+		}
+	}
+}
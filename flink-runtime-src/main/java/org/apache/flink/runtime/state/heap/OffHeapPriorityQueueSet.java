@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.state.heap;
+
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.runtime.state.KeyExtractorFunction;
+import org.apache.flink.runtime.state.KeyGroupRange;
+import org.apache.flink.runtime.state.PriorityComparator;
+import org.apache.flink.runtime.state.RegisteredPriorityQueueStateBackendMetaInfo;
+import org.apache.flink.runtime.state.StateSnapshot;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * A key-grouped priority queue set that keeps its elements serialized in off-heap memory pages, with one
+ * {@link OffHeapKeyGroupPriorityQueue} per key-group. This avoids one object per element (e.g. per timer) on the
+ * heap and the per key-group dedup {@link java.util.HashMap} of {@link HeapPriorityQueueSet}.
+ *
+ * <p>Snapshots keep the pages of each key-group copy-on-write in the synchronous part and write the serialized
+ * elements from the pages in the asynchronous part, in the same format as {@link HeapPriorityQueueStateSnapshot}, so
+ * the two implementations can restore each other's snapshots.
+ *
+ * @param <T> type of the contained elements.
+ */
+public class OffHeapPriorityQueueSet<T> extends KeyGroupPartitionedPriorityQueue<T, OffHeapKeyGroupPriorityQueue<T>> {
+
+	/** The key-group partitions, indexed by their key-group id, relative to the first key-group. */
+	@Nonnull
+	private final OffHeapKeyGroupPriorityQueue<T>[] keyGroupQueues;
+
+	/** The serializer and buffers shared by all key-group partitions. */
+	@Nonnull
+	private final OffHeapKeyGroupPriorityQueue.ElementSerialization<T> serialization;
+
+	/** The key-group range covered by this queue. */
+	@Nonnull
+	private final KeyGroupRange keyGroupRange;
+
+	public OffHeapPriorityQueueSet(
+		@Nonnull PriorityComparator<T> elementPriorityComparator,
+		@Nonnull KeyExtractorFunction<T> keyExtractor,
+		@Nonnull TypeSerializer<T> byteOrderedElementSerializer,
+		@Nonnegative int pageSize,
+		@Nonnull KeyGroupRange keyGroupRange,
+		@Nonnegative int totalKeyGroups) {
+
+		this(
+			createKeyGroupQueueArray(keyGroupRange),
+			new OffHeapKeyGroupPriorityQueue.ElementSerialization<>(byteOrderedElementSerializer.duplicate()),
+			elementPriorityComparator,
+			keyExtractor,
+			pageSize,
+			keyGroupRange,
+			totalKeyGroups);
+	}
+
+	private OffHeapPriorityQueueSet(
+		@Nonnull OffHeapKeyGroupPriorityQueue<T>[] keyGroupQueues,
+		@Nonnull OffHeapKeyGroupPriorityQueue.ElementSerialization<T> serialization,
+		@Nonnull PriorityComparator<T> elementPriorityComparator,
+		@Nonnull KeyExtractorFunction<T> keyExtractor,
+		@Nonnegative int pageSize,
+		@Nonnull KeyGroupRange keyGroupRange,
+		@Nonnegative int totalKeyGroups) {
+
+		super(
+			keyExtractor,
+			elementPriorityComparator,
+			(keyGroupId, numKeyGroups, keyExtractorFunction, priorityComparator) -> {
+				final OffHeapKeyGroupPriorityQueue<T> queue = new OffHeapKeyGroupPriorityQueue<>(serialization, pageSize);
+				keyGroupQueues[keyGroupId - keyGroupRange.getStartKeyGroup()] = queue;
+				return queue;
+			},
+			keyGroupRange,
+			totalKeyGroups);
+
+		this.keyGroupQueues = keyGroupQueues;
+		this.serialization = serialization;
+		this.keyGroupRange = keyGroupRange;
+	}
+
+	/**
+	 * Creates a snapshot of the serialized elements of every key-group. The elements are not copied, they are read
+	 * from the pages of the key-group queues when the snapshot is written.
+	 */
+	@Nonnull
+	public StateSnapshot stateSnapshot(@Nonnull RegisteredPriorityQueueStateBackendMetaInfo<T> metaInfoCopy) {
+		final OffHeapKeyGroupPriorityQueue.SerializedElementsSnapshot[] keyGroupSnapshots =
+			new OffHeapKeyGroupPriorityQueue.SerializedElementsSnapshot[keyGroupQueues.length];
+		for (int i = 0; i < keyGroupQueues.length; ++i) {
+			keyGroupSnapshots[i] = keyGroupQueues[i].snapshotSerializedElements();
+		}
+		return new OffHeapPriorityQueueStateSnapshot(metaInfoCopy, keyGroupRange, keyGroupSnapshots);
+	}
+
+	/**
+	 * Replaces the serializer of the elements. If the new serializer writes a different format, all contained elements
+	 * are re-encoded, which keeps the byte order of the entries aligned with the new serializer.
+	 *
+	 * @param updatedSerializer the new byte-ordered element serializer.
+	 * @param requiresMigration true if elements written by the current serializer must be re-encoded.
+	 */
+	public void updateElementSerializer(@Nonnull TypeSerializer<T> updatedSerializer, boolean requiresMigration) {
+		final TypeSerializer<T> previousSerializer = serialization.serializer;
+		serialization.serializer = updatedSerializer.duplicate();
+		if (requiresMigration) {
+			for (OffHeapKeyGroupPriorityQueue<T> keyGroupQueue : keyGroupQueues) {
+				keyGroupQueue.reEncode(previousSerializer);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> OffHeapKeyGroupPriorityQueue<T>[] createKeyGroupQueueArray(KeyGroupRange keyGroupRange) {
+		return (OffHeapKeyGroupPriorityQueue<T>[]) new OffHeapKeyGroupPriorityQueue[keyGroupRange.getNumberOfKeyGroups()];
+	}
+}
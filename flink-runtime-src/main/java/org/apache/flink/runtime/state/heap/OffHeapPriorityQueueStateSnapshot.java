@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.state.heap;
+
+import org.apache.flink.core.memory.DataOutputView;
+import org.apache.flink.runtime.state.KeyGroupRange;
+import org.apache.flink.runtime.state.RegisteredPriorityQueueStateBackendMetaInfo;
+import org.apache.flink.runtime.state.StateSnapshot;
+import org.apache.flink.runtime.state.metainfo.StateMetaInfoSnapshot;
+
+import javax.annotation.Nonnull;
+
+import java.io.IOException;
+
+/**
+ * This class represents the snapshot of an {@link OffHeapPriorityQueueSet}. It holds a copy-on-write snapshot of the
+ * serialized elements per key-group and writes them in the format of {@link HeapPriorityQueueStateSnapshot}: the
+ * number of elements in the key-group, followed by the serialized elements.
+ */
+public class OffHeapPriorityQueueStateSnapshot implements StateSnapshot {
+
+	/** The meta info of the state. */
+	@Nonnull
+	private final RegisteredPriorityQueueStateBackendMetaInfo<?> metaInfo;
+
+	/** The key-group range covered by this snapshot. */
+	@Nonnull
+	private final KeyGroupRange keyGroupRange;
+
+	/** The serialized elements per key-group, relative to the first key-group of the range. */
+	@Nonnull
+	private final OffHeapKeyGroupPriorityQueue.SerializedElementsSnapshot[] keyGroupSnapshots;
+
+	OffHeapPriorityQueueStateSnapshot(
+		@Nonnull RegisteredPriorityQueueStateBackendMetaInfo<?> metaInfo,
+		@Nonnull KeyGroupRange keyGroupRange,
+		@Nonnull OffHeapKeyGroupPriorityQueue.SerializedElementsSnapshot[] keyGroupSnapshots) {
+
+		this.metaInfo = metaInfo;
+		this.keyGroupRange = keyGroupRange;
+		this.keyGroupSnapshots = keyGroupSnapshots;
+	}
+
+	@Nonnull
+	@Override
+	public StateKeyGroupWriter getKeyGroupWriter() {
+		return this::writeStateInKeyGroup;
+	}
+
+	/**
+	 * The elements are already serialized and writing them does not modify the snapshot, so the writer can be used
+	 * concurrently.
+	 */
+	@Nonnull
+	@Override
+	public StateKeyGroupWriter getConcurrentKeyGroupWriter() {
+		return this::writeStateInKeyGroup;
+	}
+
+	private void writeStateInKeyGroup(@Nonnull DataOutputView dov, int keyGroupId) throws IOException {
+		final OffHeapKeyGroupPriorityQueue.SerializedElementsSnapshot keyGroupSnapshot =
+			keyGroupSnapshots[keyGroupId - keyGroupRange.getStartKeyGroup()];
+		dov.writeInt(keyGroupSnapshot.size());
+		keyGroupSnapshot.writeSerializedElements(dov);
+	}
+
+	@Nonnull
+	@Override
+	public StateMetaInfoSnapshot getMetaInfoSnapshot() {
+		return metaInfo.snapshot();
+	}
+
+	@Override
+	public void release() {
+		for (OffHeapKeyGroupPriorityQueue.SerializedElementsSnapshot keyGroupSnapshot : keyGroupSnapshots) {
+			keyGroupSnapshot.release();
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.state.heap;
+
+import org.apache.flink.api.common.state.StateDescriptor;
+import org.apache.flink.runtime.state.RegisteredKeyValueStateBackendMetaInfo;
+import org.apache.flink.util.Preconditions;
+
+/**
+ * Behavior for heap snapshot strategy that keeps the state in {@link OffHeapStateTable}s, with the synchronicity of the
+ * given behavior. Map states are kept in the state tables of the given behavior, because the maps of
+ * {@link HeapMapState} are modified in place.
+ *
+ * @param <K> The data type that the serializer serializes.
+ */
+class OffHeapSnapshotStrategySynchronicityBehavior<K> implements SnapshotStrategySynchronicityBehavior<K> {
+
+	private final SnapshotStrategySynchronicityBehavior<K> synchronicityBehavior;
+
+	private final OffHeapStatePagePool pagePool;
+
+	OffHeapSnapshotStrategySynchronicityBehavior(
+		SnapshotStrategySynchronicityBehavior<K> synchronicityBehavior,
+		OffHeapStatePagePool pagePool) {
+		this.synchronicityBehavior = Preconditions.checkNotNull(synchronicityBehavior);
+		this.pagePool = Preconditions.checkNotNull(pagePool);
+	}
+
+	@Override
+	public void finalizeSnapshotBeforeReturnHook(Runnable runnable) {
+		synchronicityBehavior.finalizeSnapshotBeforeReturnHook(runnable);
+	}
+
+	@Override
+	public boolean isAsynchronous() {
+		return synchronicityBehavior.isAsynchronous();
+	}
+
+	@Override
+	public <N, V> StateTable<K, N, V> newStateTable(
+		InternalKeyContext<K> keyContext,
+		RegisteredKeyValueStateBackendMetaInfo<N, V> newMetaInfo) {
+		if (newMetaInfo.getStateType() == StateDescriptor.Type.MAP) {
+			return synchronicityBehavior.newStateTable(keyContext, newMetaInfo);
+		}
+		return new OffHeapStateTable<>(keyContext, newMetaInfo, pagePool);
+	}
+
+	@Override
+	public void dispose() {
+		synchronicityBehavior.dispose();
+		pagePool.dispose();
+	}
+}
@@ -0,0 +1,496 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.state.heap;
+
+import org.apache.flink.core.memory.MemorySegment;
+import org.apache.flink.core.memory.MemorySegmentFactory;
+import org.apache.flink.runtime.io.disk.iomanager.BlockChannelReader;
+import org.apache.flink.runtime.io.disk.iomanager.BlockChannelWriter;
+import org.apache.flink.runtime.io.disk.iomanager.FileIOChannel;
+import org.apache.flink.runtime.io.disk.iomanager.IOManager;
+import org.apache.flink.runtime.memory.MemoryAllocationException;
+import org.apache.flink.runtime.memory.MemoryManager;
+import org.apache.flink.util.FlinkRuntimeException;
+import org.apache.flink.util.Preconditions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * The memory pages of the {@link OffHeapStateTable}s of one keyed state backend. Pages are {@link MemorySegment}s
+ * obtained from the {@link MemoryManager} of the task, up to a budget of resident pages. Once the budget is exhausted
+ * (or the memory manager has no more pages), cold pages are spilled to local disk through the {@link IOManager} and
+ * their memory is reused. Pages are chosen for eviction with the clock algorithm, using a referenced bit that is set on
+ * every access.
+ *
+ * <p>A page is written by its state table until it is sealed, afterwards its content never changes. Only sealed pages
+ * are spilled, so a page is written to disk at most once, and evicting a page that was loaded again only drops its
+ * memory. Entries that are larger than a page get a page of their own from unpooled off-heap memory, which is never
+ * spilled.
+ *
+ * <p>Snapshots {@link #pin(int[], int) pin} the pages that they read. A pinned page is neither evicted nor freed, its
+ * release by the state table is deferred until the last snapshot unpins it. This gives snapshots copy-on-write
+ * semantics on page granularity: the table never modifies the entries of a snapshot in place, but appends new versions
+ * of modified entries and releases pages that only contain outdated entries.
+ *
+ * <p>All methods except {@link #unpin(PinnedPages)} and the reading methods of {@link PinnedPages} must be called by
+ * the task thread. Resident pages are accessed without synchronization, the lock only guards the page table against
+ * concurrent pinning and unpinning by asynchronous snapshots.
+ */
+final class OffHeapStatePagePool {
+
+	private static final Logger LOG = LoggerFactory.getLogger(OffHeapStatePagePool.class);
+
+	/** The initial capacity of the page table. */
+	private static final int INITIAL_PAGE_TABLE_CAPACITY = 64;
+
+	/** Owner of the segments that are not managed by the memory manager. */
+	private static final Object UNPOOLED_OWNER = new Object();
+
+	private final Object lock = new Object();
+
+	@Nonnull
+	private final MemoryManager memoryManager;
+
+	@Nonnull
+	private final IOManager ioManager;
+
+	/** The size of all pages, except for those of oversized entries. */
+	@Nonnegative
+	private final int pageSize;
+
+	/** The maximum number of resident pages before cold pages are spilled. */
+	@Nonnegative
+	private final int maxResidentPages;
+
+	/** The resident segment of each page, null if the page is spilled or not in use. */
+	@GuardedBy("lock")
+	private MemorySegment[] segments;
+
+	/** The spill file of each page, null if the page was never spilled. */
+	@GuardedBy("lock")
+	private FileIOChannel.ID[] spillFiles;
+
+	/** The number of snapshots that pinned each page. */
+	@GuardedBy("lock")
+	private int[] pinCounts;
+
+	/** Whether each page is in use by a state table. */
+	@GuardedBy("lock")
+	private boolean[] inUse;
+
+	/** Whether each page is sealed, i.e. is not written anymore. */
+	@GuardedBy("lock")
+	private boolean[] sealed;
+
+	/** Whether each page was released by its state table while it was pinned. */
+	@GuardedBy("lock")
+	private boolean[] releasedWhilePinned;
+
+	/** The referenced bits of the clock algorithm. Written without synchronization on every access. */
+	private boolean[] referenced;
+
+	/** The number of used page ids, all pages have ids below this number. */
+	@GuardedBy("lock")
+	private int numberOfPageIds;
+
+	/** Ids below {@link #numberOfPageIds} that are currently not in use. */
+	@GuardedBy("lock")
+	private final ArrayDeque<Integer> freePageIds;
+
+	/** Segments from the memory manager that are currently not used by a page. */
+	@GuardedBy("lock")
+	private final ArrayDeque<MemorySegment> freeSegments;
+
+	/** The number of segments that were allocated from the memory manager. */
+	@GuardedBy("lock")
+	private int numberOfManagedSegments;
+
+	/** The position of the clock hand in the page table. */
+	@GuardedBy("lock")
+	private int clockHand;
+
+	@GuardedBy("lock")
+	private boolean disposed;
+
+	OffHeapStatePagePool(
+		@Nonnull MemoryManager memoryManager,
+		@Nonnull IOManager ioManager,
+		@Nonnegative int maxResidentPages) {
+
+		Preconditions.checkArgument(maxResidentPages > 0, "The pool needs at least one resident page.");
+
+		this.memoryManager = memoryManager;
+		this.ioManager = ioManager;
+		this.pageSize = memoryManager.getPageSize();
+		this.maxResidentPages = maxResidentPages;
+		this.segments = new MemorySegment[INITIAL_PAGE_TABLE_CAPACITY];
+		this.spillFiles = new FileIOChannel.ID[INITIAL_PAGE_TABLE_CAPACITY];
+		this.pinCounts = new int[INITIAL_PAGE_TABLE_CAPACITY];
+		this.inUse = new boolean[INITIAL_PAGE_TABLE_CAPACITY];
+		this.sealed = new boolean[INITIAL_PAGE_TABLE_CAPACITY];
+		this.releasedWhilePinned = new boolean[INITIAL_PAGE_TABLE_CAPACITY];
+		this.referenced = new boolean[INITIAL_PAGE_TABLE_CAPACITY];
+		this.freePageIds = new ArrayDeque<>();
+		this.freeSegments = new ArrayDeque<>();
+	}
+
+	int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * Creates a new writable page with room for at least the given number of bytes and returns its id.
+	 */
+	int newPage(@Nonnegative int minSize) {
+		synchronized (lock) {
+			Preconditions.checkState(!disposed, "The page pool is disposed.");
+
+			final MemorySegment segment = minSize > pageSize ?
+				MemorySegmentFactory.allocateUnpooledOffHeapMemory(minSize, UNPOOLED_OWNER) :
+				acquireSegment();
+
+			final int pageId;
+			if (freePageIds.isEmpty()) {
+				if (numberOfPageIds == segments.length) {
+					growPageTable();
+				}
+				pageId = numberOfPageIds++;
+			} else {
+				pageId = freePageIds.poll();
+			}
+
+			segments[pageId] = segment;
+			inUse[pageId] = true;
+			referenced[pageId] = true;
+			return pageId;
+		}
+	}
+
+	/**
+	 * Returns the segment of the given page, and loads the page from its spill file if it is not resident.
+	 */
+	MemorySegment getPage(int pageId) {
+		referenced[pageId] = true;
+		final MemorySegment segment = segments[pageId];
+		return segment != null ? segment : loadPage(pageId);
+	}
+
+	/**
+	 * Marks the given page as sealed. The page must not be written anymore and becomes eligible for spilling.
+	 */
+	void seal(int pageId) {
+		synchronized (lock) {
+			sealed[pageId] = true;
+		}
+	}
+
+	/**
+	 * Releases the given page from its state table. The page is freed once no snapshot pins it anymore.
+	 */
+	void releasePage(int pageId) {
+		synchronized (lock) {
+			if (pinCounts[pageId] > 0) {
+				releasedWhilePinned[pageId] = true;
+			} else {
+				freePage(pageId);
+			}
+		}
+	}
+
+	/**
+	 * Pins the given pages for a snapshot and captures where their content is. Pinned pages are neither evicted nor
+	 * freed until they are {@link #unpin(PinnedPages) unpinned}, so that the captured segments and spill files stay
+	 * valid.
+	 */
+	PinnedPages pin(int[] pageIds, int numberOfPages) {
+		synchronized (lock) {
+			final MemorySegment[] pinnedSegments = new MemorySegment[numberOfPageIds];
+			final FileIOChannel.ID[] pinnedSpillFiles = new FileIOChannel.ID[numberOfPageIds];
+			for (int i = 0; i < numberOfPages; ++i) {
+				final int pageId = pageIds[i];
+				pinCounts[pageId]++;
+				pinnedSegments[pageId] = segments[pageId];
+				pinnedSpillFiles[pageId] = spillFiles[pageId];
+			}
+			return new PinnedPages(Arrays.copyOf(pageIds, numberOfPages), pinnedSegments, pinnedSpillFiles);
+		}
+	}
+
+	/**
+	 * Unpins the pages of a snapshot and frees those that were released in the meantime. Can be called by any thread.
+	 */
+	void unpin(PinnedPages pinnedPages) {
+		synchronized (lock) {
+			if (disposed) {
+				return;
+			}
+
+			for (int pageId : pinnedPages.pageIds) {
+				if (--pinCounts[pageId] == 0 && releasedWhilePinned[pageId]) {
+					freePage(pageId);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Frees all pages, returns the managed memory to the memory manager and deletes the spill files.
+	 */
+	void dispose() {
+		synchronized (lock) {
+			if (disposed) {
+				return;
+			}
+			disposed = true;
+
+			for (int pageId = 0; pageId < numberOfPageIds; ++pageId) {
+				final MemorySegment segment = segments[pageId];
+				if (segment != null && segment.getOwner() == UNPOOLED_OWNER) {
+					segment.free();
+				}
+				deleteSpillFile(pageId);
+				segments[pageId] = null;
+			}
+
+			freeSegments.clear();
+			memoryManager.releaseAll(this);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	@GuardedBy("lock")
+	private void freePage(int pageId) {
+		final MemorySegment segment = segments[pageId];
+		if (segment != null) {
+			recycleSegment(segment);
+		}
+		deleteSpillFile(pageId);
+
+		segments[pageId] = null;
+		inUse[pageId] = false;
+		sealed[pageId] = false;
+		releasedWhilePinned[pageId] = false;
+		referenced[pageId] = false;
+		freePageIds.add(pageId);
+	}
+
+	private MemorySegment loadPage(int pageId) {
+		synchronized (lock) {
+			// queryable state may have loaded the page concurrently
+			final MemorySegment loaded = segments[pageId];
+			if (loaded != null) {
+				return loaded;
+			}
+
+			final FileIOChannel.ID spillFile = spillFiles[pageId];
+			Preconditions.checkState(inUse[pageId] && spillFile != null, "Page %s is not in use.", pageId);
+
+			final MemorySegment segment = acquireSegment();
+			try {
+				readPage(spillFile, segment);
+			} catch (IOException e) {
+				recycleSegment(segment);
+				throw new FlinkRuntimeException("Could not load a spilled page of the keyed state.", e);
+			}
+
+			segments[pageId] = segment;
+			return segment;
+		}
+	}
+
+	/**
+	 * Returns a free segment, allocates a new segment while the budget allows it, or takes the segment of an evicted
+	 * page. If all resident pages are pinned or writable, an unpooled segment is allocated beyond the budget.
+	 */
+	@GuardedBy("lock")
+	private MemorySegment acquireSegment() {
+		if (!freeSegments.isEmpty()) {
+			return freeSegments.poll();
+		}
+
+		if (numberOfManagedSegments < maxResidentPages) {
+			try {
+				final MemorySegment segment = memoryManager.allocatePages(this, 1).get(0);
+				numberOfManagedSegments++;
+				return segment;
+			} catch (MemoryAllocationException e) {
+				LOG.debug("The memory manager has no more pages for the keyed state, spilling cold pages.", e);
+			}
+		}
+
+		final MemorySegment evicted = evictPage();
+		if (evicted != null) {
+			return evicted;
+		}
+
+		LOG.debug("No page of the keyed state can be spilled, allocating a page beyond the memory budget.");
+		return MemorySegmentFactory.allocateUnpooledOffHeapMemory(pageSize, UNPOOLED_OWNER);
+	}
+
+	/**
+	 * Returns a segment that is no longer used by a page to the free segments, or frees it if it is unpooled.
+	 */
+	@GuardedBy("lock")
+	private void recycleSegment(MemorySegment segment) {
+		if (segment.getOwner() == UNPOOLED_OWNER) {
+			segment.free();
+		} else {
+			freeSegments.add(segment);
+		}
+	}
+
+	/**
+	 * Evicts a sealed, unpinned page that was not referenced since the clock hand passed it the last time, and returns
+	 * its segment. Returns null if there is no such page.
+	 */
+	@GuardedBy("lock")
+	private MemorySegment evictPage() {
+		for (int i = 0; i < 2 * numberOfPageIds; ++i) {
+			final int pageId = clockHand;
+			clockHand = clockHand + 1 < numberOfPageIds ? clockHand + 1 : 0;
+
+			final MemorySegment segment = segments[pageId];
+			if (segment == null || !sealed[pageId] || pinCounts[pageId] > 0 || segment.size() != pageSize) {
+				continue;
+			}
+
+			if (referenced[pageId]) {
+				referenced[pageId] = false;
+				continue;
+			}
+
+			if (spillFiles[pageId] == null) {
+				final FileIOChannel.ID spillFile = ioManager.createChannel();
+				try {
+					writePage(spillFile, segment);
+				} catch (IOException e) {
+					throw new FlinkRuntimeException("Could not spill a page of the keyed state.", e);
+				}
+				spillFiles[pageId] = spillFile;
+			}
+
+			segments[pageId] = null;
+			return segment;
+		}
+		return null;
+	}
+
+	@GuardedBy("lock")
+	private void deleteSpillFile(int pageId) {
+		final FileIOChannel.ID spillFile = spillFiles[pageId];
+		if (spillFile != null) {
+			spillFiles[pageId] = null;
+			try {
+				ioManager.deleteChannel(spillFile);
+			} catch (IOException e) {
+				LOG.warn("Could not delete the spill file {} of the keyed state.", spillFile, e);
+			}
+		}
+	}
+
+	@GuardedBy("lock")
+	private void growPageTable() {
+		final int capacity = segments.length << 1;
+		segments = Arrays.copyOf(segments, capacity);
+		spillFiles = Arrays.copyOf(spillFiles, capacity);
+		pinCounts = Arrays.copyOf(pinCounts, capacity);
+		inUse = Arrays.copyOf(inUse, capacity);
+		sealed = Arrays.copyOf(sealed, capacity);
+		releasedWhilePinned = Arrays.copyOf(releasedWhilePinned, capacity);
+		referenced = Arrays.copyOf(referenced, capacity);
+	}
+
+	private void writePage(FileIOChannel.ID spillFile, MemorySegment segment) throws IOException {
+		final BlockChannelWriter<MemorySegment> writer = ioManager.createBlockChannelWriter(spillFile);
+		try {
+			writer.writeBlock(segment);
+			writer.getNextReturnedBlock();
+		} finally {
+			writer.close();
+		}
+	}
+
+	private void readPage(FileIOChannel.ID spillFile, MemorySegment segment) throws IOException {
+		final BlockChannelReader<MemorySegment> reader = ioManager.createBlockChannelReader(spillFile);
+		try {
+			reader.readBlock(segment);
+			reader.getNextReturnedBlock();
+		} finally {
+			reader.close();
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * The pages of a snapshot, with their segments or spill files at the time they were pinned. The content of pinned
+	 * pages does not change, except for writable pages that are appended beyond the entries of the snapshot.
+	 */
+	final class PinnedPages {
+
+		/** The ids of the pinned pages. */
+		@Nonnull
+		private final int[] pageIds;
+
+		/** The segments of resident pages, by page id. */
+		@Nonnull
+		private final MemorySegment[] pinnedSegments;
+
+		/** The spill files of spilled pages, by page id. */
+		@Nonnull
+		private final FileIOChannel.ID[] pinnedSpillFiles;
+
+		PinnedPages(
+			@Nonnull int[] pageIds,
+			@Nonnull MemorySegment[] pinnedSegments,
+			@Nonnull FileIOChannel.ID[] pinnedSpillFiles) {
+			this.pageIds = pageIds;
+			this.pinnedSegments = pinnedSegments;
+			this.pinnedSpillFiles = pinnedSpillFiles;
+		}
+
+		/**
+		 * Returns the resident segment of the given page, or null if the page was spilled when it was pinned.
+		 */
+		@Nullable
+		MemorySegment getResidentPage(int pageId) {
+			return pinnedSegments[pageId];
+		}
+
+		/**
+		 * Reads the given spilled page into the given segment of page size. Can be called by any thread.
+		 */
+		void readSpilledPage(int pageId, MemorySegment target) throws IOException {
+			final FileIOChannel.ID spillFile = pinnedSpillFiles[pageId];
+			Preconditions.checkState(spillFile != null, "Page %s is not spilled.", pageId);
+			readPage(spillFile, target);
+		}
+	}
+}
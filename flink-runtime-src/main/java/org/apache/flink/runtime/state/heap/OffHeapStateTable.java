@@ -0,0 +1,1015 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.state.heap;
+
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.core.memory.DataInputDeserializer;
+import org.apache.flink.core.memory.DataOutputSerializer;
+import org.apache.flink.core.memory.MemorySegment;
+import org.apache.flink.core.memory.MemorySegmentFactory;
+import org.apache.flink.runtime.state.KeyGroupRangeAssignment;
+import org.apache.flink.runtime.state.RegisteredKeyValueStateBackendMetaInfo;
+import org.apache.flink.runtime.state.StateEntry;
+import org.apache.flink.runtime.state.StateTransformationFunction;
+import org.apache.flink.runtime.state.internal.InternalKvState.StateIncrementalVisitor;
+import org.apache.flink.util.FlinkRuntimeException;
+import org.apache.flink.util.MathUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A {@link StateTable} that keeps its entries in serialized form in the memory pages of an {@link OffHeapStatePagePool}
+ * instead of as objects on the heap, so that large state does not burden the garbage collector. Every access
+ * serializes the key and namespace, and reading a state deserializes it.
+ *
+ * <p>Each key-group has an open-addressing hash index (linear probing with backward-shift deletion) over the addresses
+ * of its entries, with the hashes of the entries in a parallel array, so that probing only touches the pages of
+ * entries with matching hashes. Each entry in a page has the layout
+ * {@code [int key-group][int key length][int state length][int hash][namespace and key bytes][state bytes]}, the
+ * namespace and key bytes are the serialized namespace followed by the serialized key. Addresses encode the page slot
+ * of the table in the upper and the offset within the page in the lower 32 bits.
+ *
+ * <p>Entries are never modified in place: updating a state appends a new version of the entry to the current write
+ * page, and the old version becomes garbage. Pages that only contain garbage are released, and once the garbage
+ * exceeds the live data, the live entries of sparse pages are relocated to the write page. Snapshots
+ * {@link OffHeapStatePagePool#pin(int[], int) pin} the pages of the table, which gives them copy-on-write isolation
+ * on page granularity without copying any entry, see {@link OffHeapStateTableSnapshot}.
+ *
+ * <p>Because states are deserialized on every read, modifications of a returned state object are not written back.
+ * States that are mutated in place, i.e. the maps of {@link HeapMapState}, must not be stored in this table.
+ *
+ * @param <K> type of key
+ * @param <N> type of namespace
+ * @param <S> type of state
+ */
+public class OffHeapStateTable<K, N, S> extends StateTable<K, N, S> {
+
+	/** The size of the header in front of each serialized entry. */
+	static final int ENTRY_HEADER_BYTES = 16;
+
+	static final int KEY_LENGTH_OFFSET = 4;
+
+	static final int STATE_LENGTH_OFFSET = 8;
+
+	static final int HASH_OFFSET = 12;
+
+	/** Marks a free page slot. */
+	static final int NO_PAGE = -1;
+
+	/** The initial capacity of the hash index of a key-group, must be a power of two. */
+	private static final int INITIAL_INDEX_CAPACITY = 8;
+
+	/** The minimum amount of garbage, in pages, before the table is compacted. */
+	private static final int MIN_COMPACTION_GARBAGE_PAGES = 4;
+
+	private static final long[] EMPTY_ADDRESSES = new long[0];
+
+	/** The pool of the memory pages that contain the entries. */
+	@Nonnull
+	private final OffHeapStatePagePool pagePool;
+
+	/** The size of regular pages. Entries larger than this get a page of their own. */
+	private final int pageSize;
+
+	/** The first key-group in the key-group range of the backend. */
+	private final int firstKeyGroup;
+
+	/**
+	 * The hash index of each key-group, relative to the first key-group. Slots contain {@code address + 1}, 0 marks a
+	 * free slot. The index of an empty key-group is null.
+	 */
+	@Nonnull
+	private final long[][] indexAddresses;
+
+	/** The hashes of the entries in {@link #indexAddresses}, by slot. */
+	@Nonnull
+	private final int[][] indexHashes;
+
+	/** The number of entries of each key-group. */
+	@Nonnull
+	private final int[] indexSizes;
+
+	/** The total number of entries. */
+	private int size;
+
+	/** The pool page id of each page slot of this table, or {@link #NO_PAGE} if the slot is free. */
+	@Nonnull
+	private int[] pageIds;
+
+	/** The number of written bytes of each page slot. */
+	@Nonnull
+	private int[] pageFill;
+
+	/** The number of bytes of live entries in each page slot. */
+	@Nonnull
+	private int[] pageLiveBytes;
+
+	/** The number of used page slots, all pages have slots below this number. */
+	private int numberOfPageSlots;
+
+	/** Page slots below {@link #numberOfPageSlots} that are free. */
+	@Nonnull
+	private int[] freePageSlots;
+
+	private int numberOfFreePageSlots;
+
+	/** The page slot that new entries are appended to, or {@link #NO_PAGE}. */
+	private int writePageSlot;
+
+	/** The number of bytes occupied by live entries, including headers. */
+	private long liveBytes;
+
+	/** The number of bytes occupied by outdated entries in pages that are not released yet, including headers. */
+	private long garbageBytes;
+
+	/** Buffer for the serialized namespace and key of the current access. */
+	@Nonnull
+	private final DataOutputSerializer keyOutputView;
+
+	/** Buffer for the serialized state of the current access. */
+	@Nonnull
+	private final DataOutputSerializer stateOutputView;
+
+	@Nonnull
+	private final DataInputDeserializer inputView;
+
+	/** Buffer for the bytes of an entry that is read from a page. */
+	@Nonnull
+	private byte[] entryBuffer;
+
+	/** Segment that wraps the shared buffer of {@link #keyOutputView} for comparisons against stored entries. */
+	@Nullable
+	private MemorySegment probeSegment;
+
+	/** The buffer that is currently wrapped by {@link #probeSegment}. */
+	@Nullable
+	private byte[] probeBuffer;
+
+	/**
+	 * Constructs a new {@code OffHeapStateTable}.
+	 *
+	 * @param keyContext the key context.
+	 * @param metaInfo the meta information, including the type serializer for state copy-on-write.
+	 * @param pagePool the pool of the memory pages for the entries.
+	 */
+	OffHeapStateTable(
+		InternalKeyContext<K> keyContext,
+		RegisteredKeyValueStateBackendMetaInfo<N, S> metaInfo,
+		@Nonnull OffHeapStatePagePool pagePool) {
+		super(keyContext, metaInfo);
+
+		final int numberOfKeyGroups = keyContext.getKeyGroupRange().getNumberOfKeyGroups();
+		this.pagePool = pagePool;
+		this.pageSize = pagePool.getPageSize();
+		this.firstKeyGroup = keyContext.getKeyGroupRange().getStartKeyGroup();
+		this.indexAddresses = new long[numberOfKeyGroups][];
+		this.indexHashes = new int[numberOfKeyGroups][];
+		this.indexSizes = new int[numberOfKeyGroups];
+		this.pageIds = new int[16];
+		this.pageFill = new int[16];
+		this.pageLiveBytes = new int[16];
+		this.freePageSlots = new int[16];
+		this.writePageSlot = NO_PAGE;
+		this.keyOutputView = new DataOutputSerializer(64);
+		this.stateOutputView = new DataOutputSerializer(128);
+		this.inputView = new DataInputDeserializer();
+		this.entryBuffer = new byte[128];
+	}
+
+	// Main interface methods of StateTable -------------------------------------------------------
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public S get(N namespace) {
+		return get(keyContext.getCurrentKey(), keyContext.getCurrentKeyGroupIndex(), namespace);
+	}
+
+	@Override
+	public boolean containsKey(N namespace) {
+		final int keyGroupIndex = keyContext.getCurrentKeyGroupIndex() - firstKeyGroup;
+		if (indexAddresses[keyGroupIndex] == null) {
+			return false;
+		}
+
+		final int keyLength = serializeKeyAndNamespace(keyContext.getCurrentKey(), namespace);
+		final int hash = hashBytes(keyOutputView.getSharedBuffer(), keyLength);
+		return indexAddresses[keyGroupIndex][findIndexSlot(keyGroupIndex, keyLength, hash)] != 0L;
+	}
+
+	@Override
+	public void put(N namespace, S state) {
+		markCurrentKeyGroupModified();
+		put(keyContext.getCurrentKey(), keyContext.getCurrentKeyGroupIndex(), namespace, state);
+	}
+
+	@Override
+	public S putAndGetOld(N namespace, S state) {
+		markCurrentKeyGroupModified();
+		final int keyGroup = keyContext.getCurrentKeyGroupIndex();
+		final int keyGroupIndex = keyGroup - firstKeyGroup;
+		final int keyLength = serializeKeyAndNamespace(keyContext.getCurrentKey(), namespace);
+		final int hash = hashBytes(keyOutputView.getSharedBuffer(), keyLength);
+
+		ensureIndex(keyGroupIndex);
+		final int slot = findIndexSlot(keyGroupIndex, keyLength, hash);
+		final long indexEntry = indexAddresses[keyGroupIndex][slot];
+		final S oldState = indexEntry != 0L ? deserializeState(indexEntry - 1L, metaInfo.getStateSerializer()) : null;
+
+		if (state != null) {
+			writeState(keyGroupIndex, slot, keyLength, hash, state);
+		} else if (indexEntry != 0L) {
+			removeEntry(keyGroupIndex, slot);
+		}
+		return oldState;
+	}
+
+	@Override
+	public void remove(N namespace) {
+		markCurrentKeyGroupModified();
+		remove(keyContext.getCurrentKey(), keyContext.getCurrentKeyGroupIndex(), namespace, false);
+	}
+
+	@Override
+	public S removeAndGetOld(N namespace) {
+		markCurrentKeyGroupModified();
+		return remove(keyContext.getCurrentKey(), keyContext.getCurrentKeyGroupIndex(), namespace, true);
+	}
+
+	@Override
+	public <T> void transform(
+		N namespace,
+		T value,
+		StateTransformationFunction<S, T> transformation) throws Exception {
+
+		markCurrentKeyGroupModified();
+		final int keyGroupIndex = keyContext.getCurrentKeyGroupIndex() - firstKeyGroup;
+		final int keyLength = serializeKeyAndNamespace(keyContext.getCurrentKey(), namespace);
+		final int hash = hashBytes(keyOutputView.getSharedBuffer(), keyLength);
+
+		ensureIndex(keyGroupIndex);
+		final int slot = findIndexSlot(keyGroupIndex, keyLength, hash);
+		final long indexEntry = indexAddresses[keyGroupIndex][slot];
+		final S oldState = indexEntry != 0L ? deserializeState(indexEntry - 1L, metaInfo.getStateSerializer()) : null;
+
+		final S newState = transformation.apply(oldState, value);
+		if (newState != null) {
+			writeState(keyGroupIndex, slot, keyLength, hash, newState);
+		} else if (indexEntry != 0L) {
+			removeEntry(keyGroupIndex, slot);
+		}
+	}
+
+	// For queryable state ------------------------------------------------------------------------
+
+	/**
+	 * Returns the state for the given key and namespace. Unlike all other methods, this may be called concurrently to
+	 * the task thread by queryable state. It uses its own buffers and serializers and does not modify the table, but
+	 * like for the other heap state tables, the result is only best effort while the table is modified.
+	 */
+	@Override
+	public S get(K key, N namespace) {
+		final int keyGroupIndex = KeyGroupRangeAssignment.assignToKeyGroup(key, keyContext.getNumberOfKeyGroups()) -
+			firstKeyGroup;
+		final long[] addresses = indexAddresses[keyGroupIndex];
+		final int[] hashes = indexHashes[keyGroupIndex];
+		if (addresses == null || hashes == null || addresses.length != hashes.length) {
+			return null;
+		}
+
+		final DataOutputSerializer outputView = new DataOutputSerializer(64);
+		try {
+			metaInfo.getNamespaceSerializer().duplicate().serialize(namespace, outputView);
+			keyContext.getKeySerializer().duplicate().serialize(key, outputView);
+		} catch (IOException e) {
+			throw new FlinkRuntimeException("Error while serializing the key and namespace.", e);
+		}
+
+		final int keyLength = outputView.length();
+		final int hash = hashBytes(outputView.getSharedBuffer(), keyLength);
+		final MemorySegment probe = MemorySegmentFactory.wrap(outputView.getSharedBuffer());
+		final int mask = addresses.length - 1;
+
+		int slot = hash & mask;
+		long indexEntry;
+		while ((indexEntry = addresses[slot]) != 0L) {
+			if (hashes[slot] == hash && matchesKey(indexEntry - 1L, probe, keyLength)) {
+				final MemorySegment page = pageOf(indexEntry - 1L);
+				final int offset = offsetOf(indexEntry - 1L);
+				final int stateLength = page.getInt(offset + STATE_LENGTH_OFFSET);
+				final byte[] bytes = new byte[stateLength];
+				page.get(offset + ENTRY_HEADER_BYTES + keyLength, bytes, 0, stateLength);
+				try {
+					return metaInfo.getStateSerializer().duplicate().deserialize(new DataInputDeserializer(bytes));
+				} catch (IOException e) {
+					throw new FlinkRuntimeException("Error while deserializing the state.", e);
+				}
+			}
+			slot = (slot + 1) & mask;
+		}
+		return null;
+	}
+
+	@Override
+	public Stream<K> getKeys(N namespace) {
+		final List<K> keys = new ArrayList<>();
+		final TypeSerializer<K> keySerializer = keyContext.getKeySerializer();
+		final int namespaceLength = serializeNamespace(namespace);
+
+		for (long[] addresses : indexAddresses) {
+			if (addresses == null) {
+				continue;
+			}
+			for (long indexEntry : addresses) {
+				if (indexEntry != 0L && matchesNamespace(indexEntry - 1L, namespaceLength)) {
+					keys.add(deserializeKey(indexEntry - 1L, namespaceLength, keySerializer));
+				}
+			}
+		}
+		return keys.stream();
+	}
+
+	@Override
+	public StateIncrementalVisitor<K, N, S> getStateIncrementalVisitor(int recommendedMaxNumberOfReturnedRecords) {
+		return new StateEntryVisitor(recommendedMaxNumberOfReturnedRecords);
+	}
+
+	// Snapshot / Restore -------------------------------------------------------------------------
+
+	@Override
+	public void put(K key, int keyGroup, N namespace, S state) {
+		final int keyGroupIndex = keyGroup - firstKeyGroup;
+		if (state == null) {
+			remove(key, keyGroup, namespace, false);
+			return;
+		}
+
+		final int keyLength = serializeKeyAndNamespace(key, namespace);
+		final int hash = hashBytes(keyOutputView.getSharedBuffer(), keyLength);
+		ensureIndex(keyGroupIndex);
+		writeState(keyGroupIndex, findIndexSlot(keyGroupIndex, keyLength, hash), keyLength, hash, state);
+	}
+
+	@Nonnull
+	@Override
+	public OffHeapStateTableSnapshot<K, N, S> stateSnapshot() {
+		return new OffHeapStateTableSnapshot<>(this);
+	}
+
+	/**
+	 * Rewrites all entries with the current state serializer, after the state serializer was upgraded to a serializer
+	 * that is only compatible after migration. The entries were written with the given previous serializer.
+	 */
+	void migrateState(TypeSerializer<S> previousStateSerializer) {
+		for (int keyGroupIndex = 0; keyGroupIndex < indexAddresses.length; ++keyGroupIndex) {
+			final long[] addresses = indexAddresses[keyGroupIndex];
+			if (addresses == null) {
+				continue;
+			}
+
+			// writing a state only replaces the address in its slot, so the slots can be iterated
+			for (int slot = 0; slot < addresses.length; ++slot) {
+				final long indexEntry = addresses[slot];
+				if (indexEntry != 0L) {
+					final long address = indexEntry - 1L;
+					final S state = deserializeState(address, previousStateSerializer);
+					final MemorySegment page = pageOf(address);
+					final int offset = offsetOf(address);
+					final int keyLength = page.getInt(offset + KEY_LENGTH_OFFSET);
+					keyOutputView.clear();
+					try {
+						page.get(keyOutputView, offset + ENTRY_HEADER_BYTES, keyLength);
+					} catch (IOException e) {
+						throw new FlinkRuntimeException("Error while copying the key of an entry.", e);
+					}
+					writeState(keyGroupIndex, slot, keyLength, indexHashes[keyGroupIndex][slot], state);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the addresses of the entries of each key-group, relative to the first key-group, sorted by address.
+	 */
+	long[][] snapshotEntryAddresses() {
+		final long[][] snapshotAddresses = new long[indexAddresses.length][];
+		for (int keyGroupIndex = 0; keyGroupIndex < indexAddresses.length; ++keyGroupIndex) {
+			final long[] addresses = indexAddresses[keyGroupIndex];
+			if (addresses == null || indexSizes[keyGroupIndex] == 0) {
+				snapshotAddresses[keyGroupIndex] = EMPTY_ADDRESSES;
+				continue;
+			}
+
+			final long[] keyGroupAddresses = new long[indexSizes[keyGroupIndex]];
+			int position = 0;
+			for (long indexEntry : addresses) {
+				if (indexEntry != 0L) {
+					keyGroupAddresses[position++] = indexEntry - 1L;
+				}
+			}
+			// reading the entries in address order reads each page sequentially
+			Arrays.sort(keyGroupAddresses);
+			snapshotAddresses[keyGroupIndex] = keyGroupAddresses;
+		}
+		return snapshotAddresses;
+	}
+
+	/**
+	 * Returns a copy of the pool page ids of the page slots of this table.
+	 */
+	int[] snapshotPageIds() {
+		return Arrays.copyOf(pageIds, numberOfPageSlots);
+	}
+
+	OffHeapStatePagePool getPagePool() {
+		return pagePool;
+	}
+
+	int getFirstKeyGroup() {
+		return firstKeyGroup;
+	}
+
+	// For testing --------------------------------------------------------------------------------
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public int sizeOfNamespace(Object namespace) {
+		final int namespaceLength = serializeNamespace((N) namespace);
+		int count = 0;
+		for (long[] addresses : indexAddresses) {
+			if (addresses == null) {
+				continue;
+			}
+			for (long indexEntry : addresses) {
+				if (indexEntry != 0L && matchesNamespace(indexEntry - 1L, namespaceLength)) {
+					++count;
+				}
+			}
+		}
+		return count;
+	}
+
+	// ------------------------------------------------------------------------
+	//  Entries
+	// ------------------------------------------------------------------------
+
+	private S get(K key, int keyGroup, N namespace) {
+		final int keyGroupIndex = keyGroup - firstKeyGroup;
+		if (indexAddresses[keyGroupIndex] == null) {
+			return null;
+		}
+
+		final int keyLength = serializeKeyAndNamespace(key, namespace);
+		final int hash = hashBytes(keyOutputView.getSharedBuffer(), keyLength);
+		final long indexEntry = indexAddresses[keyGroupIndex][findIndexSlot(keyGroupIndex, keyLength, hash)];
+		return indexEntry != 0L ? deserializeState(indexEntry - 1L, metaInfo.getStateSerializer()) : null;
+	}
+
+	private S remove(K key, int keyGroup, N namespace, boolean returnOldState) {
+		final int keyGroupIndex = keyGroup - firstKeyGroup;
+		if (indexAddresses[keyGroupIndex] == null) {
+			return null;
+		}
+
+		final int keyLength = serializeKeyAndNamespace(key, namespace);
+		final int hash = hashBytes(keyOutputView.getSharedBuffer(), keyLength);
+		final int slot = findIndexSlot(keyGroupIndex, keyLength, hash);
+		final long indexEntry = indexAddresses[keyGroupIndex][slot];
+		if (indexEntry == 0L) {
+			return null;
+		}
+
+		final S oldState = returnOldState ? deserializeState(indexEntry - 1L, metaInfo.getStateSerializer()) : null;
+		removeEntry(keyGroupIndex, slot);
+		return oldState;
+	}
+
+	/**
+	 * Writes a new version of the entry in the given slot with the given state. The serialized namespace and key must
+	 * be in {@link #keyOutputView}.
+	 */
+	private void writeState(int keyGroupIndex, int slot, int keyLength, int hash, S state) {
+		final int stateLength = serializeState(state);
+		final long oldIndexEntry = indexAddresses[keyGroupIndex][slot];
+		// the old entry was just accessed, read its size before appending can evict its page
+		final int oldEntryBytes = oldIndexEntry != 0L ? entryBytesAt(oldIndexEntry - 1L) : 0;
+
+		final long address = allocateEntry(ENTRY_HEADER_BYTES + keyLength + stateLength);
+		final MemorySegment page = pageOf(address);
+		final int offset = offsetOf(address);
+		page.putInt(offset, firstKeyGroup + keyGroupIndex);
+		page.putInt(offset + KEY_LENGTH_OFFSET, keyLength);
+		page.putInt(offset + STATE_LENGTH_OFFSET, stateLength);
+		page.putInt(offset + HASH_OFFSET, hash);
+		page.put(offset + ENTRY_HEADER_BYTES, keyOutputView.getSharedBuffer(), 0, keyLength);
+		page.put(offset + ENTRY_HEADER_BYTES + keyLength, stateOutputView.getSharedBuffer(), 0, stateLength);
+
+		indexAddresses[keyGroupIndex][slot] = address + 1L;
+		if (oldIndexEntry != 0L) {
+			releaseEntry(oldIndexEntry - 1L, oldEntryBytes);
+		} else {
+			indexHashes[keyGroupIndex][slot] = hash;
+			++size;
+			if (++indexSizes[keyGroupIndex] * 4 > indexAddresses[keyGroupIndex].length * 3) {
+				rebuildIndex(keyGroupIndex, indexAddresses[keyGroupIndex].length << 1);
+			}
+		}
+
+		maybeCompact();
+	}
+
+	private void removeEntry(int keyGroupIndex, int slot) {
+		final long address = indexAddresses[keyGroupIndex][slot] - 1L;
+		final int entryBytes = entryBytesAt(address);
+
+		removeIndexSlot(keyGroupIndex, slot);
+		--size;
+		if (--indexSizes[keyGroupIndex] == 0) {
+			indexAddresses[keyGroupIndex] = null;
+			indexHashes[keyGroupIndex] = null;
+		}
+
+		releaseEntry(address, entryBytes);
+		maybeCompact();
+	}
+
+	private int entryBytesAt(long address) {
+		final MemorySegment page = pageOf(address);
+		final int offset = offsetOf(address);
+		return ENTRY_HEADER_BYTES + page.getInt(offset + KEY_LENGTH_OFFSET) + page.getInt(offset + STATE_LENGTH_OFFSET);
+	}
+
+	private boolean matchesKey(long address, MemorySegment probe, int keyLength) {
+		final MemorySegment page = pageOf(address);
+		final int offset = offsetOf(address);
+		return page.getInt(offset + KEY_LENGTH_OFFSET) == keyLength &&
+			page.compare(probe, offset + ENTRY_HEADER_BYTES, 0, keyLength) == 0;
+	}
+
+	/**
+	 * Returns whether the entry at the given address has the namespace in {@link #keyOutputView}. Serialized
+	 * namespaces are self-delimiting, so the namespace matches if its bytes are a prefix of the namespace and key bytes.
+	 */
+	private boolean matchesNamespace(long address, int namespaceLength) {
+		final MemorySegment page = pageOf(address);
+		final int offset = offsetOf(address);
+		return page.getInt(offset + KEY_LENGTH_OFFSET) >= namespaceLength &&
+			page.compare(probeSegment(), offset + ENTRY_HEADER_BYTES, 0, namespaceLength) == 0;
+	}
+
+	// ------------------------------------------------------------------------
+	//  Hash index
+	// ------------------------------------------------------------------------
+
+	private void ensureIndex(int keyGroupIndex) {
+		if (indexAddresses[keyGroupIndex] == null) {
+			indexAddresses[keyGroupIndex] = new long[INITIAL_INDEX_CAPACITY];
+			indexHashes[keyGroupIndex] = new int[INITIAL_INDEX_CAPACITY];
+		}
+	}
+
+	/**
+	 * Returns the slot that contains the entry with the namespace and key in {@link #keyOutputView}, or the free slot
+	 * where it would be inserted.
+	 */
+	private int findIndexSlot(int keyGroupIndex, int keyLength, int hash) {
+		final long[] addresses = indexAddresses[keyGroupIndex];
+		final int[] hashes = indexHashes[keyGroupIndex];
+		final int mask = addresses.length - 1;
+		final MemorySegment probe = probeSegment();
+
+		int slot = hash & mask;
+		long indexEntry;
+		while ((indexEntry = addresses[slot]) != 0L) {
+			if (hashes[slot] == hash && matchesKey(indexEntry - 1L, probe, keyLength)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Returns the slot that contains the given address, or -1 if the entry at the address is not live.
+	 */
+	private int findIndexSlot(int keyGroupIndex, long address, int hash) {
+		final long[] addresses = indexAddresses[keyGroupIndex];
+		if (addresses == null) {
+			return -1;
+		}
+
+		final int mask = addresses.length - 1;
+		final long indexEntry = address + 1L;
+
+		int slot = hash & mask;
+		long current;
+		while ((current = addresses[slot]) != 0L) {
+			if (current == indexEntry) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Frees the given slot with backward-shift deletion, so that no tombstones are required.
+	 */
+	private void removeIndexSlot(int keyGroupIndex, int slot) {
+		final long[] addresses = indexAddresses[keyGroupIndex];
+		final int[] hashes = indexHashes[keyGroupIndex];
+		final int mask = addresses.length - 1;
+
+		int hole = slot;
+		int next = (hole + 1) & mask;
+		long indexEntry;
+		while ((indexEntry = addresses[next]) != 0L) {
+			final int home = hashes[next] & mask;
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				addresses[hole] = indexEntry;
+				hashes[hole] = hashes[next];
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		addresses[hole] = 0L;
+		hashes[hole] = 0;
+	}
+
+	private void rebuildIndex(int keyGroupIndex, int capacity) {
+		final long[] addresses = indexAddresses[keyGroupIndex];
+		final int[] hashes = indexHashes[keyGroupIndex];
+		final long[] newAddresses = new long[capacity];
+		final int[] newHashes = new int[capacity];
+		final int mask = capacity - 1;
+
+		for (int i = 0; i < addresses.length; ++i) {
+			if (addresses[i] != 0L) {
+				int slot = hashes[i] & mask;
+				while (newAddresses[slot] != 0L) {
+					slot = (slot + 1) & mask;
+				}
+				newAddresses[slot] = addresses[i];
+				newHashes[slot] = hashes[i];
+			}
+		}
+
+		indexAddresses[keyGroupIndex] = newAddresses;
+		indexHashes[keyGroupIndex] = newHashes;
+	}
+
+	// ------------------------------------------------------------------------
+	//  Memory pages
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Reserves room for an entry of the given size and returns its address. Oversized entries get a page of their own.
+	 */
+	private long allocateEntry(int entryBytes) {
+		final int pageSlot;
+		if (entryBytes > pageSize) {
+			pageSlot = addPage(entryBytes);
+			pagePool.seal(pageIds[pageSlot]);
+		} else {
+			if (writePageSlot == NO_PAGE || pageFill[writePageSlot] + entryBytes > pageSize) {
+				sealWritePage();
+				writePageSlot = addPage(pageSize);
+			}
+			pageSlot = writePageSlot;
+		}
+
+		final int offset = pageFill[pageSlot];
+		pageFill[pageSlot] += entryBytes;
+		pageLiveBytes[pageSlot] += entryBytes;
+		liveBytes += entryBytes;
+		return ((long) pageSlot << 32) | offset;
+	}
+
+	/**
+	 * Accounts the entry at the given address as garbage and releases its page if the page has no live entries left.
+	 */
+	private void releaseEntry(long address, int entryBytes) {
+		final int pageSlot = pageSlotOf(address);
+		pageLiveBytes[pageSlot] -= entryBytes;
+		liveBytes -= entryBytes;
+		garbageBytes += entryBytes;
+
+		if (pageLiveBytes[pageSlot] == 0 && pageSlot != writePageSlot) {
+			releasePageSlot(pageSlot);
+		}
+	}
+
+	private int addPage(int minSize) {
+		final int pageId = pagePool.newPage(minSize);
+
+		final int pageSlot;
+		if (numberOfFreePageSlots > 0) {
+			pageSlot = freePageSlots[--numberOfFreePageSlots];
+		} else {
+			if (numberOfPageSlots == pageIds.length) {
+				final int capacity = pageIds.length << 1;
+				pageIds = Arrays.copyOf(pageIds, capacity);
+				pageFill = Arrays.copyOf(pageFill, capacity);
+				pageLiveBytes = Arrays.copyOf(pageLiveBytes, capacity);
+				freePageSlots = Arrays.copyOf(freePageSlots, capacity);
+			}
+			pageSlot = numberOfPageSlots++;
+		}
+
+		pageIds[pageSlot] = pageId;
+		pageFill[pageSlot] = 0;
+		pageLiveBytes[pageSlot] = 0;
+		return pageSlot;
+	}
+
+	private void sealWritePage() {
+		if (writePageSlot != NO_PAGE) {
+			final int pageSlot = writePageSlot;
+			writePageSlot = NO_PAGE;
+			if (pageLiveBytes[pageSlot] == 0) {
+				releasePageSlot(pageSlot);
+			} else {
+				pagePool.seal(pageIds[pageSlot]);
+			}
+		}
+	}
+
+	private void releasePageSlot(int pageSlot) {
+		garbageBytes -= pageFill[pageSlot] - pageLiveBytes[pageSlot];
+		liveBytes -= pageLiveBytes[pageSlot];
+		pagePool.releasePage(pageIds[pageSlot]);
+		pageIds[pageSlot] = NO_PAGE;
+		pageFill[pageSlot] = 0;
+		pageLiveBytes[pageSlot] = 0;
+		freePageSlots[numberOfFreePageSlots++] = pageSlot;
+	}
+
+	private void maybeCompact() {
+		if (garbageBytes > liveBytes && garbageBytes > (long) MIN_COMPACTION_GARBAGE_PAGES * pageSize) {
+			compact();
+		}
+	}
+
+	/**
+	 * Relocates the live entries of all pages that are mostly garbage to the write page and releases those pages. If
+	 * the garbage exceeds the live data, at least one page is mostly garbage, and afterwards the remaining pages
+	 * contain more live data than garbage.
+	 */
+	private void compact() {
+		final int numberOfSlotsToCompact = numberOfPageSlots;
+		for (int pageSlot = 0; pageSlot < numberOfSlotsToCompact; ++pageSlot) {
+			if (pageIds[pageSlot] != NO_PAGE &&
+				pageSlot != writePageSlot &&
+				2L * pageLiveBytes[pageSlot] < pageFill[pageSlot]) {
+				relocateLiveEntries(pageSlot);
+			}
+		}
+	}
+
+	private void relocateLiveEntries(int pageSlot) {
+		final int fill = pageFill[pageSlot];
+		int offset = 0;
+		// the page is released when its last live entry was relocated
+		while (offset < fill && pageIds[pageSlot] != NO_PAGE) {
+			final long address = ((long) pageSlot << 32) | offset;
+			final MemorySegment page = pageOf(address);
+			final int keyGroupIndex = page.getInt(offset) - firstKeyGroup;
+			final int entryBytes = entryBytesAt(address);
+			final int slot = findIndexSlot(keyGroupIndex, address, page.getInt(offset + HASH_OFFSET));
+
+			if (slot >= 0) {
+				final byte[] buffer = entryBuffer(entryBytes);
+				page.get(offset, buffer, 0, entryBytes);
+				final long newAddress = allocateEntry(entryBytes);
+				pageOf(newAddress).put(offsetOf(newAddress), buffer, 0, entryBytes);
+				indexAddresses[keyGroupIndex][slot] = newAddress + 1L;
+				releaseEntry(address, entryBytes);
+			}
+
+			offset += entryBytes;
+		}
+	}
+
+	private MemorySegment pageOf(long address) {
+		return pagePool.getPage(pageIds[pageSlotOf(address)]);
+	}
+
+	static int pageSlotOf(long address) {
+		return (int) (address >>> 32);
+	}
+
+	static int offsetOf(long address) {
+		return (int) address;
+	}
+
+	// ------------------------------------------------------------------------
+	//  (De)serialization
+	// ------------------------------------------------------------------------
+
+	private int serializeKeyAndNamespace(K key, N namespace) {
+		keyOutputView.clear();
+		try {
+			metaInfo.getNamespaceSerializer().serialize(namespace, keyOutputView);
+			keyContext.getKeySerializer().serialize(key, keyOutputView);
+		} catch (IOException e) {
+			throw new FlinkRuntimeException("Error while serializing the key and namespace.", e);
+		}
+		return keyOutputView.length();
+	}
+
+	private int serializeNamespace(N namespace) {
+		keyOutputView.clear();
+		try {
+			metaInfo.getNamespaceSerializer().serialize(namespace, keyOutputView);
+		} catch (IOException e) {
+			throw new FlinkRuntimeException("Error while serializing the namespace.", e);
+		}
+		return keyOutputView.length();
+	}
+
+	private int serializeState(S state) {
+		stateOutputView.clear();
+		try {
+			metaInfo.getStateSerializer().serialize(state, stateOutputView);
+		} catch (IOException e) {
+			throw new FlinkRuntimeException("Error while serializing the state.", e);
+		}
+		return stateOutputView.length();
+	}
+
+	private S deserializeState(long address, TypeSerializer<S> stateSerializer) {
+		final MemorySegment page = pageOf(address);
+		final int offset = offsetOf(address);
+		final int keyLength = page.getInt(offset + KEY_LENGTH_OFFSET);
+		final int stateLength = page.getInt(offset + STATE_LENGTH_OFFSET);
+		final byte[] buffer = entryBuffer(stateLength);
+		page.get(offset + ENTRY_HEADER_BYTES + keyLength, buffer, 0, stateLength);
+		inputView.setBuffer(buffer, 0, stateLength);
+		try {
+			return stateSerializer.deserialize(inputView);
+		} catch (IOException e) {
+			throw new FlinkRuntimeException("Error while deserializing the state.", e);
+		}
+	}
+
+	private N deserializeNamespace(long address) {
+		final MemorySegment page = pageOf(address);
+		final int offset = offsetOf(address);
+		final int keyLength = page.getInt(offset + KEY_LENGTH_OFFSET);
+		final byte[] buffer = entryBuffer(keyLength);
+		page.get(offset + ENTRY_HEADER_BYTES, buffer, 0, keyLength);
+		inputView.setBuffer(buffer, 0, keyLength);
+		try {
+			return metaInfo.getNamespaceSerializer().deserialize(inputView);
+		} catch (IOException e) {
+			throw new FlinkRuntimeException("Error while deserializing the namespace.", e);
+		}
+	}
+
+	private K deserializeKey(long address, int namespaceLength, TypeSerializer<K> keySerializer) {
+		final MemorySegment page = pageOf(address);
+		final int offset = offsetOf(address);
+		final int keyLength = page.getInt(offset + KEY_LENGTH_OFFSET) - namespaceLength;
+		final byte[] buffer = entryBuffer(keyLength);
+		page.get(offset + ENTRY_HEADER_BYTES + namespaceLength, buffer, 0, keyLength);
+		inputView.setBuffer(buffer, 0, keyLength);
+		try {
+			return keySerializer.deserialize(inputView);
+		} catch (IOException e) {
+			throw new FlinkRuntimeException("Error while deserializing the key.", e);
+		}
+	}
+
+	private byte[] entryBuffer(int minLength) {
+		if (entryBuffer.length < minLength) {
+			entryBuffer = new byte[Math.max(minLength, entryBuffer.length << 1)];
+		}
+		return entryBuffer;
+	}
+
+	private MemorySegment probeSegment() {
+		final byte[] buffer = keyOutputView.getSharedBuffer();
+		if (probeBuffer != buffer) {
+			probeSegment = MemorySegmentFactory.wrap(buffer);
+			probeBuffer = buffer;
+		}
+		return probeSegment;
+	}
+
+	static int hashBytes(byte[] bytes, int length) {
+		int hash = 1;
+		for (int i = 0; i < length; ++i) {
+			hash = 31 * hash + bytes[i];
+		}
+		return MathUtils.murmurHash(hash);
+	}
+
+	/**
+	 * Incremental visitor over the entries of the table, in index order of the key-groups. Entries that are moved in
+	 * the index by concurrent modifications may be skipped or returned twice.
+	 */
+	private final class StateEntryVisitor implements StateIncrementalVisitor<K, N, S> {
+
+		private final int recommendedMaxNumberOfReturnedRecords;
+
+		private int keyGroupIndex;
+
+		private int slot;
+
+		StateEntryVisitor(int recommendedMaxNumberOfReturnedRecords) {
+			this.recommendedMaxNumberOfReturnedRecords = Math.max(1, recommendedMaxNumberOfReturnedRecords);
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (keyGroupIndex < indexAddresses.length) {
+				final long[] addresses = indexAddresses[keyGroupIndex];
+				if (addresses != null) {
+					while (slot < addresses.length) {
+						if (addresses[slot] != 0L) {
+							return true;
+						}
+						++slot;
+					}
+				}
+				++keyGroupIndex;
+				slot = 0;
+			}
+			return false;
+		}
+
+		@Override
+		public Collection<StateEntry<K, N, S>> nextEntries() {
+			if (!hasNext()) {
+				return Collections.emptyList();
+			}
+
+			final List<StateEntry<K, N, S>> entries = new ArrayList<>(recommendedMaxNumberOfReturnedRecords);
+			final long[] addresses = indexAddresses[keyGroupIndex];
+			final TypeSerializer<K> keySerializer = keyContext.getKeySerializer();
+			while (slot < addresses.length && entries.size() < recommendedMaxNumberOfReturnedRecords) {
+				final long indexEntry = addresses[slot++];
+				if (indexEntry != 0L) {
+					final long address = indexEntry - 1L;
+					final N namespace = deserializeNamespace(address);
+					final int namespaceLength = inputView.getPosition();
+					entries.add(new StateEntry.SimpleStateEntry<>(
+						deserializeKey(address, namespaceLength, keySerializer),
+						namespace,
+						deserializeState(address, metaInfo.getStateSerializer())));
+				}
+			}
+			return entries;
+		}
+
+		@Override
+		public void remove(StateEntry<K, N, S> stateEntry) {
+			final K key = stateEntry.getKey();
+			markKeyGroupModified(key);
+			OffHeapStateTable.this.remove(
+				key,
+				KeyGroupRangeAssignment.assignToKeyGroup(key, keyContext.getNumberOfKeyGroups()),
+				stateEntry.getNamespace(),
+				false);
+		}
+
+		@Override
+		public void update(StateEntry<K, N, S> stateEntry, S newValue) {
+			final K key = stateEntry.getKey();
+			markKeyGroupModified(key);
+			OffHeapStateTable.this.put(
+				key,
+				KeyGroupRangeAssignment.assignToKeyGroup(key, keyContext.getNumberOfKeyGroups()),
+				stateEntry.getNamespace(),
+				newValue);
+		}
+	}
+}
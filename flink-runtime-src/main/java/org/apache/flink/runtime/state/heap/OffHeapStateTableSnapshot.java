@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.state.heap;
+
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.core.memory.DataInputDeserializer;
+import org.apache.flink.core.memory.DataOutputSerializer;
+import org.apache.flink.core.memory.DataOutputView;
+import org.apache.flink.core.memory.MemorySegment;
+import org.apache.flink.core.memory.MemorySegmentFactory;
+import org.apache.flink.runtime.state.StateSnapshotTransformer;
+import org.apache.flink.runtime.state.StateSnapshotTransformer.StateSnapshotTransformFactory;
+import org.apache.flink.runtime.state.metainfo.StateMetaInfoSnapshot;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.apache.flink.runtime.state.heap.OffHeapStateTable.ENTRY_HEADER_BYTES;
+import static org.apache.flink.runtime.state.heap.OffHeapStateTable.KEY_LENGTH_OFFSET;
+import static org.apache.flink.runtime.state.heap.OffHeapStateTable.NO_PAGE;
+import static org.apache.flink.runtime.state.heap.OffHeapStateTable.STATE_LENGTH_OFFSET;
+
+/**
+ * This class represents the snapshot of an {@link OffHeapStateTable}. It holds the addresses of the entries of each
+ * key-group at the time of the snapshot and pins the pages of the table, so that the pages are neither modified,
+ * released nor evicted while the snapshot is written. The entries are already serialized in the format of the
+ * snapshots of the other heap state tables, i.e. namespace, key and state, so that they are copied byte-wise into the
+ * checkpoint stream without deserialization, unless a {@link StateSnapshotTransformer} has to be applied.
+ *
+ * <p>Pages that were spilled at the time of the snapshot are read from their spill files into a small per-writer
+ * cache of heap segments, and never loaded back into the pool of the table.
+ *
+ * @param <K> type of key
+ * @param <N> type of namespace
+ * @param <S> type of state
+ */
+@Internal
+public class OffHeapStateTableSnapshot<K, N, S>
+		extends AbstractStateTableSnapshot<K, N, S, OffHeapStateTable<K, N, S>> {
+
+	/** The number of spilled pages that each writer keeps in memory. */
+	private static final int SPILLED_PAGE_CACHE_SIZE = 16;
+
+	/** The addresses of the entries of each key-group, relative to the first key-group, sorted by address. */
+	@Nonnull
+	private final long[][] keyGroupAddresses;
+
+	/** The pool page id of each page slot of the table at the time of the snapshot. */
+	@Nonnull
+	private final int[] pageIds;
+
+	/** The pinned pages of the table. */
+	@Nonnull
+	private final OffHeapStatePagePool.PinnedPages pinnedPages;
+
+	private final int firstKeyGroup;
+
+	private final int pageSize;
+
+	/**
+	 * A local duplicate of the table's state serializer, only used to apply snapshot transformers.
+	 */
+	@Nonnull
+	private final TypeSerializer<S> localStateSerializer;
+
+	/** The factory of the snapshot transformers, each writer creates its own transformer. */
+	@Nonnull
+	private final StateSnapshotTransformFactory<S> stateSnapshotTransformFactory;
+
+	/** The writer of this snapshot, lazily created. */
+	@Nullable
+	private StateKeyGroupWriter keyGroupWriter;
+
+	private final AtomicBoolean released;
+
+	/**
+	 * Creates a new {@link OffHeapStateTableSnapshot}.
+	 *
+	 * @param owningStateTable the {@link OffHeapStateTable} for which this object represents a snapshot.
+	 */
+	OffHeapStateTableSnapshot(OffHeapStateTable<K, N, S> owningStateTable) {
+		super(owningStateTable);
+
+		this.keyGroupAddresses = owningStateTable.snapshotEntryAddresses();
+		this.pageIds = owningStateTable.snapshotPageIds();
+		this.firstKeyGroup = owningStateTable.getFirstKeyGroup();
+		this.pageSize = owningStateTable.getPagePool().getPageSize();
+
+		final int[] usedPageIds = new int[pageIds.length];
+		int numberOfUsedPages = 0;
+		for (int pageId : pageIds) {
+			if (pageId != NO_PAGE) {
+				usedPageIds[numberOfUsedPages++] = pageId;
+			}
+		}
+		this.pinnedPages = owningStateTable.getPagePool().pin(usedPageIds, numberOfUsedPages);
+		this.released = new AtomicBoolean(false);
+
+		this.localStateSerializer = owningStateTable.metaInfo.getStateSerializer().duplicate();
+		this.stateSnapshotTransformFactory = owningStateTable.metaInfo.getStateSnapshotTransformFactory();
+	}
+
+	@Nonnull
+	@Override
+	public StateKeyGroupWriter getKeyGroupWriter() {
+		if (keyGroupWriter == null) {
+			keyGroupWriter = new KeyGroupWriter(
+				localStateSerializer,
+				stateSnapshotTransformFactory.createForDeserializedState().orElse(null));
+		}
+		return keyGroupWriter;
+	}
+
+	/**
+	 * Returns a writer with its own buffers and serializer, so that different key-groups can be written concurrently.
+	 */
+	@Nonnull
+	@Override
+	public StateKeyGroupWriter getConcurrentKeyGroupWriter() {
+		return new KeyGroupWriter(
+			localStateSerializer.duplicate(),
+			stateSnapshotTransformFactory.createForDeserializedState().orElse(null));
+	}
+
+	@Nonnull
+	@Override
+	public StateMetaInfoSnapshot getMetaInfoSnapshot() {
+		return owningStateTable.metaInfo.snapshot();
+	}
+
+	@Override
+	public void release() {
+		if (released.compareAndSet(false, true)) {
+			owningStateTable.getPagePool().unpin(pinnedPages);
+		}
+	}
+
+	/**
+	 * Writes the entries of a key-group from the pinned pages. Not thread-safe.
+	 */
+	private final class KeyGroupWriter implements StateKeyGroupWriter {
+
+		@Nonnull
+		private final TypeSerializer<S> stateSerializer;
+
+		@Nullable
+		private final StateSnapshotTransformer<S> stateSnapshotTransformer;
+
+		/** The pool page ids of the cached spilled pages. */
+		@Nonnull
+		private final int[] cachedPageIds;
+
+		/** The cached spilled pages. */
+		@Nonnull
+		private final MemorySegment[] cachedPages;
+
+		/** The next cache position to replace. */
+		private int nextCachePosition;
+
+		@Nullable
+		private DataOutputSerializer transformedOutputView;
+
+		@Nullable
+		private DataInputDeserializer inputView;
+
+		KeyGroupWriter(
+			@Nonnull TypeSerializer<S> stateSerializer,
+			@Nullable StateSnapshotTransformer<S> stateSnapshotTransformer) {
+			this.stateSerializer = stateSerializer;
+			this.stateSnapshotTransformer = stateSnapshotTransformer;
+			this.cachedPageIds = new int[SPILLED_PAGE_CACHE_SIZE];
+			this.cachedPages = new MemorySegment[SPILLED_PAGE_CACHE_SIZE];
+		}
+
+		@Override
+		public void writeStateInKeyGroup(@Nonnull DataOutputView dov, @Nonnegative int keyGroupId) throws IOException {
+			final long[] addresses = keyGroupAddresses[keyGroupId - firstKeyGroup];
+			if (stateSnapshotTransformer == null) {
+				dov.writeInt(addresses.length);
+				for (long address : addresses) {
+					final MemorySegment page = pageOf(address);
+					final int offset = OffHeapStateTable.offsetOf(address);
+					final int length = page.getInt(offset + KEY_LENGTH_OFFSET) + page.getInt(offset + STATE_LENGTH_OFFSET);
+					page.get(dov, offset + ENTRY_HEADER_BYTES, length);
+				}
+			} else {
+				writeTransformedStateInKeyGroup(dov, addresses, stateSnapshotTransformer);
+			}
+		}
+
+		/**
+		 * Writes the entries with the transformed states, and skips the entries whose states are filtered out. The
+		 * number of entries is written first, so the entries are buffered.
+		 */
+		private void writeTransformedStateInKeyGroup(
+			DataOutputView dov,
+			long[] addresses,
+			StateSnapshotTransformer<S> transformer) throws IOException {
+
+			if (transformedOutputView == null) {
+				transformedOutputView = new DataOutputSerializer(1024);
+				inputView = new DataInputDeserializer();
+			}
+			transformedOutputView.clear();
+
+			int numberOfEntries = 0;
+			byte[] stateBytes = new byte[0];
+			for (long address : addresses) {
+				final MemorySegment page = pageOf(address);
+				final int offset = OffHeapStateTable.offsetOf(address);
+				final int keyLength = page.getInt(offset + KEY_LENGTH_OFFSET);
+				final int stateLength = page.getInt(offset + STATE_LENGTH_OFFSET);
+				if (stateBytes.length < stateLength) {
+					stateBytes = new byte[stateLength];
+				}
+				page.get(offset + ENTRY_HEADER_BYTES + keyLength, stateBytes, 0, stateLength);
+				inputView.setBuffer(stateBytes, 0, stateLength);
+
+				final S transformedState = transformer.filterOrTransform(stateSerializer.deserialize(inputView));
+				if (transformedState != null) {
+					page.get(transformedOutputView, offset + ENTRY_HEADER_BYTES, keyLength);
+					stateSerializer.serialize(transformedState, transformedOutputView);
+					++numberOfEntries;
+				}
+			}
+
+			dov.writeInt(numberOfEntries);
+			dov.write(transformedOutputView.getSharedBuffer(), 0, transformedOutputView.length());
+		}
+
+		private MemorySegment pageOf(long address) throws IOException {
+			final int pageId = pageIds[OffHeapStateTable.pageSlotOf(address)];
+			final MemorySegment residentPage = pinnedPages.getResidentPage(pageId);
+			if (residentPage != null) {
+				return residentPage;
+			}
+
+			for (int i = 0; i < SPILLED_PAGE_CACHE_SIZE; ++i) {
+				if (cachedPageIds[i] == pageId && cachedPages[i] != null) {
+					return cachedPages[i];
+				}
+			}
+
+			final int position = nextCachePosition;
+			nextCachePosition = (nextCachePosition + 1) % SPILLED_PAGE_CACHE_SIZE;
+			if (cachedPages[position] == null) {
+				cachedPages[position] = MemorySegmentFactory.wrap(new byte[pageSize]);
+			}
+			cachedPageIds[position] = NO_PAGE;
+			pinnedPages.readSpilledPage(pageId, cachedPages[position]);
+			cachedPageIds[position] = pageId;
+			return cachedPages[position];
+		}
+	}
+}
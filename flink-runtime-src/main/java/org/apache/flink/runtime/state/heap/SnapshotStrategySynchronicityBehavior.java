@@ -36,4 +36,11 @@ interface SnapshotStrategySynchronicityBehavior<K> {
 	<N, V> StateTable<K, N, V> newStateTable(
 		InternalKeyContext<K> keyContext,
 		RegisteredKeyValueStateBackendMetaInfo<N, V> newMetaInfo);
+
+	/**
+	 * Releases the resources of the state tables that were created by this behavior, when the backend is disposed.
+	 */
+	default void dispose() {
+
+	}
 }
@@ -20,6 +20,7 @@ package org.apache.flink.runtime.state.heap;
 
 import org.apache.flink.annotation.VisibleForTesting;
 import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.runtime.state.KeyGroupRangeAssignment;
 import org.apache.flink.runtime.state.RegisteredKeyValueStateBackendMetaInfo;
 import org.apache.flink.runtime.state.StateSnapshotKeyGroupReader;
 import org.apache.flink.runtime.state.StateSnapshotRestore;
@@ -28,6 +29,7 @@ import org.apache.flink.runtime.state.internal.InternalKvState.StateIncrementalV
 import org.apache.flink.util.Preconditions;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import java.util.stream.Stream;
 
@@ -51,6 +53,12 @@ public abstract class StateTable<K, N, S> implements StateSnapshotRestore {
 	 */
 	protected RegisteredKeyValueStateBackendMetaInfo<N, S> metaInfo;
 
+	/**
+	 * Tracks modified key-groups for incremental snapshots, null if incremental snapshots are disabled.
+	 */
+	@Nullable
+	private IncrementalSnapshotTracker incrementalSnapshotTracker;
+
 	/**
 	 *
 	 * @param keyContext the key context provides the key scope for all put/get/delete operations.
@@ -187,6 +195,31 @@ public abstract class StateTable<K, N, S> implements StateSnapshotRestore {
 		this.metaInfo = metaInfo;
 	}
 
+	void setIncrementalSnapshotTracker(@Nullable IncrementalSnapshotTracker incrementalSnapshotTracker) {
+		this.incrementalSnapshotTracker = incrementalSnapshotTracker;
+	}
+
+	/**
+	 * Marks the key-group of the current key as modified. This must be called by all methods that modify the state
+	 * of the current key, and by the states that modify the objects returned by {@link #get(Object)} in place.
+	 */
+	protected void markCurrentKeyGroupModified() {
+		if (incrementalSnapshotTracker != null) {
+			incrementalSnapshotTracker.markKeyGroupModified(keyContext.getCurrentKeyGroupIndex());
+		}
+	}
+
+	/**
+	 * Marks the key-group of the given key as modified, for modifications of other keys than the current key, e.g.
+	 * through a {@link StateIncrementalVisitor}.
+	 */
+	protected void markKeyGroupModified(K key) {
+		if (incrementalSnapshotTracker != null) {
+			incrementalSnapshotTracker.markKeyGroupModified(
+				KeyGroupRangeAssignment.assignToKeyGroup(key, keyContext.getNumberOfKeyGroups()));
+		}
+	}
+
 	// Snapshot / Restore -------------------------------------------------------------------------
 
 	public abstract void put(K key, int keyGroup, N namespace, S state);
@@ -49,39 +49,90 @@ class StateTableByKeyGroupReaders {
 	 * @return the appropriate reader.
 	 */
 	static <K, N, S> StateSnapshotKeyGroupReader readerForVersion(StateTable<K, N, S> stateTable, int version) {
+		return readerForVersion(
+			stateTable.keyContext.getKeySerializer(),
+			stateTable.getNamespaceSerializer(),
+			stateTable.getStateSerializer(),
+			stateTable::put,
+			version);
+	}
+
+	/**
+	 * Creates a new StateTableByKeyGroupReader that hands de-serialized mappings to the given consumer, using the given
+	 * serializers and the de-serialization algorithm that matches the given version. With duplicated serializers, this
+	 * reader can de-serialize on another thread than the one that owns the table.
+	 *
+	 * @param keySerializer serializer for the keys.
+	 * @param namespaceSerializer serializer for the namespaces.
+	 * @param stateSerializer serializer for the states.
+	 * @param mappingConsumer the consumer of the de-serialized mappings.
+	 * @param version version for the de-serialization algorithm.
+	 * @param <K> type of key.
+	 * @param <N> type of namespace.
+	 * @param <S> type of state.
+	 * @return the appropriate reader.
+	 */
+	static <K, N, S> StateSnapshotKeyGroupReader readerForVersion(
+		TypeSerializer<K> keySerializer,
+		TypeSerializer<N> namespaceSerializer,
+		TypeSerializer<S> stateSerializer,
+		MappingConsumer<K, N, S> mappingConsumer,
+		int version) {
+
 		switch (version) {
 			case 1:
-				return new StateTableByKeyGroupReaderV1<>(stateTable);
+				return new StateTableByKeyGroupReaderV1<>(
+					keySerializer, namespaceSerializer, stateSerializer, mappingConsumer);
 			case 2:
 			case 3:
 			case 4:
 			case 5:
 			case 6:
-				return createV2PlusReader(stateTable);
+				return createV2PlusReader(keySerializer, namespaceSerializer, stateSerializer, mappingConsumer);
 			default:
 				throw new IllegalArgumentException("Unknown version: " + version);
 		}
 	}
 
-	private static <K, N, S> StateSnapshotKeyGroupReader createV2PlusReader(StateTable<K, N, S> stateTable) {
-		final TypeSerializer<K> keySerializer = stateTable.keyContext.getKeySerializer();
-		final TypeSerializer<N> namespaceSerializer = stateTable.getNamespaceSerializer();
-		final TypeSerializer<S> stateSerializer = stateTable.getStateSerializer();
+	private static <K, N, S> StateSnapshotKeyGroupReader createV2PlusReader(
+		TypeSerializer<K> keySerializer,
+		TypeSerializer<N> namespaceSerializer,
+		TypeSerializer<S> stateSerializer,
+		MappingConsumer<K, N, S> mappingConsumer) {
+
 		final Tuple3<N, K, S> buffer = new Tuple3<>();
 		return KeyGroupPartitioner.createKeyGroupPartitionReader((in) -> {
 			buffer.f0 = namespaceSerializer.deserialize(in);
 			buffer.f1 = keySerializer.deserialize(in);
 			buffer.f2 = stateSerializer.deserialize(in);
 			return buffer;
-		}, (element, keyGroupId1) -> stateTable.put(element.f1, keyGroupId1, element.f0, element.f2));
+		}, (element, keyGroupId1) -> mappingConsumer.put(element.f1, keyGroupId1, element.f0, element.f2));
+	}
+
+	/**
+	 * Consumer of the mappings that a reader de-serializes.
+	 */
+	@FunctionalInterface
+	interface MappingConsumer<K, N, S> {
+		void put(K key, int keyGroup, N namespace, S state);
 	}
 
 	static final class StateTableByKeyGroupReaderV1<K, N, S> implements StateSnapshotKeyGroupReader {
 
-		protected final StateTable<K, N, S> stateTable;
+		private final TypeSerializer<K> keySerializer;
+		private final TypeSerializer<N> namespaceSerializer;
+		private final TypeSerializer<S> stateSerializer;
+		private final MappingConsumer<K, N, S> mappingConsumer;
 
-		StateTableByKeyGroupReaderV1(StateTable<K, N, S> stateTable) {
-			this.stateTable = stateTable;
+		StateTableByKeyGroupReaderV1(
+			TypeSerializer<K> keySerializer,
+			TypeSerializer<N> namespaceSerializer,
+			TypeSerializer<S> stateSerializer,
+			MappingConsumer<K, N, S> mappingConsumer) {
+			this.keySerializer = keySerializer;
+			this.namespaceSerializer = namespaceSerializer;
+			this.stateSerializer = stateSerializer;
+			this.mappingConsumer = mappingConsumer;
 		}
 
 		@Override
@@ -91,10 +142,6 @@ class StateTableByKeyGroupReaders {
 				return;
 			}
 
-			final TypeSerializer<K> keySerializer = stateTable.keyContext.getKeySerializer();
-			final TypeSerializer<N> namespaceSerializer = stateTable.getNamespaceSerializer();
-			final TypeSerializer<S> stateSerializer = stateTable.getStateSerializer();
-
 			// V1 uses kind of namespace compressing format
 			int numNamespaces = inView.readInt();
 			for (int k = 0; k < numNamespaces; k++) {
@@ -103,7 +150,7 @@ class StateTableByKeyGroupReaders {
 				for (int l = 0; l < numEntries; l++) {
 					K key = keySerializer.deserialize(inView);
 					S state = stateSerializer.deserialize(inView);
-					stateTable.put(key, keyGroupId, namespace, state);
+					mappingConsumer.put(key, keyGroupId, namespace, state);
 				}
 			}
 		}
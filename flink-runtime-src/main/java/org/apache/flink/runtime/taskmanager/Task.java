@@ -377,7 +377,9 @@ public class Task implements Runnable, TaskActions, CheckpointListener {
 				networkEnvironment.getResultPartitionManager(),
 				resultPartitionConsumableNotifier,
 				ioManager,
-				desc.sendScheduleOrUpdateConsumersMessage());
+				desc.sendScheduleOrUpdateConsumersMessage(),
+				tmConfig.getBoolean(ResultPartition.LOCK_FREE_PIPELINED_SUBPARTITIONS),
+				tmConfig.getBoolean(ResultPartition.MEMORY_MAPPED_BLOCKING_SUBPARTITIONS));
 
 			++counter;
 		}
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.io.network.api.serialization;
+
+import org.apache.flink.api.common.typeutils.base.array.BytePrimitiveArraySerializer;
+import org.apache.flink.core.memory.MemorySegment;
+import org.apache.flink.core.memory.MemorySegmentFactory;
+import org.apache.flink.runtime.io.network.buffer.Buffer;
+import org.apache.flink.runtime.io.network.buffer.BufferBuilder;
+import org.apache.flink.runtime.io.network.buffer.BufferConsumer;
+import org.apache.flink.runtime.io.network.buffer.BufferRecycler;
+import org.apache.flink.runtime.io.network.buffer.FreeingBufferRecycler;
+import org.apache.flink.runtime.plugable.NonReusingDeserializationDelegate;
+import org.apache.flink.runtime.plugable.SerializationDelegate;
+import org.apache.flink.streaming.benchmark.BenchmarkBase;
+import org.apache.flink.streaming.runtime.streamrecord.StreamElement;
+import org.apache.flink.streaming.runtime.streamrecord.StreamElementSerializer;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks the {@link SpanningRecordSerializer} and the {@link SpillingAdaptiveSpanningRecordDeserializer}, i.e.
+ * the copying of serialized records into network buffers and the reassembly of records that span buffers.
+ */
+public class RecordSerializationBenchmark extends BenchmarkBase {
+
+	private static final int RECORDS_PER_INVOCATION = 1000;
+
+	private static final int BUFFER_SIZE = 32 * 1024;
+
+	private static final BufferRecycler NO_OP_RECYCLER = memorySegment -> {};
+
+	@Param({"16", "256", "4096", "65536"})
+	public int recordSize;
+
+	private SpanningRecordSerializer<SerializationDelegate<StreamElement>> serializer;
+
+	private SerializationDelegate<StreamElement> serializationDelegate;
+
+	private MemorySegment targetSegment;
+
+	private BufferBuilder targetBufferBuilder;
+
+	private SpillingAdaptiveSpanningRecordDeserializer<NonReusingDeserializationDelegate<StreamElement>> deserializer;
+
+	private NonReusingDeserializationDelegate<StreamElement> deserializationDelegate;
+
+	/** The buffers that contain {@link #RECORDS_PER_INVOCATION} serialized records. */
+	private List<Buffer> serializedBuffers;
+
+	@Setup
+	public void setUp() throws Exception {
+		StreamElementSerializer<byte[]> elementSerializer =
+			new StreamElementSerializer<>(BytePrimitiveArraySerializer.INSTANCE);
+
+		byte[] value = new byte[recordSize];
+		new Random(42L).nextBytes(value);
+
+		serializer = new SpanningRecordSerializer<>();
+		serializationDelegate = new SerializationDelegate<>(elementSerializer);
+		serializationDelegate.setInstance(new StreamRecord<>(value, 42L));
+
+		// the serialize benchmark overwrites the same segment over and over
+		targetSegment = MemorySegmentFactory.allocateUnpooledSegment(BUFFER_SIZE);
+		targetBufferBuilder = new BufferBuilder(targetSegment, NO_OP_RECYCLER);
+
+		deserializer = new SpillingAdaptiveSpanningRecordDeserializer<>(
+			new String[] {System.getProperty("java.io.tmpdir")});
+		deserializationDelegate = new NonReusingDeserializationDelegate<>(elementSerializer);
+
+		serializedBuffers = serializeRecords();
+	}
+
+	@TearDown
+	public void tearDown() {
+		deserializer.clear();
+		for (Buffer buffer : serializedBuffers) {
+			buffer.recycleBuffer();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RECORDS_PER_INVOCATION)
+	public void serializeRecords(Blackhole bh) throws Exception {
+		for (int i = 0; i < RECORDS_PER_INVOCATION; i++) {
+			serializer.serializeRecord(serializationDelegate);
+
+			RecordSerializer.SerializationResult result = serializer.copyToBufferBuilder(targetBufferBuilder);
+			while (result.isFullBuffer()) {
+				targetBufferBuilder = new BufferBuilder(targetSegment, NO_OP_RECYCLER);
+				if (result.isFullRecord()) {
+					break;
+				}
+				result = serializer.copyToBufferBuilder(targetBufferBuilder);
+			}
+		}
+		bh.consume(targetBufferBuilder);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RECORDS_PER_INVOCATION)
+	public void deserializeRecords(Blackhole bh) throws Exception {
+		for (Buffer buffer : serializedBuffers) {
+			deserializer.setNextBuffer(buffer);
+
+			while (true) {
+				RecordDeserializer.DeserializationResult result = deserializer.getNextRecord(deserializationDelegate);
+				if (result.isFullRecord()) {
+					bh.consume(deserializationDelegate.getInstance());
+				}
+				if (result.isBufferConsumed()) {
+					break;
+				}
+			}
+		}
+	}
+
+	private List<Buffer> serializeRecords() throws Exception {
+		List<Buffer> buffers = new ArrayList<>();
+
+		BufferBuilder bufferBuilder = newBufferBuilder();
+		BufferConsumer bufferConsumer = bufferBuilder.createBufferConsumer();
+
+		for (int i = 0; i < RECORDS_PER_INVOCATION; i++) {
+			serializer.serializeRecord(serializationDelegate);
+
+			RecordSerializer.SerializationResult result = serializer.copyToBufferBuilder(bufferBuilder);
+			while (result.isFullBuffer()) {
+				bufferBuilder.finish();
+				buffers.add(bufferConsumer.build());
+				bufferConsumer.close();
+
+				bufferBuilder = newBufferBuilder();
+				bufferConsumer = bufferBuilder.createBufferConsumer();
+				if (result.isFullRecord()) {
+					break;
+				}
+				result = serializer.copyToBufferBuilder(bufferBuilder);
+			}
+		}
+
+		bufferBuilder.finish();
+		Buffer lastBuffer = bufferConsumer.build();
+		if (lastBuffer.readableBytes() > 0) {
+			buffers.add(lastBuffer);
+		} else {
+			lastBuffer.recycleBuffer();
+		}
+		bufferConsumer.close();
+
+		return buffers;
+	}
+
+	private static BufferBuilder newBufferBuilder() {
+		return new BufferBuilder(MemorySegmentFactory.allocateUnpooledSegment(BUFFER_SIZE), FreeingBufferRecycler.INSTANCE);
+	}
+}
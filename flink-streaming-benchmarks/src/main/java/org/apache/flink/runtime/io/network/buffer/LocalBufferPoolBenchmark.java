@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.io.network.buffer;
+
+import org.apache.flink.streaming.benchmark.BenchmarkBase;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+
+/**
+ * Benchmarks requesting buffers from and recycling them to a {@link LocalBufferPool}, sized like the pool of a result
+ * partition with the given number of subpartitions.
+ */
+public class LocalBufferPoolBenchmark extends BenchmarkBase {
+
+	private static final int SEGMENT_SIZE = 32 * 1024;
+
+	@Param({"1", "64", "1024"})
+	public int numberOfChannels;
+
+	private NetworkBufferPool networkBufferPool;
+
+	private BufferPool bufferPool;
+
+	private Buffer[] buffers;
+
+	@Setup
+	public void setUp() throws IOException {
+		// the default configuration: 2 buffers per channel plus 8 floating buffers
+		int poolSize = 2 * numberOfChannels + 8;
+
+		networkBufferPool = new NetworkBufferPool(poolSize, SEGMENT_SIZE);
+		bufferPool = networkBufferPool.createBufferPool(poolSize, poolSize);
+		buffers = new Buffer[numberOfChannels];
+	}
+
+	@TearDown
+	public void tearDown() {
+		bufferPool.lazyDestroy();
+		networkBufferPool.destroyAllBufferPools();
+		networkBufferPool.destroy();
+	}
+
+	@Benchmark
+	public Buffer requestAndRecycle() throws IOException {
+		Buffer buffer = bufferPool.requestBuffer();
+		buffer.recycleBuffer();
+		return buffer;
+	}
+
+	/**
+	 * Requests one buffer per channel before recycling them, like a record writer that starts a buffer for every
+	 * subpartition.
+	 */
+	@Benchmark
+	public void requestAndRecycleOnePerChannel() throws IOException {
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = bufferPool.requestBuffer();
+		}
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i].recycleBuffer();
+			buffers[i] = null;
+		}
+	}
+}
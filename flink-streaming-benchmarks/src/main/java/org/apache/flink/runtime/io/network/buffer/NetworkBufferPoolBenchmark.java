@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.io.network.buffer;
+
+import org.apache.flink.core.memory.MemorySegment;
+import org.apache.flink.streaming.benchmark.BenchmarkBase;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Benchmarks requesting memory segments from and recycling them to a {@link NetworkBufferPool} that is shared by
+ * the given number of threads, like the local buffer pools of many tasks growing and shrinking concurrently.
+ */
+public class NetworkBufferPoolBenchmark extends BenchmarkBase {
+
+	private static final int SEGMENT_SIZE = 32 * 1024;
+
+	private static final int NUMBER_OF_SEGMENTS = 4096;
+
+	/**
+	 * The network buffer pool shared by all benchmark threads.
+	 */
+	@State(Scope.Benchmark)
+	public static class SharedNetworkBufferPool {
+
+		private NetworkBufferPool networkBufferPool;
+
+		@Setup
+		public void setUp() {
+			networkBufferPool = new NetworkBufferPool(NUMBER_OF_SEGMENTS, SEGMENT_SIZE);
+		}
+
+		@TearDown
+		public void tearDown() {
+			networkBufferPool.destroy();
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public MemorySegment requestAndRecycleOneThread(SharedNetworkBufferPool pool) {
+		return requestAndRecycle(pool.networkBufferPool);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public MemorySegment requestAndRecycleFourThreads(SharedNetworkBufferPool pool) {
+		return requestAndRecycle(pool.networkBufferPool);
+	}
+
+	@Benchmark
+	@Threads(16)
+	public MemorySegment requestAndRecycleSixteenThreads(SharedNetworkBufferPool pool) {
+		return requestAndRecycle(pool.networkBufferPool);
+	}
+
+	@Benchmark
+	@Threads(64)
+	public MemorySegment requestAndRecycleSixtyFourThreads(SharedNetworkBufferPool pool) {
+		return requestAndRecycle(pool.networkBufferPool);
+	}
+
+	private static MemorySegment requestAndRecycle(NetworkBufferPool networkBufferPool) {
+		MemorySegment segment = networkBufferPool.requestMemorySegment();
+		networkBufferPool.recycle(segment);
+		return segment;
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.io.network.partition;
+
+import org.apache.flink.api.common.JobID;
+import org.apache.flink.core.memory.MemorySegment;
+import org.apache.flink.core.memory.MemorySegmentFactory;
+import org.apache.flink.runtime.io.disk.iomanager.IOManager;
+import org.apache.flink.runtime.io.disk.iomanager.IOManagerAsync;
+import org.apache.flink.runtime.io.network.buffer.BufferBuilder;
+import org.apache.flink.runtime.io.network.buffer.BufferConsumer;
+import org.apache.flink.runtime.io.network.buffer.BufferRecycler;
+import org.apache.flink.runtime.io.network.partition.ResultSubpartition.BufferAndBacklog;
+import org.apache.flink.runtime.jobgraph.IntermediateDataSetID;
+import org.apache.flink.runtime.taskmanager.TaskActions;
+import org.apache.flink.streaming.benchmark.BenchmarkBase;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.Control;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the {@link PipelinedSubpartition} with the {@link LockFreePipelinedSubpartition}: a task thread adds
+ * finished buffers to the subpartitions of a result partition in turns, while a network thread polls them in turns.
+ *
+ * <p>The {@code produce} score is the throughput of the partition. The {@code consume} score also counts polls that
+ * found no data. The number of buffers in flight is bounded, like with credit-based flow control.
+ */
+@State(Scope.Group)
+public class PipelinedSubpartitionBenchmark extends BenchmarkBase {
+
+	private static final int MAX_BUFFERS_IN_FLIGHT = 1024;
+
+	private static final int BUFFER_SIZE = 4096;
+
+	private static final int RECORD_SIZE = 64;
+
+	private static final BufferRecycler NO_OP_RECYCLER = memorySegment -> {};
+
+	@Param({"1", "64", "1024"})
+	public int numberOfChannels;
+
+	@Param({"false", "true"})
+	public boolean lockFree;
+
+	private IOManager ioManager;
+
+	private ResultPartition partition;
+
+	private ResultSubpartitionView[] views;
+
+	/** Shared by all buffers, the benchmark does not look at their contents. */
+	private MemorySegment segment;
+
+	private final AtomicInteger buffersInFlight = new AtomicInteger();
+
+	// only accessed by the producer
+
+	private ByteBuffer record;
+
+	private int producerChannel;
+
+	// only accessed by the consumer
+
+	private int consumerChannel;
+
+	@Setup
+	public void setUp() throws IOException {
+		ioManager = new IOManagerAsync();
+
+		ResultPartitionManager partitionManager = new ResultPartitionManager();
+		partition = new ResultPartition(
+			"benchmark",
+			new NoOpTaskActions(),
+			new JobID(),
+			new ResultPartitionID(),
+			ResultPartitionType.PIPELINED,
+			numberOfChannels,
+			numberOfChannels,
+			partitionManager,
+			(jobId, partitionId, taskActions) -> {},
+			ioManager,
+			false,
+			lockFree,
+			false);
+		partitionManager.registerResultPartition(partition);
+
+		views = new ResultSubpartitionView[numberOfChannels];
+		for (int i = 0; i < numberOfChannels; i++) {
+			views[i] = partition.createSubpartitionView(i, () -> {});
+		}
+
+		segment = MemorySegmentFactory.allocateUnpooledSegment(BUFFER_SIZE);
+		record = ByteBuffer.allocate(RECORD_SIZE);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		partition.release();
+		ioManager.shutdown();
+	}
+
+	@Benchmark
+	@Group("pipelined")
+	@GroupThreads(1)
+	public void produce(Control control) throws IOException {
+		while (buffersInFlight.get() >= MAX_BUFFERS_IN_FLIGHT) {
+			if (control.stopMeasurement) {
+				return;
+			}
+			Thread.yield();
+		}
+
+		BufferBuilder bufferBuilder = new BufferBuilder(segment, NO_OP_RECYCLER);
+		BufferConsumer bufferConsumer = bufferBuilder.createBufferConsumer();
+		record.clear();
+		bufferBuilder.appendAndCommit(record);
+		bufferBuilder.finish();
+
+		buffersInFlight.incrementAndGet();
+		partition.addBufferConsumer(bufferConsumer, producerChannel);
+
+		if (++producerChannel == numberOfChannels) {
+			producerChannel = 0;
+		}
+	}
+
+	@Benchmark
+	@Group("pipelined")
+	@GroupThreads(1)
+	public void consume(Blackhole bh) throws Exception {
+		BufferAndBacklog next = views[consumerChannel].getNextBuffer();
+		if (next != null) {
+			next.buffer().recycleBuffer();
+			buffersInFlight.decrementAndGet();
+			bh.consume(next);
+		}
+
+		if (++consumerChannel == numberOfChannels) {
+			consumerChannel = 0;
+		}
+	}
+
+	private static final class NoOpTaskActions implements TaskActions {
+
+		@Override
+		public void triggerPartitionProducerStateCheck(
+				JobID jobId,
+				IntermediateDataSetID intermediateDataSetId,
+				ResultPartitionID resultPartitionId) {
+		}
+
+		@Override
+		public void failExternally(Throwable cause) {
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.state.heap;
+
+import org.apache.flink.api.common.state.StateDescriptor;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.api.common.typeutils.base.IntSerializer;
+import org.apache.flink.api.common.typeutils.base.LongSerializer;
+import org.apache.flink.core.memory.DataOutputSerializer;
+import org.apache.flink.runtime.state.KeyGroupRange;
+import org.apache.flink.runtime.state.KeyGroupRangeAssignment;
+import org.apache.flink.runtime.state.RegisteredKeyValueStateBackendMetaInfo;
+import org.apache.flink.runtime.state.StateSnapshot;
+import org.apache.flink.runtime.state.VoidNamespace;
+import org.apache.flink.runtime.state.VoidNamespaceSerializer;
+import org.apache.flink.streaming.benchmark.BenchmarkBase;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Benchmarks the {@link CopyOnWriteStateTable} of the heap keyed state backend: point accesses, and the synchronous
+ * plus asynchronous part of a full snapshot.
+ */
+public class CopyOnWriteStateTableBenchmark extends BenchmarkBase {
+
+	private static final int NUMBER_OF_KEY_GROUPS = 128;
+
+	/** The number of (random) keys that the access benchmarks cycle through. */
+	private static final int ACCESS_PATTERN_LENGTH = 1 << 16;
+
+	@Param({"1000", "100000", "1000000"})
+	public int keyCardinality;
+
+	private CopyOnWriteStateTable<Integer, VoidNamespace, Long> stateTable;
+
+	private Integer[] keys;
+
+	private int[] keyGroups;
+
+	private int position;
+
+	private DataOutputSerializer snapshotOutput;
+
+	@Setup
+	public void setUp() {
+		RegisteredKeyValueStateBackendMetaInfo<VoidNamespace, Long> metaInfo = new RegisteredKeyValueStateBackendMetaInfo<>(
+			StateDescriptor.Type.VALUE,
+			"benchmark-state",
+			VoidNamespaceSerializer.INSTANCE,
+			LongSerializer.INSTANCE);
+
+		stateTable = new CopyOnWriteStateTable<>(new BenchmarkKeyContext(), metaInfo);
+		for (int key = 0; key < keyCardinality; key++) {
+			stateTable.put(key, keyGroupFor(key), VoidNamespace.INSTANCE, (long) key);
+		}
+
+		Random random = new Random(42L);
+		keys = new Integer[ACCESS_PATTERN_LENGTH];
+		keyGroups = new int[ACCESS_PATTERN_LENGTH];
+		for (int i = 0; i < ACCESS_PATTERN_LENGTH; i++) {
+			keys[i] = random.nextInt(keyCardinality);
+			keyGroups[i] = keyGroupFor(keys[i]);
+		}
+
+		snapshotOutput = new DataOutputSerializer(1024 * 1024);
+	}
+
+	@Benchmark
+	public Long get() {
+		int i = nextPosition();
+		return stateTable.get(keys[i], VoidNamespace.INSTANCE);
+	}
+
+	@Benchmark
+	public void put() {
+		int i = nextPosition();
+		stateTable.put(keys[i], keyGroups[i], VoidNamespace.INSTANCE, (long) i);
+	}
+
+	@Benchmark
+	public int snapshot() throws IOException {
+		CopyOnWriteStateTableSnapshot<Integer, VoidNamespace, Long> snapshot = stateTable.stateSnapshot();
+		try {
+			snapshotOutput.clear();
+			StateSnapshot.StateKeyGroupWriter writer = snapshot.getKeyGroupWriter();
+			for (int keyGroup = 0; keyGroup < NUMBER_OF_KEY_GROUPS; keyGroup++) {
+				writer.writeStateInKeyGroup(snapshotOutput, keyGroup);
+			}
+			return snapshotOutput.length();
+		} finally {
+			snapshot.release();
+		}
+	}
+
+	private int nextPosition() {
+		position = (position + 1) & (ACCESS_PATTERN_LENGTH - 1);
+		return position;
+	}
+
+	private static int keyGroupFor(Integer key) {
+		return KeyGroupRangeAssignment.assignToKeyGroup(key, NUMBER_OF_KEY_GROUPS);
+	}
+
+	/**
+	 * Key context of a backend that is responsible for all key groups. The benchmarks pass keys explicitly.
+	 */
+	private static final class BenchmarkKeyContext implements InternalKeyContext<Integer> {
+
+		@Override
+		public Integer getCurrentKey() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int getCurrentKeyGroupIndex() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int getNumberOfKeyGroups() {
+			return NUMBER_OF_KEY_GROUPS;
+		}
+
+		@Override
+		public KeyGroupRange getKeyGroupRange() {
+			return KeyGroupRange.of(0, NUMBER_OF_KEY_GROUPS - 1);
+		}
+
+		@Override
+		public TypeSerializer<Integer> getKeySerializer() {
+			return IntSerializer.INSTANCE;
+		}
+	}
+}
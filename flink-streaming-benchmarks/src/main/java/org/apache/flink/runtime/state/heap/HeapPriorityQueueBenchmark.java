@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.state.heap;
+
+import org.apache.flink.streaming.benchmark.BenchmarkBase;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.util.Random;
+
+/**
+ * Benchmarks the {@link HeapPriorityQueue} that backs the timer service of the heap keyed state backend, in a steady
+ * state where every polled timer is replaced by a later one.
+ */
+public class HeapPriorityQueueBenchmark extends BenchmarkBase {
+
+	@Param({"100", "10000", "1000000"})
+	public int queueSize;
+
+	private HeapPriorityQueue<TimerElement> queue;
+
+	private TimerElement[] timers;
+
+	private Random random;
+
+	@Setup
+	public void setUp() {
+		random = new Random(42L);
+		queue = new HeapPriorityQueue<>(
+			(left, right) -> Long.compare(left.timestamp, right.timestamp),
+			queueSize + 1);
+
+		timers = new TimerElement[queueSize];
+		for (int i = 0; i < queueSize; i++) {
+			timers[i] = new TimerElement(random.nextInt(queueSize));
+			queue.add(timers[i]);
+		}
+	}
+
+	@Benchmark
+	public TimerElement pollAndAdd() {
+		TimerElement timer = queue.poll();
+		timer.timestamp += 1 + random.nextInt(queueSize);
+		queue.add(timer);
+		return timer;
+	}
+
+	@Benchmark
+	public TimerElement removeAndAdd() {
+		// deletes a timer from the middle of the heap, e.g. when a window is purged before it fires
+		TimerElement timer = timers[random.nextInt(queueSize)];
+		queue.remove(timer);
+		queue.add(timer);
+		return timer;
+	}
+
+	/**
+	 * A timer that is an element of the queue.
+	 */
+	private static final class TimerElement implements HeapPriorityQueueElement {
+
+		private long timestamp;
+
+		private int internalIndex = NOT_CONTAINED;
+
+		TimerElement(long timestamp) {
+			this.timestamp = timestamp;
+		}
+
+		@Override
+		public int getInternalIndex() {
+			return internalIndex;
+		}
+
+		@Override
+		public void setInternalIndex(int newIndex) {
+			this.internalIndex = newIndex;
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.streaming.api.operators.co;
+
+import org.apache.flink.api.common.typeinfo.BasicTypeInfo;
+import org.apache.flink.api.common.typeutils.base.LongSerializer;
+import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.streaming.api.functions.co.ProcessJoinFunction;
+import org.apache.flink.streaming.api.operators.TwoInputStreamOperator;
+import org.apache.flink.streaming.api.watermark.Watermark;
+import org.apache.flink.streaming.benchmark.BenchmarkBase;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+import org.apache.flink.streaming.util.KeyedTwoInputStreamOperatorTestHarness;
+import org.apache.flink.util.Collector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+
+/**
+ * Benchmarks the {@link IntervalJoinOperator} against the {@link BucketedIntervalJoinOperator} for a join with
+ * 1-hour bounds ({@code between(-30 min, +30 min)}) on the heap keyed state backend.
+ *
+ * <p>The elements alternate between both inputs and have ascending timestamps, and the watermark follows the
+ * timestamps, so that the buffers of the operator are in a steady state: every key holds about
+ * {@code timestampsPerKey} elements per input. The benchmark measures the per-element cost of buffering, probing the
+ * other buffer, registering the cleanup timer and the amortized cost of the cleanup.
+ */
+public class IntervalJoinOperatorBenchmark extends BenchmarkBase {
+
+	/** The number of (random) keys that the benchmark cycles through. */
+	private static final int ACCESS_PATTERN_LENGTH = 1 << 18;
+
+	private static final int WATERMARK_INTERVAL = 1 << 10;
+
+	private static final long LOWER_BOUND = -30 * 60 * 1000L;
+
+	private static final long UPPER_BOUND = 30 * 60 * 1000L;
+
+	@Param({"default", "bucketed"})
+	public String layout;
+
+	@Param({"1000", "100000"})
+	public int keyCardinality;
+
+	@Param({"8", "64"})
+	public int timestampsPerKey;
+
+	private KeyedTwoInputStreamOperatorTestHarness<Long, Long, Long, Long> testHarness;
+
+	private long[] keys;
+
+	private StreamRecord<Long> record;
+
+	/** The number of processed elements, from which the key, the input and the timestamp of an element follow. */
+	private long count;
+
+	/** The number of elements per millisecond. */
+	private double elementsPerMillisecond;
+
+	@Setup
+	public void setUp() throws Exception {
+		KeySelector<Long, Long> keySelector = value -> value;
+
+		TwoInputStreamOperator<Long, Long, Long> operator;
+		if ("bucketed".equals(layout)) {
+			operator = new BucketedIntervalJoinOperator<>(
+				LOWER_BOUND, UPPER_BOUND, true, true, -1L,
+				LongSerializer.INSTANCE, LongSerializer.INSTANCE, new CountingJoinFunction());
+		} else {
+			operator = new IntervalJoinOperator<>(
+				LOWER_BOUND, UPPER_BOUND, true, true,
+				LongSerializer.INSTANCE, LongSerializer.INSTANCE, new CountingJoinFunction());
+		}
+
+		testHarness = new KeyedTwoInputStreamOperatorTestHarness<>(
+			operator, keySelector, keySelector, BasicTypeInfo.LONG_TYPE_INFO);
+		testHarness.setup();
+		testHarness.open();
+
+		Random random = new Random(42L);
+		keys = new long[ACCESS_PATTERN_LENGTH];
+		for (int i = 0; i < ACCESS_PATTERN_LENGTH; i++) {
+			keys[i] = random.nextInt(keyCardinality);
+		}
+		record = new StreamRecord<>(0L);
+
+		// an element is retained for the upper bound after the watermark passed it
+		elementsPerMillisecond = 2.0 * keyCardinality * timestampsPerKey / UPPER_BOUND;
+
+		// fill the buffers up to the steady state
+		for (long i = 0; i < 2L * keyCardinality * timestampsPerKey; i++) {
+			processNextElement();
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		testHarness.close();
+	}
+
+	@Benchmark
+	public void processElement() throws Exception {
+		processNextElement();
+	}
+
+	private void processNextElement() throws Exception {
+		long position = count++;
+		long timestamp = (long) (position / elementsPerMillisecond);
+		record.replace(keys[(int) (position & (ACCESS_PATTERN_LENGTH - 1))], timestamp);
+
+		if ((position & 1) == 0) {
+			testHarness.processElement1(record);
+		} else {
+			testHarness.processElement2(record);
+		}
+
+		if ((position & (WATERMARK_INTERVAL - 1)) == 0) {
+			testHarness.processWatermark1(new Watermark(timestamp));
+			testHarness.processWatermark2(new Watermark(timestamp));
+			testHarness.getOutput().clear();
+		}
+	}
+
+	/**
+	 * A join function that counts the joined pairs instead of emitting them, so that the output of the test harness
+	 * does not grow.
+	 */
+	private static final class CountingJoinFunction extends ProcessJoinFunction<Long, Long, Long> {
+
+		private static final long serialVersionUID = 1L;
+
+		private long numJoinedPairs;
+
+		@Override
+		public void processElement(Long left, Long right, Context ctx, Collector<Long> out) {
+			numJoinedPairs++;
+		}
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.streaming.benchmark;
+
+import org.apache.flink.api.java.utils.ParameterTool;
+
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.JsonNode;
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs the benchmarks of this module, writes the results in JMH's JSON format and optionally compares them with the
+ * results of an earlier run (the baseline).
+ *
+ * <p>Arguments:
+ * <ul>
+ *     <li>{@code --include <regex>}: the benchmarks to run, all by default.</li>
+ *     <li>{@code --result <file>}: the file to which the results are written, {@code jmh-result.json} by default.
+ *     The file can be used as the baseline of later runs.</li>
+ *     <li>{@code --baseline <file>}: the results of an earlier run. If given, the runner exits with status 1 if the
+ *     throughput of any benchmark dropped by more than the tolerance.</li>
+ *     <li>{@code --tolerance <fraction>}: the tolerated drop in throughput, {@code 0.1} (10%) by default.</li>
+ *     <li>{@code --forks <n>}: overrides the number of forks, e.g. 1 for a quick check.</li>
+ * </ul>
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws Exception {
+		final ParameterTool params = ParameterTool.fromArgs(args);
+
+		final String include = params.get("include", ".*");
+		final String resultFile = params.get("result", "jmh-result.json");
+		final String baselineFile = params.get("baseline", null);
+		final double tolerance = params.getDouble("tolerance", 0.1);
+
+		ChainedOptionsBuilder options = new OptionsBuilder()
+			.include(include)
+			.resultFormat(ResultFormatType.JSON)
+			.result(resultFile);
+		if (params.has("forks")) {
+			options = options.forks(params.getInt("forks"));
+		}
+
+		Collection<RunResult> results = new Runner(options.build()).run();
+
+		if (baselineFile != null) {
+			List<String> regressions = findRegressions(readBaseline(new File(baselineFile)), results, tolerance);
+			if (regressions.isEmpty()) {
+				System.out.println("No benchmark regressed by more than " + (tolerance * 100) + "% against " + baselineFile);
+			} else {
+				System.err.println("The following benchmarks regressed by more than " + (tolerance * 100) + "% against "
+					+ baselineFile + ':');
+				for (String regression : regressions) {
+					System.err.println("  " + regression);
+				}
+				System.exit(1);
+			}
+		}
+	}
+
+	/**
+	 * Returns a description of every throughput benchmark whose score dropped by more than the tolerance. Benchmarks
+	 * that are not part of the baseline are ignored.
+	 */
+	static List<String> findRegressions(
+			Map<String, Double> baseline,
+			Collection<RunResult> results,
+			double tolerance) {
+
+		List<String> regressions = new ArrayList<>();
+		for (RunResult result : results) {
+			BenchmarkParams benchmarkParams = result.getParams();
+			if (benchmarkParams.getMode() != Mode.Throughput) {
+				continue;
+			}
+
+			Map<String, String> params = new TreeMap<>();
+			for (String key : benchmarkParams.getParamsKeys()) {
+				params.put(key, benchmarkParams.getParam(key));
+			}
+
+			String key = benchmarkKey(benchmarkParams.getBenchmark(), params);
+			Double baselineScore = baseline.get(key);
+			double score = result.getPrimaryResult().getScore();
+
+			if (baselineScore != null && score < baselineScore * (1 - tolerance)) {
+				regressions.add(String.format("%s: %.3f -> %.3f %s (%.1f%%)",
+					key,
+					baselineScore,
+					score,
+					result.getPrimaryResult().getScoreUnit(),
+					(score / baselineScore - 1) * 100));
+			}
+		}
+		return regressions;
+	}
+
+	/**
+	 * Reads the throughput scores of a result file in JMH's JSON format.
+	 */
+	static Map<String, Double> readBaseline(File file) throws IOException {
+		JsonNode root = new ObjectMapper().readTree(file);
+
+		Map<String, Double> scores = new HashMap<>();
+		for (JsonNode benchmark : root) {
+			if (!Mode.Throughput.shortLabel().equals(benchmark.path("mode").asText())) {
+				continue;
+			}
+
+			Map<String, String> params = new TreeMap<>();
+			Iterator<Map.Entry<String, JsonNode>> fields = benchmark.path("params").fields();
+			while (fields.hasNext()) {
+				Map.Entry<String, JsonNode> field = fields.next();
+				params.put(field.getKey(), field.getValue().asText());
+			}
+
+			scores.put(
+				benchmarkKey(benchmark.path("benchmark").asText(), params),
+				benchmark.path("primaryMetric").path("score").asDouble());
+		}
+		return scores;
+	}
+
+	private static String benchmarkKey(String benchmark, Map<String, String> sortedParams) {
+		return sortedParams.isEmpty() ? benchmark : benchmark + sortedParams;
+	}
+}
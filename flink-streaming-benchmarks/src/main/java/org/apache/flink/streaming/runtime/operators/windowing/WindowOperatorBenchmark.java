@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.streaming.runtime.operators.windowing;
+
+import org.apache.flink.api.common.ExecutionConfig;
+import org.apache.flink.api.common.functions.ReduceFunction;
+import org.apache.flink.api.common.state.ReducingStateDescriptor;
+import org.apache.flink.api.common.typeinfo.BasicTypeInfo;
+import org.apache.flink.api.common.typeutils.base.LongSerializer;
+import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.streaming.api.functions.windowing.PassThroughWindowFunction;
+import org.apache.flink.streaming.api.windowing.assigners.TumblingEventTimeWindows;
+import org.apache.flink.streaming.api.windowing.time.Time;
+import org.apache.flink.streaming.api.windowing.triggers.EventTimeTrigger;
+import org.apache.flink.streaming.api.windowing.windows.TimeWindow;
+import org.apache.flink.streaming.benchmark.BenchmarkBase;
+import org.apache.flink.streaming.runtime.operators.windowing.functions.InternalSingleValueWindowFunction;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+import org.apache.flink.streaming.util.KeyedOneInputStreamOperatorTestHarness;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+
+/**
+ * Benchmarks {@link WindowOperator#processElement} for a tumbling event-time window with an incremental reduce
+ * function on the heap keyed state backend. All elements fall into the same window, so the state holds one window per
+ * key and the benchmark measures the per-element window assignment, state access and trigger registration.
+ */
+public class WindowOperatorBenchmark extends BenchmarkBase {
+
+	/** The number of (random) keys that the benchmark cycles through. */
+	private static final int ACCESS_PATTERN_LENGTH = 1 << 16;
+
+	private static final long WINDOW_SIZE = 10_000L;
+
+	@Param({"100", "10000", "100000"})
+	public int keyCardinality;
+
+	private KeyedOneInputStreamOperatorTestHarness<Long, Long, Long> testHarness;
+
+	private StreamRecord<Long>[] records;
+
+	private int position;
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setUp() throws Exception {
+		KeySelector<Long, Long> keySelector = value -> value;
+
+		ReducingStateDescriptor<Long> stateDescriptor = new ReducingStateDescriptor<>(
+			"window-contents",
+			(ReduceFunction<Long>) (left, right) -> left + right,
+			LongSerializer.INSTANCE);
+		stateDescriptor.initializeSerializerUnlessSet(new ExecutionConfig());
+
+		WindowOperator<Long, Long, Long, Long, TimeWindow> operator = new WindowOperator<>(
+			TumblingEventTimeWindows.of(Time.milliseconds(WINDOW_SIZE)),
+			new TimeWindow.Serializer(),
+			keySelector,
+			LongSerializer.INSTANCE,
+			stateDescriptor,
+			new InternalSingleValueWindowFunction<>(new PassThroughWindowFunction<Long, TimeWindow, Long>()),
+			EventTimeTrigger.create(),
+			0L,
+			null);
+
+		testHarness = new KeyedOneInputStreamOperatorTestHarness<>(operator, keySelector, BasicTypeInfo.LONG_TYPE_INFO);
+		testHarness.setup();
+		testHarness.open();
+
+		Random random = new Random(42L);
+		records = new StreamRecord[ACCESS_PATTERN_LENGTH];
+		for (int i = 0; i < ACCESS_PATTERN_LENGTH; i++) {
+			long key = random.nextInt(keyCardinality);
+			records[i] = new StreamRecord<>(key, random.nextInt((int) WINDOW_SIZE));
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		testHarness.close();
+	}
+
+	@Benchmark
+	public void processElement() throws Exception {
+		position = (position + 1) & (ACCESS_PATTERN_LENGTH - 1);
+		testHarness.processElement(records[position]);
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.streaming.runtime.partitioner;
+
+import org.apache.flink.api.common.typeutils.base.IntSerializer;
+import org.apache.flink.runtime.plugable.SerializationDelegate;
+import org.apache.flink.runtime.state.KeyGroupRangeAssignment;
+import org.apache.flink.streaming.benchmark.BenchmarkBase;
+import org.apache.flink.streaming.runtime.streamrecord.StreamElementSerializer;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.util.Random;
+
+/**
+ * Benchmarks {@link KeyGroupStreamPartitioner#selectChannel}, which is called for every record of a keyed exchange.
+ */
+public class KeyGroupStreamPartitionerBenchmark extends BenchmarkBase {
+
+	/** The number of (random) keys that the benchmark cycles through. */
+	private static final int ACCESS_PATTERN_LENGTH = 1 << 16;
+
+	@Param({"1", "64", "1024"})
+	public int numberOfChannels;
+
+	@Param({"1000", "1000000"})
+	public int keyCardinality;
+
+	private KeyGroupStreamPartitioner<Integer, Integer> partitioner;
+
+	private SerializationDelegate<StreamRecord<Integer>> delegate;
+
+	private StreamRecord<Integer> record;
+
+	private Integer[] keys;
+
+	private int position;
+
+	@Setup
+	public void setUp() {
+		partitioner = new KeyGroupStreamPartitioner<>(
+			value -> value,
+			KeyGroupRangeAssignment.computeDefaultMaxParallelism(numberOfChannels));
+		partitioner.setup(numberOfChannels);
+
+		record = new StreamRecord<>(0);
+		delegate = new SerializationDelegate<>(new StreamElementSerializer<>(IntSerializer.INSTANCE));
+		delegate.setInstance(record);
+
+		Random random = new Random(42L);
+		keys = new Integer[ACCESS_PATTERN_LENGTH];
+		for (int i = 0; i < ACCESS_PATTERN_LENGTH; i++) {
+			keys[i] = random.nextInt(keyCardinality);
+		}
+	}
+
+	@Benchmark
+	public int selectChannel() {
+		position = (position + 1) & (ACCESS_PATTERN_LENGTH - 1);
+		record.replace(keys[position]);
+		return partitioner.selectChannel(delegate);
+	}
+}
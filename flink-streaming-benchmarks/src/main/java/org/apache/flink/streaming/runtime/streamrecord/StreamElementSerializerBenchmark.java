@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.streaming.runtime.streamrecord;
+
+import org.apache.flink.api.common.typeutils.base.array.BytePrimitiveArraySerializer;
+import org.apache.flink.core.memory.DataInputDeserializer;
+import org.apache.flink.core.memory.DataOutputSerializer;
+import org.apache.flink.streaming.benchmark.BenchmarkBase;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Benchmarks the serialization of records by the {@link StreamElementSerializer}.
+ */
+public class StreamElementSerializerBenchmark extends BenchmarkBase {
+
+	@Param({"16", "256", "4096"})
+	public int recordSize;
+
+	private StreamElementSerializer<byte[]> serializer;
+
+	private StreamRecord<byte[]> record;
+
+	private DataOutputSerializer output;
+
+	private DataInputDeserializer input;
+
+	private byte[] serializedRecord;
+
+	@Setup
+	public void setUp() throws IOException {
+		serializer = new StreamElementSerializer<>(BytePrimitiveArraySerializer.INSTANCE);
+
+		byte[] value = new byte[recordSize];
+		new Random(42L).nextBytes(value);
+		record = new StreamRecord<>(value, 42L);
+
+		output = new DataOutputSerializer(recordSize + 64);
+		serializer.serialize(record, output);
+		serializedRecord = output.getCopyOfBuffer();
+
+		input = new DataInputDeserializer();
+	}
+
+	@Benchmark
+	public int serializeRecord() throws IOException {
+		output.clear();
+		serializer.serialize(record, output);
+		return output.length();
+	}
+
+	@Benchmark
+	public StreamElement deserializeRecord() throws IOException {
+		input.setBuffer(serializedRecord);
+		return serializer.deserialize(input);
+	}
+}
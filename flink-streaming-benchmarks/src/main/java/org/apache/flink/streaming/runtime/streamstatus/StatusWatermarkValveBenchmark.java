@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.streaming.runtime.streamstatus;
+
+import org.apache.flink.streaming.api.watermark.Watermark;
+import org.apache.flink.streaming.benchmark.BenchmarkBase;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Benchmarks the {@link StatusWatermarkValve} of a task with many input channels. The channels advance their
+ * watermarks in turns, so that every input watermark is a candidate to advance the output watermark.
+ *
+ * <p>The cost per input watermark should grow at most logarithmically with the number of channels, compare the scores
+ * across {@code numberOfChannels}.
+ */
+public class StatusWatermarkValveBenchmark extends BenchmarkBase {
+
+	@Param({"1", "64", "1024", "2048"})
+	public int numberOfChannels;
+
+	private StatusWatermarkValve valve;
+
+	private LastOutputHandler outputHandler;
+
+	private int channel;
+
+	private long timestamp;
+
+	@Setup
+	public void setUp() {
+		outputHandler = new LastOutputHandler();
+		valve = new StatusWatermarkValve(numberOfChannels, outputHandler);
+		channel = 0;
+		timestamp = 0L;
+	}
+
+	@Benchmark
+	public long inputWatermark() {
+		if (++channel == numberOfChannels) {
+			channel = 0;
+			timestamp++;
+		}
+		valve.inputWatermark(new Watermark(timestamp), channel);
+		return outputHandler.lastWatermark;
+	}
+
+	@Benchmark
+	public long inputWatermarkWithIdleChannel() {
+		// a quarter of the channels toggles between idle and active, which forces the valve to recompute the minimum
+		if (++channel == numberOfChannels) {
+			channel = 0;
+			timestamp++;
+		}
+		if ((channel & 3) == 3) {
+			valve.inputStreamStatus((timestamp & 1) == 0 ? StreamStatus.IDLE : StreamStatus.ACTIVE, channel);
+		} else {
+			valve.inputWatermark(new Watermark(timestamp), channel);
+		}
+		return outputHandler.lastWatermark;
+	}
+
+	/**
+	 * Remembers the last output of the valve.
+	 */
+	private static final class LastOutputHandler implements StatusWatermarkValve.ValveOutputHandler {
+
+		private long lastWatermark;
+
+		private StreamStatus lastStreamStatus;
+
+		@Override
+		public void handleWatermark(Watermark watermark) {
+			lastWatermark = watermark.getTimestamp();
+		}
+
+		@Override
+		public void handleStreamStatus(StreamStatus streamStatus) {
+			lastStreamStatus = streamStatus;
+		}
+	}
+}
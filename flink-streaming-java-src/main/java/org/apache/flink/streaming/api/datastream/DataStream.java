@@ -88,6 +88,7 @@ import org.apache.flink.streaming.runtime.partitioner.BroadcastPartitioner;
 import org.apache.flink.streaming.runtime.partitioner.CustomPartitionerWrapper;
 import org.apache.flink.streaming.runtime.partitioner.ForwardPartitioner;
 import org.apache.flink.streaming.runtime.partitioner.GlobalPartitioner;
+import org.apache.flink.streaming.runtime.partitioner.LoadAwareRebalancePartitioner;
 import org.apache.flink.streaming.runtime.partitioner.RebalancePartitioner;
 import org.apache.flink.streaming.runtime.partitioner.RescalePartitioner;
 import org.apache.flink.streaming.runtime.partitioner.ShufflePartitioner;
@@ -536,6 +537,20 @@ public class DataStream<T> {
 		return setConnectionType(new RebalancePartitioner<T>());
 	}
 
+	/**
+	 * Sets the partitioning of the {@link DataStream} so that the output elements
+	 * are distributed to instances of the next operation in a round-robin fashion,
+	 * skipping instances that fall behind. Each element goes to the less backlogged
+	 * of the next instance in round-robin order and a random instance, so the
+	 * throughput follows the fastest instances instead of the slowest one.
+	 *
+	 * @return The DataStream with load-aware rebalance partitioning set.
+	 */
+	@PublicEvolving
+	public DataStream<T> rebalanceByLoad() {
+		return setConnectionType(new LoadAwareRebalancePartitioner<T>());
+	}
+
 	/**
 	 * Sets the partitioning of the {@link DataStream} so that the output elements
 	 * are distributed evenly to a subset of instances of the next operation in a round-robin
@@ -20,19 +20,25 @@ package org.apache.flink.streaming.api.datastream;
 import org.apache.flink.annotation.Public;
 import org.apache.flink.annotation.PublicEvolving;
 import org.apache.flink.annotation.VisibleForTesting;
+import org.apache.flink.api.common.ExecutionConfig;
 import org.apache.flink.api.common.functions.CoGroupFunction;
 import org.apache.flink.api.common.functions.FlatJoinFunction;
 import org.apache.flink.api.common.functions.JoinFunction;
+import org.apache.flink.api.common.state.ListStateDescriptor;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
 import org.apache.flink.api.java.functions.KeySelector;
 import org.apache.flink.api.java.operators.translation.WrappingFunction;
 import org.apache.flink.api.java.typeutils.TypeExtractor;
 import org.apache.flink.streaming.api.datastream.CoGroupedStreams.TaggedUnion;
+import org.apache.flink.streaming.api.windowing.assigners.MergingWindowAssigner;
 import org.apache.flink.streaming.api.windowing.assigners.WindowAssigner;
 import org.apache.flink.streaming.api.windowing.evictors.Evictor;
 import org.apache.flink.streaming.api.windowing.time.Time;
+import org.apache.flink.streaming.api.windowing.triggers.EventTimeTrigger;
+import org.apache.flink.streaming.api.windowing.triggers.ProcessingTimeTrigger;
 import org.apache.flink.streaming.api.windowing.triggers.Trigger;
 import org.apache.flink.streaming.api.windowing.windows.Window;
+import org.apache.flink.streaming.runtime.operators.windowing.WindowJoinOperator;
 import org.apache.flink.util.Collector;
 
 import static java.util.Objects.requireNonNull;
@@ -231,6 +237,10 @@ public class JoinedStreams<T1, T2> {
 
 		private final Time allowedLateness;  // 窗口允许的延迟
 
+		private final boolean separateInputStates;  // 是否使用 WindowJoinOperator，两个 input 分别存状态
+
+		private final boolean eagerEmission;  // 元素到达时立即输出 join 结果
+
 		private CoGroupedStreams.WithWindow<T1, T2, KEY, W> coGroupedWindowedStream;
 
 		@PublicEvolving
@@ -243,6 +253,21 @@ public class JoinedStreams<T1, T2> {
 				Trigger<? super TaggedUnion<T1, T2>, ? super W> trigger,
 				Evictor<? super TaggedUnion<T1, T2>, ? super W> evictor,
 				Time allowedLateness) {
+			this(input1, input2, keySelector1, keySelector2, keyType, windowAssigner, trigger, evictor, allowedLateness, false, false);
+		}
+
+		@PublicEvolving
+		protected WithWindow(DataStream<T1> input1,
+				DataStream<T2> input2,
+				KeySelector<T1, KEY> keySelector1,
+				KeySelector<T2, KEY> keySelector2,
+				TypeInformation<KEY> keyType,
+				WindowAssigner<? super TaggedUnion<T1, T2>, W> windowAssigner,
+				Trigger<? super TaggedUnion<T1, T2>, ? super W> trigger,
+				Evictor<? super TaggedUnion<T1, T2>, ? super W> evictor,
+				Time allowedLateness,
+				boolean separateInputStates,
+				boolean eagerEmission) {
 
 			this.input1 = requireNonNull(input1);
 			this.input2 = requireNonNull(input2);
@@ -257,6 +282,8 @@ public class JoinedStreams<T1, T2> {
 			this.evictor = evictor;
 
 			this.allowedLateness = allowedLateness;
+			this.separateInputStates = separateInputStates;
+			this.eagerEmission = eagerEmission;
 		}
 
 		/**
@@ -265,7 +292,7 @@ public class JoinedStreams<T1, T2> {
 		@PublicEvolving
 		public WithWindow<T1, T2, KEY, W> trigger(Trigger<? super TaggedUnion<T1, T2>, ? super W> newTrigger) {
 			return new WithWindow<>(input1, input2, keySelector1, keySelector2, keyType,
-					windowAssigner, newTrigger, evictor, allowedLateness);
+					windowAssigner, newTrigger, evictor, allowedLateness, separateInputStates, eagerEmission);
 		}
 
 		/**
@@ -277,7 +304,7 @@ public class JoinedStreams<T1, T2> {
 		@PublicEvolving
 		public WithWindow<T1, T2, KEY, W> evictor(Evictor<? super TaggedUnion<T1, T2>, ? super W> newEvictor) {
 			return new WithWindow<>(input1, input2, keySelector1, keySelector2, keyType,
-					windowAssigner, trigger, newEvictor, allowedLateness);
+					windowAssigner, trigger, newEvictor, allowedLateness, separateInputStates, eagerEmission);
 		}
 
 		/**
@@ -287,7 +314,37 @@ public class JoinedStreams<T1, T2> {
 		@PublicEvolving
 		public WithWindow<T1, T2, KEY, W> allowedLateness(Time newLateness) {
 			return new WithWindow<>(input1, input2, keySelector1, keySelector2, keyType,
-				windowAssigner, trigger, evictor, newLateness);
+				windowAssigner, trigger, evictor, newLateness, separateInputStates, eagerEmission);
+		}
+
+		/**
+		 * Executes the join with a two-input operator that keeps the elements of both inputs in separate window
+		 * states, instead of co-grouping a union of both inputs. This avoids wrapping every element in a
+		 * {@link TaggedUnion} and lets the join function only iterate the elements of the other input.
+		 *
+		 * <p>This only has an effect if the join runs on the default trigger of a non-merging window assigner
+		 * without an evictor. The topology and the state of the join are not compatible with the default
+		 * execution, so savepoints of a job can not be restored after enabling this.
+		 */
+		@PublicEvolving
+		public WithWindow<T1, T2, KEY, W> separateInputStates() {
+			return new WithWindow<>(input1, input2, keySelector1, keySelector2, keyType,
+				windowAssigner, trigger, evictor, allowedLateness, true, eagerEmission);
+		}
+
+		/**
+		 * Joins every element with the elements of the other input that are already in its window when it arrives,
+		 * instead of joining all elements of a window when it fires. Each pair of elements is emitted once, as soon
+		 * as both elements arrived, and also late elements (within the allowed lateness) only emit their new pairs.
+		 *
+		 * <p>This implies {@link #separateInputStates()}, and therefore only has an effect if the join runs on the
+		 * default trigger of a non-merging window assigner without an evictor; otherwise the elements are joined
+		 * when the window fires.
+		 */
+		@PublicEvolving
+		public WithWindow<T1, T2, KEY, W> emitEagerly() {
+			return new WithWindow<>(input1, input2, keySelector1, keySelector2, keyType,
+				windowAssigner, trigger, evictor, allowedLateness, true, true);
 		}
 
 		/**
@@ -351,6 +408,10 @@ public class JoinedStreams<T1, T2> {
 				.evictor(evictor)
 				.allowedLateness(allowedLateness);
 
+			if (isWindowJoinApplicable()) {
+				return windowJoin(function, resultType);
+			}
+
 			return coGroupedWindowedStream
 					.apply(new FlatJoinCoGroupFunction<>(function), resultType);
 		}
@@ -434,6 +495,10 @@ public class JoinedStreams<T1, T2> {
 				.evictor(evictor)
 				.allowedLateness(allowedLateness);
 
+			if (isWindowJoinApplicable()) {
+				return windowJoin(new JoinFlatJoinFunction<>(function), resultType);
+			}
+
 			return coGroupedWindowedStream
 					.apply(new JoinCoGroupFunction<>(function), resultType);
 		}
@@ -455,6 +520,39 @@ public class JoinedStreams<T1, T2> {
 			return (SingleOutputStreamOperator<T>) apply(function, resultType);
 		}
 
+		/**
+		 * Checks whether the join can be executed by the {@link WindowJoinOperator}, which keeps the elements of
+		 * both inputs in separate states instead of a {@link TaggedUnion} window state. This is the case for the
+		 * default trigger of a non-merging window assigner without an evictor, if it was enabled with
+		 * {@link #separateInputStates()}.
+		 */
+		private boolean isWindowJoinApplicable() {
+			// 只有开启后，且默认触发器、非合并窗口、没有驱逐者时才使用 WindowJoinOperator
+			if (!separateInputStates || trigger != null || evictor != null || windowAssigner instanceof MergingWindowAssigner) {
+				return false;
+			}
+
+			Trigger<?, ?> defaultTrigger = windowAssigner.getDefaultTrigger(input1.getExecutionEnvironment());
+			return defaultTrigger instanceof EventTimeTrigger || defaultTrigger instanceof ProcessingTimeTrigger;
+		}
+
+		private <T> DataStream<T> windowJoin(FlatJoinFunction<T1, T2, T> function, TypeInformation<T> resultType) {
+			final ExecutionConfig config = input1.getExecutionConfig();
+
+			WindowJoinOperator<KEY, T1, T2, T, W> operator = new WindowJoinOperator<>(
+				windowAssigner,
+				windowAssigner.getWindowSerializer(config),
+				new ListStateDescriptor<>("window-join-left", input1.getType().createSerializer(config)),
+				new ListStateDescriptor<>("window-join-right", input2.getType().createSerializer(config)),
+				function,
+				allowedLateness == null ? 0L : allowedLateness.toMilliseconds(),
+				eagerEmission);
+
+			return input1.keyBy(keySelector1, keyType)
+				.connect(input2.keyBy(keySelector2, keyType))
+				.transform("Window Join", resultType, operator);
+		}
+
 		@VisibleForTesting
 		Time getAllowedLateness() {
 			return allowedLateness;
@@ -495,6 +593,24 @@ public class JoinedStreams<T1, T2> {
 		}
 	}
 
+	/**
+	 * Adapts a {@link JoinFunction} to the {@link FlatJoinFunction} of the {@link WindowJoinOperator}.
+	 */
+	private static class JoinFlatJoinFunction<T1, T2, T>
+			extends WrappingFunction<JoinFunction<T1, T2, T>>
+			implements FlatJoinFunction<T1, T2, T> {
+		private static final long serialVersionUID = 1L;
+
+		public JoinFlatJoinFunction(JoinFunction<T1, T2, T> wrappedFunction) {
+			super(wrappedFunction);
+		}
+
+		@Override
+		public void join(T1 first, T2 second, Collector<T> out) throws Exception {
+			out.collect(wrappedFunction.join(first, second));
+		}
+	}
+
 	/**
 	 * CoGroup function that does a nested-loop join to get the join result. (FlatJoin version)
 	 */
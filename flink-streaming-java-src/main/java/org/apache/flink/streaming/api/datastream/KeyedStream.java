@@ -28,12 +28,16 @@ import org.apache.flink.api.common.state.FoldingStateDescriptor;
 import org.apache.flink.api.common.state.ReducingStateDescriptor;
 import org.apache.flink.api.common.state.ValueStateDescriptor;
 import org.apache.flink.api.common.typeinfo.BasicArrayTypeInfo;
+import org.apache.flink.api.common.typeinfo.BasicTypeInfo;
 import org.apache.flink.api.common.typeinfo.PrimitiveArrayTypeInfo;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
 import org.apache.flink.api.java.Utils;
 import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.api.java.tuple.Tuple2;
 import org.apache.flink.api.java.typeutils.ObjectArrayTypeInfo;
 import org.apache.flink.api.java.typeutils.PojoTypeInfo;
+import org.apache.flink.api.java.typeutils.TupleTypeInfo;
 import org.apache.flink.api.java.typeutils.TupleTypeInfoBase;
 import org.apache.flink.api.java.typeutils.TypeExtractor;
 import org.apache.flink.streaming.api.TimeCharacteristic;
@@ -52,7 +56,15 @@ import org.apache.flink.streaming.api.operators.LegacyKeyedProcessOperator;
 import org.apache.flink.streaming.api.operators.OneInputStreamOperator;
 import org.apache.flink.streaming.api.operators.StreamGroupedFold;
 import org.apache.flink.streaming.api.operators.StreamGroupedReduce;
+import org.apache.flink.streaming.api.operators.StreamLocalGroupedReduce;
+import org.apache.flink.streaming.api.operators.TwoInputStreamOperator;
+import org.apache.flink.streaming.api.operators.co.BucketedIntervalJoinOperator;
 import org.apache.flink.streaming.api.operators.co.IntervalJoinOperator;
+import org.apache.flink.streaming.api.operators.skew.HotKeyPartialsMergeOperator;
+import org.apache.flink.streaming.api.operators.skew.HotKeySaltingOperator;
+import org.apache.flink.streaming.api.operators.skew.LatestPartialFunction;
+import org.apache.flink.streaming.api.operators.skew.SaltedKeySelector;
+import org.apache.flink.streaming.api.operators.skew.SaltedReduceFunction;
 import org.apache.flink.streaming.api.transformations.OneInputTransformation;
 import org.apache.flink.streaming.api.transformations.PartitionTransformation;
 import org.apache.flink.streaming.api.windowing.assigners.GlobalWindows;
@@ -100,6 +112,15 @@ import static org.apache.flink.util.Preconditions.checkNotNull;
 @Public
 public class KeyedStream<T, KEY> extends DataStream<T> {
 
+	/** The default fraction of the elements above which a key is considered hot. */
+	private static final double DEFAULT_HOT_KEY_FRACTION = 0.01;
+
+	/** The default interval in which the partial aggregates of split keys are sent to the merging stage. */
+	private static final long DEFAULT_HOT_KEY_FLUSH_INTERVAL_MILLIS = 100L;
+
+	/** The maximum number of split keys whose partial aggregates each subtask buffers before sending them. */
+	private static final int HOT_KEY_MAX_BUFFERED_PARTIALS = 10_000;
+
 	/**
 	 * The key selector that can get the key by which the stream if partitioned from the elements.
 	 */
@@ -112,6 +133,24 @@ public class KeyedStream<T, KEY> extends DataStream<T> {
 	// 流分区的 key 的类型
 	private final TypeInformation<KEY> keyType;
 
+	/** The number of splits of a hot key, or 0 if hot keys are not split, see {@link #splitHotKeys(int)}. */
+	private int hotKeyFanOut;
+
+	/** The fraction of the elements above which a key is considered hot. */
+	private double hotKeyFraction = DEFAULT_HOT_KEY_FRACTION;
+
+	/** The interval in which the partial aggregates of split keys are sent to the merging stage. */
+	private long hotKeyFlushIntervalMillis = DEFAULT_HOT_KEY_FLUSH_INTERVAL_MILLIS;
+
+	/**
+	 * The maximum number of keys combined locally before the key-partitioning, or 0 if elements are not combined,
+	 * see {@link #aggregateLocally(int, long)}.
+	 */
+	private int localAggregationMaxKeys;
+
+	/** The interval in which locally combined elements are emitted. */
+	private long localAggregationFlushIntervalMillis;
+
 	/**
 	 * Creates a new {@link KeyedStream} using the given {@link KeySelector}
 	 * to partition operator state by key.
@@ -526,6 +565,9 @@ public class KeyedStream<T, KEY> extends DataStream<T> {
 		private boolean lowerBoundInclusive;  // 下界包容性
 		private boolean upperBoundInclusive;  // 上界包容性
 
+		private boolean timeBucketed;  // 是否按时间分桶缓存元素
+		private long bucketSize = -1L;
+
 		public IntervalJoined(
 				KeyedStream<IN1, KEY> left,
 				KeyedStream<IN2, KEY> right,
@@ -571,6 +613,37 @@ public class KeyedStream<T, KEY> extends DataStream<T> {
 			return this;
 		}
 
+		/**
+		 * Buffers the elements of both streams in time buckets whose size is derived from the bounds of the join.
+		 *
+		 * @see #timeBucketed(Time)
+		 */
+		@PublicEvolving
+		public IntervalJoined<IN1, IN2, KEY> timeBucketed() {
+			this.timeBucketed = true;
+			this.bucketSize = -1L;
+			return this;
+		}
+
+		/**
+		 * Buffers the elements of both streams in time buckets of the given size. An element is appended to its
+		 * bucket, and the join candidates of an element are only looked up in the buckets that overlap its join
+		 * interval, which makes the join cost independent of the number of buffered timestamps. The state layout
+		 * is not compatible with the default (per timestamp) layout.
+		 *
+		 * @param bucketSize The time span of a bucket.
+		 */
+		/**
+		 * 按时间分桶缓存元素，查找 join 对时只访问和区间重叠的桶
+		 */
+		@PublicEvolving
+		public IntervalJoined<IN1, IN2, KEY> timeBucketed(Time bucketSize) {
+			Preconditions.checkArgument(bucketSize.toMilliseconds() > 0, "The bucket size must be positive.");
+			this.timeBucketed = true;
+			this.bucketSize = bucketSize.toMilliseconds();
+			return this;
+		}
+
 		/**
 		 * Completes the join operation with the given user function that is executed for each joined pair
 		 * of elements.
@@ -620,8 +693,20 @@ public class KeyedStream<T, KEY> extends DataStream<T> {
 
 			final ProcessJoinFunction<IN1, IN2, OUT> cleanedUdf = left.getExecutionEnvironment().clean(processJoinFunction);
 
-			final IntervalJoinOperator<KEY, IN1, IN2, OUT> operator =
-				new IntervalJoinOperator<>(
+			final TwoInputStreamOperator<IN1, IN2, OUT> operator;
+			if (timeBucketed) {
+				operator = new BucketedIntervalJoinOperator<KEY, IN1, IN2, OUT>(
+					lowerBound,
+					upperBound,
+					lowerBoundInclusive,
+					upperBoundInclusive,
+					bucketSize,
+					left.getType().createSerializer(left.getExecutionConfig()),
+					right.getType().createSerializer(right.getExecutionConfig()),
+					cleanedUdf
+				);
+			} else {
+				operator = new IntervalJoinOperator<KEY, IN1, IN2, OUT>(
 					lowerBound,
 					upperBound,
 					lowerBoundInclusive,
@@ -630,6 +715,7 @@ public class KeyedStream<T, KEY> extends DataStream<T> {
 					right.getType().createSerializer(right.getExecutionConfig()),
 					cleanedUdf
 				);
+			}
 
 			return left
 				.connect(right)  // 返回一个 ConnectedStream
@@ -736,6 +822,93 @@ public class KeyedStream<T, KEY> extends DataStream<T> {
 	//  Non-Windowed aggregation operations
 	// ------------------------------------------------------------------------
 
+	/**
+	 * Enables the splitting of hot keys for the subsequent {@link #reduce(ReduceFunction)} and aggregations,
+	 * such as {@link #sum(int)}, on this stream. A key is considered hot once it accounts for more than 1% of
+	 * the elements, see {@link #splitHotKeys(int, double)}.
+	 *
+	 * @param fanOut The number of subtasks over which the elements of a hot key are spread.
+	 * @return This keyed stream.
+	 */
+	@PublicEvolving
+	public KeyedStream<T, KEY> splitHotKeys(int fanOut) {
+		return splitHotKeys(fanOut, DEFAULT_HOT_KEY_FRACTION);
+	}
+
+	/**
+	 * Enables the splitting of hot keys for the subsequent {@link #reduce(ReduceFunction)} and aggregations,
+	 * such as {@link #sum(int)}, on this stream.
+	 *
+	 * <p>With hot-key splitting, a reduction is executed in three stages. The first stage detects the keys that
+	 * account for more than the given fraction of the elements with a sketch, and spreads the elements of these
+	 * keys over up to {@code fanOut} splits. The second stage reduces each split of a key, and the third stage,
+	 * which is keyed by the original key, merges the latest partial results of all splits of a key. The second
+	 * stage only sends the latest partial result of each split every 100 milliseconds, see
+	 * {@link #splitHotKeys(int, double, long)}, so that the third stage does not receive every element of a hot
+	 * key. Elements of keys that are not hot are not split, but still pass all stages.
+	 *
+	 * <p>The result is only correct if the {@link ReduceFunction} is commutative and associative. For
+	 * {@link #minBy(int)} and {@link #maxBy(int)}, it is undefined which of several elements with the same
+	 * minimum or maximum is returned.
+	 *
+	 * @param fanOut The number of subtasks over which the elements of a hot key are spread.
+	 * @param hotKeyFraction The fraction of the elements above which a key is considered hot.
+	 * @return This keyed stream.
+	 */
+	@PublicEvolving
+	public KeyedStream<T, KEY> splitHotKeys(int fanOut, double hotKeyFraction) {
+		return splitHotKeys(fanOut, hotKeyFraction, DEFAULT_HOT_KEY_FLUSH_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * Enables the splitting of hot keys for the subsequent {@link #reduce(ReduceFunction)} and aggregations,
+	 * such as {@link #sum(int)}, on this stream, see {@link #splitHotKeys(int, double)}.
+	 *
+	 * <p>The partial results of the splits are buffered and sent to the merging stage every
+	 * {@code flushIntervalMillis} milliseconds, before watermarks and before checkpoint barriers. Longer
+	 * intervals reduce the load of the merging stage, but delay the updated results.
+	 *
+	 * @param fanOut The number of subtasks over which the elements of a hot key are spread.
+	 * @param hotKeyFraction The fraction of the elements above which a key is considered hot.
+	 * @param flushIntervalMillis The interval in which the partial results are sent to the merging stage.
+	 * @return This keyed stream.
+	 */
+	@PublicEvolving
+	public KeyedStream<T, KEY> splitHotKeys(int fanOut, double hotKeyFraction, long flushIntervalMillis) {
+		Preconditions.checkArgument(fanOut > 1, "The fan-out of hot keys must be greater than 1.");
+		Preconditions.checkArgument(hotKeyFraction > 0.0 && hotKeyFraction < 1.0,
+			"The hot key fraction must be between 0 and 1.");
+		Preconditions.checkArgument(flushIntervalMillis > 0, "The flush interval must be positive.");
+		this.hotKeyFanOut = fanOut;
+		this.hotKeyFraction = hotKeyFraction;
+		this.hotKeyFlushIntervalMillis = flushIntervalMillis;
+		return this;
+	}
+
+	/**
+	 * Enables the local aggregation for the subsequent {@link #reduce(ReduceFunction)} and aggregations, such
+	 * as {@link #sum(int)}, on this stream.
+	 *
+	 * <p>With local aggregation, the elements are combined per key with the {@link ReduceFunction} in a bounded
+	 * map before they are key-partitioned, so that only partial aggregates are sent over the network. The partial
+	 * aggregates are emitted when the map holds {@code maxBufferedKeys} keys, every {@code flushIntervalMillis}
+	 * milliseconds, before watermarks and before checkpoint barriers. The keyed reduction then combines the
+	 * partial aggregates, so it emits fewer intermediate results. The final result per key is only the same if
+	 * the {@link ReduceFunction} is commutative and associative.
+	 *
+	 * @param maxBufferedKeys The maximum number of keys combined locally by each subtask.
+	 * @param flushIntervalMillis The interval in which the partial aggregates are emitted, in milliseconds.
+	 * @return This keyed stream.
+	 */
+	@PublicEvolving
+	public KeyedStream<T, KEY> aggregateLocally(int maxBufferedKeys, long flushIntervalMillis) {
+		Preconditions.checkArgument(maxBufferedKeys > 0, "The maximum number of buffered keys must be positive.");
+		Preconditions.checkArgument(flushIntervalMillis > 0, "The flush interval must be positive.");
+		this.localAggregationMaxKeys = maxBufferedKeys;
+		this.localAggregationFlushIntervalMillis = flushIntervalMillis;
+		return this;
+	}
+
 	/**
 	 * Applies a reduce transformation on the grouped data stream grouped on by
 	 * the given key position. The {@link ReduceFunction} will receive input
@@ -752,6 +925,9 @@ public class KeyedStream<T, KEY> extends DataStream<T> {
 	 * @return The transformed DataStream.
 	 */
 	public SingleOutputStreamOperator<T> reduce(ReduceFunction<T> reducer) {
+		if (hotKeyFanOut > 1 || localAggregationMaxKeys > 0) {
+			return reduceInStages("Keyed Reduce", clean(reducer));
+		}
 		return transform("Keyed Reduce", getType(), new StreamGroupedReduce<T>(
 				clean(reducer), getType().createSerializer(getExecutionConfig())));
 	}
@@ -1111,11 +1287,84 @@ public class KeyedStream<T, KEY> extends DataStream<T> {
 	}
 
 	protected SingleOutputStreamOperator<T> aggregate(AggregationFunction<T> aggregate) {
+		if (hotKeyFanOut > 1 || localAggregationMaxKeys > 0) {
+			return reduceInStages("Keyed Aggregation", clean(aggregate));
+		}
 		StreamGroupedReduce<T> operator = new StreamGroupedReduce<T>(
 				clean(aggregate), getType().createSerializer(getExecutionConfig()));
 		return transform("Keyed Aggregation", getType(), operator);
 	}
 
+	/**
+	 * Executes the given (commutative and associative) reduce function with local aggregation, see
+	 * {@link #aggregateLocally(int, long)}, and/or hot-key splitting, see {@link #splitHotKeys(int, double)}.
+	 */
+	private SingleOutputStreamOperator<T> reduceInStages(String operatorName, ReduceFunction<T> reducer) {
+		final TypeSerializer<T> serializer = getType().createSerializer(getExecutionConfig());
+		final PartitionTransformation<T> partitionTransformation = (PartitionTransformation<T>) getTransformation();
+
+		// the stream before the key-partitioning of this keyed stream
+		DataStream<T> input = new DataStream<>(getExecutionEnvironment(), partitionTransformation.getInput());
+
+		if (localAggregationMaxKeys > 0) {
+			input = input
+				.transform("Local " + operatorName, getType(), new StreamLocalGroupedReduce<>(
+					reducer, keySelector, serializer, localAggregationMaxKeys, localAggregationFlushIntervalMillis))
+				.setParallelism(input.getParallelism());
+		}
+
+		if (hotKeyFanOut > 1) {
+			return reduceSplittingHotKeys(operatorName, reducer, input);
+		}
+
+		return new KeyedStream<>(
+				input,
+				new PartitionTransformation<>(input.getTransformation(), partitionTransformation.getPartitioner()),
+				keySelector,
+				keyType)
+			.transform(operatorName, getType(), new StreamGroupedReduce<>(reducer, serializer));
+	}
+
+	/**
+	 * Executes the given (commutative and associative) reduce function on the given stream, which is not yet
+	 * key-partitioned, in three stages that split hot keys, see {@link #splitHotKeys(int, double)}.
+	 */
+	private SingleOutputStreamOperator<T> reduceSplittingHotKeys(
+			String operatorName,
+			ReduceFunction<T> reducer,
+			DataStream<T> input) {
+
+		final TypeInformation<Tuple2<Integer, T>> saltedType =
+			new TupleTypeInfo<>(BasicTypeInfo.INT_TYPE_INFO, getType());
+		final TypeInformation<Tuple2<KEY, Integer>> saltedKeyType =
+			new TupleTypeInfo<>(keyType, BasicTypeInfo.INT_TYPE_INFO);
+
+		final SingleOutputStreamOperator<Tuple2<Integer, T>> salted = input
+			.transform("Hot Key Salting", saltedType,
+				new HotKeySaltingOperator<>(keySelector, hotKeyFanOut, hotKeyFraction))
+			.setParallelism(input.getParallelism());
+
+		final SingleOutputStreamOperator<Tuple2<Integer, T>> partials = salted
+			.keyBy(new SaltedKeySelector.WithSalt<>(keySelector), saltedKeyType)
+			.transform(operatorName + " (Partial)", saltedType, new StreamGroupedReduce<>(
+				new SaltedReduceFunction<>(reducer), saltedType.createSerializer(getExecutionConfig())));
+
+		// the partial stage emits a rolling result per element, only send the latest one of each split periodically
+		final SingleOutputStreamOperator<Tuple2<Integer, T>> bufferedPartials = partials
+			.transform(operatorName + " (Partial Buffer)", saltedType, new StreamLocalGroupedReduce<>(
+				new LatestPartialFunction<>(),
+				new SaltedKeySelector.WithSalt<>(keySelector),
+				saltedType.createSerializer(getExecutionConfig()),
+				HOT_KEY_MAX_BUFFERED_PARTIALS,
+				hotKeyFlushIntervalMillis))
+			.setParallelism(partials.getParallelism());
+
+		return bufferedPartials
+			.keyBy(new SaltedKeySelector.WithoutSalt<>(keySelector), keyType)
+			.transform(operatorName, getType(), new HotKeyPartialsMergeOperator<>(
+				reducer, getType().createSerializer(getExecutionConfig())));
+	}
+
 	/**
 	 * Publishes the keyed stream as queryable ValueState instance.
 	 *
@@ -28,9 +28,11 @@ import org.apache.flink.api.common.functions.Function;
 import org.apache.flink.api.common.functions.ReduceFunction;
 import org.apache.flink.api.common.functions.RichFunction;
 import org.apache.flink.api.common.state.AggregatingStateDescriptor;
+import org.apache.flink.api.common.state.AppendingState;
 import org.apache.flink.api.common.state.FoldingStateDescriptor;
 import org.apache.flink.api.common.state.ListStateDescriptor;
 import org.apache.flink.api.common.state.ReducingStateDescriptor;
+import org.apache.flink.api.common.state.StateDescriptor;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
 import org.apache.flink.api.common.typeutils.TypeSerializer;
 import org.apache.flink.api.java.Utils;
@@ -51,12 +53,17 @@ import org.apache.flink.streaming.api.functions.windowing.WindowFunction;
 import org.apache.flink.streaming.api.operators.OneInputStreamOperator;
 import org.apache.flink.streaming.api.windowing.assigners.BaseAlignedWindowAssigner;
 import org.apache.flink.streaming.api.windowing.assigners.MergingWindowAssigner;
+import org.apache.flink.streaming.api.windowing.assigners.SlidingEventTimeWindows;
+import org.apache.flink.streaming.api.windowing.assigners.SlidingProcessingTimeWindows;
 import org.apache.flink.streaming.api.windowing.assigners.WindowAssigner;
 import org.apache.flink.streaming.api.windowing.evictors.Evictor;
 import org.apache.flink.streaming.api.windowing.time.Time;
+import org.apache.flink.streaming.api.windowing.triggers.EventTimeTrigger;
+import org.apache.flink.streaming.api.windowing.triggers.ProcessingTimeTrigger;
 import org.apache.flink.streaming.api.windowing.triggers.Trigger;
 import org.apache.flink.streaming.api.windowing.windows.Window;
 import org.apache.flink.streaming.runtime.operators.windowing.EvictingWindowOperator;
+import org.apache.flink.streaming.runtime.operators.windowing.PaneSlicingWindowOperator;
 import org.apache.flink.streaming.runtime.operators.windowing.WindowOperator;
 import org.apache.flink.streaming.runtime.operators.windowing.functions.InternalAggregateProcessWindowFunction;
 import org.apache.flink.streaming.runtime.operators.windowing.functions.InternalIterableProcessWindowFunction;
@@ -130,6 +137,9 @@ public class WindowedStream<T, K, W extends Window> {
  	 */
 	private OutputTag<T> lateDataOutputTag;
 
+	/** Whether incremental aggregations of sliding time windows may pre-aggregate panes. */
+	private boolean paneSlicingEnabled = false;
+
 	@PublicEvolving
 	public WindowedStream(KeyedStream<T, K> input,
 			WindowAssigner<? super T, W> windowAssigner) {
@@ -203,6 +213,24 @@ public class WindowedStream<T, K, W extends Window> {
 		return this;
 	}
 
+	/**
+	 * Enables pane slicing for this window operation.
+	 *
+	 * <p>With pane slicing, incremental aggregations ({@code reduce()} and {@code aggregate()}) on
+	 * sliding time windows with the default trigger aggregate each element into a single pane of
+	 * length {@code slide} and combine the panes when a window fires, instead of aggregating each
+	 * element into all of its windows. Other windows are not affected.
+	 *
+	 * <p>The pane state is not compatible with the per-window state of the regular window
+	 * operator, so a job can not be restored from a savepoint that was taken with a different
+	 * setting.
+	 */
+	@PublicEvolving
+	public WindowedStream<T, K, W> enablePaneSlicing() {
+		this.paneSlicingEnabled = true;
+		return this;
+	}
+
 
 	// ------------------------------------------------------------------------
 	//  Operations on the keyed windows
@@ -305,6 +333,15 @@ public class WindowedStream<T, K, W extends Window> {
 					allowedLateness,
 					lateDataOutputTag);
 
+		} else if (usePaneSlicing()) {
+			ReducingStateDescriptor<T> stateDesc = new ReducingStateDescriptor<>("window-panes",
+				reduceFunction,
+				input.getType().createSerializer(getExecutionEnvironment().getConfig()));
+
+			operator = createPaneSlicingOperator(stateDesc,
+				new PaneSlicingWindowOperator.ReducePaneCombiner<>(reduceFunction, stateDesc.getSerializer()),
+				new InternalSingleValueWindowFunction<>(function));
+
 		} else {
 			ReducingStateDescriptor<T> stateDesc = new ReducingStateDescriptor<>("window-contents",
 				reduceFunction,
@@ -391,6 +428,15 @@ public class WindowedStream<T, K, W extends Window> {
 							allowedLateness,
 							lateDataOutputTag);
 
+		} else if (usePaneSlicing()) {
+			ReducingStateDescriptor<T> stateDesc = new ReducingStateDescriptor<>("window-panes",
+				reduceFunction,
+				input.getType().createSerializer(getExecutionEnvironment().getConfig()));
+
+			operator = createPaneSlicingOperator(stateDesc,
+				new PaneSlicingWindowOperator.ReducePaneCombiner<>(reduceFunction, stateDesc.getSerializer()),
+				new InternalSingleValueProcessWindowFunction<>(function));
+
 		} else {
 			ReducingStateDescriptor<T> stateDesc = new ReducingStateDescriptor<>("window-contents",
 					reduceFunction,
@@ -840,6 +886,14 @@ public class WindowedStream<T, K, W extends Window> {
 					allowedLateness,
 					lateDataOutputTag);
 
+		} else if (usePaneSlicing()) {
+			AggregatingStateDescriptor<T, ACC, V> stateDesc = new AggregatingStateDescriptor<>("window-panes",
+					aggregateFunction, accumulatorType.createSerializer(getExecutionEnvironment().getConfig()));
+
+			operator = createPaneSlicingOperator(stateDesc,
+				new PaneSlicingWindowOperator.AggregatePaneCombiner<>(aggregateFunction, stateDesc.getSerializer()),
+				new InternalSingleValueWindowFunction<>(windowFunction));
+
 		} else {
 			AggregatingStateDescriptor<T, ACC, V> stateDesc = new AggregatingStateDescriptor<>("window-contents",
 					aggregateFunction, accumulatorType.createSerializer(getExecutionEnvironment().getConfig()));
@@ -990,6 +1044,14 @@ public class WindowedStream<T, K, W extends Window> {
 					allowedLateness,
 					lateDataOutputTag);
 
+		} else if (usePaneSlicing()) {
+			AggregatingStateDescriptor<T, ACC, V> stateDesc = new AggregatingStateDescriptor<>("window-panes",
+					aggregateFunction, accumulatorType.createSerializer(getExecutionEnvironment().getConfig()));
+
+			operator = createPaneSlicingOperator(stateDesc,
+				new PaneSlicingWindowOperator.AggregatePaneCombiner<>(aggregateFunction, stateDesc.getSerializer()),
+				new InternalSingleValueProcessWindowFunction<>(windowFunction));
+
 		} else {
 			AggregatingStateDescriptor<T, ACC, V> stateDesc = new AggregatingStateDescriptor<>("window-contents",
 					aggregateFunction, accumulatorType.createSerializer(getExecutionEnvironment().getConfig()));
@@ -1198,6 +1260,15 @@ public class WindowedStream<T, K, W extends Window> {
 					allowedLateness,
 					lateDataOutputTag);
 
+		} else if (usePaneSlicing()) {
+			ReducingStateDescriptor<T> stateDesc = new ReducingStateDescriptor<>("window-panes",
+				reduceFunction,
+				input.getType().createSerializer(getExecutionEnvironment().getConfig()));
+
+			operator = createPaneSlicingOperator(stateDesc,
+				new PaneSlicingWindowOperator.ReducePaneCombiner<>(reduceFunction, stateDesc.getSerializer()),
+				new InternalSingleValueWindowFunction<>(function));
+
 		} else {
 			ReducingStateDescriptor<T> stateDesc = new ReducingStateDescriptor<>("window-contents",
 				reduceFunction,
@@ -1345,6 +1416,49 @@ public class WindowedStream<T, K, W extends Window> {
 			")";
 	}
 
+	/**
+	 * Returns whether the incremental aggregation can be executed by a
+	 * {@link PaneSlicingWindowOperator}, i.e. whether the windows are sliding time windows whose
+	 * size is a multiple of the slide, with the default trigger and without an evictor.
+	 */
+	private boolean usePaneSlicing() {
+		if (!paneSlicingEnabled || evictor != null) {
+			return false;
+		}
+
+		if (windowAssigner instanceof SlidingEventTimeWindows) {
+			SlidingEventTimeWindows assigner = (SlidingEventTimeWindows) windowAssigner;
+			return trigger instanceof EventTimeTrigger &&
+				PaneSlicingWindowOperator.isSupported(assigner.getSize(), assigner.getSlide());
+		} else if (windowAssigner instanceof SlidingProcessingTimeWindows) {
+			SlidingProcessingTimeWindows assigner = (SlidingProcessingTimeWindows) windowAssigner;
+			return trigger instanceof ProcessingTimeTrigger &&
+				PaneSlicingWindowOperator.isSupported(assigner.getSize(), assigner.getSlide());
+		} else {
+			return false;
+		}
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private <SV, ACC, R> OneInputStreamOperator<T, R> createPaneSlicingOperator(
+			StateDescriptor<? extends AppendingState<T, ACC>, ?> stateDesc,
+			PaneSlicingWindowOperator.PaneCombiner<SV, ACC> paneCombiner,
+			InternalWindowFunction<ACC, R, K, W> windowFunction) {
+
+		// usePaneSlicing() guarantees that the windows are TimeWindows
+		return new PaneSlicingWindowOperator<>(
+			(WindowAssigner) windowAssigner,
+			(TypeSerializer) windowAssigner.getWindowSerializer(getExecutionEnvironment().getConfig()),
+			input.getKeySelector(),
+			input.getKeyType().createSerializer(getExecutionEnvironment().getConfig()),
+			stateDesc,
+			paneCombiner,
+			(InternalWindowFunction) windowFunction,
+			(Trigger) trigger,
+			allowedLateness,
+			lateDataOutputTag);
+	}
+
 	// ------------------------------------------------------------------------
 	//  Pre-defined aggregations on the keyed windows
 	// ------------------------------------------------------------------------
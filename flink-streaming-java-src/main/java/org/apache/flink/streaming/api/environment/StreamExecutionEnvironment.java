@@ -140,6 +140,8 @@ public abstract class StreamExecutionEnvironment {
 
 	private long bufferTimeout = DEFAULT_NETWORK_BUFFER_TIMEOUT;
 
+	private long bufferTimeoutLatencyTarget = -1L;
+
 	protected boolean isChainingEnabled = true;
 
 	/** The state backend used for storing k/v state and state snapshots. */
@@ -266,6 +268,38 @@ public abstract class StreamExecutionEnvironment {
 		return this.bufferTimeout;
 	}
 
+	/**
+	 * Enables the adaptive buffer timeout. Instead of flushing the output buffers at the fixed interval set via
+	 * {@link #setBufferTimeout(long)}, the interval adapts to the load of the output channels: it shrinks while the
+	 * receivers are idle and stretches while buffers fill up or queue up, aiming to keep records in partially
+	 * filled buffers for no longer than the latency target. The interval never exceeds the buffer timeout.
+	 *
+	 * <p>The adaptive mode only applies to operators with a positive buffer timeout.
+	 *
+	 * @param latencyTargetMillis The targeted maximum time records wait in partially filled output buffers,
+	 *                            or -1 to disable the adaptive mode.
+	 */
+	@PublicEvolving
+	public StreamExecutionEnvironment setBufferTimeoutLatencyTarget(long latencyTargetMillis) {
+		if (latencyTargetMillis != -1 && latencyTargetMillis <= 0) {
+			throw new IllegalArgumentException("The latency target must be positive or -1");
+		}
+
+		this.bufferTimeoutLatencyTarget = latencyTargetMillis;
+		return this;
+	}
+
+	/**
+	 * Gets the latency target of the adaptive buffer timeout, or -1 if the adaptive mode is disabled.
+	 * See {@link #setBufferTimeoutLatencyTarget(long)}.
+	 *
+	 * @return The latency target in milliseconds, or -1.
+	 */
+	@PublicEvolving
+	public long getBufferTimeoutLatencyTarget() {
+		return this.bufferTimeoutLatencyTarget;
+	}
+
 	/**
 	 * Disables operator chaining for streaming operators. Operator chaining
 	 * allows non-shuffle operations to be co-located in the same thread fully
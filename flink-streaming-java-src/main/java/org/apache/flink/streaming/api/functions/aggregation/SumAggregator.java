@@ -69,12 +69,13 @@ public class SumAggregator<T> extends AggregationFunction<T> {
 	@Override
 	@SuppressWarnings("unchecked")
 	public T reduce(T value1, T value2) throws Exception {
+		// 基本类型的 POJO 字段直接求和，避免装箱
 		if (isTuple) {
 			Tuple result = ((Tuple) value1).copy();
-			return fieldAccessor.set((T) result, adder.add(fieldAccessor.get(value1), fieldAccessor.get(value2)));
+			return fieldAccessor.sum((T) result, value1, value2, adder);
 		} else {
 			T result = serializer.copy(value1);
-			return fieldAccessor.set(result, adder.add(fieldAccessor.get(value1), fieldAccessor.get(value2)));
+			return fieldAccessor.sum(result, value1, value2, adder);
 		}
 	}
 }
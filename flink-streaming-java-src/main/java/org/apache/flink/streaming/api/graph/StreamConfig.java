@@ -70,6 +70,7 @@ public class StreamConfig implements Serializable {
 	private static final String SERIALIZEDUDF = "serializedUDF";
 	private static final String USER_FUNCTION = "userFunction";
 	private static final String BUFFER_TIMEOUT = "bufferTimeout";
+	private static final String BUFFER_TIMEOUT_LATENCY_TARGET = "bufferTimeoutLatencyTarget";
 	private static final String TYPE_SERIALIZER_IN_1 = "typeSerializer_in_1";
 	private static final String TYPE_SERIALIZER_IN_2 = "typeSerializer_in_2";
 	private static final String TYPE_SERIALIZER_OUT_1 = "typeSerializer_out";
@@ -209,6 +210,15 @@ public class StreamConfig implements Serializable {
 		return config.getLong(BUFFER_TIMEOUT, DEFAULT_TIMEOUT);
 	}
 
+	public void setBufferTimeoutLatencyTarget(long latencyTarget) {
+		config.setLong(BUFFER_TIMEOUT_LATENCY_TARGET, latencyTarget);
+	}
+
+	// 自适应 buffer timeout 的目标延迟，-1 表示不开启
+	public long getBufferTimeoutLatencyTarget() {
+		return config.getLong(BUFFER_TIMEOUT_LATENCY_TARGET, -1L);
+	}
+
 	// 是否没有 buffer 直接 flush
 	public boolean isFlushAlwaysEnabled() {
 		return getBufferTimeout() == 0;
@@ -573,6 +583,7 @@ public class StreamConfig implements Serializable {
 			builder.append("\nOperator: Missing");
 		}
 		builder.append("\nBuffer timeout: ").append(getBufferTimeout());
+		builder.append("\nBuffer timeout latency target: ").append(getBufferTimeoutLatencyTarget());
 		builder.append("\nState Monitoring: ").append(isCheckpointingEnabled());
 		if (isChainStart() && getChainedOutputs(cl).size() > 0) {
 			builder.append("\n\n\n---------------------\nChained task configs\n---------------------\n");
@@ -229,6 +229,10 @@ public class StreamNode implements Serializable {
 		this.bufferTimeout = bufferTimeout;
 	}
 
+	public long getBufferTimeoutLatencyTarget() {
+		return env.getBufferTimeoutLatencyTarget();
+	}
+
 	public StreamOperator<?> getOperator() {
 		return operator;
 	}
@@ -488,6 +488,7 @@ public class StreamingJobGraphGenerator {
 
 		config.setVertexID(vertexID);
 		config.setBufferTimeout(vertex.getBufferTimeout());
+		config.setBufferTimeoutLatencyTarget(vertex.getBufferTimeoutLatencyTarget());
 
 		config.setTypeSerializerIn1(vertex.getTypeSerializerIn1());
 		config.setTypeSerializerIn2(vertex.getTypeSerializerIn2());
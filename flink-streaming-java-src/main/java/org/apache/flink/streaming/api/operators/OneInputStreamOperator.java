@@ -23,6 +23,8 @@ import org.apache.flink.streaming.api.watermark.Watermark;
 import org.apache.flink.streaming.runtime.streamrecord.LatencyMarker;
 import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
 
+import java.util.List;
+
 /**
  * Interface for stream operators with one input. Use
  * {@link org.apache.flink.streaming.api.operators.AbstractStreamOperator} as a base class if
@@ -46,6 +48,27 @@ public interface OneInputStreamOperator<IN, OUT> extends StreamOperator<OUT> {
 	 */
 	void processElement(StreamRecord<IN> element) throws Exception;
 
+	/**
+	 * Processes a batch of elements that arrived at this operator, in arrival order. The batch
+	 * only contains records; watermarks and latency markers are never interleaved with it.
+	 * This method is guaranteed to not be called concurrently with other methods of the operator.
+	 *
+	 * <p>The default implementation sets the key context and calls
+	 * {@link #processElement(StreamRecord)} for every element. Operators may override this to
+	 * avoid the per-record dispatch, but must still set the key context for each element.
+	 */
+	/**
+	 * 批量处理到达 operator 的元素，不能被并发调用
+	 * 默认实现逐条设置 key 上下文并调用 processElement
+	 */
+	default void processBatch(List<StreamRecord<IN>> elements) throws Exception {
+		for (int i = 0; i < elements.size(); i++) {
+			StreamRecord<IN> element = elements.get(i);
+			setKeyContextElement1(element);
+			processElement(element);
+		}
+	}
+
 	/**
 	 * Processes a {@link Watermark}.
 	 * This method is guaranteed to not be called concurrently with other methods of the operator.
@@ -21,6 +21,8 @@ import org.apache.flink.annotation.Internal;
 import org.apache.flink.api.common.functions.FilterFunction;
 import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
 
+import java.util.List;
+
 /**
  * A {@link StreamOperator} for executing {@link FilterFunction FilterFunctions}.
  */
@@ -43,4 +45,15 @@ public class StreamFilter<IN> extends AbstractUdfStreamOperator<IN, FilterFuncti
 			output.collect(element);  // Collector 接口中的方法
 		}
 	}
+
+	@Override
+	public void processBatch(List<StreamRecord<IN>> elements) throws Exception {
+		for (int i = 0; i < elements.size(); i++) {
+			StreamRecord<IN> element = elements.get(i);
+			setKeyContextElement1(element);
+			if (userFunction.filter(element.getValue())) {
+				output.collect(element);
+			}
+		}
+	}
 }
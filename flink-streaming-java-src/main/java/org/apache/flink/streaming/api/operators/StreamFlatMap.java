@@ -21,6 +21,8 @@ import org.apache.flink.annotation.Internal;
 import org.apache.flink.api.common.functions.FlatMapFunction;
 import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
 
+import java.util.List;
+
 /**
  * A {@link StreamOperator} for executing {@link FlatMapFunction FlatMapFunctions}.
  */
@@ -52,4 +54,14 @@ public class StreamFlatMap<IN, OUT>
 		collector.setTimestamp(element);
 		userFunction.flatMap(element.getValue(), collector);
 	}
+
+	@Override
+	public void processBatch(List<StreamRecord<IN>> elements) throws Exception {
+		for (int i = 0; i < elements.size(); i++) {
+			StreamRecord<IN> element = elements.get(i);
+			setKeyContextElement1(element);
+			collector.setTimestamp(element);
+			userFunction.flatMap(element.getValue(), collector);
+		}
+	}
 }
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.flink.streaming.api.operators;
+
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.api.common.functions.ReduceFunction;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.streaming.api.watermark.Watermark;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+import org.apache.flink.streaming.runtime.tasks.ProcessingTimeCallback;
+import org.apache.flink.util.Preconditions;
+
+import java.util.HashMap;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * A {@link StreamOperator} that combines the elements of each key with a {@link ReduceFunction} in a bounded
+ * in-memory map before they are shuffled to a {@link StreamGroupedReduce}, so that only partial aggregates cross
+ * the network. The operator is not keyed, it runs on the upstream side of the key-partitioning.
+ *
+ * <p>The partial aggregates are emitted, and the map is cleared, when the map holds {@code maxBufferedKeys} keys,
+ * every {@code flushIntervalMillis} milliseconds of processing time, before a watermark is forwarded, before the
+ * checkpoint barrier is emitted and when the operator is closed. Because the map is always empty at a checkpoint,
+ * the operator has no state. Each partial aggregate carries the timestamp of the last element combined into it.
+ *
+ * @param <IN> The type of the elements.
+ * @param <KEY> The type of the key.
+ */
+@Internal
+public class StreamLocalGroupedReduce<IN, KEY> extends AbstractUdfStreamOperator<IN, ReduceFunction<IN>>
+		implements OneInputStreamOperator<IN, IN>, ProcessingTimeCallback {
+
+	private static final long serialVersionUID = 1L;
+
+	private final KeySelector<IN, KEY> keySelector;
+
+	private final TypeSerializer<IN> serializer;
+
+	private final int maxBufferedKeys;
+
+	private final long flushIntervalMillis;
+
+	/** The partial aggregate of each key since the last flush. */
+	private transient HashMap<KEY, StreamRecord<IN>> partials;
+
+	private transient boolean copyElements;
+
+	private transient ScheduledFuture<?> flushTimer;
+
+	public StreamLocalGroupedReduce(
+			ReduceFunction<IN> reducer,
+			KeySelector<IN, KEY> keySelector,
+			TypeSerializer<IN> serializer,
+			int maxBufferedKeys,
+			long flushIntervalMillis) {
+		super(reducer);
+		Preconditions.checkArgument(maxBufferedKeys > 0, "The maximum number of buffered keys must be positive.");
+		Preconditions.checkArgument(flushIntervalMillis > 0, "The flush interval must be positive.");
+		this.keySelector = Preconditions.checkNotNull(keySelector);
+		this.serializer = Preconditions.checkNotNull(serializer);
+		this.maxBufferedKeys = maxBufferedKeys;
+		this.flushIntervalMillis = flushIntervalMillis;
+		this.chainingStrategy = ChainingStrategy.ALWAYS;
+	}
+
+	@Override
+	public void open() throws Exception {
+		super.open();
+		partials = new HashMap<>();
+		// with object reuse, the upstream operator may modify an element after it was emitted
+		copyElements = getExecutionConfig().isObjectReuseEnabled();
+		flushTimer = getProcessingTimeService().scheduleAtFixedRate(this, flushIntervalMillis, flushIntervalMillis);
+	}
+
+	@Override
+	public void processElement(StreamRecord<IN> element) throws Exception {
+		final IN value = copyElements ? serializer.copy(element.getValue()) : element.getValue();
+		final KEY key = keySelector.getKey(value);
+
+		final StreamRecord<IN> partial = partials.get(key);
+		if (partial == null) {
+			partials.put(key, element.copy(value));
+			if (partials.size() >= maxBufferedKeys) {
+				flush();
+			}
+		} else {
+			final IN reduced = userFunction.reduce(partial.getValue(), value);
+			if (element.hasTimestamp()) {
+				partial.replace(reduced, element.getTimestamp());
+			} else {
+				partial.replace(reduced);
+			}
+		}
+	}
+
+	@Override
+	public void onProcessingTime(long timestamp) throws Exception {
+		flush();
+	}
+
+	@Override
+	public void processWatermark(Watermark mark) throws Exception {
+		// the buffered partial aggregates must not become late
+		flush();
+		super.processWatermark(mark);
+	}
+
+	@Override
+	public void prepareSnapshotPreBarrier(long checkpointId) throws Exception {
+		super.prepareSnapshotPreBarrier(checkpointId);
+		flush();
+	}
+
+	@Override
+	public void close() throws Exception {
+		cancelFlushTimer();
+		flush();
+		super.close();
+	}
+
+	@Override
+	public void dispose() throws Exception {
+		cancelFlushTimer();
+		if (partials != null) {
+			partials.clear();
+		}
+		super.dispose();
+	}
+
+	private void flush() {
+		if (partials.isEmpty()) {
+			return;
+		}
+		for (StreamRecord<IN> partial : partials.values()) {
+			output.collect(partial);
+		}
+		partials.clear();
+	}
+
+	private void cancelFlushTimer() {
+		if (flushTimer != null) {
+			flushTimer.cancel(false);
+			flushTimer = null;
+		}
+	}
+}
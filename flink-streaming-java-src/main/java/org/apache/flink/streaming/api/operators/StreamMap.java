@@ -21,6 +21,8 @@ import org.apache.flink.annotation.Internal;
 import org.apache.flink.api.common.functions.MapFunction;
 import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
 
+import java.util.List;
+
 /**
  * A {@link StreamOperator} for executing {@link MapFunction MapFunctions}.
  */
@@ -43,4 +45,13 @@ public class StreamMap<IN, OUT>
 	public void processElement(StreamRecord<IN> element) throws Exception {
 		output.collect(element.replace(userFunction.map(element.getValue())));
 	}
+
+	@Override
+	public void processBatch(List<StreamRecord<IN>> elements) throws Exception {
+		for (int i = 0; i < elements.size(); i++) {
+			StreamRecord<IN> element = elements.get(i);
+			setKeyContextElement1(element);
+			output.collect(element.replace(userFunction.map(element.getValue())));
+		}
+	}
 }
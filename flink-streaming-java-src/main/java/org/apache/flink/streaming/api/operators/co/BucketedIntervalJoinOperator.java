@@ -0,0 +1,363 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.streaming.api.operators.co;
+
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.annotation.VisibleForTesting;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.api.common.typeutils.base.LongSerializer;
+import org.apache.flink.api.common.typeutils.base.StringSerializer;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.api.java.typeutils.runtime.TupleSerializer;
+import org.apache.flink.runtime.state.internal.InternalListState;
+import org.apache.flink.streaming.api.functions.co.ProcessJoinFunction;
+import org.apache.flink.streaming.api.operators.AbstractUdfStreamOperator;
+import org.apache.flink.streaming.api.operators.InternalTimer;
+import org.apache.flink.streaming.api.operators.InternalTimerService;
+import org.apache.flink.streaming.api.operators.TimestampedCollector;
+import org.apache.flink.streaming.api.operators.Triggerable;
+import org.apache.flink.streaming.api.operators.TwoInputStreamOperator;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+import org.apache.flink.util.FlinkException;
+import org.apache.flink.util.OutputTag;
+import org.apache.flink.util.Preconditions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link TwoInputStreamOperator operator} to execute time-bounded stream inner joins, with the same semantics as
+ * the {@link IntervalJoinOperator} but a time-bucketed buffer layout.
+ *
+ * 与 IntervalJoinOperator 语义相同的时间区间 join 操作符，但是按时间分桶缓存元素
+ *
+ * <p>The elements of each side are kept in a list state per key whose namespace is the bucket of their timestamp,
+ * i.e. {@code floor(timestamp / bucketSize)}. Each entry holds the timestamp and the element. This has the following
+ * consequences:
+ *
+ * <ul>
+ *     <li>An element is appended to the list of its bucket without reading and rewriting the elements that are
+ *     already in the bucket.</li>
+ *     <li>The join candidates of an element are looked up only in the buckets of the other side that overlap the
+ *     interval {@code [timestamp + lowerBound, timestamp + upperBound]}, instead of all timestamps in the buffer.
+ *     The number of buckets per lookup is bounded by {@code (upperBound - lowerBound) / bucketSize + 1}.</li>
+ *     <li>One cleanup timer is registered per side and bucket, instead of one per element. It fires when the last
+ *     element of the bucket is not considered for joining anymore.</li>
+ * </ul>
+ *
+ * 元素追加到所在时间桶的 ListState 中，不需要重写整个列表
+ * 查找 join 对时只访问另一侧和区间重叠的桶，清理定时器每个桶只注册一个
+ *
+ * <p>The layout of the state differs from the {@link IntervalJoinOperator}, so the operators can not be exchanged
+ * when restoring from a savepoint.
+ *
+ * @param <K>	The type of the key based on which we join elements.
+ * @param <T1>	The type of the elements in the left stream.
+ * @param <T2>	The type of the elements in the right stream.
+ * @param <OUT>	The output type created by the user-defined function.
+ */
+@Internal
+public class BucketedIntervalJoinOperator<K, T1, T2, OUT>
+		extends AbstractUdfStreamOperator<OUT, ProcessJoinFunction<T1, T2, OUT>>
+		implements TwoInputStreamOperator<T1, T2, OUT>, Triggerable<K, String> {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger logger = LoggerFactory.getLogger(BucketedIntervalJoinOperator.class);
+
+	/** The maximum number of buckets that the interval spans if no bucket size is given. */
+	private static final int DEFAULT_BUCKETS_PER_INTERVAL = 16;
+
+	private static final String LEFT_BUFFER = "LEFT_BUCKETS";
+	private static final String RIGHT_BUFFER = "RIGHT_BUCKETS";
+	private static final String CLEANUP_TIMER_NAME = "BUCKET_CLEANUP_TIMER";
+	private static final String CLEANUP_NAMESPACE_LEFT = "CLEANUP_LEFT";
+	private static final String CLEANUP_NAMESPACE_RIGHT = "CLEANUP_RIGHT";
+
+	private final long lowerBound;  // 下界
+	private final long upperBound;  // 上界
+
+	private final long bucketSize;  // 时间桶的大小
+
+	private final TypeSerializer<T1> leftTypeSerializer;
+	private final TypeSerializer<T2> rightTypeSerializer;
+
+	private transient InternalListState<K, Long, Tuple2<Long, T1>> leftBuffer;  // 缓存第一个流的元素，命名空间是时间桶
+	private transient InternalListState<K, Long, Tuple2<Long, T2>> rightBuffer;  // 缓存第二个流的元素，命名空间是时间桶
+
+	private transient TimestampedCollector<OUT> collector;
+	private transient ContextImpl context;
+
+	private transient InternalTimerService<String> internalTimerService;
+
+	/**
+	 * Creates a new BucketedIntervalJoinOperator.
+	 *
+	 * @param lowerBound          The lower bound for evaluating if elements should be joined
+	 * @param upperBound          The upper bound for evaluating if elements should be joined
+	 * @param lowerBoundInclusive Whether or not to include elements where the timestamp matches
+	 *                            the lower bound
+	 * @param upperBoundInclusive Whether or not to include elements where the timestamp matches
+	 *                            the upper bound
+	 * @param bucketSize          The time span of a bucket of buffered elements, or a non-positive value to
+	 *                            derive it from the bounds
+	 * @param udf                 A user-defined {@link ProcessJoinFunction} that gets called
+	 *                            whenever two elements of T1 and T2 are joined
+	 */
+	public BucketedIntervalJoinOperator(
+			long lowerBound,
+			long upperBound,
+			boolean lowerBoundInclusive,
+			boolean upperBoundInclusive,
+			long bucketSize,
+			TypeSerializer<T1> leftTypeSerializer,
+			TypeSerializer<T2> rightTypeSerializer,
+			ProcessJoinFunction<T1, T2, OUT> udf) {
+
+		super(Preconditions.checkNotNull(udf));
+
+		Preconditions.checkArgument(lowerBound <= upperBound,
+			"lowerBound <= upperBound must be fulfilled");
+
+		// Move buffer by +1 / -1 depending on inclusiveness in order not needing
+		// to check for inclusiveness later on
+		this.lowerBound = (lowerBoundInclusive) ? lowerBound : lowerBound + 1L;
+		this.upperBound = (upperBoundInclusive) ? upperBound : upperBound - 1L;
+
+		this.bucketSize = bucketSize > 0L
+			? bucketSize
+			: Math.max(1L, (upperBound - lowerBound) / DEFAULT_BUCKETS_PER_INTERVAL);
+
+		this.leftTypeSerializer = Preconditions.checkNotNull(leftTypeSerializer);
+		this.rightTypeSerializer = Preconditions.checkNotNull(rightTypeSerializer);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void open() throws Exception {
+		super.open();
+
+		collector = new TimestampedCollector<>(output);
+		context = new ContextImpl(userFunction);
+		internalTimerService =
+			getInternalTimerService(CLEANUP_TIMER_NAME, StringSerializer.INSTANCE, this);
+
+		leftBuffer = (InternalListState<K, Long, Tuple2<Long, T1>>) getOrCreateKeyedState(
+			LongSerializer.INSTANCE,
+			new ListStateDescriptor<>(LEFT_BUFFER, createEntrySerializer(leftTypeSerializer)));
+
+		rightBuffer = (InternalListState<K, Long, Tuple2<Long, T2>>) getOrCreateKeyedState(
+			LongSerializer.INSTANCE,
+			new ListStateDescriptor<>(RIGHT_BUFFER, createEntrySerializer(rightTypeSerializer)));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> TypeSerializer<Tuple2<Long, T>> createEntrySerializer(TypeSerializer<T> elementSerializer) {
+		return new TupleSerializer<>(
+			(Class<Tuple2<Long, T>>) (Class<?>) Tuple2.class,
+			new TypeSerializer<?>[]{LongSerializer.INSTANCE, elementSerializer});
+	}
+
+	@Override
+	public void processElement1(StreamRecord<T1> record) throws Exception {
+		processElement(record, leftBuffer, rightBuffer, lowerBound, upperBound, true);
+	}
+
+	@Override
+	public void processElement2(StreamRecord<T2> record) throws Exception {
+		processElement(record, rightBuffer, leftBuffer, -upperBound, -lowerBound, false);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <THIS, OTHER> void processElement(
+			final StreamRecord<THIS> record,
+			final InternalListState<K, Long, Tuple2<Long, THIS>> ourBuffer,
+			final InternalListState<K, Long, Tuple2<Long, OTHER>> otherBuffer,
+			final long relativeLowerBound,
+			final long relativeUpperBound,
+			final boolean isLeft) throws Exception {
+
+		final THIS ourValue = record.getValue();
+		final long ourTimestamp = record.getTimestamp();
+
+		if (ourTimestamp == Long.MIN_VALUE) {
+			throw new FlinkException("Long.MIN_VALUE timestamp: Elements used in " +
+					"interval stream joins need to have timestamps meaningful timestamps.");
+		}
+
+		if (isLate(ourTimestamp)) {
+			return;
+		}
+
+		final long ourBucket = bucketOf(ourTimestamp);
+		ourBuffer.setCurrentNamespace(ourBucket);
+		ourBuffer.add(Tuple2.of(ourTimestamp, ourValue));
+
+		// 只遍历另一侧和 join 区间重叠的时间桶
+		final long minTimestamp = ourTimestamp + relativeLowerBound;
+		final long maxTimestamp = ourTimestamp + relativeUpperBound;
+
+		final long maxBucket = bucketOf(maxTimestamp);
+
+		for (long bucket = bucketOf(minTimestamp); bucket <= maxBucket; bucket++) {
+			otherBuffer.setCurrentNamespace(bucket);
+			Iterable<Tuple2<Long, OTHER>> entries = otherBuffer.get();
+			if (entries == null) {
+				continue;
+			}
+
+			for (Tuple2<Long, OTHER> entry : entries) {
+				final long timestamp = entry.f0;
+
+				// 桶的边缘部分可能不在区间内
+				if (timestamp < minTimestamp || timestamp > maxTimestamp) {
+					continue;
+				}
+
+				if (isLeft) {
+					collect((T1) ourValue, (T2) entry.f1, ourTimestamp, timestamp);
+				} else {
+					collect((T1) entry.f1, (T2) ourValue, timestamp, ourTimestamp);
+				}
+			}
+		}
+
+		// 每个桶只注册一个清理定时器，在桶内最后一个元素不再参与 join 时触发
+		if (isLeft) {
+			internalTimerService.registerEventTimeTimer(CLEANUP_NAMESPACE_LEFT, cleanupTime(ourBucket, upperBound));
+		} else {
+			internalTimerService.registerEventTimeTimer(CLEANUP_NAMESPACE_RIGHT, cleanupTime(ourBucket, -lowerBound));
+		}
+	}
+
+	private boolean isLate(long timestamp) {
+		long currentWatermark = internalTimerService.currentWatermark();
+		return currentWatermark != Long.MIN_VALUE && timestamp < currentWatermark;
+	}
+
+	private void collect(T1 left, T2 right, long leftTimestamp, long rightTimestamp) throws Exception {
+		final long resultTimestamp = Math.max(leftTimestamp, rightTimestamp);
+
+		collector.setAbsoluteTimestamp(resultTimestamp);
+		context.updateTimestamps(leftTimestamp, rightTimestamp, resultTimestamp);
+
+		userFunction.processElement(left, right, context, collector);
+	}
+
+	private long bucketOf(long timestamp) {
+		return Math.floorDiv(timestamp, bucketSize);
+	}
+
+	/**
+	 * Returns the time at which the given bucket can be removed, which is the cleanup time of the latest possible
+	 * element of the bucket. Like in the {@link IntervalJoinOperator}, an element is removed once the watermark
+	 * passes its timestamp plus the relative upper bound (if positive).
+	 */
+	private long cleanupTime(long bucket, long relativeUpperBound) {
+		return bucketEnd(bucket) + Math.max(relativeUpperBound, 0L);
+	}
+
+	private long bucketEnd(long bucket) {
+		return bucket * bucketSize + bucketSize - 1L;
+	}
+
+	@Override
+	public void onEventTime(InternalTimer<K, String> timer) throws Exception {
+
+		long timerTimestamp = timer.getTimestamp();
+		String namespace = timer.getNamespace();
+
+		logger.trace("onEventTime @ {}", timerTimestamp);
+
+		// 由定时器的时间反推出时间桶
+		switch (namespace) {
+			case CLEANUP_NAMESPACE_LEFT: {
+				long bucket = bucketOf(timerTimestamp - Math.max(upperBound, 0L));
+				logger.trace("Removing bucket {} from left buffer", bucket);
+				leftBuffer.setCurrentNamespace(bucket);
+				leftBuffer.clear();
+				break;
+			}
+			case CLEANUP_NAMESPACE_RIGHT: {
+				long bucket = bucketOf(timerTimestamp - Math.max(-lowerBound, 0L));
+				logger.trace("Removing bucket {} from right buffer", bucket);
+				rightBuffer.setCurrentNamespace(bucket);
+				rightBuffer.clear();
+				break;
+			}
+			default:
+				throw new RuntimeException("Invalid namespace " + namespace);
+		}
+	}
+
+	@Override
+	public void onProcessingTime(InternalTimer<K, String> timer) throws Exception {
+		// do nothing.
+	}
+
+	@VisibleForTesting
+	long getBucketSize() {
+		return bucketSize;
+	}
+
+	/**
+	 * The context that is available during an invocation of
+	 * {@link ProcessJoinFunction#processElement(Object, Object, ProcessJoinFunction.Context, org.apache.flink.util.Collector)}.
+	 */
+	private final class ContextImpl extends ProcessJoinFunction<T1, T2, OUT>.Context {
+
+		private long resultTimestamp = Long.MIN_VALUE;
+
+		private long leftTimestamp = Long.MIN_VALUE;
+
+		private long rightTimestamp = Long.MIN_VALUE;
+
+		private ContextImpl(ProcessJoinFunction<T1, T2, OUT> func) {
+			func.super();
+		}
+
+		private void updateTimestamps(long left, long right, long result) {
+			this.leftTimestamp = left;
+			this.rightTimestamp = right;
+			this.resultTimestamp = result;
+		}
+
+		@Override
+		public long getLeftTimestamp() {
+			return leftTimestamp;
+		}
+
+		@Override
+		public long getRightTimestamp() {
+			return rightTimestamp;
+		}
+
+		@Override
+		public long getTimestamp() {
+			return resultTimestamp;
+		}
+
+		@Override
+		public <X> void output(OutputTag<X> outputTag, X value) {
+			Preconditions.checkArgument(outputTag != null, "OutputTag must not be null");
+			output.collect(outputTag, new StreamRecord<>(value, getTimestamp()));
+		}
+	}
+}
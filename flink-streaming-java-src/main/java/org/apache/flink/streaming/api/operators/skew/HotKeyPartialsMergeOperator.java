@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.flink.streaming.api.operators.skew;
+
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.api.common.functions.ReduceFunction;
+import org.apache.flink.api.common.state.MapState;
+import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.api.common.typeutils.base.IntSerializer;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.streaming.api.operators.AbstractUdfStreamOperator;
+import org.apache.flink.streaming.api.operators.OneInputStreamOperator;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+import org.apache.flink.util.Preconditions;
+
+/**
+ * The last stage of hot-key splitting, keyed by the original key. It receives the rolling partial aggregates of the
+ * splits of a key, tagged with their salt and buffered upstream so that only the latest one of each split is sent
+ * periodically, see {@link LatestPartialFunction}. It keeps the latest partial aggregate of each split, and emits the reduction
+ * of all of them. Since each partial aggregate covers all elements of its split so far, the result is the same as
+ * the result of a {@link org.apache.flink.streaming.api.operators.StreamGroupedReduce} over the unsplit key, given
+ * that the {@link ReduceFunction} is commutative and associative.
+ *
+ * @param <T> The type of the elements.
+ */
+@Internal
+public class HotKeyPartialsMergeOperator<T>
+		extends AbstractUdfStreamOperator<T, ReduceFunction<T>>
+		implements OneInputStreamOperator<Tuple2<Integer, T>, T> {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String STATE_NAME = "_op_partials";
+
+	private final TypeSerializer<T> serializer;
+
+	private transient MapState<Integer, T> partials;
+
+	public HotKeyPartialsMergeOperator(ReduceFunction<T> reducer, TypeSerializer<T> serializer) {
+		super(reducer);
+		this.serializer = Preconditions.checkNotNull(serializer);
+	}
+
+	@Override
+	public void open() throws Exception {
+		super.open();
+		partials = getPartitionedState(new MapStateDescriptor<>(STATE_NAME, IntSerializer.INSTANCE, serializer));
+	}
+
+	@Override
+	public void processElement(StreamRecord<Tuple2<Integer, T>> element) throws Exception {
+		final Tuple2<Integer, T> partial = element.getValue();
+		partials.put(partial.f0, partial.f1);
+
+		T result = null;
+		for (T value : partials.values()) {
+			// copy the first value, the reduce function may modify the stored partial aggregate otherwise
+			result = result == null ? serializer.copy(value) : userFunction.reduce(result, value);
+		}
+		output.collect(element.replace(result));
+	}
+}
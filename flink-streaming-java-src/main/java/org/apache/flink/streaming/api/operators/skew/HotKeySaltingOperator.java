@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.flink.streaming.api.operators.skew;
+
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.streaming.api.operators.AbstractStreamOperator;
+import org.apache.flink.streaming.api.operators.ChainingStrategy;
+import org.apache.flink.streaming.api.operators.OneInputStreamOperator;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+import org.apache.flink.util.Preconditions;
+
+/**
+ * The first stage of hot-key splitting. It detects the heavy hitters among the keys of its input with a
+ * {@link SpaceSavingSketch} and tags each element with a salt. Elements of a hot key get the salts
+ * {@code 0 .. fanOut - 1} in round-robin order, all other elements get the salt {@code 0}. The following stage is
+ * keyed by the key and the salt, so that the elements of a hot key are spread over up to {@code fanOut} subtasks.
+ *
+ * <p>A key is hot once its guaranteed frequency exceeds {@code hotKeyFraction} of all elements seen by this subtask.
+ * The sketch is not checkpointed, it is rebuilt after a restore. This is safe, because the salt of an element does
+ * not affect the final result of the commutative aggregation that follows.
+ *
+ * @param <T> The type of the elements.
+ * @param <K> The type of the key.
+ */
+@Internal
+public class HotKeySaltingOperator<T, K>
+		extends AbstractStreamOperator<Tuple2<Integer, T>>
+		implements OneInputStreamOperator<T, Tuple2<Integer, T>> {
+
+	private static final long serialVersionUID = 1L;
+
+	/** The number of keys tracked by the sketch. */
+	private static final int SKETCH_CAPACITY = 128;
+
+	/** The number of elements after which the counts of the sketch are halved. */
+	private static final long SKETCH_DECAY_INTERVAL = 1L << 20;
+
+	/** The number of elements to see before any key is considered hot. */
+	private static final long MIN_ELEMENTS_FOR_HOT_KEYS = 1024;
+
+	private final KeySelector<T, K> keySelector;
+
+	private final int fanOut;
+
+	private final double hotKeyFraction;
+
+	private transient SpaceSavingSketch<K> sketch;
+
+	private transient int nextSalt;
+
+	public HotKeySaltingOperator(KeySelector<T, K> keySelector, int fanOut, double hotKeyFraction) {
+		Preconditions.checkArgument(fanOut > 1, "The fan-out of hot keys must be greater than 1.");
+		Preconditions.checkArgument(hotKeyFraction > 0.0 && hotKeyFraction < 1.0,
+			"The hot key fraction must be between 0 and 1.");
+		this.keySelector = Preconditions.checkNotNull(keySelector);
+		this.fanOut = fanOut;
+		this.hotKeyFraction = hotKeyFraction;
+		this.chainingStrategy = ChainingStrategy.ALWAYS;
+	}
+
+	@Override
+	public void open() throws Exception {
+		super.open();
+		sketch = new SpaceSavingSketch<>(SKETCH_CAPACITY, SKETCH_DECAY_INTERVAL);
+		// start the subtasks at different salts, so that they do not all send to the same split at once
+		nextSalt = getRuntimeContext().getIndexOfThisSubtask() % fanOut;
+	}
+
+	@Override
+	public void processElement(StreamRecord<T> element) throws Exception {
+		final T value = element.getValue();
+		final long guaranteedCount = sketch.add(keySelector.getKey(value));
+		final long total = sketch.getTotal();
+
+		int salt = 0;
+		if (total >= MIN_ELEMENTS_FOR_HOT_KEYS && guaranteedCount > hotKeyFraction * total) {
+			salt = nextSalt;
+			nextSalt = nextSalt + 1 == fanOut ? 0 : nextSalt + 1;
+		}
+		output.collect(element.replace(Tuple2.of(salt, value)));
+	}
+}
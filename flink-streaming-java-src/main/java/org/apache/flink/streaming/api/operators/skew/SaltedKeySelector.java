@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.flink.streaming.api.operators.skew;
+
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.util.Preconditions;
+
+/**
+ * Key selectors for salted elements, see {@link HotKeySaltingOperator}, which select the original key either
+ * together with the salt or alone.
+ */
+@Internal
+public final class SaltedKeySelector {
+
+	private SaltedKeySelector() {
+		throw new UnsupportedOperationException("This class should never be instantiated.");
+	}
+
+	/**
+	 * Selects the original key and the salt of salted elements.
+	 *
+	 * @param <T> The type of the values.
+	 * @param <K> The type of the original key.
+	 */
+	public static final class WithSalt<T, K> implements KeySelector<Tuple2<Integer, T>, Tuple2<K, Integer>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final KeySelector<T, K> keySelector;
+
+		public WithSalt(KeySelector<T, K> keySelector) {
+			this.keySelector = Preconditions.checkNotNull(keySelector);
+		}
+
+		@Override
+		public Tuple2<K, Integer> getKey(Tuple2<Integer, T> value) throws Exception {
+			return Tuple2.of(keySelector.getKey(value.f1), value.f0);
+		}
+	}
+
+	/**
+	 * Selects the original key of salted elements.
+	 *
+	 * @param <T> The type of the values.
+	 * @param <K> The type of the original key.
+	 */
+	public static final class WithoutSalt<T, K> implements KeySelector<Tuple2<Integer, T>, K> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final KeySelector<T, K> keySelector;
+
+		public WithoutSalt(KeySelector<T, K> keySelector) {
+			this.keySelector = Preconditions.checkNotNull(keySelector);
+		}
+
+		@Override
+		public K getKey(Tuple2<Integer, T> value) throws Exception {
+			return keySelector.getKey(value.f1);
+		}
+	}
+}
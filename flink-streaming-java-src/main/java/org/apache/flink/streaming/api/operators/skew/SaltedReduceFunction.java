@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.flink.streaming.api.operators.skew;
+
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.api.common.functions.ReduceFunction;
+import org.apache.flink.api.java.operators.translation.WrappingFunction;
+import org.apache.flink.api.java.tuple.Tuple2;
+
+/**
+ * Applies a {@link ReduceFunction} to the values of salted elements, see {@link HotKeySaltingOperator}. The reduced
+ * elements keep the salt of the first element, both elements always have the same salt within a keyed reduction.
+ *
+ * @param <T> The type of the values.
+ */
+@Internal
+public class SaltedReduceFunction<T> extends WrappingFunction<ReduceFunction<T>>
+		implements ReduceFunction<Tuple2<Integer, T>> {
+
+	private static final long serialVersionUID = 1L;
+
+	public SaltedReduceFunction(ReduceFunction<T> reducer) {
+		super(reducer);
+	}
+
+	@Override
+	public Tuple2<Integer, T> reduce(Tuple2<Integer, T> value1, Tuple2<Integer, T> value2) throws Exception {
+		value1.f1 = wrappedFunction.reduce(value1.f1, value2.f1);
+		return value1;
+	}
+}
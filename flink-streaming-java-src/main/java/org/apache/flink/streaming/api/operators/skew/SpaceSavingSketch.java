@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.flink.streaming.api.operators.skew;
+
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.util.Preconditions;
+
+import java.util.HashMap;
+
+/**
+ * A Space-Saving sketch that finds the most frequent keys of a stream with a bounded number of counters.
+ *
+ * <p>The sketch tracks at most {@code capacity} keys. A key that is not tracked replaces the key with the smallest
+ * count and inherits that count as its error, so the count of a tracked key overestimates its true frequency by at
+ * most its error. The counters are kept in a min-heap, so that each added key costs O(log capacity).
+ *
+ * <p>The counts and the total are halved every {@code decayInterval} added keys, so that keys which are no longer
+ * frequent eventually drop out of the sketch.
+ *
+ * <p>This class is not thread-safe.
+ *
+ * @param <K> The type of the keys.
+ */
+@Internal
+public final class SpaceSavingSketch<K> {
+
+	private final int capacity;
+
+	private final long decayInterval;
+
+	/** The heap position of each tracked key. */
+	private final HashMap<K, Integer> positions;
+
+	/** The tracked keys, as a min-heap ordered by their counts. */
+	private final Object[] keys;
+
+	private final long[] counts;
+
+	private final long[] errors;
+
+	private int size;
+
+	/** The number of added keys, subject to the decay. */
+	private long total;
+
+	private long addedSinceDecay;
+
+	public SpaceSavingSketch(int capacity, long decayInterval) {
+		Preconditions.checkArgument(capacity > 0, "Capacity must be positive.");
+		Preconditions.checkArgument(decayInterval > 0, "Decay interval must be positive.");
+		this.capacity = capacity;
+		this.decayInterval = decayInterval;
+		this.positions = new HashMap<>(capacity * 2);
+		this.keys = new Object[capacity];
+		this.counts = new long[capacity];
+		this.errors = new long[capacity];
+	}
+
+	/**
+	 * Adds an occurrence of the given key.
+	 *
+	 * @return the guaranteed number of occurrences of the key, i.e. a lower bound of its true frequency since it is
+	 * tracked.
+	 */
+	public long add(K key) {
+		if (++addedSinceDecay > decayInterval) {
+			decay();
+		}
+		total++;
+
+		final Integer position = positions.get(key);
+		final long guaranteedCount;
+		if (position != null) {
+			final int index = position;
+			counts[index]++;
+			guaranteedCount = counts[index] - errors[index];
+			siftDown(index);
+		} else if (size < capacity) {
+			final int index = size++;
+			keys[index] = key;
+			counts[index] = 1;
+			errors[index] = 0;
+			positions.put(key, index);
+			guaranteedCount = 1;
+			siftUp(index);
+		} else {
+			// replace the key with the smallest count, which is at the root of the heap
+			positions.remove(keys[0]);
+			keys[0] = key;
+			errors[0] = counts[0];
+			counts[0]++;
+			positions.put(key, 0);
+			guaranteedCount = 1;
+			siftDown(0);
+		}
+		return guaranteedCount;
+	}
+
+	/**
+	 * Returns the number of added keys, subject to the decay.
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Halves all counts. Halving keeps the order of the heap.
+	 */
+	private void decay() {
+		addedSinceDecay = 1;
+		total >>>= 1;
+		for (int i = 0; i < size; i++) {
+			counts[i] >>>= 1;
+			errors[i] >>>= 1;
+		}
+	}
+
+	private void siftUp(int index) {
+		while (index > 0) {
+			final int parent = (index - 1) >>> 1;
+			if (counts[parent] <= counts[index]) {
+				return;
+			}
+			swap(index, parent);
+			index = parent;
+		}
+	}
+
+	private void siftDown(int index) {
+		while (true) {
+			final int left = 2 * index + 1;
+			if (left >= size) {
+				return;
+			}
+			final int right = left + 1;
+			final int smallest = right < size && counts[right] < counts[left] ? right : left;
+			if (counts[index] <= counts[smallest]) {
+				return;
+			}
+			swap(index, smallest);
+			index = smallest;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void swap(int i, int j) {
+		final Object key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+
+		final long count = counts[i];
+		counts[i] = counts[j];
+		counts[j] = count;
+
+		final long error = errors[i];
+		errors[i] = errors[j];
+		errors[j] = error;
+
+		positions.put((K) keys[i], i);
+		positions.put((K) keys[j], j);
+	}
+}
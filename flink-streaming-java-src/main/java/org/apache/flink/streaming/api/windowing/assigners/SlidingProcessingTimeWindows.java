@@ -93,6 +93,10 @@ public class SlidingProcessingTimeWindows extends WindowAssigner<Object, TimeWin
 		return slide;
 	}
 
+	public long getOffset() {
+		return offset;
+	}
+
 	@Override
 	public Trigger<Object, TimeWindow> getDefaultTrigger(StreamExecutionEnvironment env) {
 		return ProcessingTimeTrigger.create();
@@ -143,6 +143,17 @@ public class BarrierBuffer implements CheckpointBarrierHandler {
 	// 最近的对齐花费的时间
 	private long latestAlignmentDurationNanos;
 
+	/** The number of bytes buffered for blocked channels in the latest alignment. */
+	// 最近的对齐中，为被阻塞的通道缓存的字节数
+	private long latestAlignmentBufferedBytes;
+
+	/** The timestamp as in {@link System#nanoTime()} at which the replay of the buffered data started. */
+	private long startOfReplayTimestamp;
+
+	/** The time (in nanoseconds) that the latest replay of the buffered data took. */
+	// 最近一次重新消费缓存数据花费的时间
+	private long latestReplayDurationNanos;
+
 	/** Flag to indicate whether we have drawn all available input. */
 	// 标记以指示我们是否已绘制所有可用输入
 	private boolean endOfStream;
@@ -276,6 +287,11 @@ public class BarrierBuffer implements CheckpointBarrierHandler {
 			currentBuffered.open();
 			numQueuedBytes -= currentBuffered.size();  // 减去排队的数量
 		}
+		else if (startOfReplayTimestamp > 0) {
+			// 所有缓存的数据都已经被重新消费
+			latestReplayDurationNanos = System.nanoTime() - startOfReplayTimestamp;
+			startOfReplayTimestamp = 0L;
+		}
 	}
 
 	/**
@@ -620,12 +636,15 @@ public class BarrierBuffer implements CheckpointBarrierHandler {
 			blockedChannels[i] = false;
 		}
 
+		latestAlignmentBufferedBytes = bufferBlocker.getBytesBlocked();
+
 		if (currentBuffered == null) {
 			// common case: no more buffered data
 			// 常见情况：没有更多缓冲数据
 			currentBuffered = bufferBlocker.rollOverReusingResources();
 			if (currentBuffered != null) {
 				currentBuffered.open();
+				startOfReplayTimestamp = System.nanoTime();
 			}
 		}
 		else {
@@ -694,6 +713,21 @@ public class BarrierBuffer implements CheckpointBarrierHandler {
 	// Utilities
 	// ------------------------------------------------------------------------
 
+	@Override
+	public long getAlignmentBufferedBytes() {
+		return latestAlignmentBufferedBytes;
+	}
+
+	@Override
+	public long getAlignmentReplayDurationNanos() {
+		long start = this.startOfReplayTimestamp;
+		if (start <= 0) {
+			return latestReplayDurationNanos;
+		} else {
+			return System.nanoTime() - start;
+		}
+	}
+
 	@Override
 	public String toString() {
 		return String.format("%s: last checkpoint: %d, current barriers: %d, closed channels: %d",
@@ -172,6 +172,16 @@ public class BarrierTracker implements CheckpointBarrierHandler {
 		return 0L;
 	}
 
+	@Override
+	public long getAlignmentBufferedBytes() {
+		return 0L;
+	}
+
+	@Override
+	public long getAlignmentReplayDurationNanos() {
+		return 0L;
+	}
+
 	// 处理 barrier
 	private void processBarrier(CheckpointBarrier receivedBarrier, int channelIndex) throws Exception {
 		// 获取检查点 ID
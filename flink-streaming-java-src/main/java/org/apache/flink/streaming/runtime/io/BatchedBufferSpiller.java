@@ -0,0 +1,611 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.streaming.runtime.io;
+
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.configuration.ConfigOption;
+import org.apache.flink.configuration.ConfigOptions;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.configuration.IllegalConfigurationException;
+import org.apache.flink.configuration.MemorySize;
+import org.apache.flink.core.memory.ByteArrayOutputStreamWithPos;
+import org.apache.flink.core.memory.MemorySegment;
+import org.apache.flink.core.memory.MemorySegmentFactory;
+import org.apache.flink.runtime.event.AbstractEvent;
+import org.apache.flink.runtime.io.disk.iomanager.IOManager;
+import org.apache.flink.runtime.io.network.api.serialization.EventSerializer;
+import org.apache.flink.runtime.io.network.buffer.Buffer;
+import org.apache.flink.runtime.io.network.buffer.FreeingBufferRecycler;
+import org.apache.flink.runtime.io.network.buffer.NetworkBuffer;
+import org.apache.flink.runtime.io.network.partition.consumer.BufferOrEvent;
+import org.apache.flink.runtime.state.SnappyStreamCompressionDecorator;
+import org.apache.flink.runtime.state.StreamCompressionDecorator;
+import org.apache.flink.util.FileUtils;
+import org.apache.flink.util.StringUtils;
+
+import javax.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.flink.util.Preconditions.checkArgument;
+
+/**
+ * A {@link BufferBlocker} that spills buffers and events in large, optionally compressed blocks.
+ *
+ * <p>Compared to the {@link BufferSpiller}, which issues two small writes per buffer, this spiller copies the contents
+ * of the added buffers and events into an in-memory batch, recycles the network buffers right away, and writes the
+ * batch as one block once it is full. Each block is laid out column by column: the number of entries, then the channel
+ * indexes, the lengths and the types of all entries, followed by their contents. Blocks may be compressed with one of
+ * the {@link StreamCompressionDecorator stream compression decorators}.
+ *
+ * <p>The spilled sequences read the file back through memory mapped windows that span several blocks. Each window is
+ * loaded completely when it is mapped, so that the blocks of the window are read ahead of their consumption.
+ */
+/**
+ * 将 buffer 和 event 攒成较大的 block 再写入 spill 文件，block 可以压缩
+ * 每个 block 按列存储：先是所有元素的 channel 索引、长度和类型，再是它们的内容
+ * 读取时通过 mmap 一次映射并加载多个 block，实现预读
+ */
+@Internal
+public class BatchedBufferSpiller implements BufferBlocker {
+
+	/** Whether the alignment spills in batched, optionally compressed blocks. */
+	public static final ConfigOption<Boolean> BATCHED_SPILLING = ConfigOptions
+		.key("task.checkpoint.alignment.spill.batched")
+		.defaultValue(false)
+		.withDescription("Whether the checkpoint alignment writes the data of blocked channels to the spill files " +
+			"in large, optionally compressed blocks which are read back through memory mapped files. If enabled, " +
+			"the data is spilled also with the credit based flow control.");
+
+	/** The compression of the spilled blocks. */
+	public static final ConfigOption<String> SPILL_COMPRESSION = ConfigOptions
+		.key("task.checkpoint.alignment.spill.compression")
+		.defaultValue("none")
+		.withDescription("The compression of the blocks that are spilled during the checkpoint alignment, if the " +
+			"batched spilling is enabled. Supported values are \"none\" and \"snappy\".");
+
+	/** The size of the spilled blocks. */
+	public static final ConfigOption<String> SPILL_BLOCK_SIZE = ConfigOptions
+		.key("task.checkpoint.alignment.spill.block-size")
+		.defaultValue("4mb")
+		.withDescription("The size of the blocks (before compression) that are spilled during the checkpoint " +
+			"alignment, if the batched spilling is enabled.");
+
+	/** The size of the read-ahead window when reading back the spilled blocks. */
+	public static final ConfigOption<String> SPILL_READ_AHEAD = ConfigOptions
+		.key("task.checkpoint.alignment.spill.read-ahead")
+		.defaultValue("32mb")
+		.withDescription("The size of the memory mapped windows through which the blocks spilled during the " +
+			"checkpoint alignment are read back, if the batched spilling is enabled.");
+
+	/** Size of the header of a block: stored length (4 bytes) + uncompressed length (4 bytes). */
+	static final int BLOCK_HEADER_SIZE = 8;
+
+	/** Size of the column entries per buffer or event: channel index (4 bytes) + length (4 bytes) + type (1 byte). */
+	private static final int ENTRY_META_SIZE = 9;
+
+	/** The counter that selects the next directory to spill into. */
+	private static final AtomicInteger DIRECTORY_INDEX = new AtomicInteger(0);
+
+	/** The directory to spill to. */
+	private final File tempDir;
+
+	/** The name prefix for spill files. */
+	private final String spillFilePrefix;
+
+	/** The page size, to let the readers instantiate properly sized memory segments. */
+	private final int pageSize;
+
+	/** The compression of the blocks, null if the blocks are not compressed. */
+	@Nullable
+	private final StreamCompressionDecorator compressionDecorator;
+
+	/** The size of the read-ahead windows of the readers. */
+	private final int readAheadSize;
+
+	/** The buffer that encodes the block headers. */
+	private final ByteBuffer headerBuffer;
+
+	/** The stream that holds the compressed block. */
+	private final ByteArrayOutputStreamWithPos compressedBlock;
+
+	// ------------------------------------------------------------------------
+	//  The current batch
+	// ------------------------------------------------------------------------
+
+	private int[] channelIndexes;
+
+	private int[] lengths;
+
+	private boolean[] isBuffer;
+
+	private int numEntries;
+
+	/** The contents of the buffers and events of the current batch. */
+	private ByteBuffer contents;
+
+	/** The contents size at which the batch is written. */
+	private final int blockSize;
+
+	// ------------------------------------------------------------------------
+
+	/** The file that we currently spill to. */
+	private File currentSpillFile;
+
+	/** The channel of the file we currently spill to. */
+	private FileChannel currentChannel;
+
+	/** A counter, to created numbered spill files. */
+	private int fileCounter;
+
+	/** The number of bytes written to the current spill file. */
+	private long bytesWritten;
+
+	public BatchedBufferSpiller(IOManager ioManager, int pageSize, Configuration taskManagerConfig) throws IOException {
+		this(
+			ioManager,
+			pageSize,
+			getCompressionDecorator(taskManagerConfig.getString(SPILL_COMPRESSION)),
+			getSize(taskManagerConfig, SPILL_BLOCK_SIZE),
+			getSize(taskManagerConfig, SPILL_READ_AHEAD));
+	}
+
+	/**
+	 * Creates a new batched buffer spiller, spilling to one of the I/O manager's temp directories.
+	 *
+	 * @param ioManager The I/O manager for access to the temp directories.
+	 * @param pageSize The page size used to re-create spilled buffers.
+	 * @param compressionDecorator The compression of the blocks, or null, to not compress the blocks.
+	 * @param blockSize The size of the contents of a block, before compression.
+	 * @param readAheadSize The size of the memory mapped windows through which the blocks are read back.
+	 * @throws IOException Thrown if the temp files for spilling cannot be initialized.
+	 */
+	public BatchedBufferSpiller(
+			IOManager ioManager,
+			int pageSize,
+			@Nullable StreamCompressionDecorator compressionDecorator,
+			int blockSize,
+			int readAheadSize) throws IOException {
+
+		checkArgument(blockSize > 0, "The block size must be positive.");
+		checkArgument(readAheadSize > 0, "The read-ahead size must be positive.");
+
+		this.pageSize = pageSize;
+		this.compressionDecorator = compressionDecorator;
+		// a block holds at least one full buffer
+		this.blockSize = Math.max(blockSize, pageSize);
+		this.readAheadSize = readAheadSize;
+
+		this.headerBuffer = ByteBuffer.allocateDirect(BLOCK_HEADER_SIZE);
+		this.headerBuffer.order(ByteOrder.LITTLE_ENDIAN);
+		this.compressedBlock = new ByteArrayOutputStreamWithPos(compressionDecorator == null ? 0 : this.blockSize);
+
+		this.channelIndexes = new int[64];
+		this.lengths = new int[64];
+		this.isBuffer = new boolean[64];
+		this.contents = ByteBuffer.allocate(this.blockSize);
+
+		File[] tempDirs = ioManager.getSpillingDirectories();
+		this.tempDir = tempDirs[DIRECTORY_INDEX.getAndIncrement() % tempDirs.length];
+
+		byte[] rndBytes = new byte[32];
+		ThreadLocalRandom.current().nextBytes(rndBytes);
+		this.spillFilePrefix = StringUtils.byteToHexString(rndBytes) + '.';
+
+		createSpillingChannel();
+	}
+
+	/**
+	 * Adds a buffer or event to the current batch. The buffer is recycled right away, the batch is written once it is
+	 * full.
+	 */
+	@Override
+	public void add(BufferOrEvent boe) throws IOException {
+		try {
+			ByteBuffer entry;
+			if (boe.isBuffer()) {
+				entry = boe.getBuffer().getNioBufferReadable();
+			}
+			else {
+				entry = EventSerializer.toSerializedEvent(boe.getEvent());
+			}
+
+			if (entry.remaining() > contents.remaining()) {
+				writeBatch();
+				if (entry.remaining() > contents.capacity()) {
+					// only events can be larger than a page, they are written as a block of their own
+					// from a temporary buffer
+					contents = ByteBuffer.allocate(entry.remaining());
+				}
+			}
+
+			if (numEntries == channelIndexes.length) {
+				int newLength = 2 * numEntries;
+				channelIndexes = Arrays.copyOf(channelIndexes, newLength);
+				lengths = Arrays.copyOf(lengths, newLength);
+				isBuffer = Arrays.copyOf(isBuffer, newLength);
+			}
+
+			channelIndexes[numEntries] = boe.getChannelIndex();
+			lengths[numEntries] = entry.remaining();
+			isBuffer[numEntries] = boe.isBuffer();
+			numEntries++;
+
+			contents.put(entry);
+
+			if (contents.capacity() > blockSize) {
+				writeBatch();
+			}
+		}
+		finally {
+			if (boe.isBuffer()) {
+				boe.getBuffer().recycleBuffer();
+			}
+		}
+	}
+
+	@Override
+	public BufferOrEventSequence rollOverReusingResources() throws IOException {
+		return rollOver();
+	}
+
+	@Override
+	public BufferOrEventSequence rollOverWithoutReusingResources() throws IOException {
+		return rollOver();
+	}
+
+	/**
+	 * The sequences do not share any memory, so they can always be read concurrently.
+	 */
+	private BufferOrEventSequence rollOver() throws IOException {
+		writeBatch();
+
+		if (bytesWritten == 0) {
+			return null;
+		}
+
+		BatchedSpilledBufferOrEventSequence seq = new BatchedSpilledBufferOrEventSequence(
+			currentSpillFile, currentChannel, pageSize, compressionDecorator, readAheadSize);
+
+		createSpillingChannel();
+
+		bytesWritten = 0L;
+		return seq;
+	}
+
+	@Override
+	public void close() throws IOException {
+		currentChannel.close();
+		if (!currentSpillFile.delete()) {
+			throw new IOException("Cannot delete spill file");
+		}
+	}
+
+	/**
+	 * Gets the number of bytes in the current spill file, plus the size of the batch that is not written yet.
+	 */
+	@Override
+	public long getBytesBlocked() {
+		return bytesWritten + contents.position() + (long) numEntries * ENTRY_META_SIZE;
+	}
+
+	// ------------------------------------------------------------------------
+	//  For testing
+	// ------------------------------------------------------------------------
+
+	File getCurrentSpillFile() {
+		return currentSpillFile;
+	}
+
+	// ------------------------------------------------------------------------
+	//  Utilities
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Writes the current batch as one block: header, columns of the entries, contents.
+	 */
+	private void writeBatch() throws IOException {
+		if (numEntries == 0) {
+			return;
+		}
+
+		final int rawLength = 4 + numEntries * ENTRY_META_SIZE + contents.position();
+		final ByteBuffer columns = ByteBuffer.allocate(4 + numEntries * ENTRY_META_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		columns.putInt(numEntries);
+		for (int i = 0; i < numEntries; i++) {
+			columns.putInt(channelIndexes[i]);
+		}
+		for (int i = 0; i < numEntries; i++) {
+			columns.putInt(lengths[i]);
+		}
+		for (int i = 0; i < numEntries; i++) {
+			columns.put((byte) (isBuffer[i] ? 0 : 1));
+		}
+		columns.flip();
+		contents.flip();
+
+		final int storedLength;
+		if (compressionDecorator == null) {
+			storedLength = rawLength;
+			writeHeader(storedLength, rawLength);
+			// 一次顺序写入整个 block
+			final ByteBuffer[] block = {columns, contents};
+			while (columns.hasRemaining() || contents.hasRemaining()) {
+				currentChannel.write(block);
+			}
+		}
+		else {
+			compressedBlock.reset();
+			try (OutputStream out = compressionDecorator.decorateWithCompression(compressedBlock)) {
+				out.write(columns.array(), 0, columns.limit());
+				out.write(contents.array(), 0, contents.limit());
+			}
+			storedLength = compressedBlock.getPosition();
+			writeHeader(storedLength, rawLength);
+			FileUtils.writeCompletely(currentChannel, ByteBuffer.wrap(compressedBlock.getBuf(), 0, storedLength));
+		}
+
+		bytesWritten += BLOCK_HEADER_SIZE + storedLength;
+
+		if (contents.capacity() > blockSize) {
+			// the block of an oversized event, go back to the configured block size
+			contents = ByteBuffer.allocate(blockSize);
+		} else {
+			contents.clear();
+		}
+		numEntries = 0;
+	}
+
+	private void writeHeader(int storedLength, int rawLength) throws IOException {
+		headerBuffer.clear();
+		headerBuffer.putInt(storedLength);
+		headerBuffer.putInt(rawLength);
+		headerBuffer.flip();
+		FileUtils.writeCompletely(currentChannel, headerBuffer);
+	}
+
+	@SuppressWarnings("resource")
+	private void createSpillingChannel() throws IOException {
+		currentSpillFile = new File(tempDir, spillFilePrefix + (fileCounter++) + ".blocks");
+		currentChannel = new RandomAccessFile(currentSpillFile, "rw").getChannel();
+	}
+
+	@Nullable
+	static StreamCompressionDecorator getCompressionDecorator(String compression) {
+		switch (compression.toLowerCase()) {
+			case "none":
+				return null;
+			case "snappy":
+				return SnappyStreamCompressionDecorator.INSTANCE;
+			default:
+				throw new IllegalConfigurationException("Unsupported compression for " +
+					SPILL_COMPRESSION.key() + ": " + compression);
+		}
+	}
+
+	private static int getSize(Configuration config, ConfigOption<String> option) {
+		final long size = MemorySize.parse(config.getString(option)).getBytes();
+		if (size <= 0 || size > Integer.MAX_VALUE) {
+			throw new IllegalConfigurationException(option.key() + " must be positive and smaller than 2 GB.");
+		}
+		return (int) size;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * A sequence of buffers and events spilled by the {@link BatchedBufferSpiller}.
+	 */
+	/**
+	 * 通过 mmap 读取 BatchedBufferSpiller 写入的 block
+	 */
+	public static class BatchedSpilledBufferOrEventSequence implements BufferOrEventSequence {
+
+		private final File file;
+
+		private final FileChannel fileChannel;
+
+		private final int pageSize;
+
+		@Nullable
+		private final StreamCompressionDecorator compressionDecorator;
+
+		private final int readAheadSize;
+
+		/** We store this size as a constant because it is crucial it never changes. */
+		private final long size;
+
+		/** The mapped window of the file. */
+		private MappedByteBuffer window;
+
+		/** The position of the window in the file. */
+		private long windowOffset;
+
+		/** The position of the next block in the file. */
+		private long nextBlockOffset;
+
+		/** The uncompressed current block. */
+		private ByteBuffer block;
+
+		/** The number of entries in the current block, and the index of the next one. */
+		private int numEntries;
+		private int nextEntry;
+
+		/** The position of the contents of the next entry in the current block. */
+		private int nextEntryContents;
+
+		/** Scratch memory for the decompression. */
+		private byte[] compressedBytes;
+		private byte[] uncompressedBytes;
+
+		private boolean opened;
+
+		BatchedSpilledBufferOrEventSequence(
+				File file,
+				FileChannel fileChannel,
+				int pageSize,
+				@Nullable StreamCompressionDecorator compressionDecorator,
+				int readAheadSize) throws IOException {
+			this.file = file;
+			this.fileChannel = fileChannel;
+			this.pageSize = pageSize;
+			this.compressionDecorator = compressionDecorator;
+			this.readAheadSize = readAheadSize;
+			this.size = fileChannel.size();
+		}
+
+		@Override
+		public void open() {
+			if (!opened) {
+				opened = true;
+				nextBlockOffset = 0L;
+				numEntries = 0;
+				nextEntry = 0;
+			}
+		}
+
+		@Override
+		public BufferOrEvent getNext() throws IOException {
+			if (nextEntry == numEntries) {
+				if (nextBlockOffset >= size) {
+					return null;
+				}
+				readNextBlock();
+			}
+
+			final int entry = nextEntry++;
+			final int channel = block.getInt(4 + 4 * entry);
+			final int length = block.getInt(4 + 4 * numEntries + 4 * entry);
+			final boolean isBuffer = block.get(4 + 8 * numEntries + entry) == 0;
+
+			final int contentsPosition = nextEntryContents;
+			nextEntryContents += length;
+
+			if (isBuffer) {
+				if (length > pageSize) {
+					throw new IOException(String.format(
+						"Spilled buffer (%d bytes) is larger than page size of (%d bytes)", length, pageSize));
+				}
+
+				MemorySegment seg = MemorySegmentFactory.allocateUnpooledSegment(pageSize);
+				block.position(contentsPosition);
+				seg.put(0, block, length);
+
+				Buffer buf = new NetworkBuffer(seg, FreeingBufferRecycler.INSTANCE);
+				buf.setSize(length);
+				return new BufferOrEvent(buf, channel);
+			}
+			else {
+				block.limit(contentsPosition + length);
+				block.position(contentsPosition);
+				AbstractEvent evt = EventSerializer.fromSerializedEvent(block, getClass().getClassLoader());
+				block.limit(block.capacity());
+				return new BufferOrEvent(evt, channel);
+			}
+		}
+
+		private void readNextBlock() throws IOException {
+			if (size - nextBlockOffset < BLOCK_HEADER_SIZE) {
+				throw new IOException("Found trailing incomplete block");
+			}
+			ensureMapped(nextBlockOffset, BLOCK_HEADER_SIZE);
+			final int headerPosition = (int) (nextBlockOffset - windowOffset);
+			final int storedLength = window.getInt(headerPosition);
+			final int rawLength = window.getInt(headerPosition + 4);
+
+			final long blockOffset = nextBlockOffset + BLOCK_HEADER_SIZE;
+			if (size - blockOffset < storedLength) {
+				throw new IOException("Found trailing incomplete block");
+			}
+			ensureMapped(blockOffset, storedLength);
+
+			final ByteBuffer stored = window.duplicate();
+			stored.position((int) (blockOffset - windowOffset));
+			stored.limit(stored.position() + storedLength);
+
+			if (compressionDecorator == null) {
+				block = stored.slice();
+			}
+			else {
+				if (compressedBytes == null || compressedBytes.length < storedLength) {
+					compressedBytes = new byte[storedLength];
+				}
+				if (uncompressedBytes == null || uncompressedBytes.length < rawLength) {
+					uncompressedBytes = new byte[rawLength];
+				}
+				stored.get(compressedBytes, 0, storedLength);
+				try (InputStream in = compressionDecorator.decorateWithCompression(
+						new ByteArrayInputStream(compressedBytes, 0, storedLength))) {
+					new DataInputStream(in).readFully(uncompressedBytes, 0, rawLength);
+				}
+				block = ByteBuffer.wrap(uncompressedBytes, 0, rawLength).slice();
+			}
+			block.order(ByteOrder.LITTLE_ENDIAN);
+
+			numEntries = block.getInt(0);
+			nextEntry = 0;
+			nextEntryContents = 4 + numEntries * ENTRY_META_SIZE;
+			nextBlockOffset = blockOffset + storedLength;
+		}
+
+		/**
+		 * Makes sure that the given range of the file is in the mapped window. A new window starts at the given offset
+		 * and spans the read-ahead size, it is loaded completely so that the following blocks are read ahead.
+		 */
+		private void ensureMapped(long offset, int length) throws IOException {
+			if (window != null && offset >= windowOffset && offset + length <= windowOffset + window.limit()) {
+				return;
+			}
+
+			final long windowSize = Math.min(Math.max(readAheadSize, length), size - offset);
+			window = fileChannel.map(FileChannel.MapMode.READ_ONLY, offset, windowSize);
+			window.order(ByteOrder.LITTLE_ENDIAN);
+			// 预读整个窗口，后续的 block 直接从 page cache 中读取
+			window.load();
+			windowOffset = offset;
+		}
+
+		@Override
+		public void cleanup() throws IOException {
+			window = null;
+			block = null;
+			fileChannel.close();
+			if (!file.delete()) {
+				throw new IOException("Cannot remove temp file for stream alignment writer");
+			}
+		}
+
+		@Override
+		public long size() {
+			return size;
+		}
+	}
+}
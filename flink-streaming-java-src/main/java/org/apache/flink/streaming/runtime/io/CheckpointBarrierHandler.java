@@ -97,4 +97,26 @@ public interface CheckpointBarrierHandler {
 	 * 如果当前正在进行对齐，则它将返回到目前为止在当前对齐中花费的时间
 	 */
 	long getAlignmentDurationNanos();
+
+	/**
+	 * Gets the number of bytes that were buffered or spilled for blocked channels in the latest alignment.
+	 *
+	 * @return The number of bytes
+	 */
+	/**
+	 * 获取最近一次对齐中，为被阻塞的通道缓存或 spill 的字节数
+	 */
+	long getAlignmentBufferedBytes();
+
+	/**
+	 * Gets the time that the replay of the data buffered in the latest alignment took, in nanoseconds.
+	 * If the buffered data is currently replayed, it will return the time spent in the
+	 * current replay so far.
+	 *
+	 * @return The duration in nanoseconds
+	 */
+	/**
+	 * 获取最近一次对齐中缓存的数据被重新消费所用的时间，以纳秒为单位
+	 */
+	long getAlignmentReplayDurationNanos();
 }
@@ -22,11 +22,15 @@ import org.apache.flink.configuration.Configuration;
 import org.apache.flink.configuration.IllegalConfigurationException;
 import org.apache.flink.configuration.TaskManagerOptions;
 import org.apache.flink.runtime.io.disk.iomanager.IOManager;
+import org.apache.flink.runtime.io.network.api.serialization.RecordDeserializer;
+import org.apache.flink.runtime.io.network.partition.ObjectHandoverQueue;
 import org.apache.flink.runtime.io.network.partition.consumer.InputGate;
+import org.apache.flink.runtime.state.InputChannelStateHandle;
 import org.apache.flink.streaming.api.CheckpointingMode;
 import org.apache.flink.streaming.runtime.tasks.StreamTask;
 
 import java.io.IOException;
+import java.util.Collections;
 
 /**
  * Utility for creating {@link CheckpointBarrierHandler} based on checkpoint mode
@@ -44,6 +48,7 @@ public class InputProcessorUtil {
 			CheckpointingMode checkpointMode,
 			IOManager ioManager,
 			InputGate inputGate,
+			RecordDeserializer<?>[] recordDeserializers,
 			Configuration taskManagerConfig) throws IOException {
 
 		CheckpointBarrierHandler barrierHandler;
@@ -56,8 +61,36 @@ public class InputProcessorUtil {
 					+ " must be positive or -1 (infinite)");
 			}
 
+			// 不对齐的检查点：第一个 barrier 到达时就触发快照，持久化 in-flight 数据
+			if (taskManagerConfig.getBoolean(UnalignedBarrierHandler.UNALIGNED_CHECKPOINTS)) {
+				if (taskManagerConfig.getBoolean(ObjectHandoverQueue.LOCAL_OBJECT_HANDOVER)) {
+					throw new IllegalConfigurationException(
+						UnalignedBarrierHandler.UNALIGNED_CHECKPOINTS.key() + " can not be combined with "
+						+ ObjectHandoverQueue.LOCAL_OBJECT_HANDOVER.key()
+						+ ", because records that are handed over by reference can not be persisted as in-flight data");
+				}
+
+				UnalignedBarrierHandler unalignedBarrierHandler = new UnalignedBarrierHandler(
+					inputGate,
+					recordDeserializers,
+					checkpointedTask != null ?
+						checkpointedTask.getRestoredInputChannelState() :
+						Collections.<InputChannelStateHandle>emptyList());
+
+				if (checkpointedTask != null) {
+					checkpointedTask.setUnalignedBarrierHandler(unalignedBarrierHandler);
+				}
+				barrierHandler = unalignedBarrierHandler;
+			}
+			// 开启批量 spill 时，按 block 压缩写入文件，通过 mmap 读回
+			else if (taskManagerConfig.getBoolean(BatchedBufferSpiller.BATCHED_SPILLING)) {
+				barrierHandler = new BarrierBuffer(
+					inputGate,
+					new BatchedBufferSpiller(ioManager, inputGate.getPageSize(), taskManagerConfig),
+					maxAlign);
+			}
 			// 当网络模型可信的时候，选用 CachedBufferBlocker 缓存 BufferOrEvent
-			if (taskManagerConfig.getBoolean(TaskManagerOptions.NETWORK_CREDIT_MODEL)) {
+			else if (taskManagerConfig.getBoolean(TaskManagerOptions.NETWORK_CREDIT_MODEL)) {
 				barrierHandler = new BarrierBuffer(inputGate, new CachedBufferBlocker(inputGate.getPageSize()), maxAlign);
 			} else {
 				barrierHandler = new BarrierBuffer(inputGate, new BufferSpiller(ioManager, inputGate.getPageSize()), maxAlign);
@@ -21,11 +21,14 @@ import org.apache.flink.annotation.Internal;
 import org.apache.flink.api.common.typeutils.TypeSerializer;
 import org.apache.flink.metrics.Gauge;
 import org.apache.flink.runtime.event.AbstractEvent;
+import org.apache.flink.runtime.io.network.api.writer.RecordHandover;
 import org.apache.flink.runtime.io.network.api.writer.RecordWriter;
+import org.apache.flink.runtime.io.network.api.writer.SharedRecordSerializer;
 import org.apache.flink.runtime.plugable.SerializationDelegate;
 import org.apache.flink.streaming.api.operators.Output;
 import org.apache.flink.streaming.api.watermark.Watermark;
 import org.apache.flink.streaming.runtime.metrics.WatermarkGauge;
+import org.apache.flink.streaming.runtime.streamrecord.HandoverMarker;
 import org.apache.flink.streaming.runtime.streamrecord.LatencyMarker;
 import org.apache.flink.streaming.runtime.streamrecord.StreamElement;
 import org.apache.flink.streaming.runtime.streamrecord.StreamElementSerializer;
@@ -52,6 +55,8 @@ public class RecordWriterOutput<OUT> implements OperatorChain.WatermarkGaugeExpo
 
 	private SerializationDelegate<StreamElement> serializationDelegate;  // 序列化委托
 
+	private final TypeSerializer<OUT> outSerializer;
+
 	private final StreamStatusProvider streamStatusProvider;  // 流状态提供者
 
 	private final OutputTag outputTag;
@@ -72,6 +77,8 @@ public class RecordWriterOutput<OUT> implements OperatorChain.WatermarkGaugeExpo
 		this.recordWriter = (RecordWriter<SerializationDelegate<StreamElement>>)
 				(RecordWriter<?>) recordWriter;
 
+		this.outSerializer = outSerializer;
+
 		TypeSerializer<StreamElement> outRecordSerializer =
 				new StreamElementSerializer<>(outSerializer);
 
@@ -117,6 +124,19 @@ public class RecordWriterOutput<OUT> implements OperatorChain.WatermarkGaugeExpo
 		}
 	}
 
+	/**
+	 * Emits a record through the serializer shared by a {@link SharedSerializationOutput}, see
+	 * {@link RecordWriter#emitSerialized(org.apache.flink.core.io.IOReadableWritable, SharedRecordSerializer)}.
+	 *
+	 * @return true if the shared serializer should be pruned.
+	 */
+	boolean emitSerialized(
+			StreamRecord<?> record,
+			SharedRecordSerializer<SerializationDelegate<StreamElement>> sharedSerializer) throws IOException, InterruptedException {
+		serializationDelegate.setInstance(record);
+		return recordWriter.emitSerialized(serializationDelegate, sharedSerializer);
+	}
+
 	@Override
 	// 广播 emit watermark
 	public void emitWatermark(Watermark mark) {
@@ -174,4 +194,63 @@ public class RecordWriterOutput<OUT> implements OperatorChain.WatermarkGaugeExpo
 	public Gauge<Long> getWatermarkGauge() {
 		return watermarkGauge;
 	}
+
+	public TypeSerializer<OUT> getOutSerializer() {
+		return outSerializer;
+	}
+
+	public OutputTag getOutputTag() {
+		return outputTag;
+	}
+
+	/**
+	 * Lets the record writer hand over records by reference to consumers in the same TaskManager, see
+	 * {@link org.apache.flink.runtime.io.network.partition.ObjectHandoverQueue}.
+	 */
+	public void enableRecordHandover() {
+		if (outSerializer != null) {
+			// 只有 emit 的 record 会被直接传递引用，watermark 等广播的元素仍然走序列化
+			recordWriter.setRecordHandover(new StreamRecordHandover<>(outSerializer));
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Hands over copies of stream records. The producer may reuse or modify a record and its value after emitting it,
+	 * so the value is copied unless its type is immutable, and the record is always copied.
+	 */
+	private static final class StreamRecordHandover<T> implements RecordHandover<SerializationDelegate<StreamElement>> {
+
+		private final TypeSerializer<T> serializer;
+
+		private final boolean isImmutableType;
+
+		private final SerializationDelegate<StreamElement> marker;
+
+		StreamRecordHandover(TypeSerializer<T> serializer) {
+			this.serializer = serializer.duplicate();
+			this.isImmutableType = serializer.isImmutableType();
+			this.marker = new SerializationDelegate<>(new StreamElementSerializer<>(serializer));
+			this.marker.setInstance(HandoverMarker.INSTANCE);
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Object toHandoverObject(SerializationDelegate<StreamElement> record) {
+			final StreamElement element = record.getInstance();
+			if (!element.isRecord()) {
+				return null;
+			}
+
+			final StreamRecord<T> streamRecord = (StreamRecord<T>) element.asRecord();
+			final T value = streamRecord.getValue();
+			return streamRecord.copy(isImmutableType ? value : serializer.copy(value));
+		}
+
+		@Override
+		public SerializationDelegate<StreamElement> getMarker() {
+			return marker;
+		}
+	}
 }
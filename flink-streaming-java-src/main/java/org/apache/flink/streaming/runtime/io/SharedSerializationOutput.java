@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.streaming.runtime.io;
+
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.runtime.io.network.api.writer.SharedRecordSerializer;
+import org.apache.flink.runtime.plugable.SerializationDelegate;
+import org.apache.flink.streaming.api.watermark.Watermark;
+import org.apache.flink.streaming.runtime.metrics.WatermarkGauge;
+import org.apache.flink.streaming.runtime.streamrecord.LatencyMarker;
+import org.apache.flink.streaming.runtime.streamrecord.StreamElement;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+import org.apache.flink.streaming.runtime.tasks.OperatorChain;
+import org.apache.flink.util.OutputTag;
+import org.apache.flink.util.XORShiftRandom;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.apache.flink.util.Preconditions.checkArgument;
+import static org.apache.flink.util.Preconditions.checkNotNull;
+
+/**
+ * An {@link org.apache.flink.streaming.api.operators.Output} that combines several {@link RecordWriterOutput}s which
+ * emit the same (side) output with equal serializers. Each record is serialized at most once, by the first record
+ * writer that does not hand it over by reference, and the serialized record is copied into the buffers of all other
+ * record writers.
+ *
+ * <p>Watermarks, stream statuses and other events are still emitted by each of the outputs.
+ */
+@Internal
+public class SharedSerializationOutput<OUT> implements OperatorChain.WatermarkGaugeExposingOutput<StreamRecord<OUT>> {
+
+	private final RecordWriterOutput<OUT>[] outputs;
+
+	private final OutputTag outputTag;
+
+	/** Holds the serialized record while it is copied into the record writers. */
+	private final SharedRecordSerializer<SerializationDelegate<StreamElement>> recordSerializer;
+
+	private final Random random = new XORShiftRandom();
+
+	private final WatermarkGauge watermarkGauge = new WatermarkGauge();
+
+	@SuppressWarnings("unchecked")
+	public SharedSerializationOutput(List<RecordWriterOutput<OUT>> outputs) {
+		checkArgument(outputs.size() > 1, "There must be several outputs to share the serialization.");
+		this.outputs = outputs.toArray(new RecordWriterOutput[0]);
+		this.outputTag = this.outputs[0].getOutputTag();
+		checkNotNull(this.outputs[0].getOutSerializer());
+		this.recordSerializer = new SharedRecordSerializer<>();
+	}
+
+	@Override
+	public void collect(StreamRecord<OUT> record) {
+		if (this.outputTag != null) {
+			// we are only responsible for emitting to the main input
+			return;
+		}
+
+		pushToRecordWriters(record);
+	}
+
+	@Override
+	public <X> void collect(OutputTag<X> outputTag, StreamRecord<X> record) {
+		if (this.outputTag == null || !this.outputTag.equals(outputTag)) {
+			// we are only responsible for emitting to the side-output specified by our
+			// OutputTag.
+			return;
+		}
+
+		pushToRecordWriters(record);
+	}
+
+	private <X> void pushToRecordWriters(StreamRecord<X> record) {
+		try {
+			recordSerializer.startRecord();
+
+			boolean pruneAfterCopying = false;
+			for (RecordWriterOutput<OUT> output : outputs) {
+				if (output.emitSerialized(record, recordSerializer)) {
+					pruneAfterCopying = true;
+				}
+			}
+
+			// make sure we don't hold onto the large intermediate serialization buffer for too long
+			if (pruneAfterCopying) {
+				recordSerializer.prune();
+			}
+		}
+		catch (Exception e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void emitWatermark(Watermark mark) {
+		watermarkGauge.setCurrentWatermark(mark.getTimestamp());
+		for (RecordWriterOutput<OUT> output : outputs) {
+			output.emitWatermark(mark);
+		}
+	}
+
+	@Override
+	public void emitLatencyMarker(LatencyMarker latencyMarker) {
+		// like the broadcasting output collector, send the marker to one randomly selected output
+		outputs[random.nextInt(outputs.length)].emitLatencyMarker(latencyMarker);
+	}
+
+	@Override
+	public void close() {
+		for (RecordWriterOutput<OUT> output : outputs) {
+			output.close();
+		}
+	}
+
+	@Override
+	public Gauge<Long> getWatermarkGauge() {
+		return watermarkGauge;
+	}
+}
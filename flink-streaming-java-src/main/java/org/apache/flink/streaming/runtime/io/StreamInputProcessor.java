@@ -20,6 +20,8 @@ package org.apache.flink.streaming.runtime.io;
 
 import org.apache.flink.annotation.Internal;
 import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.configuration.ConfigOption;
+import org.apache.flink.configuration.ConfigOptions;
 import org.apache.flink.configuration.Configuration;
 import org.apache.flink.metrics.Counter;
 import org.apache.flink.metrics.SimpleCounter;
@@ -30,6 +32,7 @@ import org.apache.flink.runtime.io.network.api.serialization.RecordDeserializer;
 import org.apache.flink.runtime.io.network.api.serialization.RecordDeserializer.DeserializationResult;
 import org.apache.flink.runtime.io.network.api.serialization.SpillingAdaptiveSpanningRecordDeserializer;
 import org.apache.flink.runtime.io.network.buffer.Buffer;
+import org.apache.flink.runtime.io.network.partition.ObjectHandoverQueue;
 import org.apache.flink.runtime.io.network.partition.consumer.BufferOrEvent;
 import org.apache.flink.runtime.io.network.partition.consumer.InputGate;
 import org.apache.flink.runtime.metrics.groups.OperatorMetricGroup;
@@ -52,6 +55,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.apache.flink.util.Preconditions.checkNotNull;
 
@@ -67,6 +72,13 @@ import static org.apache.flink.util.Preconditions.checkNotNull;
  * on the given lock object. This ensures that we don't call methods on a
  * {@link OneInputStreamOperator} concurrently with the timer callback or other things.
  *
+ * <p>If {@link #BATCHED_INPUT_PROCESSING} is enabled, all records that can be fully deserialized
+ * from the current buffer are collected and handed to
+ * {@link OneInputStreamOperator#processBatch(java.util.List)} under a single acquisition of the
+ * lock. A pending batch is always forwarded before any watermark, stream status or latency
+ * marker is processed, and before the next buffer or event is requested from the
+ * {@link CheckpointBarrierHandler}, so that the order of elements is preserved.
+ *
  * @param <IN> The type of the record that can be read with this record reader.
  */
 /**
@@ -83,6 +95,15 @@ public class StreamInputProcessor<IN> {
 
 	private static final Logger LOG = LoggerFactory.getLogger(StreamInputProcessor.class);
 
+	/**
+	 * Whether records of one buffer are forwarded to the operator as a batch.
+	 */
+	public static final ConfigOption<Boolean> BATCHED_INPUT_PROCESSING = ConfigOptions
+		.key("taskmanager.network.batched-input-processing")
+		.defaultValue(false)
+		.withDescription("Whether the input processor forwards all records deserialized from one network buffer" +
+			" to the operator as a batch, taking the checkpoint lock only once per batch.");
+
 	// 所有 channel 的 record 反序列化工具
 	private final RecordDeserializer<DeserializationDelegate<StreamElement>>[] recordDeserializers;
 	
@@ -128,6 +149,24 @@ public class StreamInputProcessor<IN> {
 	// StreamInputProcessor 是否在运行，内部也有 while 循环
 	private boolean isFinished;
 
+	// ---------------- Batched processing ------------------
+
+	/** Whether records are forwarded to the operator in batches. */
+	// 是否开启批量处理模式
+	private final boolean batchedProcessing;
+
+	/** Records deserialized from the current buffer that have not been forwarded yet. */
+	// 从当前 buffer 中反序列化出来但还没有交给 operator 的 record
+	private final List<StreamRecord<IN>> pendingRecords;
+
+	// ---------------- Local object handover ------------------
+
+	private final InputGate inputGate;
+
+	/** The handover queues of the local channels, resolved when the first marker of a channel is read. */
+	// 同一个 TaskManager 中的上游直接传递 record 引用时，每个 channel 对应的队列
+	private final ObjectHandoverQueue[] objectHandoverQueues;
+
 	@SuppressWarnings("unchecked")
 	public StreamInputProcessor(
 			InputGate[] inputGates,
@@ -144,15 +183,13 @@ public class StreamInputProcessor<IN> {
 
 		// 创建 InputGate，从多个 subPartition 获取数据
 		InputGate inputGate = InputGateUtil.createInputGate(inputGates);
+		this.inputGate = inputGate;
 
-		// 创建 barrierHandler，处理检查点的 barrier
-		this.barrierHandler = InputProcessorUtil.createCheckpointBarrierHandler(
-			checkpointedTask, checkpointMode, ioManager, inputGate, taskManagerConfig);
-
-		this.lock = checkNotNull(lock);
-
-		StreamElementSerializer<IN> ser = new StreamElementSerializer<>(inputSerializer);
-		this.deserializationDelegate = new NonReusingDeserializationDelegate<>(ser);
+		// 必须在请求 subpartition 之前开启，本地 channel 才会创建 handover 队列
+		if (taskManagerConfig.getBoolean(ObjectHandoverQueue.LOCAL_OBJECT_HANDOVER)) {
+			inputGate.enableObjectHandover(taskManagerConfig.getInteger(ObjectHandoverQueue.LOCAL_OBJECT_HANDOVER_CAPACITY));
+		}
+		this.objectHandoverQueues = new ObjectHandoverQueue[inputGate.getNumberOfInputChannels()];
 
 		// Initialize one deserializer per input channel
 		// 由于 partitioner 的存在，需要分 channel 考虑很多东西
@@ -163,6 +200,16 @@ public class StreamInputProcessor<IN> {
 				ioManager.getSpillingDirectoriesPaths());
 		}
 
+		// 创建 barrierHandler，处理检查点的 barrier
+		// 不对齐的检查点需要从 deserializer 中读取只接收了一部分的 record
+		this.barrierHandler = InputProcessorUtil.createCheckpointBarrierHandler(
+			checkpointedTask, checkpointMode, ioManager, inputGate, recordDeserializers, taskManagerConfig);
+
+		this.lock = checkNotNull(lock);
+
+		StreamElementSerializer<IN> ser = new StreamElementSerializer<>(inputSerializer);
+		this.deserializationDelegate = new NonReusingDeserializationDelegate<>(ser);
+
 		this.numInputChannels = inputGate.getNumberOfInputChannels();
 
 		this.streamStatusMaintainer = checkNotNull(streamStatusMaintainer);
@@ -173,7 +220,26 @@ public class StreamInputProcessor<IN> {
 				new ForwardingValveOutputHandler(streamOperator, lock));
 
 		this.watermarkGauge = watermarkGauge;
+
+		this.batchedProcessing = taskManagerConfig.getBoolean(BATCHED_INPUT_PROCESSING);
+		this.pendingRecords = batchedProcessing ? new ArrayList<>() : null;
+
 		metrics.gauge("checkpointAlignmentTime", barrierHandler::getAlignmentDurationNanos);
+		metrics.gauge("checkpointAlignmentBufferedBytes", barrierHandler::getAlignmentBufferedBytes);
+		metrics.gauge("checkpointAlignmentReplayTime", barrierHandler::getAlignmentReplayDurationNanos);
+	}
+
+	/**
+	 * Takes the element that was handed over by reference for the marker just read from the current channel.
+	 */
+	private StreamElement takeHandedOverElement() {
+		ObjectHandoverQueue queue = objectHandoverQueues[currentChannel];
+		if (queue == null) {
+			queue = checkNotNull(inputGate.getObjectHandoverQueue(currentChannel),
+				"Received a handover marker on a channel without handover queue.");
+			objectHandoverQueues[currentChannel] = queue;
+		}
+		return (StreamElement) queue.take();
 	}
 
 	public boolean processInput() throws Exception {
@@ -202,6 +268,16 @@ public class StreamInputProcessor<IN> {
 
 				if (result.isFullRecord()) {
 					StreamElement recordOrMark = deserializationDelegate.getInstance();
+					if (recordOrMark.isHandoverMarker()) {
+						// 上游只写了一个 marker，真正的 record 在 handover 队列中
+						recordOrMark = takeHandedOverElement();
+					}
+
+					if (batchedProcessing && !recordOrMark.isRecord()) {
+						// forward the pending batch first to keep the order of records and marks
+						// 先把之前攒下的 record 交给 operator，保证 record 和 watermark 等元素的顺序
+						processPendingRecords();
+					}
 
 					if (recordOrMark.isWatermark()) {
 						// handle watermark
@@ -224,6 +300,15 @@ public class StreamInputProcessor<IN> {
 						// now we can do the actual processing
 						// 处理 StreamRecord
 						StreamRecord<IN> record = recordOrMark.asRecord();
+						if (batchedProcessing) {
+							// 批量模式下，继续从当前 buffer 中反序列化，直到 buffer 被消费完
+							pendingRecords.add(record);
+							if (currentRecordDeserializer != null) {
+								continue;
+							}
+							processPendingRecords();
+							return true;
+						}
 						synchronized (lock) {
 							numRecordsIn.inc();
 							streamOperator.setKeyContextElement1(record);
@@ -233,6 +318,12 @@ public class StreamInputProcessor<IN> {
 					}
 				}
 			}
+			// the current buffer is exhausted, never hold back records while waiting for the next one
+			// 当前 buffer 已经消费完（剩余的是跨 buffer 的半条 record），先把攒下的 record 交给 operator
+			if (batchedProcessing && processPendingRecords()) {
+				return true;
+			}
+
 			// 更新 currentChannel
 			final BufferOrEvent bufferOrEvent = barrierHandler.getNextNonBlocked();
 			if (bufferOrEvent != null) {
@@ -260,6 +351,23 @@ public class StreamInputProcessor<IN> {
 		}
 	}
 
+	/**
+	 * Forwards all pending records to the operator under one acquisition of the lock.
+	 *
+	 * @return true if there were pending records, false otherwise.
+	 */
+	private boolean processPendingRecords() throws Exception {
+		if (pendingRecords.isEmpty()) {
+			return false;
+		}
+		synchronized (lock) {
+			numRecordsIn.inc(pendingRecords.size());
+			streamOperator.processBatch(pendingRecords);
+		}
+		pendingRecords.clear();
+		return true;
+	}
+
 	public void cleanup() throws IOException {
 		// clear the buffers first. this part should not ever fail
 		for (RecordDeserializer<?> deserializer : recordDeserializers) {
@@ -30,6 +30,7 @@ import org.apache.flink.runtime.io.network.api.serialization.RecordDeserializer;
 import org.apache.flink.runtime.io.network.api.serialization.RecordDeserializer.DeserializationResult;
 import org.apache.flink.runtime.io.network.api.serialization.SpillingAdaptiveSpanningRecordDeserializer;
 import org.apache.flink.runtime.io.network.buffer.Buffer;
+import org.apache.flink.runtime.io.network.partition.ObjectHandoverQueue;
 import org.apache.flink.runtime.io.network.partition.consumer.BufferOrEvent;
 import org.apache.flink.runtime.io.network.partition.consumer.InputGate;
 import org.apache.flink.runtime.metrics.groups.OperatorMetricGroup;
@@ -135,6 +136,13 @@ public class StreamTwoInputProcessor<IN1, IN2> {
 
 	private boolean isFinished;
 
+	// ---------------- Local object handover ------------------
+
+	private final InputGate inputGate;
+
+	/** The handover queues of the local channels, resolved when the first marker of a channel is read. */
+	private final ObjectHandoverQueue[] objectHandoverQueues;
+
 	@SuppressWarnings("unchecked")
 	public StreamTwoInputProcessor(
 			Collection<InputGate> inputGates1,
@@ -153,9 +161,24 @@ public class StreamTwoInputProcessor<IN1, IN2> {
 			WatermarkGauge input2WatermarkGauge) throws IOException {
 
 		final InputGate inputGate = InputGateUtil.createInputGate(inputGates1, inputGates2);
+		this.inputGate = inputGate;
+
+		// 必须在请求 subpartition 之前开启，本地 channel 才会创建 handover 队列
+		if (taskManagerConfig.getBoolean(ObjectHandoverQueue.LOCAL_OBJECT_HANDOVER)) {
+			inputGate.enableObjectHandover(taskManagerConfig.getInteger(ObjectHandoverQueue.LOCAL_OBJECT_HANDOVER_CAPACITY));
+		}
+		this.objectHandoverQueues = new ObjectHandoverQueue[inputGate.getNumberOfInputChannels()];
+
+		// Initialize one deserializer per input channel
+		this.recordDeserializers = new SpillingAdaptiveSpanningRecordDeserializer[inputGate.getNumberOfInputChannels()];
+
+		for (int i = 0; i < recordDeserializers.length; i++) {
+			recordDeserializers[i] = new SpillingAdaptiveSpanningRecordDeserializer<>(
+				ioManager.getSpillingDirectoriesPaths());
+		}
 
 		this.barrierHandler = InputProcessorUtil.createCheckpointBarrierHandler(
-			checkpointedTask, checkpointMode, ioManager, inputGate, taskManagerConfig);
+			checkpointedTask, checkpointMode, ioManager, inputGate, recordDeserializers, taskManagerConfig);
 
 		this.lock = checkNotNull(lock);
 
@@ -165,14 +188,6 @@ public class StreamTwoInputProcessor<IN1, IN2> {
 		StreamElementSerializer<IN2> ser2 = new StreamElementSerializer<>(inputSerializer2);
 		this.deserializationDelegate2 = new NonReusingDeserializationDelegate<>(ser2);
 
-		// Initialize one deserializer per input channel
-		this.recordDeserializers = new SpillingAdaptiveSpanningRecordDeserializer[inputGate.getNumberOfInputChannels()];
-
-		for (int i = 0; i < recordDeserializers.length; i++) {
-			recordDeserializers[i] = new SpillingAdaptiveSpanningRecordDeserializer<>(
-				ioManager.getSpillingDirectoriesPaths());
-		}
-
 		// determine which unioned channels belong to input 1 and which belong to input 2
 		int numInputChannels1 = 0;
 		for (InputGate gate: inputGates1) {
@@ -194,6 +209,21 @@ public class StreamTwoInputProcessor<IN1, IN2> {
 		this.input1WatermarkGauge = input1WatermarkGauge;
 		this.input2WatermarkGauge = input2WatermarkGauge;
 		metrics.gauge("checkpointAlignmentTime", barrierHandler::getAlignmentDurationNanos);
+		metrics.gauge("checkpointAlignmentBufferedBytes", barrierHandler::getAlignmentBufferedBytes);
+		metrics.gauge("checkpointAlignmentReplayTime", barrierHandler::getAlignmentReplayDurationNanos);
+	}
+
+	/**
+	 * Takes the element that was handed over by reference for the marker just read from the current channel.
+	 */
+	private StreamElement takeHandedOverElement() {
+		ObjectHandoverQueue queue = objectHandoverQueues[currentChannel];
+		if (queue == null) {
+			queue = checkNotNull(inputGate.getObjectHandoverQueue(currentChannel),
+				"Received a handover marker on a channel without handover queue.");
+			objectHandoverQueues[currentChannel] = queue;
+		}
+		return (StreamElement) queue.take();
 	}
 
 	public boolean processInput() throws Exception {
@@ -227,6 +257,9 @@ public class StreamTwoInputProcessor<IN1, IN2> {
 					// 需要处理两个 input
 					if (currentChannel < numInputChannels1) {
 						StreamElement recordOrWatermark = deserializationDelegate1.getInstance();
+						if (recordOrWatermark.isHandoverMarker()) {
+							recordOrWatermark = takeHandedOverElement();
+						}
 						if (recordOrWatermark.isWatermark()) {
 							statusWatermarkValve1.inputWatermark(recordOrWatermark.asWatermark(), currentChannel);
 							continue;
@@ -254,6 +287,9 @@ public class StreamTwoInputProcessor<IN1, IN2> {
 					}
 					else {
 						StreamElement recordOrWatermark = deserializationDelegate2.getInstance();
+						if (recordOrWatermark.isHandoverMarker()) {
+							recordOrWatermark = takeHandedOverElement();
+						}
 						if (recordOrWatermark.isWatermark()) {
 							statusWatermarkValve2.inputWatermark(recordOrWatermark.asWatermark(), currentChannel - numInputChannels1);
 							continue;
@@ -0,0 +1,594 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.streaming.runtime.io;
+
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.configuration.ConfigOption;
+import org.apache.flink.configuration.ConfigOptions;
+import org.apache.flink.core.memory.DataInputViewStreamWrapper;
+import org.apache.flink.core.memory.DataOutputViewStreamWrapper;
+import org.apache.flink.core.memory.MemorySegment;
+import org.apache.flink.core.memory.MemorySegmentFactory;
+import org.apache.flink.runtime.checkpoint.CheckpointMetaData;
+import org.apache.flink.runtime.checkpoint.CheckpointMetrics;
+import org.apache.flink.runtime.checkpoint.decline.CheckpointDeclineException;
+import org.apache.flink.runtime.checkpoint.decline.CheckpointDeclineOnCancellationBarrierException;
+import org.apache.flink.runtime.checkpoint.decline.CheckpointDeclineSubsumedException;
+import org.apache.flink.runtime.checkpoint.decline.InputEndOfStreamException;
+import org.apache.flink.runtime.io.network.api.CancelCheckpointMarker;
+import org.apache.flink.runtime.io.network.api.CheckpointBarrier;
+import org.apache.flink.runtime.io.network.api.EndOfPartitionEvent;
+import org.apache.flink.runtime.io.network.api.serialization.RecordDeserializer;
+import org.apache.flink.runtime.io.network.buffer.Buffer;
+import org.apache.flink.runtime.io.network.buffer.FreeingBufferRecycler;
+import org.apache.flink.runtime.io.network.buffer.NetworkBuffer;
+import org.apache.flink.runtime.io.network.partition.consumer.BufferOrEvent;
+import org.apache.flink.runtime.io.network.partition.consumer.InputGate;
+import org.apache.flink.runtime.jobgraph.tasks.AbstractInvokable;
+import org.apache.flink.runtime.state.CheckpointStreamFactory;
+import org.apache.flink.runtime.state.CheckpointedStateScope;
+import org.apache.flink.runtime.state.InputChannelStateHandle;
+import org.apache.flink.runtime.state.StateObject;
+import org.apache.flink.runtime.state.StreamStateHandle;
+import org.apache.flink.util.IOUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.apache.flink.util.Preconditions.checkNotNull;
+import static org.apache.flink.util.Preconditions.checkState;
+
+/**
+ * A {@link CheckpointBarrierHandler} for exactly-once checkpoints that does not align the input channels.
+ *
+ * <p>The task takes its snapshot as soon as the first barrier of a checkpoint arrives, and no channel is ever
+ * blocked. Instead, the data that is received on a channel after the snapshot but before the barrier of that channel
+ * (the in-flight data) is processed as usual and additionally written to the checkpoint storage, together with the
+ * bytes of the records that were only partially received when the snapshot was taken. The in-flight data becomes part
+ * of the state of the head operator as an {@link InputChannelStateHandle}, and is replayed before any new input on
+ * restore.
+ *
+ * <p>Under backpressure, the checkpoint thus does not wait until the barriers made their way through the full input
+ * queues, at the price of persisting the data in these queues.
+ */
+/**
+ * 不对齐的 exactly-once CheckpointBarrierHandler
+ *
+ * 收到检查点的第一个 barrier 时立即触发快照，任何 channel 都不会被阻塞
+ * 快照之后、对应 channel 的 barrier 到达之前收到的数据照常处理，同时写入检查点存储，恢复时先重放这些数据
+ */
+@Internal
+public class UnalignedBarrierHandler implements CheckpointBarrierHandler {
+
+	private static final Logger LOG = LoggerFactory.getLogger(UnalignedBarrierHandler.class);
+
+	/** Whether exactly-once checkpoints are taken without aligning the inputs. */
+	public static final ConfigOption<Boolean> UNALIGNED_CHECKPOINTS = ConfigOptions
+		.key("task.checkpoint.unaligned")
+		.defaultValue(false)
+		.withDescription("Whether exactly-once checkpoints are taken when the first checkpoint barrier arrives at a " +
+			"task, instead of waiting for the barriers of all inputs. The data that the task receives between the " +
+			"snapshot and the barriers of the other inputs is persisted as part of the checkpoint. This shortens " +
+			"checkpoints under backpressure, but makes them larger. Checkpoints that contain in-flight data can " +
+			"not be restored with a different parallelism.");
+
+	/** The gate that the handler draws its input from. */
+	private final InputGate inputGate;
+
+	/** The total number of channels that this handler handles data from. */
+	private final int totalNumberOfInputChannels;
+
+	/** The deserializers of the channels, which hold the partially received records. */
+	private final RecordDeserializer<?>[] recordDeserializers;
+
+	/** Flags that indicate whether the barrier of the current checkpoint was received on a channel. */
+	private final boolean[] barrierReceived;
+
+	/** Flags that indicate whether a channel was closed. */
+	private final boolean[] channelClosed;
+
+	/** The restored in-flight data, which is replayed before the input gate is read. */
+	private final ArrayDeque<InputChannelStateHandle> restoredState;
+
+	/** The handler that receives the checkpoint notifications. */
+	private AbstractInvokable toNotifyOnCheckpoint;
+
+	/** The ID of the checkpoint for which we expect barriers. */
+	private long currentCheckpointId = -1L;
+
+	/** The number of received barriers (= number of channels whose in-flight data is complete). */
+	private int numBarriersReceived;
+
+	/** The number of already closed channels. */
+	private int numClosedChannels;
+
+	/** The stream to which the in-flight data of the current checkpoint is written, null if not recording. */
+	@Nullable
+	private CheckpointStreamFactory.CheckpointStateOutputStream recorder;
+
+	/** The view on the recording stream. */
+	@Nullable
+	private DataOutputViewStreamWrapper recorderView;
+
+	/** The future for the in-flight data of the current checkpoint. */
+	@Nullable
+	private CompletableFuture<InputChannelStateHandle> pendingState;
+
+	/** The number of bytes recorded for the current checkpoint. */
+	private long numRecordedBytes;
+
+	/** The restored stream that is currently replayed. */
+	@Nullable
+	private InputStream currentRestoredStream;
+
+	@Nullable
+	private DataInputViewStreamWrapper currentRestoredView;
+
+	/** The timestamp as in {@link System#nanoTime()} at which the first barrier of the checkpoint was received. */
+	private long startOfRecordingTimestamp;
+
+	/** The time (in nanoseconds) between the first and the last barrier of the latest checkpoint. */
+	private long latestRecordingDurationNanos;
+
+	/** The number of bytes recorded for the latest checkpoint. */
+	private long latestRecordedBytes;
+
+	/** The timestamp as in {@link System#nanoTime()} at which the replay of the restored data started. */
+	private long startOfReplayTimestamp;
+
+	/** The time (in nanoseconds) that the replay of the restored data took. */
+	private long latestReplayDurationNanos;
+
+	public UnalignedBarrierHandler(
+			InputGate inputGate,
+			RecordDeserializer<?>[] recordDeserializers,
+			Collection<InputChannelStateHandle> restoredState) {
+
+		this.inputGate = checkNotNull(inputGate);
+		this.totalNumberOfInputChannels = inputGate.getNumberOfInputChannels();
+		this.recordDeserializers = checkNotNull(recordDeserializers);
+		checkState(recordDeserializers.length == totalNumberOfInputChannels,
+			"There must be one deserializer per input channel.");
+
+		this.barrierReceived = new boolean[totalNumberOfInputChannels];
+		this.channelClosed = new boolean[totalNumberOfInputChannels];
+		this.restoredState = new ArrayDeque<>(restoredState);
+	}
+
+	// ------------------------------------------------------------------------
+	//  Buffer and barrier handling
+	// ------------------------------------------------------------------------
+
+	@Override
+	public BufferOrEvent getNextNonBlocked() throws Exception {
+		while (true) {
+			// 恢复的 in-flight 数据先于新的输入被处理
+			BufferOrEvent restored = getNextRestored();
+			if (restored != null) {
+				return restored;
+			}
+
+			Optional<BufferOrEvent> next = inputGate.getNextBufferOrEvent();
+			if (!next.isPresent()) {
+				// end of input stream
+				if (numBarriersReceived > 0) {
+					abortRecording(new InputEndOfStreamException());
+				}
+				return null;
+			}
+
+			BufferOrEvent bufferOrEvent = next.get();
+			if (bufferOrEvent.isBuffer()) {
+				// barrier 尚未到达的 channel 上的数据属于 in-flight 数据
+				if (recorder != null && !barrierReceived[bufferOrEvent.getChannelIndex()]) {
+					record(bufferOrEvent);
+				}
+				return bufferOrEvent;
+			}
+			else if (bufferOrEvent.getEvent().getClass() == CheckpointBarrier.class) {
+				processBarrier((CheckpointBarrier) bufferOrEvent.getEvent(), bufferOrEvent.getChannelIndex());
+			}
+			else if (bufferOrEvent.getEvent().getClass() == CancelCheckpointMarker.class) {
+				processCancellationBarrier((CancelCheckpointMarker) bufferOrEvent.getEvent());
+			}
+			else {
+				// This event marks a subpartition as fully consumed
+				if (bufferOrEvent.getEvent().getClass() == EndOfPartitionEvent.class) {
+					processEndOfPartition(bufferOrEvent.getChannelIndex());
+				}
+				return bufferOrEvent;
+			}
+		}
+	}
+
+	private void processBarrier(CheckpointBarrier receivedBarrier, int channelIndex) throws Exception {
+		final long barrierId = receivedBarrier.getId();
+
+		if (barrierId > currentCheckpointId) {
+			if (numBarriersReceived > 0) {
+				// we did not complete the current checkpoint, another started before
+				LOG.warn("{}: Received checkpoint barrier for checkpoint {} before completing current checkpoint {}. " +
+						"Skipping current checkpoint.",
+					inputGate.getOwningTaskName(),
+					barrierId,
+					currentCheckpointId);
+
+				abortRecording(new CheckpointDeclineSubsumedException(barrierId));
+			}
+
+			// 第一个 barrier 到达时立即触发快照，快照中会调用 snapshotInputChannelState
+			currentCheckpointId = barrierId;
+			startOfRecordingTimestamp = System.nanoTime();
+			numRecordedBytes = 0L;
+			onBarrier(channelIndex);
+
+			notifyCheckpoint(receivedBarrier);
+			finishIfComplete();
+		}
+		else if (barrierId == currentCheckpointId && numBarriersReceived > 0) {
+			onBarrier(channelIndex);
+			finishIfComplete();
+		}
+
+		// else: trailing barrier from either
+		//   - a previous (subsumed) checkpoint
+		//   - the current checkpoint if it was already canceled
+	}
+
+	private void processCancellationBarrier(CancelCheckpointMarker cancelBarrier) throws Exception {
+		final long barrierId = cancelBarrier.getCheckpointId();
+
+		if (barrierId > currentCheckpointId) {
+			if (numBarriersReceived > 0) {
+				LOG.warn("{}: Received cancellation barrier for checkpoint {} before completing current checkpoint {}. " +
+						"Skipping current checkpoint.",
+					inputGate.getOwningTaskName(),
+					barrierId,
+					currentCheckpointId);
+
+				abortRecording(new CheckpointDeclineSubsumedException(barrierId));
+			}
+
+			// the next checkpoint starts as canceled, no barrier of it starts a new recording
+			currentCheckpointId = barrierId;
+			notifyAbort(barrierId, new CheckpointDeclineOnCancellationBarrierException());
+		}
+		else if (barrierId == currentCheckpointId && numBarriersReceived > 0) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("{}: Checkpoint {} canceled, aborting recording of in-flight data.",
+					inputGate.getOwningTaskName(),
+					barrierId);
+			}
+
+			abortRecording(new CheckpointDeclineOnCancellationBarrierException());
+		}
+	}
+
+	private void processEndOfPartition(int channelIndex) throws Exception {
+		channelClosed[channelIndex] = true;
+		numClosedChannels++;
+
+		if (numBarriersReceived > 0 && !barrierReceived[channelIndex]) {
+			// the barrier of this channel will never arrive
+			abortRecording(new InputEndOfStreamException());
+		}
+	}
+
+	private void onBarrier(int channelIndex) throws IOException {
+		if (!barrierReceived[channelIndex]) {
+			barrierReceived[channelIndex] = true;
+			numBarriersReceived++;
+		}
+		else {
+			throw new IOException("Stream corrupt: Repeated barrier for same checkpoint on input " + channelIndex);
+		}
+	}
+
+	/**
+	 * Finishes the recording of the current checkpoint if the barriers of all open channels were received.
+	 */
+	private void finishIfComplete() throws IOException {
+		if (numBarriersReceived + numClosedChannels < totalNumberOfInputChannels) {
+			return;
+		}
+
+		latestRecordingDurationNanos = System.nanoTime() - startOfRecordingTimestamp;
+		latestRecordedBytes = numRecordedBytes;
+
+		CompletableFuture<InputChannelStateHandle> future = pendingState;
+		CheckpointStreamFactory.CheckpointStateOutputStream stream = recorder;
+		resetBarriers();
+
+		// the recording stops early if the task cancelled the checkpoint
+		if (future != null && stream != null) {
+			try {
+				StreamStateHandle handle = stream.closeAndGetHandle();
+				InputChannelStateHandle stateHandle = handle != null && latestRecordedBytes > 0 ?
+					new InputChannelStateHandle(handle) : null;
+
+				if (stateHandle == null && handle != null) {
+					discardQuietly(handle);
+				}
+				// the checkpoint may have been canceled in the meantime
+				if (!future.complete(stateHandle) && stateHandle != null) {
+					discardQuietly(stateHandle);
+				}
+			} catch (Exception e) {
+				future.completeExceptionally(e);
+			}
+		}
+
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("{}: Received all barriers for checkpoint {}, recorded {} bytes of in-flight data.",
+				inputGate.getOwningTaskName(),
+				currentCheckpointId,
+				latestRecordedBytes);
+		}
+	}
+
+	private void abortRecording(CheckpointDeclineException cause) throws Exception {
+		if (pendingState != null) {
+			pendingState.cancel(false);
+		}
+		IOUtils.closeQuietly(recorder);
+
+		latestRecordingDurationNanos = 0L;
+		latestRecordedBytes = 0L;
+		resetBarriers();
+
+		notifyAbort(currentCheckpointId, cause);
+	}
+
+	private void resetBarriers() {
+		for (int i = 0; i < totalNumberOfInputChannels; i++) {
+			barrierReceived[i] = false;
+		}
+		numBarriersReceived = 0;
+		recorder = null;
+		recorderView = null;
+		pendingState = null;
+	}
+
+	// ------------------------------------------------------------------------
+	//  In-flight data
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Starts to persist the in-flight data of the checkpoint whose first barrier was just received. This is called by
+	 * the task while it takes the snapshot.
+	 *
+	 * @return The future for the in-flight data, completed with {@code null} if there is none. The future completes
+	 *         when the barriers of all channels were received, or is cancelled if the checkpoint is aborted before.
+	 */
+	public CompletableFuture<InputChannelStateHandle> snapshotInputChannelState(
+			long checkpointId,
+			CheckpointStreamFactory checkpointStreamFactory) throws Exception {
+
+		if (checkpointId != currentCheckpointId || numBarriersReceived == 0) {
+			// not triggered by this handler, e.g. a savepoint of a task without a barrier in flight
+			return CompletableFuture.completedFuture(null);
+		}
+		checkState(recorder == null, "The in-flight data of checkpoint %s is already recorded.", checkpointId);
+
+		recorder = checkpointStreamFactory.createCheckpointStateOutputStream(CheckpointedStateScope.EXCLUSIVE);
+		recorderView = new DataOutputViewStreamWrapper(recorder);
+		pendingState = new CompletableFuture<>();
+
+		try {
+			// 尚未收到 barrier 的 channel 中只接收了一部分的 record 也属于 in-flight 数据
+			for (int i = 0; i < totalNumberOfInputChannels; i++) {
+				if (!barrierReceived[i] && !channelClosed[i]) {
+					byte[] unfinished = recordDeserializers[i].getUnfinishedData();
+					if (unfinished.length > 0) {
+						recorderView.writeInt(i);
+						recorderView.writeInt(unfinished.length);
+						recorderView.write(unfinished);
+						numRecordedBytes += unfinished.length;
+					}
+				}
+			}
+		} catch (Exception e) {
+			IOUtils.closeQuietly(recorder);
+			recorder = null;
+			recorderView = null;
+			pendingState = null;
+			throw e;
+		}
+
+		CompletableFuture<InputChannelStateHandle> future = pendingState;
+		// single channel or all other channels closed
+		finishIfComplete();
+		return future;
+	}
+
+	private void record(BufferOrEvent bufferOrEvent) throws IOException {
+		if (pendingState.isDone()) {
+			// the checkpoint was cancelled by the task, stop recording
+			IOUtils.closeQuietly(recorder);
+			recorder = null;
+			recorderView = null;
+			return;
+		}
+
+		Buffer buffer = bufferOrEvent.getBuffer();
+		int size = buffer.getSize();
+
+		recorderView.writeInt(bufferOrEvent.getChannelIndex());
+		recorderView.writeInt(size);
+		buffer.getMemorySegment().get(recorderView, buffer.getMemorySegmentOffset(), size);
+		numRecordedBytes += size;
+	}
+
+	@Nullable
+	private BufferOrEvent getNextRestored() throws Exception {
+		while (currentRestoredView != null || !restoredState.isEmpty()) {
+			if (currentRestoredView == null) {
+				if (startOfReplayTimestamp == 0L) {
+					startOfReplayTimestamp = System.nanoTime();
+				}
+				currentRestoredStream = restoredState.poll().getDelegateStateHandle().openInputStream();
+				currentRestoredView = new DataInputViewStreamWrapper(currentRestoredStream);
+			}
+
+			int channelIndex;
+			try {
+				channelIndex = currentRestoredView.readInt();
+			} catch (EOFException e) {
+				closeRestoredStream();
+				continue;
+			}
+
+			int size = currentRestoredView.readInt();
+			MemorySegment segment = MemorySegmentFactory.allocateUnpooledSegment(
+				Math.max(inputGate.getPageSize(), size));
+			segment.put(currentRestoredView, 0, size);
+
+			Buffer buffer = new NetworkBuffer(segment, FreeingBufferRecycler.INSTANCE);
+			buffer.setSize(size);
+			return new BufferOrEvent(buffer, channelIndex);
+		}
+
+		if (startOfReplayTimestamp > 0L) {
+			latestReplayDurationNanos = System.nanoTime() - startOfReplayTimestamp;
+			startOfReplayTimestamp = -1L;
+		}
+		return null;
+	}
+
+	private void closeRestoredStream() {
+		IOUtils.closeQuietly(currentRestoredStream);
+		currentRestoredStream = null;
+		currentRestoredView = null;
+	}
+
+	private static void discardQuietly(StateObject stateObject) {
+		try {
+			stateObject.discardState();
+		} catch (Exception e) {
+			LOG.warn("Could not discard in-flight data {}.", stateObject, e);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	//  Notifications
+	// ------------------------------------------------------------------------
+
+	private void notifyCheckpoint(CheckpointBarrier checkpointBarrier) throws Exception {
+		if (toNotifyOnCheckpoint != null) {
+			CheckpointMetaData checkpointMetaData =
+				new CheckpointMetaData(checkpointBarrier.getId(), checkpointBarrier.getTimestamp());
+
+			// no alignment happens, the channels are never blocked
+			CheckpointMetrics checkpointMetrics = new CheckpointMetrics()
+				.setBytesBufferedInAlignment(0L)
+				.setAlignmentDurationNanos(0L);
+
+			toNotifyOnCheckpoint.triggerCheckpointOnBarrier(
+				checkpointMetaData,
+				checkpointBarrier.getCheckpointOptions(),
+				checkpointMetrics);
+		}
+	}
+
+	private void notifyAbort(long checkpointId, CheckpointDeclineException cause) throws Exception {
+		if (toNotifyOnCheckpoint != null) {
+			toNotifyOnCheckpoint.abortCheckpointOnBarrier(checkpointId, cause);
+		}
+	}
+
+	@Override
+	public void registerCheckpointEventHandler(AbstractInvokable toNotifyOnCheckpoint) {
+		if (this.toNotifyOnCheckpoint == null) {
+			this.toNotifyOnCheckpoint = toNotifyOnCheckpoint;
+		}
+		else {
+			throw new IllegalStateException("UnalignedBarrierHandler already has a registered checkpoint notifyee");
+		}
+	}
+
+	@Override
+	public void cleanup() throws IOException {
+		if (pendingState != null) {
+			pendingState.cancel(false);
+		}
+		IOUtils.closeQuietly(recorder);
+		resetBarriers();
+
+		closeRestoredStream();
+		restoredState.clear();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return currentRestoredView == null && restoredState.isEmpty();
+	}
+
+	/**
+	 * Gets the time between the first and the last barrier of the latest checkpoint, in nanoseconds. If the
+	 * in-flight data of a checkpoint is currently recorded, it returns the time spent so far.
+	 */
+	@Override
+	public long getAlignmentDurationNanos() {
+		long start = this.startOfRecordingTimestamp;
+		if (recorder == null || start <= 0) {
+			return latestRecordingDurationNanos;
+		} else {
+			return System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * Gets the number of bytes of in-flight data that were persisted for the latest checkpoint.
+	 */
+	@Override
+	public long getAlignmentBufferedBytes() {
+		return recorder == null ? latestRecordedBytes : numRecordedBytes;
+	}
+
+	/**
+	 * Gets the time that the replay of the restored in-flight data took, in nanoseconds.
+	 */
+	@Override
+	public long getAlignmentReplayDurationNanos() {
+		long start = this.startOfReplayTimestamp;
+		if (start <= 0) {
+			return latestReplayDurationNanos;
+		} else {
+			return System.nanoTime() - start;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: last checkpoint: %d, current barriers: %d, closed channels: %d",
+			inputGate.getOwningTaskName(),
+			currentCheckpointId,
+			numBarriersReceived,
+			numClosedChannels);
+	}
+}
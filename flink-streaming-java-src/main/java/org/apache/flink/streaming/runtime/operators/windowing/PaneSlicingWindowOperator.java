@@ -0,0 +1,407 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.streaming.runtime.operators.windowing;
+
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.annotation.VisibleForTesting;
+import org.apache.flink.api.common.functions.AggregateFunction;
+import org.apache.flink.api.common.functions.ReduceFunction;
+import org.apache.flink.api.common.state.AppendingState;
+import org.apache.flink.api.common.state.StateDescriptor;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.runtime.state.internal.InternalAppendingState;
+import org.apache.flink.streaming.api.operators.InternalTimer;
+import org.apache.flink.streaming.api.windowing.assigners.SlidingEventTimeWindows;
+import org.apache.flink.streaming.api.windowing.assigners.SlidingProcessingTimeWindows;
+import org.apache.flink.streaming.api.windowing.assigners.WindowAssigner;
+import org.apache.flink.streaming.api.windowing.triggers.Trigger;
+import org.apache.flink.streaming.api.windowing.windows.TimeWindow;
+import org.apache.flink.streaming.runtime.operators.windowing.functions.InternalWindowFunction;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+import org.apache.flink.util.OutputTag;
+
+import java.io.Serializable;
+
+import static org.apache.flink.util.Preconditions.checkArgument;
+import static org.apache.flink.util.Preconditions.checkNotNull;
+
+/**
+ * A {@link WindowOperator} for sliding time windows with an incrementally aggregating
+ * function that aggregates every element only once.
+ *
+ * <p>Instead of adding each element to all {@code size / slide} windows it belongs to, the
+ * element is added to a single pane, i.e. a {@link TimeWindow} of length {@code slide}. When a
+ * window fires, the panes that make up the window are combined with a {@link PaneCombiner}.
+ * This reduces state size and the number of aggregation calls per element by the
+ * {@code size / slide} ratio.
+ *
+ * <p>The operator behaves like a {@link WindowOperator} with the default
+ * {@link org.apache.flink.streaming.api.windowing.triggers.EventTimeTrigger} or
+ * {@link org.apache.flink.streaming.api.windowing.triggers.ProcessingTimeTrigger}, and is only
+ * used with those triggers. Only one firing timer is registered per key at a time: when a window
+ * fires, the timer of the next window is registered if that window contains non-empty panes.
+ * The first pane of a window is dropped when the window is cleaned up, because no later window
+ * contains it.
+ *
+ * @param <K> The type of key returned by the {@code KeySelector}.
+ * @param <IN> The type of the incoming elements.
+ * @param <SV> The type of the value stored per pane.
+ * @param <ACC> The type of the aggregated window contents.
+ * @param <OUT> The type of elements emitted by the {@code InternalWindowFunction}.
+ */
+/**
+ * 用于滑动时间窗口的 WindowOperator，每个元素只会被聚合一次
+ *
+ * 元素不再被添加到它所属的 size / slide 个窗口中，而是只被添加到一个长度为 slide 的窗格（pane）中
+ * 窗口触发的时候，用 PaneCombiner 合并组成这个窗口的所有窗格
+ *
+ * 只支持默认的 EventTimeTrigger 和 ProcessingTimeTrigger
+ * 每个 key 同一时间只注册一个触发定时器，窗口触发后，如果下一个窗口还有非空的窗格，再为下一个窗口注册定时器
+ * 窗口被清理的时候，删除它的第一个窗格，因为后面的窗口都不包含这个窗格
+ */
+@Internal
+public class PaneSlicingWindowOperator<K, IN, SV, ACC, OUT>
+		extends WindowOperator<K, IN, ACC, OUT, TimeWindow> {
+
+	private static final long serialVersionUID = 1L;
+
+	// ------------------------------------------------------------------------
+	// these fields are set by the API stream graph builder to configure the operator
+
+	private final long size;
+
+	private final long slide;
+
+	private final long offset;
+
+	private final StateDescriptor<? extends AppendingState<IN, ACC>, ?> paneStateDescriptor;
+
+	private final PaneCombiner<SV, ACC> paneCombiner;
+
+	// ------------------------------------------------------------------------
+	// the fields below are instantiated once the operator runs in the runtime
+	// 以下字段将在操作符运行时实例化
+
+	/** The state in which the pre-aggregated panes are stored. Each pane is a namespace. */
+	// 存储预聚合窗格的状态，每个窗格都是一个命名空间
+	private transient InternalAppendingState<K, TimeWindow, IN, SV, ACC> paneState;
+
+	// ------------------------------------------------------------------------
+
+	public PaneSlicingWindowOperator(
+			WindowAssigner<? super IN, TimeWindow> windowAssigner,
+			TypeSerializer<TimeWindow> windowSerializer,
+			KeySelector<IN, K> keySelector,
+			TypeSerializer<K> keySerializer,
+			StateDescriptor<? extends AppendingState<IN, ACC>, ?> paneStateDescriptor,
+			PaneCombiner<SV, ACC> paneCombiner,
+			InternalWindowFunction<ACC, OUT, K, TimeWindow> windowFunction,
+			Trigger<? super IN, ? super TimeWindow> trigger,
+			long allowedLateness,
+			OutputTag<IN> lateDataOutputTag) {
+
+		super(windowAssigner, windowSerializer, keySelector,
+			keySerializer, null, windowFunction, trigger, allowedLateness, lateDataOutputTag);
+
+		if (windowAssigner instanceof SlidingEventTimeWindows) {
+			SlidingEventTimeWindows assigner = (SlidingEventTimeWindows) windowAssigner;
+			this.size = assigner.getSize();
+			this.slide = assigner.getSlide();
+			this.offset = assigner.getOffset();
+		} else if (windowAssigner instanceof SlidingProcessingTimeWindows) {
+			SlidingProcessingTimeWindows assigner = (SlidingProcessingTimeWindows) windowAssigner;
+			this.size = assigner.getSize();
+			this.slide = assigner.getSlide();
+			this.offset = assigner.getOffset();
+		} else {
+			throw new IllegalArgumentException("Pane slicing is only supported for sliding time windows, but got " +
+				windowAssigner.getClass().getSimpleName() + ".");
+		}
+
+		checkArgument(isSupported(size, slide),
+			"The window size must be a multiple of the slide and larger than the slide.");
+
+		this.paneStateDescriptor = checkNotNull(paneStateDescriptor);
+		this.paneCombiner = checkNotNull(paneCombiner);
+	}
+
+	/**
+	 * Returns whether windows of the given size and slide can be composed of panes.
+	 */
+	public static boolean isSupported(long size, long slide) {
+		return slide > 0 && size > slide && size % slide == 0;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void open() throws Exception {
+		super.open();
+		paneState = (InternalAppendingState<K, TimeWindow, IN, SV, ACC>)
+				getOrCreateKeyedState(windowSerializer, paneStateDescriptor);
+	}
+
+	@Override
+	public void processElement(StreamRecord<IN> element) throws Exception {
+		final long timestamp;
+		if (windowAssigner.isEventTime()) {
+			timestamp = element.getTimestamp();
+			if (timestamp == Long.MIN_VALUE) {
+				throw new RuntimeException("Record has Long.MIN_VALUE timestamp (= no timestamp marker). " +
+					"Is the time characteristic set to 'ProcessingTime', or did you forget to call " +
+					"'DataStream.assignTimestampsAndWatermarks(...)'?");
+			}
+		} else {
+			timestamp = windowAssignerContext.getCurrentProcessingTime();
+		}
+
+		final long paneStart = TimeWindow.getWindowStartWithOffset(timestamp, offset, slide);
+
+		// the last window that contains the pane is also the last one to be cleaned up
+		// 包含这个窗格的最后一个窗口，如果它已经 late，说明所有包含这个窗格的窗口都 late 了
+		if (isWindowLate(new TimeWindow(paneStart, paneStart + size))) {
+			if (isElementLate(element)) {
+				if (lateDataOutputTag != null) {
+					sideOutput(element);
+				} else {
+					this.numLateRecordsDropped.inc();
+				}
+			}
+			return;
+		}
+
+		paneState.setCurrentNamespace(new TimeWindow(paneStart, paneStart + slide));
+		paneState.add(element.getValue());
+
+		triggerContext.key = this.<K>getKeyedStateBackend().getCurrentKey();
+
+		// walk the windows containing the pane in the order in which they fire
+		// 按照触发的顺序遍历包含这个窗格的窗口
+		for (long start = paneStart - size + slide; start <= paneStart; start += slide) {
+			TimeWindow window = new TimeWindow(start, start + size);
+			if (isWindowLate(window)) {
+				continue;
+			}
+
+			if (windowAssigner.isEventTime() && window.maxTimestamp() <= internalTimerService.currentWatermark()) {
+				// late firing within the allowed lateness, as the EventTimeTrigger would do
+				// 在允许的延迟内到达的元素，和 EventTimeTrigger 一样立即触发窗口
+				emitWindow(window);
+				registerTimer(window, cleanupTime(window));
+				continue;
+			}
+
+			// the following windows are registered when this one fires
+			// 后面的窗口会在这个窗口触发的时候注册
+			registerTimer(window, window.maxTimestamp());
+			break;
+		}
+	}
+
+	@Override
+	public void onEventTime(InternalTimer<K, TimeWindow> timer) throws Exception {
+		if (windowAssigner.isEventTime()) {
+			onTimer(timer);
+		}
+	}
+
+	@Override
+	public void onProcessingTime(InternalTimer<K, TimeWindow> timer) throws Exception {
+		if (!windowAssigner.isEventTime()) {
+			onTimer(timer);
+		}
+	}
+
+	private void onTimer(InternalTimer<K, TimeWindow> timer) throws Exception {
+		final TimeWindow window = timer.getNamespace();
+		triggerContext.key = timer.getKey();
+		triggerContext.window = window;
+
+		if (timer.getTimestamp() == window.maxTimestamp()) {
+			if (emitWindow(window)) {
+				TimeWindow nextWindow = new TimeWindow(window.getStart() + slide, window.getEnd() + slide);
+				registerTimer(nextWindow, nextWindow.maxTimestamp());
+			}
+
+			long cleanupTime = cleanupTime(window);
+			if (cleanupTime != window.maxTimestamp() && cleanupTime != Long.MAX_VALUE) {
+				registerTimer(window, cleanupTime);
+			}
+		}
+
+		if (isCleanupTime(window, timer.getTimestamp())) {
+			// no later window contains the first pane of this window
+			// 后面的窗口都不包含这个窗口的第一个窗格
+			paneState.setCurrentNamespace(new TimeWindow(window.getStart(), window.getStart() + slide));
+			paneState.clear();
+
+			processContext.window = window;
+			processContext.clear();
+		}
+	}
+
+	/**
+	 * Combines the panes of the given window and emits the result if any pane was non-empty.
+	 * The caller must ensure that the correct key is set in the state backend and the
+	 * triggerContext object.
+	 *
+	 * @return true if a pane other than the first pane of the window is non-empty, i.e. if the
+	 * next window has contents.
+	 */
+	private boolean emitWindow(TimeWindow window) throws Exception {
+		SV accumulator = null;
+		boolean hasFollowingPanes = false;
+
+		for (long paneStart = window.getStart(); paneStart < window.getEnd(); paneStart += slide) {
+			paneState.setCurrentNamespace(new TimeWindow(paneStart, paneStart + slide));
+			SV pane = paneState.getInternal();
+			if (pane != null) {
+				accumulator = paneCombiner.add(accumulator, pane);
+				hasFollowingPanes |= paneStart != window.getStart();
+			}
+		}
+
+		if (accumulator != null) {
+			emitWindowContents(window, paneCombiner.getResult(accumulator));
+		}
+		return hasFollowingPanes;
+	}
+
+	private void registerTimer(TimeWindow window, long time) {
+		if (windowAssigner.isEventTime()) {
+			internalTimerService.registerEventTimeTimer(window, time);
+		} else {
+			internalTimerService.registerProcessingTimeTimer(window, time);
+		}
+	}
+
+	@Override
+	public void close() throws Exception {
+		super.close();
+		paneState = null;
+	}
+
+	@Override
+	public void dispose() throws Exception {
+		super.dispose();
+		paneState = null;
+	}
+
+	// ------------------------------------------------------------------------
+	//  Pane combiners
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Combines the pre-aggregated panes of a window into the window contents. The pane values
+	 * are owned by the state backend and must not be modified.
+	 *
+	 * @param <SV> The type of the value stored per pane.
+	 * @param <ACC> The type of the aggregated window contents.
+	 */
+	public interface PaneCombiner<SV, ACC> extends Serializable {
+
+		/**
+		 * Adds a pane to the accumulator.
+		 *
+		 * @param accumulator The accumulator, null for the first non-empty pane of a window.
+		 * @param pane The pre-aggregated pane.
+		 * @return The accumulator including the pane.
+		 */
+		SV add(SV accumulator, SV pane) throws Exception;
+
+		/**
+		 * Returns the window contents for the accumulated panes.
+		 */
+		ACC getResult(SV accumulator) throws Exception;
+	}
+
+	/**
+	 * A {@link PaneCombiner} for panes that are aggregated with a {@link ReduceFunction}.
+	 */
+	public static class ReducePaneCombiner<T> implements PaneCombiner<T, T> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final ReduceFunction<T> reduceFunction;
+
+		private final TypeSerializer<T> serializer;
+
+		public ReducePaneCombiner(ReduceFunction<T> reduceFunction, TypeSerializer<T> serializer) {
+			this.reduceFunction = checkNotNull(reduceFunction);
+			this.serializer = checkNotNull(serializer);
+		}
+
+		@Override
+		public T add(T accumulator, T pane) throws Exception {
+			// the reduce function may reuse its first argument, which must not be a pane
+			// reduce 函数可能会复用第一个参数，所以第一个窗格需要拷贝一份
+			return accumulator == null ? serializer.copy(pane) : reduceFunction.reduce(accumulator, pane);
+		}
+
+		@Override
+		public T getResult(T accumulator) {
+			return accumulator;
+		}
+	}
+
+	/**
+	 * A {@link PaneCombiner} for panes that are aggregated with an {@link AggregateFunction}.
+	 */
+	public static class AggregatePaneCombiner<IN, A, R> implements PaneCombiner<A, R> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final AggregateFunction<IN, A, R> aggregateFunction;
+
+		private final TypeSerializer<A> accumulatorSerializer;
+
+		public AggregatePaneCombiner(AggregateFunction<IN, A, R> aggregateFunction, TypeSerializer<A> accumulatorSerializer) {
+			this.aggregateFunction = checkNotNull(aggregateFunction);
+			this.accumulatorSerializer = checkNotNull(accumulatorSerializer);
+		}
+
+		@Override
+		public A add(A accumulator, A pane) {
+			// merge may reuse either of its arguments, so never hand it a pane
+			// merge 可能会复用任意一个参数，所以窗格需要拷贝一份
+			A copy = accumulatorSerializer.copy(pane);
+			return accumulator == null ? copy : aggregateFunction.merge(accumulator, copy);
+		}
+
+		@Override
+		public R getResult(A accumulator) {
+			return aggregateFunction.getResult(accumulator);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	// Getters for testing
+	// ------------------------------------------------------------------------
+
+	@VisibleForTesting
+	public PaneCombiner<SV, ACC> getPaneCombiner() {
+		return paneCombiner;
+	}
+
+	@Override
+	@VisibleForTesting
+	public StateDescriptor<? extends AppendingState<IN, ACC>, ?> getStateDescriptor() {
+		return paneStateDescriptor;
+	}
+}
@@ -0,0 +1,335 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.streaming.runtime.operators.windowing;
+
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.api.common.functions.FlatJoinFunction;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.runtime.state.internal.InternalListState;
+import org.apache.flink.streaming.api.datastream.CoGroupedStreams.TaggedUnion;
+import org.apache.flink.streaming.api.operators.AbstractUdfStreamOperator;
+import org.apache.flink.streaming.api.operators.ChainingStrategy;
+import org.apache.flink.streaming.api.operators.InternalTimer;
+import org.apache.flink.streaming.api.operators.InternalTimerService;
+import org.apache.flink.streaming.api.operators.TimestampedCollector;
+import org.apache.flink.streaming.api.operators.Triggerable;
+import org.apache.flink.streaming.api.operators.TwoInputStreamOperator;
+import org.apache.flink.streaming.api.windowing.assigners.MergingWindowAssigner;
+import org.apache.flink.streaming.api.windowing.assigners.WindowAssigner;
+import org.apache.flink.streaming.api.windowing.windows.Window;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+
+import java.util.Collection;
+
+import static org.apache.flink.util.Preconditions.checkArgument;
+import static org.apache.flink.util.Preconditions.checkNotNull;
+
+/**
+ * An operator that joins the elements of two keyed inputs that fall into the same window, as a replacement of the
+ * {@link WindowOperator} over the tagged union of both inputs that is used by
+ * {@link org.apache.flink.streaming.api.datastream.JoinedStreams}.
+ *
+ * 两个 keyed 输入的窗口 join 操作符，替代 JoinedStreams 中基于 TaggedUnion 的 WindowOperator
+ *
+ * <p>The elements of each side are kept in a separate list state per key and window, serialized with the serializer
+ * of their own type. The operator behaves like a window with the default event-time or processing-time trigger of
+ * the window assigner and supports non-merging window assigners only. It emits the join results in one of two modes:
+ *
+ * <ul>
+ *     <li>On trigger: when the window fires, every element of the first side is joined with every element of the
+ *     second side. A late element (within the allowed lateness) fires the window again, like the default trigger.</li>
+ *     <li>Eagerly (symmetric hash join): every element is joined with the elements of the other side that are already
+ *     in the window when it arrives. Each pair is thus emitted exactly once and as early as possible, also for late
+ *     elements. Nothing is emitted when the window fires.</li>
+ * </ul>
+ *
+ * 两侧的元素分别存在以窗口为命名空间的 ListState 中
+ * 可以在窗口触发时输出 join 结果，也可以在元素到达时立即和另一侧已有的元素 join（对称哈希 join）
+ *
+ * <p>In both modes, the results carry the max timestamp of the window as their timestamp, and the state of a window
+ * is cleared when the time passes the end of the window plus the allowed lateness.
+ *
+ * @param <K> The type of the join key.
+ * @param <IN1> The type of the elements of the first input.
+ * @param <IN2> The type of the elements of the second input.
+ * @param <OUT> The type of the join results.
+ * @param <W> The type of {@code Window} that the {@code WindowAssigner} assigns.
+ */
+@Internal
+public class WindowJoinOperator<K, IN1, IN2, OUT, W extends Window>
+	extends AbstractUdfStreamOperator<OUT, FlatJoinFunction<IN1, IN2, OUT>>
+	implements TwoInputStreamOperator<IN1, IN2, OUT>, Triggerable<K, W> {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String LATE_ELEMENTS_DROPPED_METRIC_NAME = "numLateRecordsDropped";
+
+	// ------------------------------------------------------------------------
+	// Configuration values and user functions
+	// ------------------------------------------------------------------------
+
+	private final WindowAssigner<? super TaggedUnion<IN1, IN2>, W> windowAssigner;  // 窗口分配器
+
+	/** For serializing the window in checkpoints. */
+	private final TypeSerializer<W> windowSerializer;
+
+	private final ListStateDescriptor<IN1> leftStateDescriptor;  // 第一个输入的元素
+
+	private final ListStateDescriptor<IN2> rightStateDescriptor;  // 第二个输入的元素
+
+	/** The allowed lateness for elements, only used for event-time windows. */
+	private final long allowedLateness;
+
+	/** Whether the elements are joined as they arrive instead of when the window fires. */
+	private final boolean eagerEmission;
+
+	// ------------------------------------------------------------------------
+	// State that is not checkpointed
+	// ------------------------------------------------------------------------
+
+	private transient InternalListState<K, W, IN1> leftState;
+
+	private transient InternalListState<K, W, IN2> rightState;
+
+	private transient InternalTimerService<W> internalTimerService;
+
+	/** This is given to the {@code FlatJoinFunction} for emitting elements with a given timestamp. */
+	private transient TimestampedCollector<OUT> collector;
+
+	private transient WindowAssigner.WindowAssignerContext windowAssignerContext;
+
+	private transient Counter numLateRecordsDropped;
+
+	public WindowJoinOperator(
+			WindowAssigner<? super TaggedUnion<IN1, IN2>, W> windowAssigner,
+			TypeSerializer<W> windowSerializer,
+			ListStateDescriptor<IN1> leftStateDescriptor,
+			ListStateDescriptor<IN2> rightStateDescriptor,
+			FlatJoinFunction<IN1, IN2, OUT> joinFunction,
+			long allowedLateness,
+			boolean eagerEmission) {
+
+		super(joinFunction);
+
+		checkArgument(!(windowAssigner instanceof MergingWindowAssigner),
+			"The window join operator does not support merging windows.");
+		checkArgument(allowedLateness >= 0);
+
+		this.windowAssigner = checkNotNull(windowAssigner);
+		this.windowSerializer = checkNotNull(windowSerializer);
+		this.leftStateDescriptor = checkNotNull(leftStateDescriptor);
+		this.rightStateDescriptor = checkNotNull(rightStateDescriptor);
+		this.allowedLateness = allowedLateness;
+		this.eagerEmission = eagerEmission;
+
+		setChainingStrategy(ChainingStrategy.ALWAYS);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void open() throws Exception {
+		super.open();
+
+		this.numLateRecordsDropped = metrics.counter(LATE_ELEMENTS_DROPPED_METRIC_NAME);
+		this.collector = new TimestampedCollector<>(output);
+
+		this.internalTimerService = getInternalTimerService("window-join-timers", windowSerializer, this);
+
+		this.windowAssignerContext = new WindowAssigner.WindowAssignerContext() {
+			@Override
+			public long getCurrentProcessingTime() {
+				return internalTimerService.currentProcessingTime();
+			}
+		};
+
+		this.leftState = (InternalListState<K, W, IN1>) getOrCreateKeyedState(windowSerializer, leftStateDescriptor);
+		this.rightState = (InternalListState<K, W, IN2>) getOrCreateKeyedState(windowSerializer, rightStateDescriptor);
+	}
+
+	@Override
+	public void processElement1(StreamRecord<IN1> element) throws Exception {
+		final IN1 value = element.getValue();
+		final Collection<W> windows = assignWindows(TaggedUnion.one(value), element);
+
+		boolean isSkippedElement = true;
+		for (W window : windows) {
+			if (isWindowLate(window)) {
+				continue;
+			}
+			isSkippedElement = false;
+
+			leftState.setCurrentNamespace(window);
+			leftState.add(value);
+
+			// 对称哈希 join：和另一侧已经到达的元素 join
+			if (eagerEmission) {
+				rightState.setCurrentNamespace(window);
+				Iterable<IN2> rightElements = rightState.get();
+				if (rightElements != null) {
+					collector.setAbsoluteTimestamp(window.maxTimestamp());
+					for (IN2 right : rightElements) {
+						userFunction.join(value, right, collector);
+					}
+				}
+			} else if (isFired(window)) {
+				emitWindowContents(window);
+			}
+
+			registerTimers(window);
+		}
+
+		if (isSkippedElement) {
+			numLateRecordsDropped.inc();
+		}
+	}
+
+	@Override
+	public void processElement2(StreamRecord<IN2> element) throws Exception {
+		final IN2 value = element.getValue();
+		final Collection<W> windows = assignWindows(TaggedUnion.two(value), element);
+
+		boolean isSkippedElement = true;
+		for (W window : windows) {
+			if (isWindowLate(window)) {
+				continue;
+			}
+			isSkippedElement = false;
+
+			rightState.setCurrentNamespace(window);
+			rightState.add(value);
+
+			if (eagerEmission) {
+				leftState.setCurrentNamespace(window);
+				Iterable<IN1> leftElements = leftState.get();
+				if (leftElements != null) {
+					collector.setAbsoluteTimestamp(window.maxTimestamp());
+					for (IN1 left : leftElements) {
+						userFunction.join(left, value, collector);
+					}
+				}
+			} else if (isFired(window)) {
+				emitWindowContents(window);
+			}
+
+			registerTimers(window);
+		}
+
+		if (isSkippedElement) {
+			numLateRecordsDropped.inc();
+		}
+	}
+
+	@Override
+	public void onEventTime(InternalTimer<K, W> timer) throws Exception {
+		onTimer(timer);
+	}
+
+	@Override
+	public void onProcessingTime(InternalTimer<K, W> timer) throws Exception {
+		onTimer(timer);
+	}
+
+	private void onTimer(InternalTimer<K, W> timer) throws Exception {
+		final W window = timer.getNamespace();
+
+		if (!eagerEmission && timer.getTimestamp() == window.maxTimestamp()) {
+			emitWindowContents(window);
+		}
+
+		if (timer.getTimestamp() == cleanupTime(window)) {
+			leftState.setCurrentNamespace(window);
+			leftState.clear();
+			rightState.setCurrentNamespace(window);
+			rightState.clear();
+		}
+	}
+
+	private Collection<W> assignWindows(TaggedUnion<IN1, IN2> value, StreamRecord<?> element) {
+		return windowAssigner.assignWindows(value, element.getTimestamp(), windowAssignerContext);
+	}
+
+	/**
+	 * Joins all elements of the window, i.e. fires the window.
+	 */
+	private void emitWindowContents(W window) throws Exception {
+		leftState.setCurrentNamespace(window);
+		Iterable<IN1> leftElements = leftState.get();
+		if (leftElements == null) {
+			return;
+		}
+
+		rightState.setCurrentNamespace(window);
+		Iterable<IN2> rightElements = rightState.get();
+		if (rightElements == null) {
+			return;
+		}
+
+		collector.setAbsoluteTimestamp(window.maxTimestamp());
+		for (IN1 left : leftElements) {
+			for (IN2 right : rightElements) {
+				userFunction.join(left, right, collector);
+			}
+		}
+	}
+
+	/**
+	 * Registers the timer at which the window fires and the timer at which its state is cleared (the same timer if
+	 * there is no allowed lateness). Timers are deduplicated by the timer service.
+	 */
+	private void registerTimers(W window) {
+		if (windowAssigner.isEventTime()) {
+			if (!eagerEmission) {
+				internalTimerService.registerEventTimeTimer(window, window.maxTimestamp());
+			}
+			internalTimerService.registerEventTimeTimer(window, cleanupTime(window));
+		} else {
+			internalTimerService.registerProcessingTimeTimer(window, cleanupTime(window));
+		}
+	}
+
+	/**
+	 * Returns {@code true} if the default event-time trigger already fired the window, so that a late element fires
+	 * it again.
+	 */
+	private boolean isFired(W window) {
+		return windowAssigner.isEventTime() && window.maxTimestamp() <= internalTimerService.currentWatermark();
+	}
+
+	/**
+	 * Returns {@code true} if the watermark is after the end timestamp plus the allowed lateness of the given window.
+	 */
+	private boolean isWindowLate(W window) {
+		return windowAssigner.isEventTime() && cleanupTime(window) <= internalTimerService.currentWatermark();
+	}
+
+	/**
+	 * Returns the cleanup time for a window, which is {@code window.maxTimestamp + allowedLateness} for event-time
+	 * windows (or {@link Long#MAX_VALUE} on overflow).
+	 */
+	private long cleanupTime(W window) {
+		if (windowAssigner.isEventTime()) {
+			long cleanupTime = window.maxTimestamp() + allowedLateness;
+			return cleanupTime >= window.maxTimestamp() ? cleanupTime : Long.MAX_VALUE;
+		} else {
+			return window.maxTimestamp();
+		}
+	}
+}
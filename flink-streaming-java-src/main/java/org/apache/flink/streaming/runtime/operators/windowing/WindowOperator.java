@@ -606,7 +606,7 @@ public class WindowOperator<K, IN, ACC, OUT, W extends Window>
 	 * 窗口触发的时候，output 的 StreamRecord 的 ts 都是窗口的右边界
 	 */
 	@SuppressWarnings("unchecked")
-	private void emitWindowContents(W window, ACC contents) throws Exception {
+	protected void emitWindowContents(W window, ACC contents) throws Exception {
 		timestampedCollector.setAbsoluteTimestamp(window.maxTimestamp());
 		processContext.window = window;
 		userFunction.process(triggerContext.key, window, processContext, contents, timestampedCollector);
@@ -720,7 +720,7 @@ public class WindowOperator<K, IN, ACC, OUT, W extends Window>
 	 * 返回一个窗口的清理时间，等于 window.maxTimestamp + allowedLateness
 	 * 如果这个值大于 LONG.MAX_VALUE，函数会返回 LONG.MAX_VALUE
 	 */
-	private long cleanupTime(W window) {
+	protected long cleanupTime(W window) {
 		// 只有事件时间有延迟
 		if (windowAssigner.isEventTime()) {
 			long cleanupTime = window.maxTimestamp() + allowedLateness;
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.flink.streaming.runtime.partitioner;
+
+import org.apache.flink.annotation.Internal;
+import org.apache.flink.runtime.io.network.api.writer.BacklogAwareChannelSelector;
+import org.apache.flink.runtime.plugable.SerializationDelegate;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+
+import javax.annotation.Nullable;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Partitioner that distributes the data by cycling through the output channels like the
+ * {@link RebalancePartitioner}, but avoids channels whose consumers fall behind.
+ *
+ * <p>For each record, the partitioner compares the backlog of the next channel in round-robin order with the backlog
+ * of a randomly chosen channel, and selects the one with the smaller backlog (the power of two choices). As long as
+ * the consumers keep up, all backlogs are equal and the data is distributed evenly. A slow consumer builds up a
+ * backlog, so it receives fewer records and the throughput follows the faster consumers. The selection costs O(1)
+ * regardless of the number of channels.
+ *
+ * @param <T> Type of the elements in the Stream being rebalanced
+ */
+@Internal
+public class LoadAwareRebalancePartitioner<T> extends StreamPartitioner<T> implements BacklogAwareChannelSelector {
+	private static final long serialVersionUID = 1L;
+
+	private int nextChannelToSendTo;
+
+	/** The state of the xorshift generator of the random channels. */
+	private long randomState;
+
+	@Nullable
+	private transient ChannelBacklog channelBacklog;
+
+	@Override
+	public void setup(int numberOfChannels) {
+		super.setup(numberOfChannels);
+
+		nextChannelToSendTo = ThreadLocalRandom.current().nextInt(numberOfChannels);
+		randomState = ThreadLocalRandom.current().nextLong() | 1L;
+	}
+
+	@Override
+	public void setChannelBacklog(ChannelBacklog channelBacklog) {
+		this.channelBacklog = channelBacklog;
+	}
+
+	@Override
+	public int selectChannel(SerializationDelegate<StreamRecord<T>> record) {
+		if (++nextChannelToSendTo == numberOfChannels) {
+			nextChannelToSendTo = 0;
+		}
+
+		final ChannelBacklog backlog = channelBacklog;
+		if (backlog == null || numberOfChannels < 2) {
+			return nextChannelToSendTo;
+		}
+
+		final int randomChannel = nextRandomChannel();
+		if (randomChannel != nextChannelToSendTo &&
+				backlog.getNumberOfQueuedBuffers(randomChannel) < backlog.getNumberOfQueuedBuffers(nextChannelToSendTo)) {
+			return randomChannel;
+		}
+		return nextChannelToSendTo;
+	}
+
+	private int nextRandomChannel() {
+		long x = randomState;
+		x ^= x << 13;
+		x ^= x >>> 7;
+		x ^= x << 17;
+		randomState = x;
+		return (int) (((x >>> 32) * numberOfChannels) >>> 32);
+	}
+
+	@Override
+	public StreamPartitioner<T> copy() {
+		return new LoadAwareRebalancePartitioner<>();
+	}
+
+	@Override
+	public String toString() {
+		return "LOAD_AWARE_REBALANCE";
+	}
+}
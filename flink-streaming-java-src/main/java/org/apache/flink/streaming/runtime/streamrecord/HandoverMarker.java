@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.streaming.runtime.streamrecord;
+
+import org.apache.flink.annotation.Internal;
+
+/**
+ * Placeholder that is serialized in place of a {@link StreamRecord} which was handed over by reference to a
+ * consumer in the same TaskManager. The consumer replaces the marker with the next record of the
+ * {@link org.apache.flink.runtime.io.network.partition.ObjectHandoverQueue} of the channel.
+ */
+/**
+ * 同一个 TaskManager 中的下游直接拿到 StreamRecord 的引用时，网络 buffer 中只写入这个占位符
+ * 下游读到它之后，从对应 channel 的 ObjectHandoverQueue 中取出真正的 record
+ */
+@Internal
+public final class HandoverMarker extends StreamElement {
+
+	/** The singleton instance of the marker. */
+	public static final HandoverMarker INSTANCE = new HandoverMarker();
+
+	private HandoverMarker() {}
+
+	@Override
+	public String toString() {
+		return "HandoverMarker";
+	}
+}
@@ -63,6 +63,14 @@ public abstract class StreamElement {
 		return getClass() == LatencyMarker.class;
 	}
 
+	/**
+	 * Checks whether this element is a placeholder for a record that was handed over by reference.
+	 * @return True, if this element is a {@link HandoverMarker}, false otherwise.
+	 */
+	public final boolean isHandoverMarker() {
+		return getClass() == HandoverMarker.class;
+	}
+
 	/**
 	 * Casts this element into a StreamRecord.
 	 * @return This element as a stream record.
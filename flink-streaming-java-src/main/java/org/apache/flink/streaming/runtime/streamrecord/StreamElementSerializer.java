@@ -53,6 +53,7 @@ public final class StreamElementSerializer<T> extends TypeSerializer<StreamEleme
 	private static final int TAG_WATERMARK = 2;
 	private static final int TAG_LATENCY_MARKER = 3;
 	private static final int TAG_STREAM_STATUS = 4;
+	private static final int TAG_HANDOVER_MARKER = 5;
 
 
 	private final TypeSerializer<T> typeSerializer;
@@ -104,7 +105,7 @@ public final class StreamElementSerializer<T> extends TypeSerializer<StreamEleme
 			StreamRecord<T> fromRecord = from.asRecord();
 			return fromRecord.copy(typeSerializer.copy(fromRecord.getValue()));
 		}
-		else if (from.isWatermark() || from.isStreamStatus() || from.isLatencyMarker()) {
+		else if (from.isWatermark() || from.isStreamStatus() || from.isLatencyMarker() || from.isHandoverMarker()) {
 			// is immutable
 			return from;
 		}
@@ -123,7 +124,7 @@ public final class StreamElementSerializer<T> extends TypeSerializer<StreamEleme
 			fromRecord.copyTo(valueCopy, reuseRecord);
 			return reuse;
 		}
-		else if (from.isWatermark() || from.isStreamStatus() || from.isLatencyMarker()) {
+		else if (from.isWatermark() || from.isStreamStatus() || from.isLatencyMarker() || from.isHandoverMarker()) {
 			// is immutable
 			return from;
 		}
@@ -156,6 +157,9 @@ public final class StreamElementSerializer<T> extends TypeSerializer<StreamEleme
 			target.writeLong(source.readLong());
 			target.writeLong(source.readLong());
 			target.writeInt(source.readInt());
+		}
+		else if (tag == TAG_HANDOVER_MARKER) {
+			// no payload
 		} else {
 			throw new IOException("Corrupt stream, found tag: " + tag);
 		}
@@ -189,6 +193,9 @@ public final class StreamElementSerializer<T> extends TypeSerializer<StreamEleme
 			target.writeLong(value.asLatencyMarker().getOperatorId().getUpperPart());
 			target.writeInt(value.asLatencyMarker().getSubtaskIndex());
 		}
+		else if (value.isHandoverMarker()) {
+			target.write(TAG_HANDOVER_MARKER);
+		}
 		else {
 			throw new RuntimeException();
 		}
@@ -213,6 +220,9 @@ public final class StreamElementSerializer<T> extends TypeSerializer<StreamEleme
 		else if (tag == TAG_LATENCY_MARKER) {
 			return new LatencyMarker(source.readLong(), new OperatorID(source.readLong(), source.readLong()), source.readInt());
 		}
+		else if (tag == TAG_HANDOVER_MARKER) {
+			return HandoverMarker.INSTANCE;
+		}
 		else {
 			throw new IOException("Corrupt stream, found tag: " + tag);
 		}
@@ -240,6 +250,9 @@ public final class StreamElementSerializer<T> extends TypeSerializer<StreamEleme
 		else if (tag == TAG_LATENCY_MARKER) {
 			return new LatencyMarker(source.readLong(), new OperatorID(source.readLong(), source.readLong()), source.readInt());
 		}
+		else if (tag == TAG_HANDOVER_MARKER) {
+			return HandoverMarker.INSTANCE;
+		}
 		else {
 			throw new IOException("Corrupt stream, found tag: " + tag);
 		}
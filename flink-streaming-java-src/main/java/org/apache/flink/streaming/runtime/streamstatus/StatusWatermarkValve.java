@@ -23,6 +23,8 @@ import org.apache.flink.annotation.VisibleForTesting;
 import org.apache.flink.streaming.api.watermark.Watermark;
 import org.apache.flink.util.Preconditions;
 
+import java.util.Arrays;
+
 import static org.apache.flink.util.Preconditions.checkArgument;
 import static org.apache.flink.util.Preconditions.checkNotNull;
 
@@ -66,6 +68,24 @@ public class StatusWatermarkValve {
 	 */
 	private final InputChannelStatus[] channelStatuses;
 
+	/**
+	 * Tournament tree over the watermarks of the aligned channels, which is updated whenever the watermark or the
+	 * alignment of a channel changes. The leaves start at index {@link #firstLeaf} and hold the watermark of a channel
+	 * if it is aligned or {@link Long#MAX_VALUE} otherwise, every inner node holds the minimum of its two children.
+	 * The root at index 1 is therefore the min watermark across all aligned channels.
+	 */
+	// 对齐通道水印的锦标赛树（最小值树），更新代价为 O(log n)，根节点是所有对齐通道的最小水印
+	private final long[] alignedWatermarks;
+
+	/** The index of the leaf of the first channel in {@link #alignedWatermarks}. */
+	private final int firstLeaf;
+
+	/** The number of channels that are watermark-aligned. */
+	private int numAlignedChannels;
+
+	/** The number of channels that are active. */
+	private int numActiveChannels;
+
 	/** The last watermark emitted from the valve. */
 	// value emit 的上一个 watermark
 	private long lastOutputWatermark;
@@ -94,6 +114,17 @@ public class StatusWatermarkValve {
 			channelStatuses[i].isWatermarkAligned = true;
 		}
 
+		this.firstLeaf = Integer.highestOneBit(numInputChannels) == numInputChannels
+			? numInputChannels
+			: Integer.highestOneBit(numInputChannels) << 1;
+		this.alignedWatermarks = new long[2 * firstLeaf];
+		Arrays.fill(alignedWatermarks, Long.MAX_VALUE);
+		for (int i = 0; i < numInputChannels; i++) {
+			updateAlignedWatermark(i);
+		}
+		this.numAlignedChannels = numInputChannels;
+		this.numActiveChannels = numInputChannels;
+
 		this.outputHandler = checkNotNull(outputHandler);
 
 		this.lastOutputWatermark = Long.MIN_VALUE;
@@ -125,6 +156,11 @@ public class StatusWatermarkValve {
 				// 更新对齐状态
 				if (!channelStatuses[channelIndex].isWatermarkAligned && watermarkMillis >= lastOutputWatermark) {
 					channelStatuses[channelIndex].isWatermarkAligned = true;
+					numAlignedChannels++;
+				}
+
+				if (channelStatuses[channelIndex].isWatermarkAligned) {
+					updateAlignedWatermark(channelIndex);
 				}
 
 				// now, attempt to find a new min watermark across all aligned channels
@@ -152,15 +188,20 @@ public class StatusWatermarkValve {
 			// handle active -> idle toggle for the input channel
 			// 将当前 channel 的状态从 active 变为 idle
 			channelStatuses[channelIndex].streamStatus = StreamStatus.IDLE;
+			numActiveChannels--;
 
 			// the channel is now idle, therefore not aligned
 			// 当前 channel 空闲了，因此不对齐了
-			channelStatuses[channelIndex].isWatermarkAligned = false;
+			if (channelStatuses[channelIndex].isWatermarkAligned) {
+				channelStatuses[channelIndex].isWatermarkAligned = false;
+				numAlignedChannels--;
+				updateAlignedWatermark(channelIndex);
+			}
 
 			// if all input channels of the valve are now idle, we need to output an idle stream
 			// status from the valve (this also marks the valve as idle)
 			// 如果所有的输入通道都空闲了，我们需要输出一个 idle 流状态
-			if (!InputChannelStatus.hasActiveChannels(channelStatuses)) {
+			if (numActiveChannels == 0) {
 
 				// now that all input channels are idle and no channels will continue to advance its watermark,
 				// we should "flush" all watermarks across all channels; effectively, this means emitting
@@ -188,12 +229,15 @@ public class StatusWatermarkValve {
 			// handle idle -> active toggle for the input channel
 			// 将当前 channel 的状态从 idle 变为 active
 			channelStatuses[channelIndex].streamStatus = StreamStatus.ACTIVE;
+			numActiveChannels++;
 
 			// if the last watermark of the input channel, before it was marked idle, is still larger than
 			// the overall last output watermark of the valve, then we can set the channel to be aligned already.
 			// 重新对齐
 			if (channelStatuses[channelIndex].watermark >= lastOutputWatermark) {
 				channelStatuses[channelIndex].isWatermarkAligned = true;
+				numAlignedChannels++;
+				updateAlignedWatermark(channelIndex);
 			}
 
 			// if the valve was previously marked to be idle, mark it as active and output an active stream
@@ -208,26 +252,40 @@ public class StatusWatermarkValve {
 
 	// 尝试在所有对齐的通道上找到新的最小水印
 	private void findAndOutputNewMinWatermarkAcrossAlignedChannels() {
-		long newMinWatermark = Long.MAX_VALUE;
-		boolean hasAlignedChannels = false;
-
-		// determine new overall watermark by considering only watermark-aligned channels across all channels
-		for (InputChannelStatus channelStatus : channelStatuses) {
-			if (channelStatus.isWatermarkAligned) {
-				hasAlignedChannels = true;
-				newMinWatermark = Math.min(channelStatus.watermark, newMinWatermark);
-			}
-		}
+		// the overall watermark considering only watermark-aligned channels is the root of the tournament tree
+		long newMinWatermark = alignedWatermarks[1];
 
 		// we acknowledge and output the new overall watermark if it really is aggregated
 		// from some remaining aligned channel, and is also larger than the last output watermark
 		// 更新全局的 watermark
-		if (hasAlignedChannels && newMinWatermark > lastOutputWatermark) {
+		if (numAlignedChannels > 0 && newMinWatermark > lastOutputWatermark) {
 			lastOutputWatermark = newMinWatermark;
 			outputHandler.handleWatermark(new Watermark(lastOutputWatermark));
 		}
 	}
 
+	/**
+	 * Updates the leaf of the given channel in the tournament tree of aligned watermarks and the minimums on the path
+	 * to the root.
+	 */
+	// 更新通道对应的叶子节点，并沿路径向上更新最小值
+	private void updateAlignedWatermark(int channelIndex) {
+		InputChannelStatus channelStatus = channelStatuses[channelIndex];
+
+		int node = firstLeaf + channelIndex;
+		alignedWatermarks[node] = channelStatus.isWatermarkAligned ? channelStatus.watermark : Long.MAX_VALUE;
+
+		while (node > 1) {
+			node >>>= 1;
+			long min = Math.min(alignedWatermarks[2 * node], alignedWatermarks[2 * node + 1]);
+			if (alignedWatermarks[node] == min) {
+				// the minimums of all further ancestors do not change either
+				break;
+			}
+			alignedWatermarks[node] = min;
+		}
+	}
+
 	/**
 	 * 从所有 channel 中找出 watermark 最大的
 	 */
@@ -267,21 +325,6 @@ public class StatusWatermarkValve {
 		protected long watermark;
 		protected StreamStatus streamStatus;
 		protected boolean isWatermarkAligned;
-
-		/**
-		 * Utility to check if at least one channel in a given array of input channels is active.
-		 */
-		/**
-		 * 检查是否至少有一个通道是 active 的
-		 */
-		private static boolean hasActiveChannels(InputChannelStatus[] channelStatuses) {
-			for (InputChannelStatus status : channelStatuses) {
-				if (status.streamStatus.isActive()) {
-					return true;
-				}
-			}
-			return false;
-		}
 	}
 
 	@VisibleForTesting
@@ -29,6 +29,7 @@ import org.apache.flink.runtime.execution.Environment;
 import org.apache.flink.runtime.io.network.api.CancelCheckpointMarker;
 import org.apache.flink.runtime.io.network.api.CheckpointBarrier;
 import org.apache.flink.runtime.io.network.api.writer.RecordWriter;
+import org.apache.flink.runtime.io.network.partition.ObjectHandoverQueue;
 import org.apache.flink.runtime.metrics.MetricNames;
 import org.apache.flink.runtime.metrics.groups.OperatorIOMetricGroup;
 import org.apache.flink.runtime.metrics.groups.OperatorMetricGroup;
@@ -43,6 +44,7 @@ import org.apache.flink.streaming.api.operators.Output;
 import org.apache.flink.streaming.api.operators.StreamOperator;
 import org.apache.flink.streaming.api.watermark.Watermark;
 import org.apache.flink.streaming.runtime.io.RecordWriterOutput;
+import org.apache.flink.streaming.runtime.io.SharedSerializationOutput;
 import org.apache.flink.streaming.runtime.metrics.WatermarkGauge;
 import org.apache.flink.streaming.runtime.streamrecord.LatencyMarker;
 import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
@@ -60,6 +62,7 @@ import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -378,6 +381,8 @@ public class OperatorChain<OUT, OP extends StreamOperator<OUT>> implements Strea
 
 		if (selectors == null || selectors.isEmpty()) {
 			// simple path, no selector necessary
+			allOutputs = shareSerializationOfStreamOutputs(allOutputs);
+
 			// 只有一个输出
 			if (allOutputs.size() == 1) {
 				return allOutputs.get(0).f0;
@@ -422,6 +427,51 @@ public class OperatorChain<OUT, OP extends StreamOperator<OUT>> implements Strea
 		}
 	}
 
+	/**
+	 * Replaces the network outputs that emit the same (side) output with equal serializers by one
+	 * {@link SharedSerializationOutput}, which serializes each record only once for all of them. The
+	 * order of the outputs is kept, the shared output takes the position of the first of its outputs.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> List<Tuple2<WatermarkGaugeExposingOutput<StreamRecord<T>>, StreamEdge>> shareSerializationOfStreamOutputs(
+			List<Tuple2<WatermarkGaugeExposingOutput<StreamRecord<T>>, StreamEdge>> allOutputs) {
+
+		// groups the network outputs by output tag and serializer, in the order of their first output
+		Map<Tuple2<OutputTag, TypeSerializer<T>>, List<RecordWriterOutput<T>>> streamOutputGroups = new LinkedHashMap<>();
+		for (Tuple2<WatermarkGaugeExposingOutput<StreamRecord<T>>, StreamEdge> output : allOutputs) {
+			if (output.f0 instanceof RecordWriterOutput) {
+				RecordWriterOutput<T> streamOutput = (RecordWriterOutput<T>) output.f0;
+				if (streamOutput.getOutSerializer() != null) {
+					streamOutputGroups.computeIfAbsent(
+						new Tuple2<>(streamOutput.getOutputTag(), streamOutput.getOutSerializer()),
+						key -> new ArrayList<>()).add(streamOutput);
+				}
+			}
+		}
+
+		if (streamOutputGroups.values().stream().allMatch(group -> group.size() == 1)) {
+			return allOutputs;
+		}
+
+		List<Tuple2<WatermarkGaugeExposingOutput<StreamRecord<T>>, StreamEdge>> outputs = new ArrayList<>(allOutputs.size());
+		for (Tuple2<WatermarkGaugeExposingOutput<StreamRecord<T>>, StreamEdge> output : allOutputs) {
+			if (!(output.f0 instanceof RecordWriterOutput) || ((RecordWriterOutput<T>) output.f0).getOutSerializer() == null) {
+				outputs.add(output);
+				continue;
+			}
+
+			RecordWriterOutput<T> streamOutput = (RecordWriterOutput<T>) output.f0;
+			List<RecordWriterOutput<T>> group = streamOutputGroups.get(
+				new Tuple2<>(streamOutput.getOutputTag(), streamOutput.getOutSerializer()));
+			if (group.size() == 1) {
+				outputs.add(output);
+			} else if (group.get(0) == streamOutput) {
+				outputs.add(new Tuple2<>(new SharedSerializationOutput<>(group), output.f1));
+			}
+		}
+		return outputs;
+	}
+
 	/**
 	 * 创建链式操作符
 	 * @param containingTask 执行的 task
@@ -509,7 +559,13 @@ public class OperatorChain<OUT, OP extends StreamOperator<OUT>> implements Strea
 			outSerializer = upStreamConfig.getTypeSerializerOut(taskEnvironment.getUserClassLoader());
 		}
 
-		return new RecordWriterOutput<>(recordWriter, outSerializer, sideOutputTag, this);
+		RecordWriterOutput<OUT> output = new RecordWriterOutput<>(recordWriter, outSerializer, sideOutputTag, this);
+
+		// 开启后，同一个 TaskManager 中的下游直接拿到 record 的引用，不再序列化
+		if (taskEnvironment.getTaskManagerInfo().getConfiguration().getBoolean(ObjectHandoverQueue.LOCAL_OBJECT_HANDOVER)) {
+			output.enableRecordHandover();
+		}
+		return output;
 	}
 
 	// ------------------------------------------------------------------------
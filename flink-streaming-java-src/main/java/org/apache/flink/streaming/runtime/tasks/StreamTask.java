@@ -37,6 +37,7 @@ import org.apache.flink.runtime.jobgraph.tasks.AbstractInvokable;
 import org.apache.flink.runtime.plugable.SerializationDelegate;
 import org.apache.flink.runtime.state.CheckpointStorageWorkerView;
 import org.apache.flink.runtime.state.CheckpointStreamFactory;
+import org.apache.flink.runtime.state.InputChannelStateHandle;
 import org.apache.flink.runtime.state.StateBackend;
 import org.apache.flink.runtime.state.StateBackendLoader;
 import org.apache.flink.runtime.state.TaskStateManager;
@@ -50,6 +51,7 @@ import org.apache.flink.streaming.api.operators.StreamOperator;
 import org.apache.flink.streaming.api.operators.StreamTaskStateInitializer;
 import org.apache.flink.streaming.api.operators.StreamTaskStateInitializerImpl;
 import org.apache.flink.streaming.runtime.io.RecordWriterOutput;
+import org.apache.flink.streaming.runtime.io.UnalignedBarrierHandler;
 import org.apache.flink.streaming.runtime.partitioner.ConfigurableStreamPartitioner;
 import org.apache.flink.streaming.runtime.partitioner.StreamPartitioner;
 import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
@@ -64,9 +66,12 @@ import javax.annotation.Nullable;
 
 import java.io.Closeable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -217,6 +222,11 @@ public abstract class StreamTask<OUT, OP extends StreamOperator<OUT>>
 	// 存储操作符链向链外 emit 数据使用的 RecordWriter
 	private final List<RecordWriter<SerializationDelegate<StreamRecord<OUT>>>> recordWriters;
 
+	/** The handler of the input barriers, if checkpoints are taken without aligning the inputs. */
+	// 开启不对齐检查点时，用于持久化输入 channel 的 in-flight 数据
+	@Nullable
+	private UnalignedBarrierHandler unalignedBarrierHandler;
+
 	// ------------------------------------------------------------------------
 
 	/**
@@ -439,6 +449,16 @@ public abstract class StreamTask<OUT, OP extends StreamOperator<OUT>>
 				disposeAllOperators();
 			}
 
+			// release the files that the checkpoint storage keeps open for the job
+			if (checkpointStorage != null) {
+				try {
+					checkpointStorage.dispose();
+				}
+				catch (Throwable t) {
+					LOG.error("Could not dispose the checkpoint storage of stream task", t);
+				}
+			}
+
 			// release the output resources. this method should never fail.
 			// 释放 output resources，释放 recordWriter
 			if (operatorChain != null) {
@@ -635,6 +655,23 @@ public abstract class StreamTask<OUT, OP extends StreamOperator<OUT>>
 		return operatorChain.getStreamOutputs();
 	}
 
+	/**
+	 * Sets the barrier handler whose in-flight input data is persisted with every checkpoint of this task.
+	 */
+	public void setUnalignedBarrierHandler(UnalignedBarrierHandler unalignedBarrierHandler) {
+		this.unalignedBarrierHandler = Preconditions.checkNotNull(unalignedBarrierHandler);
+	}
+
+	/**
+	 * Returns the in-flight input data that was persisted by an unaligned checkpoint and must be replayed before
+	 * any new input of this task is processed.
+	 */
+	public Collection<InputChannelStateHandle> getRestoredInputChannelState() {
+		return getEnvironment().getTaskStateManager()
+			.prioritizedOperatorState(headOperator.getOperatorID())
+			.getInputChannelState();
+	}
+
 	// ------------------------------------------------------------------------
 	//  Checkpoint and Restore
 	// ------------------------------------------------------------------------
@@ -919,6 +956,9 @@ public abstract class StreamTask<OUT, OP extends StreamOperator<OUT>>
 
 		private final Map<OperatorID, OperatorSnapshotFutures> operatorSnapshotsInProgress;  // 所有 operator 的快照 map
 
+		// 不对齐检查点的 in-flight 数据，在收到所有 barrier 之后完成
+		private final CompletableFuture<InputChannelStateHandle> inputChannelStateFuture;
+
 		private final CheckpointMetaData checkpointMetaData;
 		private final CheckpointMetrics checkpointMetrics;
 
@@ -930,12 +970,14 @@ public abstract class StreamTask<OUT, OP extends StreamOperator<OUT>>
 		AsyncCheckpointRunnable(
 			StreamTask<?, ?> owner,
 			Map<OperatorID, OperatorSnapshotFutures> operatorSnapshotsInProgress,
+			CompletableFuture<InputChannelStateHandle> inputChannelStateFuture,
 			CheckpointMetaData checkpointMetaData,
 			CheckpointMetrics checkpointMetrics,
 			long asyncStartNanos) {
 
 			this.owner = Preconditions.checkNotNull(owner);
 			this.operatorSnapshotsInProgress = Preconditions.checkNotNull(operatorSnapshotsInProgress);
+			this.inputChannelStateFuture = Preconditions.checkNotNull(inputChannelStateFuture);
 			this.checkpointMetaData = Preconditions.checkNotNull(checkpointMetaData);
 			this.checkpointMetrics = Preconditions.checkNotNull(checkpointMetrics);
 			this.asyncStartNanos = asyncStartNanos;
@@ -971,6 +1013,32 @@ public abstract class StreamTask<OUT, OP extends StreamOperator<OUT>>
 						finalizedSnapshots.getTaskLocalState());
 				}
 
+				// wait until the barriers of all inputs were received
+				// 等待所有输入的 barrier 到达，in-flight 数据作为头部操作符状态的一部分
+				final InputChannelStateHandle inputChannelState;
+				try {
+					inputChannelState = inputChannelStateFuture.get();
+				} catch (CancellationException e) {
+					// the checkpoint was aborted and declined by the barrier handler
+					LOG.debug("{} - in-flight data of checkpoint {} was not completed, the checkpoint was aborted.",
+						owner.getName(),
+						checkpointMetaData.getCheckpointId());
+
+					if (asyncCheckpointState.compareAndSet(CheckpointingOperation.AsyncCheckpointState.RUNNING,
+						CheckpointingOperation.AsyncCheckpointState.DISCARDED)) {
+						cleanup();
+					}
+					return;
+				}
+
+				if (inputChannelState != null) {
+					OperatorID headOperatorID = owner.headOperator.getOperatorID();
+					jobManagerTaskOperatorSubtaskStates.putSubtaskStateByOperatorID(
+						headOperatorID,
+						jobManagerTaskOperatorSubtaskStates.getSubtaskStateByOperatorID(headOperatorID)
+							.withInputChannelState(inputChannelState));
+				}
+
 				final long asyncEndNanos = System.nanoTime();
 				final long asyncDurationMillis = (asyncEndNanos - asyncStartNanos) / 1_000_000L;
 
@@ -1100,6 +1168,18 @@ public abstract class StreamTask<OUT, OP extends StreamOperator<OUT>>
 
 			Exception exception = null;
 
+			// discard the in-flight data, or make the barrier handler discard it once it is complete
+			if (!inputChannelStateFuture.cancel(false)) {
+				try {
+					InputChannelStateHandle inputChannelState = inputChannelStateFuture.getNow(null);
+					if (inputChannelState != null) {
+						inputChannelState.discardState();
+					}
+				} catch (Exception discardException) {
+					exception = ExceptionUtils.firstOrSuppressed(discardException, exception);
+				}
+			}
+
 			// clean up ongoing operator snapshot results and non partitioned state handles
 			for (OperatorSnapshotFutures operatorSnapshotResult : operatorSnapshotsInProgress.values()) {
 				if (operatorSnapshotResult != null) {
@@ -1148,6 +1228,8 @@ public abstract class StreamTask<OUT, OP extends StreamOperator<OUT>>
 
 		private final Map<OperatorID, OperatorSnapshotFutures> operatorSnapshotsInProgress;
 
+		private CompletableFuture<InputChannelStateHandle> inputChannelStateFuture;
+
 		public CheckpointingOperation(
 				StreamTask<?, ?> owner,
 				CheckpointMetaData checkpointMetaData,
@@ -1162,6 +1244,7 @@ public abstract class StreamTask<OUT, OP extends StreamOperator<OUT>>
 			this.storageLocation = Preconditions.checkNotNull(checkpointStorageLocation);
 			this.allOperators = owner.operatorChain.getAllOperators();
 			this.operatorSnapshotsInProgress = new HashMap<>(allOperators.length);
+			this.inputChannelStateFuture = CompletableFuture.completedFuture(null);
 		}
 
 		public void executeCheckpointing() throws Exception {
@@ -1173,6 +1256,13 @@ public abstract class StreamTask<OUT, OP extends StreamOperator<OUT>>
 					checkpointStreamOperator(op);
 				}
 
+				// 开启不对齐检查点时，从现在起记录尚未收到 barrier 的 channel 的数据
+				if (owner.unalignedBarrierHandler != null) {
+					inputChannelStateFuture = owner.unalignedBarrierHandler.snapshotInputChannelState(
+						checkpointMetaData.getCheckpointId(),
+						storageLocation);
+				}
+
 				if (LOG.isDebugEnabled()) {
 					LOG.debug("Finished synchronous checkpoints for checkpoint {} on task {}",
 						checkpointMetaData.getCheckpointId(), owner.getName());
@@ -1187,6 +1277,7 @@ public abstract class StreamTask<OUT, OP extends StreamOperator<OUT>>
 				AsyncCheckpointRunnable asyncCheckpointRunnable = new AsyncCheckpointRunnable(
 					owner,
 					operatorSnapshotsInProgress,
+					inputChannelStateFuture,
 					checkpointMetaData,
 					checkpointMetrics,
 					startAsyncPartNano);
@@ -1203,6 +1294,7 @@ public abstract class StreamTask<OUT, OP extends StreamOperator<OUT>>
 				}
 			} catch (Exception ex) {
 				// Cleanup to release resources
+				inputChannelStateFuture.cancel(false);
 				for (OperatorSnapshotFutures operatorSnapshotResult : operatorSnapshotsInProgress.values()) {
 					if (null != operatorSnapshotResult) {
 						try {
@@ -1300,7 +1392,8 @@ public abstract class StreamTask<OUT, OP extends StreamOperator<OUT>>
 					i,
 					environment,
 					environment.getTaskInfo().getTaskName(),
-					chainedConfigs.get(edge.getSourceId()).getBufferTimeout()));
+					chainedConfigs.get(edge.getSourceId()).getBufferTimeout(),
+					chainedConfigs.get(edge.getSourceId()).getBufferTimeoutLatencyTarget()));
 		}
 		return recordWriters;
 	}
@@ -1310,7 +1403,8 @@ public abstract class StreamTask<OUT, OP extends StreamOperator<OUT>>
 			int outputIndex,
 			Environment environment,
 			String taskName,
-			long bufferTimeout) {
+			long bufferTimeout,
+			long bufferTimeoutLatencyTarget) {
 		@SuppressWarnings("unchecked")
 		// 边上的 partitioner，没有显式设置的话，会使用 ForwardPartitioner 或 RebalancePartitioner
 		StreamPartitioner<OUT> outputPartitioner = (StreamPartitioner<OUT>) edge.getPartitioner();
@@ -1328,7 +1422,8 @@ public abstract class StreamTask<OUT, OP extends StreamOperator<OUT>>
 		}
 
 		RecordWriter<SerializationDelegate<StreamRecord<OUT>>> output =
-			RecordWriter.createRecordWriter(bufferWriter, outputPartitioner, bufferTimeout, taskName);
+			RecordWriter.createRecordWriter(
+				bufferWriter, outputPartitioner, bufferTimeout, bufferTimeoutLatencyTarget, taskName);
 		output.setMetricGroup(environment.getMetricGroup().getIOMetricGroup());
 		return output;
 	}
@@ -27,11 +27,15 @@ import org.apache.flink.api.java.typeutils.TupleTypeInfo;
 import org.apache.flink.api.java.typeutils.TupleTypeInfoBase;
 import org.apache.flink.api.java.typeutils.runtime.FieldSerializer;
 import org.apache.flink.api.java.typeutils.runtime.TupleSerializerBase;
+import org.apache.flink.streaming.api.functions.aggregation.SumFunction;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 
@@ -49,6 +53,9 @@ import static org.apache.flink.util.Preconditions.checkNotNull;
  * accessors. These penetrate one layer, and then delegate the rest of the work to an
  * "innerAccessor". (see PojoFieldAccessor, RecursiveTupleFieldAccessor,
  * RecursiveProductFieldAccessor)
+ *
+ * <p>POJO fields are accessed through method handles that are resolved when the accessor is created or deserialized,
+ * i.e. before the operator that uses it is opened. Reflective access remains as a fallback.
  */
 @Internal
 public abstract class FieldAccessor<T, F> implements Serializable {
@@ -86,6 +93,22 @@ public abstract class FieldAccessor<T, F> implements Serializable {
 	 */
 	public abstract T set(T record, F fieldValue);
 
+	/**
+	 * Sets the field of the target record to the sum of the fields of the two given records.
+	 *
+	 * <p>Accessors that can read and write a primitive field directly override this to sum the field without boxing.
+	 *
+	 * @param target The record to modify, a copy of one of the given records
+	 * @param value1 The record with the first summand
+	 * @param value2 The record with the second summand
+	 * @param adder The sum function for the (boxed) field type
+	 * @return A record that has the sum as field value. (this might be a new instance or the target)
+	 */
+	@SuppressWarnings("unchecked")
+	public T sum(T target, T value1, T value2, SumFunction adder) {
+		return set(target, (F) adder.add(get(value1), get(value2)));
+	}
+
 
 	// --------------------------------------------------------------------------------------------------
 
@@ -235,6 +258,18 @@ public abstract class FieldAccessor<T, F> implements Serializable {
 		private transient Field field;
 		private final FieldAccessor<R, F> innerAccessor;
 
+		/** Getter of the field with type (Object)Object, null if the field is accessed reflectively. */
+		private transient MethodHandle getter;
+
+		/** Setter of the field with type (Object, Object)void, null if the field is accessed reflectively. */
+		private transient MethodHandle setter;
+
+		/** Getter of a primitive field with the primitive return type, null if the field is not primitive. */
+		private transient MethodHandle primitiveGetter;
+
+		/** Setter of a primitive field with the primitive parameter type, null if the field is not primitive. */
+		private transient MethodHandle primitiveSetter;
+
 		PojoFieldAccessor(Field field, FieldAccessor<R, F> innerAccessor) {
 			checkNotNull(field, "field must not be null.");
 			checkNotNull(innerAccessor, "innerAccessor must not be null.");
@@ -242,14 +277,107 @@ public abstract class FieldAccessor<T, F> implements Serializable {
 			this.field = field;
 			this.innerAccessor = innerAccessor;
 			this.fieldType = innerAccessor.fieldType;
+
+			initializeMethodHandles();
+		}
+
+		private void initializeMethodHandles() {
+			try {
+				field.setAccessible(true);
+
+				MethodHandles.Lookup lookup = MethodHandles.lookup();
+				MethodHandle fieldGetter = lookup.unreflectGetter(field);
+				MethodHandle fieldSetter = lookup.unreflectSetter(field);
+
+				getter = fieldGetter.asType(MethodType.methodType(Object.class, Object.class));
+				setter = fieldSetter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+
+				if (field.getType().isPrimitive()) {
+					primitiveGetter = fieldGetter.asType(MethodType.methodType(field.getType(), Object.class));
+					primitiveSetter = fieldSetter.asType(MethodType.methodType(void.class, Object.class, field.getType()));
+				}
+			} catch (IllegalAccessException | SecurityException e) {
+				// fall back to reflective access
+				getter = null;
+				setter = null;
+				primitiveGetter = null;
+				primitiveSetter = null;
+			}
 		}
 
 		@Override
 		public F get(T pojo) {
+			return innerAccessor.get(getInner(pojo));
+		}
+
+		@Override
+		public T set(T pojo, F valueToSet) {
+			final R inner = getInner(pojo);
+			setInner(pojo, innerAccessor.set(inner, valueToSet));
+			return pojo;
+		}
+
+		@Override
+		public T sum(T target, T value1, T value2, SumFunction adder) {
+			if (!(innerAccessor instanceof SimpleFieldAccessor)) {
+				// a nested field, sum the inner objects
+				final R innerTarget = getInner(target);
+				setInner(target, innerAccessor.sum(innerTarget, getInner(value1), getInner(value2), adder));
+				return target;
+			} else if (primitiveGetter != null && sumPrimitive(target, value1, value2)) {
+				return target;
+			} else {
+				return super.sum(target, value1, value2, adder);
+			}
+		}
+
+		/**
+		 * Sums the primitive field without boxing, with the same semantics as the {@link SumFunction} of the boxed
+		 * type. Returns false if the type of the field can not be summed.
+		 */
+		private boolean sumPrimitive(Object target, Object value1, Object value2) {
+			final Class<?> type = field.getType();
+			try {
+				if (type == int.class) {
+					int sum = (int) primitiveGetter.invokeExact(value1) + (int) primitiveGetter.invokeExact(value2);
+					primitiveSetter.invokeExact(target, sum);
+				} else if (type == long.class) {
+					long sum = (long) primitiveGetter.invokeExact(value1) + (long) primitiveGetter.invokeExact(value2);
+					primitiveSetter.invokeExact(target, sum);
+				} else if (type == double.class) {
+					double sum = (double) primitiveGetter.invokeExact(value1) + (double) primitiveGetter.invokeExact(value2);
+					primitiveSetter.invokeExact(target, sum);
+				} else if (type == float.class) {
+					float sum = (float) primitiveGetter.invokeExact(value1) + (float) primitiveGetter.invokeExact(value2);
+					primitiveSetter.invokeExact(target, sum);
+				} else if (type == short.class) {
+					short sum = (short) ((short) primitiveGetter.invokeExact(value1) + (short) primitiveGetter.invokeExact(value2));
+					primitiveSetter.invokeExact(target, sum);
+				} else if (type == byte.class) {
+					byte sum = (byte) ((byte) primitiveGetter.invokeExact(value1) + (byte) primitiveGetter.invokeExact(value2));
+					primitiveSetter.invokeExact(target, sum);
+				} else {
+					return false;
+				}
+				return true;
+			} catch (Throwable t) {
+				throw accessFailure(t, target);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private R getInner(Object pojo) {
+			if (getter != null) {
+				try {
+					final Object inner = getter.invokeExact(pojo);
+					return (R) inner;
+				} catch (Throwable t) {
+					throw accessFailure(t, pojo);
+				}
+			}
+
 			try {
-				@SuppressWarnings("unchecked")
-				final R inner = (R) field.get(pojo);
-				return innerAccessor.get(inner);
+				return (R) field.get(pojo);
 			} catch (IllegalAccessException iaex) {
 				// The Field class is transient and when deserializing its value we also make it accessible
 				throw new RuntimeException("This should not happen since we call setAccesssible(true) in readObject."
@@ -257,13 +385,18 @@ public abstract class FieldAccessor<T, F> implements Serializable {
 			}
 		}
 
-		@Override
-		public T set(T pojo, F valueToSet) {
+		private void setInner(Object pojo, Object inner) {
+			if (setter != null) {
+				try {
+					setter.invokeExact(pojo, inner);
+					return;
+				} catch (Throwable t) {
+					throw accessFailure(t, pojo);
+				}
+			}
+
 			try {
-				@SuppressWarnings("unchecked")
-				final R inner = (R) field.get(pojo);
-				field.set(pojo, innerAccessor.set(inner, valueToSet));
-				return pojo;
+				field.set(pojo, inner);
 			} catch (IllegalAccessException iaex) {
 				// The Field class is transient and when deserializing its value we also make it accessible
 				throw new RuntimeException("This should not happen since we call setAccesssible(true) in readObject."
@@ -271,6 +404,20 @@ public abstract class FieldAccessor<T, F> implements Serializable {
 			}
 		}
 
+		/**
+		 * Unchecked exceptions of the access (e.g. a {@code NullPointerException} for a null POJO) are passed on
+		 * as is, like the reflective access does.
+		 */
+		private RuntimeException accessFailure(Throwable t, Object pojo) {
+			if (t instanceof Error) {
+				throw (Error) t;
+			} else if (t instanceof RuntimeException) {
+				return (RuntimeException) t;
+			} else {
+				return new RuntimeException("Could not access field " + field + " of obj: " + pojo, t);
+			}
+		}
+
 		private void writeObject(ObjectOutputStream out)
 				throws IOException, ClassNotFoundException {
 			out.defaultWriteObject();
@@ -281,6 +428,7 @@ public abstract class FieldAccessor<T, F> implements Serializable {
 				throws IOException, ClassNotFoundException {
 			in.defaultReadObject();
 			field = FieldSerializer.deserializeField(in);
+			initializeMethodHandles();
 		}
 	}
 